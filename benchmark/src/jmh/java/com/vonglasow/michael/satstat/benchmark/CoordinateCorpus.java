@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.benchmark;
+
+import java.util.Random;
+
+/**
+ * Fixed sets of WGS84 coordinates used as benchmark input.
+ *
+ * Each corpus covers a region which exercises a different branch of the conversion code. Points are
+ * generated from a fixed seed, so every run (and every benchmark) sees exactly the same input.
+ */
+public final class CoordinateCorpus {
+	/**
+	 * Number of points in each corpus. Must be a power of two.
+	 */
+	public static final int SIZE = 256;
+
+	/**
+	 * Mask to wrap an index into a corpus.
+	 */
+	public static final int MASK = SIZE - 1;
+
+	/**
+	 * Names of the available corpora, for use as a JMH {@code @Param}.
+	 */
+	public static final String EQUATOR = "equator";
+	public static final String SVALBARD = "svalbard";
+	public static final String POLES = "poles";
+	public static final String UK = "uk";
+
+	private static final long SEED = 0x5a75a7L;
+
+	/** Latitudes in degrees */
+	public final double[] lat = new double[SIZE];
+
+	/** Longitudes in degrees */
+	public final double[] lon = new double[SIZE];
+
+	private CoordinateCorpus() {
+	}
+
+	/**
+	 * Returns the corpus with the given name.
+	 *
+	 * <ul>
+	 * <li>{@code equator}: a band of ±1° around the equator, all the way around the globe, crossing
+	 * the hemisphere boundary of the UTM northing.</li>
+	 * <li>{@code svalbard}: 72–84°N, 0–42°E, which is covered by the irregular UTM zones 31X, 33X,
+	 * 35X and 37X.</li>
+	 * <li>{@code poles}: north of 84°N and south of 80°S, which is outside the UTM grid.</li>
+	 * <li>{@code uk}: the extent of the British National Grid.</li>
+	 * </ul>
+	 *
+	 * @throws IllegalArgumentException if {@code name} does not denote a known corpus
+	 */
+	public static CoordinateCorpus get(String name) {
+		if (EQUATOR.equals(name))
+			return generate(-1, 1, -180, 180, false);
+		else if (SVALBARD.equals(name))
+			return generate(72, 84, 0, 42, false);
+		else if (POLES.equals(name))
+			return generate(84, 90, -180, 180, true);
+		else if (UK.equals(name))
+			return generate(49.9, 58.7, -7.6, 1.8, false);
+		throw new IllegalArgumentException("Unknown corpus: " + name);
+	}
+
+	/**
+	 * Generates a corpus within the given bounds.
+	 *
+	 * @param mirror If true, every other point is mirrored into the southern hemisphere and shifted by
+	 * 4° towards the equator (so that 84–90°N becomes 80–86°S).
+	 */
+	private static CoordinateCorpus generate(double minLat, double maxLat, double minLon, double maxLon, boolean mirror) {
+		CoordinateCorpus res = new CoordinateCorpus();
+		Random random = new Random(SEED);
+		for (int i = 0; i < SIZE; i++) {
+			double lat = minLat + random.nextDouble() * (maxLat - minLat);
+			if (mirror && (i % 2 == 1))
+				lat = -(lat - 4);
+			res.lat[i] = lat;
+			res.lon[i] = minLon + random.nextDouble() * (maxLon - minLon);
+		}
+		return res;
+	}
+}
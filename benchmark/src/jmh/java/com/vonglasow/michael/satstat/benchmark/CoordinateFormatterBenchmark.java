@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.benchmark;
+
+import java.util.Locale;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.vonglasow.michael.satstat.utils.CoordinateFormatter;
+
+import uk.me.jstott.jcoord.LatLng;
+import uk.me.jstott.jcoord.MGRSRef;
+import uk.me.jstott.jcoord.UTMRef;
+
+/**
+ * Compares formatting of one fix with {@link CoordinateFormatter} to the {@code String.format()}
+ * code it replaced in {@code GpsSectionFragment} and {@code PasvLocListenerService}.
+ *
+ * The {@code legacy*} benchmarks reproduce the previous code, with the unit string passed in the
+ * same way {@code getString()} supplied it. Compare {@code gc.alloc.rate.norm} between each pair
+ * to see the allocations per fix.
+ */
+@State(Scope.Thread)
+public class CoordinateFormatterBenchmark {
+	private static final String UNIT_DEGREE = "°";
+	private static final String OUTSIDE_UTM = "Position outside UTM range";
+
+	@Param({CoordinateCorpus.UK, CoordinateCorpus.EQUATOR})
+	public String corpus;
+
+	private double[] lat;
+	private double[] lon;
+	private int cursor;
+
+	private CoordinateFormatter formatter;
+	private final StringBuilder sb = new StringBuilder(64);
+
+	@Setup
+	public void setup() {
+		CoordinateCorpus c = CoordinateCorpus.get(corpus);
+		lat = c.lat;
+		lon = c.lon;
+		formatter = new CoordinateFormatter(UNIT_DEGREE, OUTSIDE_UTM, Locale.getDefault());
+	}
+
+	private int next() {
+		return cursor++ & CoordinateCorpus.MASK;
+	}
+
+	@Benchmark
+	public String legacyDecimal() {
+		int i = next();
+		return String.format("%.5f%s", lat[i], UNIT_DEGREE) + String.format("%.5f%s", lon[i], UNIT_DEGREE);
+	}
+
+	@Benchmark
+	public StringBuilder formatterDecimal() {
+		int i = next();
+		sb.setLength(0);
+		formatter.appendDecimal(sb, lat[i]);
+		formatter.appendDecimal(sb, lon[i]);
+		return sb;
+	}
+
+	@Benchmark
+	public String legacyDegMinSec() {
+		int i = next();
+		return legacySec(lat[i]) + legacySec(lon[i]);
+	}
+
+	@Benchmark
+	public StringBuilder formatterDegMinSec() {
+		int i = next();
+		sb.setLength(0);
+		formatter.appendDegMinSec(sb, lat[i]);
+		formatter.appendDegMinSec(sb, lon[i]);
+		return sb;
+	}
+
+	@Benchmark
+	public String legacyMgrs() {
+		int i = next();
+		return new LatLng(lat[i], lon[i]).toMGRSRef().toString(MGRSRef.PRECISION_1M);
+	}
+
+	@Benchmark
+	public StringBuilder formatterMgrs() {
+		int i = next();
+		sb.setLength(0);
+		formatter.appendMgrs(sb, lat[i], lon[i]);
+		return sb;
+	}
+
+	@Benchmark
+	public String legacyUtm() {
+		int i = next();
+		UTMRef utm = new LatLng(lat[i], lon[i]).toUTMRef();
+		return String.format("%d / %s / %,d / %,d", utm.getLngZone(), (lat[i] > 0) ? "N" : "S",
+				Math.round(utm.getEasting()), Math.round(utm.getNorthing()));
+	}
+
+	@Benchmark
+	public StringBuilder formatterUtm() {
+		int i = next();
+		sb.setLength(0);
+		formatter.appendUtm(sb, lat[i], lon[i]);
+		return sb;
+	}
+
+	private static String legacySec(double dec) {
+		double deg = (int) dec;
+		double tmp = Math.abs(60.0 * (dec - deg));
+		double min = (int) tmp;
+		double sec = 60.0 * (tmp - min);
+		return String.format("%.0f%s %.0f' %.1f\"", deg, UNIT_DEGREE, min, sec + /*rounding*/ 0.05);
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.vonglasow.michael.satstat.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import uk.me.jstott.jcoord.LatLng;
+import uk.me.jstott.jcoord.datum.DatumTransformer;
+import uk.me.jstott.jcoord.datum.OSGB36Datum;
+import uk.me.jstott.jcoord.datum.WGS84Datum;
+
+/**
+ * Compares reprojecting a track from WGS84 to OSGB36 point by point with {@code LatLng.toDatum()}
+ * to the in-place batch transformation of {@link DatumTransformer}.
+ *
+ * Each invocation transforms the whole corpus. Divide by {@link CoordinateCorpus#SIZE} for the
+ * time per point.
+ */
+@State(Scope.Thread)
+public class DatumTransformerBenchmark {
+	@Param({CoordinateCorpus.UK})
+	public String corpus;
+
+	private double[] lat;
+	private double[] lon;
+
+	/** Working copies, overwritten by the batch benchmark */
+	private final double[] batchLat = new double[CoordinateCorpus.SIZE];
+	private final double[] batchLon = new double[CoordinateCorpus.SIZE];
+
+	private DatumTransformer transformer;
+
+	@Setup
+	public void setup() {
+		CoordinateCorpus c = CoordinateCorpus.get(corpus);
+		lat = c.lat;
+		lon = c.lon;
+		transformer = DatumTransformer.getInstance(WGS84Datum.getInstance(), OSGB36Datum.getInstance());
+	}
+
+	@Benchmark
+	public double latLngToDatum() {
+		double sum = 0;
+		for (int i = 0; i < CoordinateCorpus.SIZE; i++) {
+			LatLng ll = new LatLng(lat[i], lon[i]);
+			ll.toDatum(OSGB36Datum.getInstance());
+			sum += ll.getLatitude();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double[] transformerBatch() {
+		System.arraycopy(lat, 0, batchLat, 0, CoordinateCorpus.SIZE);
+		System.arraycopy(lon, 0, batchLon, 0, CoordinateCorpus.SIZE);
+		transformer.transform(batchLat, batchLon, null, 0, CoordinateCorpus.SIZE);
+		return batchLat;
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import uk.me.jstott.jcoord.LatLng;
+import uk.me.jstott.jcoord.MGRSRef;
+import uk.me.jstott.jcoord.NotDefinedOnUTMGridException;
+import uk.me.jstott.jcoord.OSRef;
+import uk.me.jstott.jcoord.UTMConverter;
+import uk.me.jstott.jcoord.UTMRef;
+
+/**
+ * Benchmarks for the coordinate conversions which run on every GPS fix.
+ *
+ * Each invocation converts one point of the selected corpus, cycling through the corpus. Conversions
+ * which are undefined for a point (UTM and MGRS near the poles) are measured including the failure
+ * path, as this is what the app runs into at these latitudes.
+ */
+@State(Scope.Thread)
+public class JcoordBenchmark {
+	@Param({CoordinateCorpus.EQUATOR, CoordinateCorpus.SVALBARD, CoordinateCorpus.POLES, CoordinateCorpus.UK})
+	public String corpus;
+
+	private double[] lat;
+	private double[] lon;
+
+	/** Precomputed MGRS references, {@code null} for points outside the UTM grid */
+	private MGRSRef[] mgrs;
+
+	/** Reused by the {@link UTMConverter} benchmarks */
+	private final UTMConverter.Result result = new UTMConverter.Result();
+
+	/** Output of the batch benchmark */
+	private final int[] batchZones = new int[CoordinateCorpus.SIZE];
+	private final double[] batchEastings = new double[CoordinateCorpus.SIZE];
+	private final double[] batchNorthings = new double[CoordinateCorpus.SIZE];
+
+	private int cursor;
+
+	@Setup
+	public void setup() {
+		CoordinateCorpus c = CoordinateCorpus.get(corpus);
+		lat = c.lat;
+		lon = c.lon;
+		mgrs = new MGRSRef[CoordinateCorpus.SIZE];
+		for (int i = 0; i < CoordinateCorpus.SIZE; i++)
+			try {
+				mgrs[i] = new LatLng(lat[i], lon[i]).toMGRSRef();
+			} catch (NotDefinedOnUTMGridException e) {
+				mgrs[i] = null;
+			}
+	}
+
+	private int next() {
+		return cursor++ & CoordinateCorpus.MASK;
+	}
+
+	/**
+	 * {@code LatLng.toUTMRef()}
+	 */
+	@Benchmark
+	public UTMRef latLngToUtmRef() {
+		int i = next();
+		try {
+			return new LatLng(lat[i], lon[i]).toUTMRef();
+		} catch (NotDefinedOnUTMGridException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * {@code LatLng.toMGRSRef()}
+	 */
+	@Benchmark
+	public MGRSRef latLngToMgrsRef() {
+		int i = next();
+		try {
+			return new LatLng(lat[i], lon[i]).toMGRSRef();
+		} catch (NotDefinedOnUTMGridException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * {@code MGRSRef.toString(int)} on a precomputed reference.
+	 */
+	@Benchmark
+	public String mgrsRefToString() {
+		MGRSRef ref = mgrs[next()];
+		return (ref == null) ? null : ref.toString(MGRSRef.PRECISION_1M);
+	}
+
+	/**
+	 * The complete MGRS path as run by the GPS view and the notification: LatLng, UTMRef, MGRSRef
+	 * and string formatting.
+	 */
+	@Benchmark
+	public String latLngToMgrsString() {
+		int i = next();
+		try {
+			return new LatLng(lat[i], lon[i]).toMGRSRef().toString(MGRSRef.PRECISION_1M);
+		} catch (NotDefinedOnUTMGridException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * {@code UTMConverter.toUTM()} into a reused result.
+	 */
+	@Benchmark
+	public UTMConverter.Result converterToUtm() {
+		int i = next();
+		return UTMConverter.toUTM(lat[i], lon[i], result) ? result : null;
+	}
+
+	/**
+	 * {@code UTMConverter.toMGRS()} into a reused result.
+	 */
+	@Benchmark
+	public UTMConverter.Result converterToMgrs() {
+		int i = next();
+		return UTMConverter.toMGRS(lat[i], lon[i], result) ? result : null;
+	}
+
+	/**
+	 * {@code OSRef(LatLng)}
+	 */
+	@Benchmark
+	public OSRef latLngToOsRef() {
+		int i = next();
+		return new OSRef(new LatLng(lat[i], lon[i]));
+	}
+
+	/**
+	 * {@code UTMConverter.toUTM()} on the whole corpus at once, as for a track export. Divide by
+	 * {@link CoordinateCorpus#SIZE} for the time per point.
+	 */
+	@Benchmark
+	public double[] converterToUtmBatch() {
+		UTMConverter.toUTM(lat, lon, 0, CoordinateCorpus.SIZE, batchZones, null, batchEastings, batchNorthings);
+		return batchNorthings;
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * NMEA sentences used as benchmark input.
+ *
+ * The corpus is either read from a log recorded by the app (one sentence per line, as written by
+ * {@code NmeaLogger}) or generated. A generated corpus mimics the output of a multi-constellation
+ * receiver at 1 Hz: for each epoch GGA, RMC, GNS, VTG and GST, one GSA per constellation and GSV
+ * series for GPS, GLONASS, Galileo and BeiDou. Generation uses a fixed seed, so every run sees
+ * exactly the same input.
+ */
+public final class NmeaCorpus {
+	private static final long SEED = 0x4e4d4541L;
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	/** The sentences, without line breaks */
+	public final String[] sentences;
+
+	/** All sentences, each followed by CR LF, as they appear in a log file */
+	public final byte[] data;
+
+	/** Offset of each sentence in {@link #data} */
+	public final int[] offsets;
+
+	/** Length of each sentence in {@link #data}, including the line break */
+	public final int[] lengths;
+
+	/** Total size of the corpus in bytes */
+	public final int size;
+
+	private NmeaCorpus(List<String> list) {
+		sentences = list.toArray(new String[list.size()]);
+		offsets = new int[sentences.length];
+		lengths = new int[sentences.length];
+		int total = 0;
+		for (String s : sentences)
+			total += s.length() + 2;
+		data = new byte[total];
+		int pos = 0;
+		for (int i = 0; i < sentences.length; i++) {
+			byte[] b = (sentences[i] + "\r\n").getBytes(ASCII);
+			System.arraycopy(b, 0, data, pos, b.length);
+			offsets[i] = pos;
+			lengths[i] = b.length;
+			pos += b.length;
+		}
+		size = total;
+	}
+
+	/**
+	 * Reads a corpus from an NMEA log. Lines which do not start with {@code $} are skipped.
+	 */
+	public static NmeaCorpus load(String path) throws IOException {
+		List<String> list = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), ASCII));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null)
+				if (line.startsWith("$"))
+					list.add(line.trim());
+		} finally {
+			reader.close();
+		}
+		if (list.isEmpty())
+			throw new IOException("No NMEA sentences in " + path);
+		return new NmeaCorpus(list);
+	}
+
+	/**
+	 * Generates a corpus.
+	 *
+	 * @param epochs The number of one-second epochs
+	 */
+	public static NmeaCorpus generate(int epochs) {
+		Random random = new Random(SEED);
+		List<String> list = new ArrayList<String>();
+		double lat = 48.1173;
+		double lon = 11.5167;
+		double alt = 545.4;
+		// talker, NMEA 4.1 system ID and number of satellites in view for each constellation
+		String[] talkers = {"GP", "GL", "GA", "GB"};
+		int[] systemIds = {1, 2, 3, 4};
+		int[] satCounts = {11, 7, 8, 9};
+		int[][] prns = new int[talkers.length][];
+		int[][] az = new int[talkers.length][];
+		int[][] el = new int[talkers.length][];
+		for (int t = 0; t < talkers.length; t++) {
+			prns[t] = new int[satCounts[t]];
+			az[t] = new int[satCounts[t]];
+			el[t] = new int[satCounts[t]];
+			for (int i = 0; i < satCounts[t]; i++) {
+				prns[t][i] = (t == 1 ? 65 : 1) + i * 3 + random.nextInt(3);
+				az[t][i] = random.nextInt(360);
+				el[t][i] = 5 + random.nextInt(85);
+			}
+		}
+		for (int e = 0; e < epochs; e++) {
+			int seconds = 12 * 3600 + 35 * 60 + e;
+			String time = String.format(Locale.ROOT, "%02d%02d%02d.00", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+			lat += (random.nextDouble() - 0.3) * 1e-5;
+			lon += (random.nextDouble() - 0.3) * 1e-5;
+			alt += (random.nextDouble() - 0.5) * 0.2;
+			String latField = formatCoordinate(lat, 2) + (lat >= 0 ? ",N" : ",S");
+			String lonField = formatCoordinate(lon, 3) + (lon >= 0 ? ",E" : ",W");
+			int used = 0;
+			for (int t = 0; t < talkers.length; t++)
+				used += satCounts[t] - 2;
+			double speed = 1.5 + random.nextDouble();
+			double course = random.nextDouble() * 360;
+			list.add(sentence(String.format(Locale.ROOT, "GPGGA,%s,%s,%s,1,%02d,0.7,%.1f,M,47.0,M,,", time, latField, lonField, Math.min(used, 12), alt)));
+			list.add(sentence(String.format(Locale.ROOT, "GPRMC,%s,A,%s,%s,%.3f,%.1f,180126,,,A,V", time, latField, lonField, speed, course)));
+			list.add(sentence(String.format(Locale.ROOT, "GNGNS,%s,%s,%s,AAAA,%02d,0.7,%.1f,47.0,,,V", time, latField, lonField, used, alt)));
+			list.add(sentence(String.format(Locale.ROOT, "GPVTG,%.1f,T,,M,%.3f,N,%.3f,K,A", course, speed, speed * 1.852)));
+			list.add(sentence(String.format(Locale.ROOT, "GPGST,%s,12,2.1,1.6,35.1,1.8,2.0,3.5", time)));
+			for (int t = 0; t < talkers.length; t++) {
+				StringBuilder sb = new StringBuilder("GNGSA,A,3");
+				for (int i = 0; i < 12; i++) {
+					sb.append(',');
+					if (i < satCounts[t] - 2)
+						sb.append(String.format(Locale.ROOT, "%02d", prns[t][i]));
+				}
+				sb.append(",1.2,0.7,1.0,").append(systemIds[t]);
+				list.add(sentence(sb.toString()));
+			}
+			for (int t = 0; t < talkers.length; t++) {
+				int count = satCounts[t];
+				int messages = (count + 3) / 4;
+				for (int m = 0; m < messages; m++) {
+					StringBuilder sb = new StringBuilder();
+					sb.append(talkers[t]).append("GSV,").append(messages).append(',').append(m + 1).append(',').append(String.format(Locale.ROOT, "%02d", count));
+					for (int i = m * 4; (i < count) && (i < m * 4 + 4); i++) {
+						int snr = (i < count - 1) ? 20 + random.nextInt(30) : -1;
+						sb.append(String.format(Locale.ROOT, ",%02d,%02d,%03d,", prns[t][i], el[t][i], az[t][i]));
+						if (snr >= 0)
+							sb.append(String.format(Locale.ROOT, "%02d", snr));
+					}
+					sb.append(",1");
+					list.add(sentence(sb.toString()));
+				}
+			}
+		}
+		return new NmeaCorpus(list);
+	}
+
+	/**
+	 * Formats a coordinate as {@code dddmm.mmmmm}.
+	 */
+	private static String formatCoordinate(double value, int degreeDigits) {
+		value = Math.abs(value);
+		int deg = (int) value;
+		double min = (value - deg) * 60;
+		return String.format(Locale.ROOT, "%0" + degreeDigits + "d%08.5f", deg, min);
+	}
+
+	/**
+	 * Adds the leading {@code $} and the checksum to the body of a sentence.
+	 */
+	private static String sentence(String body) {
+		int checksum = 0;
+		for (int i = 0; i < body.length(); i++)
+			checksum ^= body.charAt(i);
+		return String.format(Locale.ROOT, "$%s*%02X", body, checksum);
+	}
+}
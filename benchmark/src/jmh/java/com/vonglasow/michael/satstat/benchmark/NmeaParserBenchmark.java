@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.benchmark;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.vonglasow.michael.satstat.data.NmeaParser;
+
+/**
+ * Measures parsing of one NMEA sentence, replayed from a log.
+ *
+ * By default the log is a generated one (see {@link NmeaCorpus}); a log recorded by the app can be
+ * used instead with {@code -PnmeaLog=/path/to/file.nmea}. The time per operation is the time per
+ * sentence, so sentences per second are 10^9 divided by the score. {@code gc.alloc.rate.norm} is
+ * the number of bytes allocated per sentence.
+ *
+ * {@code parseString} parses the sentence as delivered by Android's NMEA listener,
+ * {@code parseBytes} parses it straight out of the log file contents. {@code legacySplit} is a
+ * conventional parser built on {@code String.split()} and {@code Double.parseDouble()}, which
+ * extracts the same values, for comparison.
+ */
+@State(Scope.Thread)
+public class NmeaParserBenchmark {
+	/** Path to an NMEA log, or empty to use a generated log */
+	@Param({""})
+	public String nmeaLog;
+
+	private NmeaCorpus corpus;
+	private int cursor;
+
+	private final NmeaParser parser = new NmeaParser();
+
+	@Setup
+	public void setup() throws IOException {
+		corpus = nmeaLog.isEmpty() ? NmeaCorpus.generate(600) : NmeaCorpus.load(nmeaLog);
+	}
+
+	private int next() {
+		int i = cursor++;
+		if (cursor >= corpus.sentences.length)
+			cursor = 0;
+		return i;
+	}
+
+	@Benchmark
+	public int parseString() {
+		return parser.parse(corpus.sentences[next()]);
+	}
+
+	@Benchmark
+	public int parseBytes() {
+		int i = next();
+		return parser.parse(corpus.data, corpus.offsets[i], corpus.lengths[i]);
+	}
+
+	@Benchmark
+	public double legacySplit() {
+		String s = corpus.sentences[next()];
+		int star = s.indexOf('*');
+		if (!s.startsWith("$") || (star < 0))
+			return -1;
+		int checksum = 0;
+		for (int i = 1; i < star; i++)
+			checksum ^= s.charAt(i);
+		if (checksum != Integer.parseInt(s.substring(star + 1, star + 3), 16))
+			return -1;
+		String[] f = s.substring(1, star).split(",", -1);
+		String type = f[0].substring(2);
+		double res = 0;
+		if (type.equals("GGA") || type.equals("GNS")) {
+			res += legacyTime(f[1]) + legacyCoordinate(f[2], f[3]) + legacyCoordinate(f[4], f[5]);
+			res += legacyDouble(f[7]) + legacyDouble(f[8]) + legacyDouble(f[9]);
+		} else if (type.equals("RMC")) {
+			res += legacyTime(f[1]) + legacyCoordinate(f[3], f[4]) + legacyCoordinate(f[5], f[6]);
+			res += legacyDouble(f[7]) + legacyDouble(f[8]) + legacyDouble(f[9]);
+		} else if (type.equals("GSA")) {
+			for (int i = 3; i < 15; i++)
+				res += legacyDouble(f[i]);
+			res += legacyDouble(f[15]) + legacyDouble(f[16]) + legacyDouble(f[17]);
+		} else if (type.equals("GSV")) {
+			for (int i = 1; i < f.length; i++)
+				res += legacyDouble(f[i]);
+		} else if (type.equals("GST") || type.equals("VTG")) {
+			for (int i = 1; i < f.length; i++)
+				if (!f[i].isEmpty() && Character.isDigit(f[i].charAt(0)))
+					res += legacyDouble(f[i]);
+		}
+		return res;
+	}
+
+	private static double legacyDouble(String s) {
+		return s.isEmpty() ? Double.NaN : Double.parseDouble(s);
+	}
+
+	private static double legacyTime(String s) {
+		if (s.length() < 6)
+			return Double.NaN;
+		return Integer.parseInt(s.substring(0, 2)) * 3600 + Integer.parseInt(s.substring(2, 4)) * 60
+				+ Double.parseDouble(s.substring(4));
+	}
+
+	private static double legacyCoordinate(String value, String hemisphere) {
+		if (value.isEmpty() || hemisphere.isEmpty())
+			return Double.NaN;
+		double v = Double.parseDouble(value);
+		double deg = Math.floor(v / 100);
+		double res = deg + (v - deg * 100) / 60;
+		return (hemisphere.equals("S") || hemisphere.equals("W")) ? -res : res;
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.vonglasow.michael.satstat.data.SatelliteSnapshot;
+import com.vonglasow.michael.satstat.widgets.SnrGrid;
+
+/**
+ * Measures the layout work the SNR chart does for one frame, without the actual drawing.
+ *
+ * A frame with 120 satellites from six constellations updates the set of visible ranges, computes
+ * the horizontal extent of each satellite's bar and the position of every grid line, as
+ * {@code GpsSnrView.onDraw()} does. {@code snrGrid} uses {@link SnrGrid}, {@code legacy} the range
+ * flags with the nested range lookup {@code GpsSnrView} used before, for comparison.
+ */
+@State(Scope.Thread)
+public class SnrGridBenchmark {
+	/** Width of the view in pixels */
+	private static final int WIDTH = 1080;
+
+	private final SatelliteSnapshot sats = new SatelliteSnapshot();
+	private final SnrGrid grid = new SnrGrid();
+	private final LegacyGrid legacy = new LegacyGrid();
+
+	@Setup
+	public void setup() {
+		addRange(1, 32);    // GPS
+		addRange(33, 10);   // SBAS
+		addRange(65, 24);   // GLONASS
+		addRange(193, 5);   // QZSS
+		addRange(201, 35);  // BeiDou
+		addRange(301, 14);  // Galileo
+	}
+
+	private void addRange(int start, int count) {
+		for (int i = 0; i < count; i++)
+			sats.add(start + i, 0, 45, 20 + i, (i % 3) == 0);
+	}
+
+	@Benchmark
+	public int snrGrid() {
+		int res = 0;
+		for (int i = 0; i < sats.count; i++)
+			grid.add(sats.prn[i]);
+		grid.ensureNotEmpty();
+		for (int i = 0; i < sats.count; i++) {
+			int pos = grid.getGridPos(sats.prn[i]);
+			if (pos < 0)
+				continue;
+			res += (pos - 1) * WIDTH / grid.getNumBars() + pos * WIDTH / grid.getNumBars();
+		}
+		for (int nmeaID = 1; nmeaID < SnrGrid.MAX_NMEA_ID; nmeaID++) {
+			int pos = grid.getGridPos(nmeaID);
+			if (pos > 0)
+				res += pos * WIDTH / grid.getNumBars();
+		}
+		return res;
+	}
+
+	@Benchmark
+	public int legacy() {
+		int res = 0;
+		for (int i = 0; i < sats.count; i++)
+			legacy.showRange(sats.prn[i]);
+		legacy.ensureNotEmpty();
+		for (int i = 0; i < sats.count; i++) {
+			int pos = legacy.getGridPos(sats.prn[i]);
+			res += (pos - 1) * WIDTH / legacy.getNumBars() + pos * WIDTH / legacy.getNumBars();
+		}
+		for (int nmeaID = 1; nmeaID < LegacyGrid.MAX_NMEA_ID; nmeaID++) {
+			int pos = legacy.getGridPos(nmeaID);
+			if (pos > 0)
+				res += pos * WIDTH / legacy.getNumBars();
+		}
+		return res;
+	}
+
+	/**
+	 * The range handling of {@code GpsSnrView} before it was moved to {@link SnrGrid}.
+	 */
+	static class LegacyGrid {
+		static final int MAX_NMEA_ID = 336;
+
+		boolean draw_1_32 = false;
+		boolean draw_33_54 = false;
+		boolean draw_55_64 = false;
+		boolean draw_65_88 = false;
+		boolean draw_89_96 = false;
+		boolean draw_97_192 = false;
+		boolean draw_193_195 = false;
+		boolean draw_196_200 = false;
+		boolean draw_201_235 = false;
+		boolean draw_236_300 = false;
+		boolean draw_301_336 = false;
+
+		void showRange(int prn) {
+			if (prn < 1) {
+				// invalid
+			} else if (prn <= 32) {
+				draw_1_32 = true;
+			} else if (prn <= 54) {
+				draw_33_54 = true;
+			} else if (prn <= 64) {
+				draw_33_54 = true;
+				draw_55_64 = true;
+			} else if (prn <= 88) {
+				draw_65_88 = true;
+			} else if (prn <= 96) {
+				draw_65_88 = true;
+				draw_89_96 = true;
+			} else if (prn <= 192) {
+				draw_97_192 = true;
+			} else if (prn <= 195) {
+				draw_193_195 = true;
+			} else if (prn <= 200) {
+				draw_193_195 = true;
+				draw_196_200 = true;
+			} else if (prn <= 235) {
+				draw_201_235 = true;
+			} else if (prn <= 300) {
+				draw_236_300 = true;
+			} else if (prn <= 336) {
+				draw_301_336 = true;
+			}
+		}
+
+		void ensureNotEmpty() {
+			if (!(draw_1_32 || draw_33_54 || draw_65_88 || draw_97_192 || draw_193_195 || draw_201_235
+					|| draw_236_300 || draw_301_336))
+				draw_1_32 = true;
+		}
+
+		int getGridPos(int nmeaID) {
+			if (nmeaID < 1) return -1;
+
+			int skip = 0;
+			if (nmeaID > 32) {
+				if (!draw_1_32) skip+=32;
+				if (nmeaID > 54) {
+					if (!draw_33_54) skip+=22;
+					if (nmeaID > 64) {
+						if (!draw_55_64) skip+=10;
+						if (nmeaID > 88) {
+							if (!draw_65_88) skip+=24;
+							if (nmeaID > 96) {
+								if (!draw_89_96) skip+=8;
+								if (nmeaID > 192) {
+									if (!draw_97_192) skip+=96;
+									if (nmeaID > 195) {
+										if (!draw_193_195) skip+=3;
+										if (nmeaID > 200) {
+											if (!draw_196_200) skip+=5;
+											if (nmeaID > 235) {
+												if (!draw_201_235) skip+=35;
+												if (nmeaID > 300) {
+													if (nmeaID > MAX_NMEA_ID) return -1;
+													else if (!draw_301_336) return -1;
+													else if (!draw_236_300) skip+=65;
+												} else {
+													if (!draw_236_300) return -1;
+												}
+											} else {
+												if (!draw_201_235) return -1;
+											}
+										} else {
+											if (!draw_196_200) return -1;
+										}
+									} else {
+										if (!draw_193_195) return -1;
+									}
+								} else {
+									if (!draw_97_192) return -1;
+								}
+							} else {
+								if (!draw_89_96) return -1;
+							}
+						} else {
+							if (!draw_65_88) return -1;
+						}
+					} else {
+						if (!draw_55_64) return -1;
+					}
+				} else {
+					if (!draw_33_54) return -1;
+				}
+			} else {
+				if (!draw_1_32) return -1;
+			}
+
+			return nmeaID - skip;
+		}
+
+		int getNumBars() {
+			return (draw_1_32 ? 32 : 0)
+					+ (draw_33_54 ? 22 : 0)
+					+ (draw_55_64 ? 10 : 0)
+					+ (draw_65_88 ? 24 : 0)
+					+ (draw_89_96 ? 8 : 0)
+					+ (draw_97_192 ? 96 : 0)
+					+ (draw_193_195 ? 3 : 0)
+					+ (draw_196_200 ? 5 : 0)
+					+ (draw_201_235 ? 35 : 0)
+					+ (draw_236_300 ? 65 : 0)
+					+ (draw_301_336 ? 36 : 0);
+		}
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Test;
+
+/**
+ * Replays short NMEA logs and tracks with {@link ReplayEngine} at {@link ReplayEngine#SPEED_MAX}
+ * and checks the events delivered to the listener.
+ */
+public class ReplayEngineTest {
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	/** 1994-03-23 00:00:00 UTC, the date in the RMC sentences of the test log */
+	private static final long DAY = 764380800000L;
+
+	/** 12:35:19 UTC in milliseconds since midnight, the time of the first epoch of the test log */
+	private static final long T0 = (12 * 3600 + 35 * 60 + 19) * 1000L;
+
+	/**
+	 * Records the events delivered by the replay engine in a human-readable form.
+	 */
+	private static class RecordingListener implements ReplayEngine.Listener {
+		final List<String> events = new ArrayList<String>();
+		final List<TrackPoint> points = new ArrayList<TrackPoint>();
+		boolean finished = false;
+		IOException error = null;
+
+		@Override
+		public void onReplayLocation(TrackPoint point) {
+			assertFalse(finished);
+			TrackPoint copy = new TrackPoint();
+			copy.set(point);
+			points.add(copy);
+			events.add(String.format(Locale.ROOT, "fix %d %.6f %.6f", point.time, point.latitude,
+					point.longitude));
+		}
+
+		@Override
+		public void onReplaySatellites(SatelliteSnapshot satellites) {
+			assertFalse(finished);
+			StringBuilder sb = new StringBuilder("sats");
+			for (int i = 0; i < satellites.count; i++)
+				sb.append(' ').append(satellites.prn[i]);
+			events.add(sb.toString());
+		}
+
+		@Override
+		public void onReplayFinished(IOException error) {
+			assertFalse(finished);
+			finished = true;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Adds the leading {@code $}, the checksum and a line break to the body of a sentence.
+	 */
+	private static String sentence(String body) {
+		int checksum = 0;
+		for (int i = 0; i < body.length(); i++)
+			checksum ^= body.charAt(i);
+		return String.format(Locale.ROOT, "$%s*%02X\r\n", body, checksum);
+	}
+
+	/**
+	 * Builds the test log: four epochs, the first with satellites and a fix with GST accuracy, the
+	 * second with a fix only, the third with satellites but no fix, the fourth with a fix from GGA
+	 * only. It also contains a sentence with a wrong checksum and a line which is too long.
+	 */
+	private static byte[] buildNmeaLog() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(sentence("GPGGA,123519.00,4807.0380,N,01131.0000,E,1,08,0.9,545.4,M,46.9,M,,"));
+		sb.append(sentence("GPRMC,123519.00,A,4807.0380,N,01131.0000,E,022.4,084.4,230394,,,A"));
+		sb.append(sentence("GPGSV,2,1,05,01,40,083,46,02,17,308,41,12,07,344,39,14,22,228,45"));
+		sb.append(sentence("GPGSV,2,2,05,24,10,100,30"));
+		sb.append(sentence("GPGST,123519.00,1.0,3.0,2.0,45.0,3.0,4.0,5.0"));
+
+		sb.append(sentence("GPGGA,123520.00,4807.0400,N,01131.0020,E,1,08,1.2,545.6,M,46.9,M,,"));
+		// wrong checksum, must be ignored
+		sb.append("$GPGGA,123520.00,5000.0000,N,00100.0000,W,1,08,1.2,545.6,M,46.9,M,,*00\r\n");
+		char[] junk = new char[NmeaParser.MAX_LENGTH + 10];
+		Arrays.fill(junk, 'x');
+		sb.append('$').append(junk).append("\r\n");
+		sb.append(sentence("GPRMC,123520.00,A,4807.0400,N,01131.0020,E,022.4,084.4,230394,,,A"));
+
+		sb.append(sentence("GPGGA,123521.00,,,,,0,00,,,M,,M,,"));
+		sb.append(sentence("GPRMC,123521.00,V,,,,,,,230394,,,N"));
+		sb.append(sentence("GPGSV,1,1,02,01,40,083,44,02,17,308,40"));
+
+		sb.append(sentence("GPGGA,123522.00,4807.0420,S,01131.0040,W,1,06,1.0,545.8,M,46.9,M,,"));
+		return sb.toString().getBytes(ASCII);
+	}
+
+	private static RecordingListener replay(byte[] log, int format) {
+		RecordingListener listener = new RecordingListener();
+		new ReplayEngine(new ByteArrayInputStream(log), format, ReplayEngine.SPEED_MAX, listener)
+				.run();
+		assertTrue(listener.finished);
+		assertNull(listener.error);
+		return listener;
+	}
+
+	@Test
+	public void nmeaEvents() {
+		RecordingListener listener = replay(buildNmeaLog(), ReplayEngine.FORMAT_NMEA);
+		assertEquals(Arrays.asList(
+				"sats 1 2 12 14 24",
+				"fix " + (DAY + T0) + " 48.117300 11.516667",
+				"fix " + (DAY + T0 + 1000) + " 48.117333 11.516700",
+				"sats 1 2",
+				"fix " + (DAY + T0 + 3000) + " -48.117367 -11.516733"),
+				listener.events);
+
+		TrackPoint first = listener.points.get(0);
+		assertEquals(545.4 + 46.9, first.altitude, 1e-6);
+		assertEquals(5, first.accuracy, 1e-6);
+		assertEquals(22.4 * 1852 / 3600, first.speed, 0.01);
+		assertEquals(84.4, first.bearing, 1e-4);
+		assertEquals(8, first.satsUsed);
+		assertEquals(5, first.satsInView);
+
+		// no GST, accuracy estimated from the HDOP
+		TrackPoint second = listener.points.get(1);
+		assertEquals(1.2 * 5, second.accuracy, 1e-6);
+		assertEquals(5, second.satsInView);
+
+		// GGA only, no speed or bearing
+		TrackPoint third = listener.points.get(2);
+		assertEquals(545.8 + 46.9, third.altitude, 1e-6);
+		assertFalse(third.hasSpeed());
+		assertFalse(third.hasBearing());
+		assertEquals(6, third.satsUsed);
+		assertEquals(2, third.satsInView);
+	}
+
+	@Test
+	public void trackEvents() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TrackWriter writer = new TrackWriter(out);
+		List<TrackPoint> expected = new ArrayList<TrackPoint>();
+		TrackPoint point = new TrackPoint();
+		for (int i = 0; i < 5; i++) {
+			point.clear();
+			point.time = DAY + T0 + i * 1000L;
+			point.latitude = 48.1173 + i * 1e-5;
+			point.longitude = 11.516667 - i * 2e-5;
+			point.altitude = 592.3 + i;
+			point.satsUsed = 8;
+			point.satsInView = 12;
+			writer.write(point);
+			TrackPoint copy = new TrackPoint();
+			copy.set(point);
+			expected.add(copy);
+		}
+		writer.close();
+
+		RecordingListener listener = replay(out.toByteArray(), ReplayEngine.FORMAT_TRACK);
+		assertEquals(expected.size(), listener.events.size());
+		for (int i = 0; i < expected.size(); i++) {
+			TrackPoint e = expected.get(i);
+			TrackPoint a = listener.points.get(i);
+			assertEquals(String.format(Locale.ROOT, "fix %d %.6f %.6f", e.time, e.latitude,
+					e.longitude), listener.events.get(i));
+			assertEquals(e.altitude, a.altitude, 0.05);
+			assertEquals(e.satsUsed, a.satsUsed);
+			assertEquals(e.satsInView, a.satsInView);
+		}
+	}
+
+	@Test
+	public void emptyNmeaLog() {
+		assertEquals(0, replay(new byte[0], ReplayEngine.FORMAT_NMEA).events.size());
+	}
+}
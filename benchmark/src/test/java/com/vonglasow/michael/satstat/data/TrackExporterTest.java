@@ -0,0 +1,244 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import com.vonglasow.michael.satstat.utils.CoordinateFormatter;
+
+/**
+ * Exports tracks with {@link TrackExporter} and checks the output.
+ */
+public class TrackExporterTest {
+	/** Start of the test track, 2016-01-01 00:00:00 UTC */
+	private static final long T0 = 1451606400000L;
+
+	/** Number of points in the test track, enough for several chunks of output in every format */
+	private static final int POINTS = 2000;
+
+	/** Name of the test track, with characters which must be escaped in XML */
+	private static final String NAME = "<Walk & \"talk\">";
+
+	private static final String GPX_NS = "http://www.topografix.com/GPX/1/1";
+	private static final String KML_NS = "http://www.opengis.net/kml/2.2";
+
+	/**
+	 * Builds a track at 1 Hz which crosses the equator and the prime meridian and has some
+	 * optional fields missing.
+	 */
+	private static byte[] buildTrack() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TrackWriter writer = new TrackWriter(out);
+		TrackPoint point = new TrackPoint();
+		for (int i = 0; i < POINTS; i++) {
+			point.clear();
+			// odd milliseconds every now and then
+			point.time = T0 + i * 1000L + ((i % 7 == 0) ? 250 : 0);
+			point.latitude = -0.0005 + i * 1e-6;
+			point.longitude = -0.0123456 + i * 2.5e-5;
+			if (i % 10 != 3)
+				point.altitude = -2.5 + i * 0.1;
+			if (i % 10 != 4)
+				point.accuracy = 3.5f + (i % 5);
+			if (i % 10 != 5)
+				point.speed = 1.25f;
+			if (i % 10 != 6)
+				point.bearing = (i * 7) % 360;
+			if (i % 10 != 7) {
+				point.satsUsed = 4 + i % 8;
+				point.satsInView = 12;
+			}
+			writer.write(point);
+		}
+		writer.close();
+		return out.toByteArray();
+	}
+
+	/**
+	 * Reads a track back into a list of points.
+	 */
+	private static List<TrackPoint> read(byte[] track) throws IOException {
+		List<TrackPoint> res = new ArrayList<TrackPoint>();
+		TrackReader reader = new TrackReader(new ByteArrayInputStream(track));
+		TrackPoint point = new TrackPoint();
+		while (reader.read(point)) {
+			TrackPoint copy = new TrackPoint();
+			copy.set(point);
+			res.add(copy);
+		}
+		reader.close();
+		return res;
+	}
+
+	private static String export(byte[] track, int format, int coordFormat) throws IOException {
+		StringWriter out = new StringWriter();
+		TrackReader reader = new TrackReader(new ByteArrayInputStream(track));
+		assertEquals(POINTS, new TrackExporter(format, coordFormat).export(reader, out, NAME));
+		reader.close();
+		return out.toString();
+	}
+
+	private static Document parse(String xml) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		return factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+	}
+
+	/**
+	 * Splits a line of CSV output into fields, removing quotes.
+	 */
+	private static List<String> splitCsv(String line) {
+		List<String> res = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if ((c == '"') && (i + 1 < line.length()) && (line.charAt(i + 1) == '"')) {
+					field.append(c);
+					i++;
+				} else if (c == '"')
+					quoted = false;
+				else
+					field.append(c);
+			} else if (c == '"')
+				quoted = true;
+			else if (c == ',') {
+				res.add(field.toString());
+				field.setLength(0);
+			} else
+				field.append(c);
+		}
+		res.add(field.toString());
+		return res;
+	}
+
+	private static double parseOptional(String field) {
+		return field.isEmpty() ? Double.NaN : Double.parseDouble(field);
+	}
+
+	private static int parseCount(String field) {
+		return field.isEmpty() ? -1 : Integer.parseInt(field);
+	}
+
+	@Test
+	public void csvRoundTrip() throws IOException {
+		byte[] track = buildTrack();
+		List<TrackPoint> expected = read(track);
+		String csv = export(track, TrackExporter.FORMAT_CSV, CoordinateFormatter.FORMAT_DECIMAL);
+		assertTrue(csv.length() > 8192);
+		String[] lines = csv.split("\n");
+		assertEquals(POINTS + 1, lines.length);
+		assertEquals("time,latitude,longitude,altitude,accuracy,speed,bearing,"
+				+ "sats_used,sats_in_view", lines[0]);
+		for (int i = 0; i < POINTS; i++) {
+			String message = "Line " + (i + 2);
+			TrackPoint p = expected.get(i);
+			List<String> fields = splitCsv(lines[i + 1]);
+			assertEquals(message, 9, fields.size());
+			assertEquals(message, p.time, Instant.parse(fields.get(0)).toEpochMilli());
+			assertEquals(message, p.latitude, Double.parseDouble(fields.get(1)), 0.5e-7);
+			assertEquals(message, p.longitude, Double.parseDouble(fields.get(2)), 0.5e-7);
+			assertEquals(message, p.altitude, parseOptional(fields.get(3)), 0.05);
+			assertEquals(message, p.accuracy, parseOptional(fields.get(4)), 0.05);
+			assertEquals(message, p.speed, parseOptional(fields.get(5)), 0.005);
+			assertEquals(message, p.bearing, parseOptional(fields.get(6)), 0.05);
+			assertEquals(message, p.satsUsed, parseCount(fields.get(7)));
+			assertEquals(message, p.satsInView, parseCount(fields.get(8)));
+		}
+	}
+
+	@Test
+	public void csvGridFormats() throws IOException {
+		byte[] track = buildTrack();
+		int[] formats = {CoordinateFormatter.FORMAT_MIN, CoordinateFormatter.FORMAT_SEC,
+				CoordinateFormatter.FORMAT_MGRS, CoordinateFormatter.FORMAT_UTM};
+		int[] columns = {9, 9, 8, 8};
+		for (int i = 0; i < formats.length; i++) {
+			String[] lines = export(track, TrackExporter.FORMAT_CSV, formats[i]).split("\n");
+			assertEquals(POINTS + 1, lines.length);
+			for (String line : lines)
+				assertEquals("Format " + formats[i] + ": " + line, columns[i],
+						splitCsv(line).size());
+		}
+	}
+
+	@Test
+	public void gpxIsWellFormed() throws Exception {
+		byte[] track = buildTrack();
+		List<TrackPoint> expected = read(track);
+		String gpx = export(track, TrackExporter.FORMAT_GPX, CoordinateFormatter.FORMAT_DECIMAL);
+		assertTrue(gpx.length() > 8192);
+		Document doc = parse(gpx);
+		assertEquals("gpx", doc.getDocumentElement().getLocalName());
+		assertEquals(NAME, doc.getElementsByTagNameNS(GPX_NS, "name").item(0).getTextContent());
+		NodeList points = doc.getElementsByTagNameNS(GPX_NS, "trkpt");
+		assertEquals(POINTS, points.getLength());
+		for (int i = 0; i < POINTS; i++) {
+			TrackPoint p = expected.get(i);
+			Element element = (Element) points.item(i);
+			assertEquals(p.latitude, Double.parseDouble(element.getAttribute("lat")), 0.5e-7);
+			assertEquals(p.longitude, Double.parseDouble(element.getAttribute("lon")), 0.5e-7);
+			assertEquals(p.hasAltitude() ? 1 : 0,
+					element.getElementsByTagNameNS(GPX_NS, "ele").getLength());
+			assertEquals(p.time, Instant.parse(element.getElementsByTagNameNS(GPX_NS, "time")
+					.item(0).getTextContent()).toEpochMilli());
+		}
+	}
+
+	@Test
+	public void kmlIsWellFormed() throws Exception {
+		byte[] track = buildTrack();
+		List<TrackPoint> expected = read(track);
+		String kml = export(track, TrackExporter.FORMAT_KML, CoordinateFormatter.FORMAT_DECIMAL);
+		assertTrue(kml.length() > 8192);
+		Document doc = parse(kml);
+		assertEquals("kml", doc.getDocumentElement().getLocalName());
+		assertEquals(NAME, doc.getElementsByTagNameNS(KML_NS, "name").item(0).getTextContent());
+		String[] coords = doc.getElementsByTagNameNS(KML_NS, "coordinates").item(0)
+				.getTextContent().trim().split("\\s+");
+		assertEquals(POINTS, coords.length);
+		for (int i = 0; i < POINTS; i++) {
+			TrackPoint p = expected.get(i);
+			String[] values = coords[i].split(",");
+			assertEquals(p.hasAltitude() ? 3 : 2, values.length);
+			assertEquals(p.longitude, Double.parseDouble(values[0]), 0.5e-7);
+			assertEquals(p.latitude, Double.parseDouble(values[1]), 0.5e-7);
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Writes tracks with {@link TrackWriter} and reads them back with {@link TrackReader}.
+ */
+public class TrackRoundTripTest {
+	/** Size of the file header */
+	private static final int HEADER_SIZE = TrackWriter.MAGIC.length + 1;
+
+	/** Start of the test track, 2016-01-01 00:00:00 UTC */
+	private static final long T0 = 1451606400000L;
+
+	/**
+	 * Creates a point with all optional fields set.
+	 */
+	private static TrackPoint point(long time, double lat, double lon, double alt, float acc) {
+		TrackPoint res = new TrackPoint();
+		res.time = time;
+		res.latitude = lat;
+		res.longitude = lon;
+		res.altitude = alt;
+		res.accuracy = acc;
+		res.speed = 1.25f;
+		res.bearing = 271.3f;
+		res.satsUsed = 7;
+		res.satsInView = 12;
+		return res;
+	}
+
+	/**
+	 * Builds a track which exercises small, negative and large deltas as well as missing fields.
+	 */
+	private static List<TrackPoint> buildTrack() {
+		List<TrackPoint> res = new ArrayList<TrackPoint>();
+		// first point, deltas are relative to zero
+		res.add(point(T0, -33.8567844, -151.2152967, -12.3, 4.8f));
+		// small steps
+		res.add(point(T0 + 1000, -33.8567901, -151.2152801, -12.1, 4.9f));
+		res.add(point(T0 + 2000, -33.8567950, -151.2152650, -11.8, 5.0f));
+		// time going backwards, coordinates jumping across both hemispheres and the antimeridian
+		res.add(point(T0 - 86400000L, 89.9999999, 179.9999999, 8848.9, 0.1f));
+		res.add(point(T0, -90, -180, -430.5, 1500f));
+		// large gap in time
+		res.add(point(4102444800000L, 0, 0, 0, 0));
+		res.add(point(0, 47.1234567, 8.7654321, 409.4, 3.2f));
+
+		// missing altitude, the next point must still use the last altitude as its reference
+		TrackPoint p = point(1000, 47.1234570, 8.7654330, Double.NaN, 3.1f);
+		res.add(p);
+		res.add(point(2000, 47.1234580, 8.7654340, 410.0, 3.0f));
+
+		// missing accuracy
+		p = point(3000, 47.1234590, 8.7654350, 410.2, Float.NaN);
+		res.add(p);
+
+		// no optional fields at all
+		p = new TrackPoint();
+		p.time = 4000;
+		p.latitude = 47.1234600;
+		p.longitude = 8.7654360;
+		res.add(p);
+
+		res.add(point(5000, 47.1234610, 8.7654370, 410.5, 2.9f));
+		return res;
+	}
+
+	private static byte[] write(List<TrackPoint> track, int bufferSize, long maxBufferAge)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TrackWriter writer = new TrackWriter(out, bufferSize, maxBufferAge);
+		for (TrackPoint point : track)
+			writer.write(point);
+		writer.close();
+		return out.toByteArray();
+	}
+
+	private static List<TrackPoint> read(byte[] data) throws IOException {
+		List<TrackPoint> res = new ArrayList<TrackPoint>();
+		TrackReader reader = new TrackReader(new ByteArrayInputStream(data));
+		TrackPoint point = new TrackPoint();
+		while (reader.read(point)) {
+			TrackPoint copy = new TrackPoint();
+			copy.set(point);
+			res.add(copy);
+		}
+		reader.close();
+		return res;
+	}
+
+	private static void assertPointEquals(String message, TrackPoint expected, TrackPoint actual) {
+		assertEquals(message, expected.time, actual.time);
+		assertEquals(message, expected.latitude, actual.latitude, 0.5e-7);
+		assertEquals(message, expected.longitude, actual.longitude, 0.5e-7);
+		assertEquals(message, expected.hasAltitude(), actual.hasAltitude());
+		if (expected.hasAltitude())
+			assertEquals(message, expected.altitude, actual.altitude, 0.05);
+		assertEquals(message, expected.hasAccuracy(), actual.hasAccuracy());
+		if (expected.hasAccuracy())
+			assertEquals(message, expected.accuracy, actual.accuracy, 0.05f);
+		assertEquals(message, expected.hasSpeed(), actual.hasSpeed());
+		if (expected.hasSpeed())
+			assertEquals(message, expected.speed, actual.speed, 0.005f);
+		assertEquals(message, expected.hasBearing(), actual.hasBearing());
+		if (expected.hasBearing())
+			assertEquals(message, expected.bearing, actual.bearing, 0.05f);
+		assertEquals(message, expected.satsUsed, actual.satsUsed);
+		assertEquals(message, expected.satsInView, actual.satsInView);
+	}
+
+	private static void assertTrackEquals(List<TrackPoint> expected, List<TrackPoint> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+			assertPointEquals("Point " + i, expected.get(i), actual.get(i));
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		List<TrackPoint> track = buildTrack();
+		assertTrackEquals(track, read(write(track, TrackWriter.DEFAULT_BUFFER_SIZE,
+				TrackWriter.DEFAULT_MAX_BUFFER_AGE)));
+	}
+
+	@Test
+	public void roundTripWithSmallBuffer() throws IOException {
+		// forces a write to the stream for almost every record
+		List<TrackPoint> track = buildTrack();
+		assertTrackEquals(track, read(write(track, TrackWriter.MAX_RECORD_SIZE, 0)));
+	}
+
+	@Test
+	public void firstPoint() throws IOException {
+		List<TrackPoint> track = buildTrack().subList(0, 1);
+		byte[] data = write(track, TrackWriter.DEFAULT_BUFFER_SIZE, TrackWriter.DEFAULT_MAX_BUFFER_AGE);
+		assertTrackEquals(track, read(data));
+	}
+
+	@Test
+	public void emptyTrack() throws IOException {
+		List<TrackPoint> track = new ArrayList<TrackPoint>();
+		byte[] data = write(track, TrackWriter.DEFAULT_BUFFER_SIZE, TrackWriter.DEFAULT_MAX_BUFFER_AGE);
+		assertEquals(HEADER_SIZE, data.length);
+		assertTrue(read(data).isEmpty());
+	}
+
+	@Test
+	public void truncatedTrailingRecordIsSkipped() throws IOException {
+		List<TrackPoint> track = buildTrack();
+		byte[] data = write(track, TrackWriter.DEFAULT_BUFFER_SIZE, TrackWriter.DEFAULT_MAX_BUFFER_AGE);
+
+		// offsets at which each record ends
+		int[] ends = new int[track.size()];
+		for (int i = 0; i < track.size(); i++)
+			ends[i] = write(track.subList(0, i + 1), TrackWriter.DEFAULT_BUFFER_SIZE,
+					TrackWriter.DEFAULT_MAX_BUFFER_AGE).length;
+		assertEquals(data.length, ends[ends.length - 1]);
+
+		// cut the file at every possible position after the header
+		int complete = 0;
+		for (int length = HEADER_SIZE; length <= data.length; length++) {
+			while ((complete < ends.length) && (ends[complete] <= length))
+				complete++;
+			List<TrackPoint> actual = read(Arrays.copyOf(data, length));
+			assertEquals("Length " + length, complete, actual.size());
+			assertTrackEquals(track.subList(0, complete), actual);
+		}
+	}
+
+	@Test
+	public void readAfterEndOfTrack() throws IOException {
+		List<TrackPoint> track = buildTrack();
+		byte[] data = write(track, TrackWriter.DEFAULT_BUFFER_SIZE, TrackWriter.DEFAULT_MAX_BUFFER_AGE);
+		TrackReader reader = new TrackReader(new ByteArrayInputStream(
+				Arrays.copyOf(data, data.length - 1)));
+		TrackPoint point = new TrackPoint();
+		for (int i = 0; i < track.size() - 1; i++)
+			assertTrue(reader.read(point));
+		assertFalse(reader.read(point));
+		assertFalse(reader.read(point));
+		reader.close();
+	}
+
+	@Test(expected = IOException.class)
+	public void truncatedHeaderIsRejected() throws IOException {
+		byte[] data = write(buildTrack(), TrackWriter.DEFAULT_BUFFER_SIZE,
+				TrackWriter.DEFAULT_MAX_BUFFER_AGE);
+		new TrackReader(new ByteArrayInputStream(Arrays.copyOf(data, HEADER_SIZE - 1)));
+	}
+}
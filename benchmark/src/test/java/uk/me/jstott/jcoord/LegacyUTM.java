@@ -0,0 +1,197 @@
+package uk.me.jstott.jcoord;
+
+import uk.me.jstott.jcoord.ellipsoid.WGS84Ellipsoid;
+
+/**
+ * The UTM and MGRS conversion as implemented by {@code LatLng.toUTMRef()} and
+ * {@code MGRSRef(UTMRef, boolean)} before {@link UTMConverter} replaced
+ * them, kept as a reference to check the converter against.
+ *
+ * The code is copied unchanged apart from returning primitives instead of
+ * jcoord objects.
+ */
+final class LegacyUTM {
+  /** Longitude zone number */
+  int lngZone;
+
+  /** Latitude zone letter */
+  char latZone;
+
+  /** Easting in metres */
+  double easting;
+
+  /** Northing in metres */
+  double northing;
+
+  private static final char[] NORTHING_IDS = { 'A', 'B', 'C', 'D', 'E', 'F',
+      'G', 'H', 'J', 'K', 'L', 'M', 'N', 'P', 'Q', 'R', 'S', 'T', 'U', 'V' };
+
+  /**
+   * Converts a WGS84 position.
+   *
+   * @throws NotDefinedOnUTMGridException if the position is outside the UTM
+   *           grid
+   */
+  LegacyUTM(double latitude, double longitude) {
+    if (latitude < -80 || latitude > 84) {
+      throw new NotDefinedOnUTMGridException("Latitude (" + latitude
+          + ") falls outside the UTM grid.");
+    }
+
+    if (longitude == 180.0) {
+      longitude = -180.0;
+    }
+
+    double UTM_F0 = 0.9996;
+    double a = WGS84Ellipsoid.getInstance().getSemiMajorAxis();
+    double eSquared = WGS84Ellipsoid.getInstance().getEccentricitySquared();
+
+    double latitudeRad = latitude * (Math.PI / 180.0);
+    double longitudeRad = longitude * (Math.PI / 180.0);
+    int longitudeZone = (int) Math.floor((longitude + 180.0) / 6.0) + 1;
+
+    // Special zone for Norway
+    if (latitude >= 56.0 && latitude < 64.0 && longitude >= 3.0
+        && longitude < 12.0) {
+      longitudeZone = 32;
+    }
+
+    // Special zones for Svalbard
+    if (latitude >= 72.0 && latitude < 84.0) {
+      if (longitude >= 0.0 && longitude < 9.0) {
+        longitudeZone = 31;
+      } else if (longitude >= 9.0 && longitude < 21.0) {
+        longitudeZone = 33;
+      } else if (longitude >= 21.0 && longitude < 33.0) {
+        longitudeZone = 35;
+      } else if (longitude >= 33.0 && longitude < 42.0) {
+        longitudeZone = 37;
+      }
+    }
+
+    double longitudeOrigin = (longitudeZone - 1) * 6 - 180 + 3;
+    double longitudeOriginRad = longitudeOrigin * (Math.PI / 180.0);
+
+    double ePrimeSquared = (eSquared) / (1 - eSquared);
+
+    double n = a
+        / Math.sqrt(1 - eSquared * Math.sin(latitudeRad)
+            * Math.sin(latitudeRad));
+    double t = Math.tan(latitudeRad) * Math.tan(latitudeRad);
+    double c = ePrimeSquared * Math.cos(latitudeRad) * Math.cos(latitudeRad);
+    double A = Math.cos(latitudeRad) * (longitudeRad - longitudeOriginRad);
+
+    double M = a
+        * ((1 - eSquared / 4 - 3 * eSquared * eSquared / 64 - 5 * eSquared
+            * eSquared * eSquared / 256)
+            * latitudeRad
+            - (3 * eSquared / 8 + 3 * eSquared * eSquared / 32 + 45 * eSquared
+                * eSquared * eSquared / 1024)
+            * Math.sin(2 * latitudeRad)
+            + (15 * eSquared * eSquared / 256 + 45 * eSquared * eSquared
+                * eSquared / 1024) * Math.sin(4 * latitudeRad) - (35 * eSquared
+            * eSquared * eSquared / 3072)
+            * Math.sin(6 * latitudeRad));
+
+    double UTMEasting = (UTM_F0
+        * n
+        * (A + (1 - t + c) * Math.pow(A, 3.0) / 6 + (5 - 18 * t + t * t + 72
+            * c - 58 * ePrimeSquared)
+            * Math.pow(A, 5.0) / 120) + 500000.0);
+
+    double UTMNorthing = (UTM_F0 * (M + n
+        * Math.tan(latitudeRad)
+        * (A * A / 2 + (5 - t + (9 * c) + (4 * c * c)) * Math.pow(A, 4.0) / 24
+            + (61 - (58 * t) + (t * t) + (600 * c) - (330 * ePrimeSquared))
+            * Math.pow(A, 6.0) / 720)));
+
+    // Adjust for the southern hemisphere
+    if (latitude < 0) {
+      UTMNorthing += 10000000.0;
+    }
+
+    this.lngZone = longitudeZone;
+    this.latZone = getLatZoneLetter(latitude);
+    this.easting = UTMEasting;
+    this.northing = UTMNorthing;
+  }
+
+  /**
+   * Returns the MGRS reference with 1 m precision, formatted as by
+   * {@code MGRSRef.toString()}.
+   */
+  String toMGRSString() {
+    int set = ((lngZone - 1) % 6) + 1;
+    int eID = (int) Math.floor(easting / 100000.0) + (8 * ((set - 1) % 3));
+    int nID = (int) Math.floor((northing % 2000000) / 100000.0);
+
+    if (eID > 8)
+      eID++; // Offset for no I character
+    if (eID > 14)
+      eID++; // Offset for no O character
+
+    char eIDc = (char) (eID + 64);
+
+    // Northing ID offset for sets 2, 4 and 6
+    if (set % 2 == 0) {
+      nID += 5;
+    }
+
+    if (nID > 19) {
+      nID -= 20;
+    }
+
+    char nIDc = NORTHING_IDS[nID];
+
+    int mgrsEasting = (int) Math.round(easting) % 100000;
+    int mgrsNorthing = (int) Math.round(northing) % 100000;
+
+    return String.format("%02d%c%c%c%05d%05d", lngZone, latZone, eIDc, nIDc,
+        mgrsEasting, mgrsNorthing);
+  }
+
+  private static char getLatZoneLetter(double latitude) {
+    if ((84 >= latitude) && (latitude >= 72))
+      return 'X';
+    else if ((72 > latitude) && (latitude >= 64))
+      return 'W';
+    else if ((64 > latitude) && (latitude >= 56))
+      return 'V';
+    else if ((56 > latitude) && (latitude >= 48))
+      return 'U';
+    else if ((48 > latitude) && (latitude >= 40))
+      return 'T';
+    else if ((40 > latitude) && (latitude >= 32))
+      return 'S';
+    else if ((32 > latitude) && (latitude >= 24))
+      return 'R';
+    else if ((24 > latitude) && (latitude >= 16))
+      return 'Q';
+    else if ((16 > latitude) && (latitude >= 8))
+      return 'P';
+    else if ((8 > latitude) && (latitude >= 0))
+      return 'N';
+    else if ((0 > latitude) && (latitude >= -8))
+      return 'M';
+    else if ((-8 > latitude) && (latitude >= -16))
+      return 'L';
+    else if ((-16 > latitude) && (latitude >= -24))
+      return 'K';
+    else if ((-24 > latitude) && (latitude >= -32))
+      return 'J';
+    else if ((-32 > latitude) && (latitude >= -40))
+      return 'H';
+    else if ((-40 > latitude) && (latitude >= -48))
+      return 'G';
+    else if ((-48 > latitude) && (latitude >= -56))
+      return 'F';
+    else if ((-56 > latitude) && (latitude >= -64))
+      return 'E';
+    else if ((-64 > latitude) && (latitude >= -72))
+      return 'D';
+    else if ((-72 > latitude) && (latitude >= -80))
+      return 'C';
+    else
+      return 'Z';
+  }
+}
@@ -0,0 +1,209 @@
+package uk.me.jstott.jcoord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks {@link UTMConverter}, and {@link LatLng#toUTMRef()} and
+ * {@link LatLng#toMGRSRef()} which use it, against the projection they
+ * replaced ({@link LegacyUTM}).
+ */
+public class UTMConverterTest {
+  /** Maximum difference in easting and northing, in metres */
+  private static final double TOLERANCE = 1e-6;
+
+  /** A small step across a zone boundary, in degrees (about 0.1 mm) */
+  private static final double STEP = 1e-9;
+
+  private static final long SEED = 0x5a75a7L;
+
+  /** Number of random points on the grid */
+  private static final int RANDOM_POINTS = 20000;
+
+  /** Latitudes and longitudes of the test points, in degrees */
+  private static final double[][] POINTS = buildCorpus();
+
+  /**
+   * Builds the test points: zone and band boundaries, the Norway and
+   * Svalbard exceptions, the equator and the antimeridian, and random points
+   * from both hemispheres.
+   */
+  private static double[][] buildCorpus() {
+    List<double[]> points = new ArrayList<double[]>();
+
+    // longitude zone boundaries
+    double[] lats = {-80, -79.5, -45, -STEP, 0, STEP, 45, 55.9, 83.5, 84};
+    for (double lat : lats)
+      for (int lon = -180; lon <= 180; lon += 6) {
+        addPoint(points, lat, lon - STEP);
+        addPoint(points, lat, lon);
+        addPoint(points, lat, lon + STEP);
+      }
+
+    // latitude band boundaries
+    double[] lons = {-177, -91.5, -3, 0, 3, 9, 100.25, 177};
+    for (int lat = -80; lat <= 84; lat += 8)
+      for (double lon : lons) {
+        addPoint(points, lat - STEP, lon);
+        addPoint(points, lat, lon);
+        addPoint(points, lat + STEP, lon);
+      }
+
+    // zone 32V around south-western Norway
+    for (double lat : new double[] {56 - STEP, 56, 60, 64 - STEP, 64})
+      for (double lon : new double[] {3 - STEP, 3, 6, 7.5, 9, 12 - STEP, 12})
+        addPoint(points, lat, lon);
+
+    // zones 31X to 37X around Svalbard
+    for (double lat : new double[] {72 - STEP, 72, 78, 84 - STEP, 84})
+      for (int lon = 0; lon <= 42; lon += 3) {
+        addPoint(points, lat, lon - STEP);
+        addPoint(points, lat, lon);
+        addPoint(points, lat, lon + STEP);
+      }
+
+    // random points from both hemispheres
+    Random random = new Random(SEED);
+    for (int i = 0; i < RANDOM_POINTS; i++)
+      addPoint(points, -80 + 164 * random.nextDouble(),
+          -180 + 360 * random.nextDouble());
+
+    return points.toArray(new double[points.size()][]);
+  }
+
+  /**
+   * Adds a point if it is on the UTM grid and a valid longitude.
+   */
+  private static void addPoint(List<double[]> points, double lat, double lon) {
+    if ((lat < -80) || (lat > 84) || (lon < -180) || (lon > 180))
+      return;
+    points.add(new double[] {lat, lon});
+  }
+
+  private static String describe(double lat, double lon) {
+    return "(" + lat + ", " + lon + ")";
+  }
+
+  @Test
+  public void corpusCoversBothHemispheresAndExceptions() {
+    boolean north = false, south = false, norway = false, svalbard = false;
+    for (double[] point : POINTS) {
+      LegacyUTM expected = new LegacyUTM(point[0], point[1]);
+      north |= point[0] > 0;
+      south |= point[0] < 0;
+      norway |= (expected.lngZone == 32) && (expected.latZone == 'V')
+          && (point[1] < 6);
+      svalbard |= (expected.latZone == 'X') && (expected.lngZone == 37);
+    }
+    assertTrue(north && south && norway && svalbard);
+  }
+
+  @Test
+  public void toUTMMatchesLegacy() {
+    UTMConverter.Result res = new UTMConverter.Result();
+    for (double[] point : POINTS) {
+      String where = describe(point[0], point[1]);
+      LegacyUTM expected = new LegacyUTM(point[0], point[1]);
+      assertTrue(where, UTMConverter.toUTM(point[0], point[1], res));
+      assertEquals(where, expected.lngZone, res.lngZone);
+      assertEquals(where, expected.latZone, res.latZone);
+      assertEquals(where, expected.easting, res.easting, TOLERANCE);
+      assertEquals(where, expected.northing, res.northing, TOLERANCE);
+    }
+  }
+
+  @Test
+  public void batchToUTMMatchesLegacy() {
+    int n = POINTS.length;
+    double[] lats = new double[n];
+    double[] lons = new double[n];
+    for (int i = 0; i < n; i++) {
+      lats[i] = POINTS[i][0];
+      lons[i] = POINTS[i][1];
+    }
+    int[] lngZones = new int[n];
+    char[] latZones = new char[n];
+    double[] eastings = new double[n];
+    double[] northings = new double[n];
+    assertEquals(n, UTMConverter.toUTM(lats, lons, 0, n, lngZones, latZones,
+        eastings, northings));
+    for (int i = 0; i < n; i++) {
+      String where = describe(lats[i], lons[i]);
+      LegacyUTM expected = new LegacyUTM(lats[i], lons[i]);
+      assertEquals(where, expected.lngZone, lngZones[i]);
+      assertEquals(where, expected.latZone, latZones[i]);
+      assertEquals(where, expected.easting, eastings[i], TOLERANCE);
+      assertEquals(where, expected.northing, northings[i], TOLERANCE);
+    }
+  }
+
+  @Test
+  public void toUTMRefMatchesLegacy() {
+    for (double[] point : POINTS) {
+      String where = describe(point[0], point[1]);
+      LegacyUTM expected = new LegacyUTM(point[0], point[1]);
+      UTMRef utm = new LatLng(point[0], point[1]).toUTMRef();
+      assertEquals(where, expected.lngZone, utm.getLngZone());
+      assertEquals(where, expected.latZone, utm.getLatZone());
+      assertEquals(where, expected.easting, utm.getEasting(), TOLERANCE);
+      assertEquals(where, expected.northing, utm.getNorthing(), TOLERANCE);
+    }
+  }
+
+  @Test
+  public void toMGRSRefMatchesLegacy() {
+    for (double[] point : POINTS) {
+      LegacyUTM expected = new LegacyUTM(point[0], point[1]);
+      String actual = new LatLng(point[0], point[1]).toMGRSRef().toString();
+      if (isNearRoundingBoundary(expected.easting)
+          || isNearRoundingBoundary(expected.northing))
+        // within tolerance, but the metres may round the other way
+        assertEquals(describe(point[0], point[1]),
+            expected.toMGRSString().substring(0, 5), actual.substring(0, 5));
+      else
+        assertEquals(describe(point[0], point[1]), expected.toMGRSString(),
+            actual);
+    }
+  }
+
+  @Test
+  public void offGridPositionsAreRejected() {
+    UTMConverter.Result res = new UTMConverter.Result();
+    for (double lat : new double[] {-90, -80 - STEP, 84 + STEP, 90}) {
+      assertFalse(UTMConverter.toUTM(lat, 10, res));
+      assertFalse(UTMConverter.toMGRS(lat, 10, res));
+      try {
+        new LatLng(lat, 10).toUTMRef();
+        fail("No exception for latitude " + lat);
+      } catch (NotDefinedOnUTMGridException e) {
+        // expected
+      }
+      try {
+        new LatLng(lat, 10).toMGRSRef();
+        fail("No exception for latitude " + lat);
+      } catch (NotDefinedOnUTMGridException e) {
+        // expected
+      }
+    }
+  }
+
+  /**
+   * Whether a value is so close to a half metre that rounding it to full
+   * metres may go either way within {@link #TOLERANCE}, or so close to a
+   * 100 km boundary that the square may differ.
+   */
+  private static boolean isNearRoundingBoundary(double metres) {
+    double fraction = metres - Math.floor(metres);
+    double square = metres % 100000;
+    return (Math.abs(fraction - 0.5) < TOLERANCE) || (square < TOLERANCE)
+        || (100000 - square < TOLERANCE);
+  }
+}
@@ -0,0 +1,140 @@
+package uk.me.jstott.jcoord.datum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import uk.me.jstott.jcoord.LatLng;
+
+/**
+ * Checks {@link DatumTransformer} against {@link LatLng#toOSGB36()} and
+ * against itself by transforming points to OSGB36 and back.
+ */
+public class DatumTransformerTest {
+  /** Metres per degree of latitude, close enough for tolerances */
+  private static final double METRES_PER_DEGREE = 111000;
+
+  /**
+   * Maximum distance from {@link LatLng#toOSGB36()} across Great Britain, in
+   * metres. {@code LatLng} applies the rotations with some signs and axes
+   * swapped, which moves points by up to about 1.5 m.
+   */
+  private static final double OSGB36_TOLERANCE = 2;
+
+  /**
+   * Maximum distance from {@link LatLng#toOSGB36()} at Greenwich, in metres,
+   * where the rotations have almost no effect.
+   */
+  private static final double GREENWICH_TOLERANCE = 0.01;
+
+  /** Maximum round trip error with heights, in degrees (about 0.1 mm) */
+  private static final double ROUND_TRIP_TOLERANCE = 1e-9;
+
+  /** Maximum round trip error in heights, in metres */
+  private static final double HEIGHT_TOLERANCE = 1e-4;
+
+  /**
+   * Maximum round trip error without heights, in degrees (about 1 cm).
+   * Dropping the height on the way moves the point up by some 50 m before
+   * the second transformation.
+   */
+  private static final double FLAT_ROUND_TRIP_TOLERANCE = 1e-7;
+
+  private final DatumTransformer toOSGB36 = DatumTransformer.getInstance(
+      WGS84Datum.getInstance(), OSGB36Datum.getInstance());
+
+  private final DatumTransformer toWGS84 = DatumTransformer.getInstance(
+      OSGB36Datum.getInstance(), WGS84Datum.getInstance());
+
+  /**
+   * Returns the distance in metres between two points close to each other.
+   */
+  private static double distance(double lat1, double lon1, double lat2,
+      double lon2) {
+    double dLat = lat2 - lat1;
+    double dLon = (lon2 - lon1) * Math.cos(Math.toRadians(lat1));
+    return Math.sqrt(dLat * dLat + dLon * dLon) * METRES_PER_DEGREE;
+  }
+
+  /**
+   * Transforms a single point without height and checks the result against
+   * {@link LatLng#toOSGB36()}.
+   */
+  private void checkAgainstLatLng(double lat, double lon, double tolerance) {
+    double[] lats = { lat };
+    double[] lons = { lon };
+    toOSGB36.transform(lats, lons, null, 0, 1);
+    LatLng expected = new LatLng(lat, lon);
+    expected.toOSGB36();
+    assertEquals("(" + lat + ", " + lon + ")", 0, distance(
+        expected.getLatitude(), expected.getLongitude(), lats[0], lons[0]),
+        tolerance);
+  }
+
+  @Test
+  public void instancesAreCached() {
+    assertSame(toOSGB36, DatumTransformer.getInstance(
+        WGS84Datum.getInstance(), OSGB36Datum.getInstance()));
+  }
+
+  @Test
+  public void matchesLatLngAtGreenwich() {
+    checkAgainstLatLng(51.4778, 0, GREENWICH_TOLERANCE);
+  }
+
+  @Test
+  public void matchesLatLngAcrossGreatBritain() {
+    for (double lat = 49.5; lat <= 61; lat += 0.5)
+      for (double lon = -8; lon <= 2; lon += 0.5)
+        checkAgainstLatLng(lat, lon, OSGB36_TOLERANCE);
+  }
+
+  @Test
+  public void roundTripWithHeights() {
+    int n = 0;
+    double[] lats = new double[24 * 21];
+    double[] lons = new double[lats.length];
+    double[] heights = new double[lats.length];
+    for (double lat = 49.5; lat <= 61; lat += 0.5)
+      for (double lon = -8; lon <= 2; lon += 0.5) {
+        lats[n] = lat;
+        lons[n] = lon;
+        heights[n] = 100;
+        n++;
+      }
+    double[] lats2 = lats.clone();
+    double[] lons2 = lons.clone();
+    toOSGB36.transform(lats2, lons2, heights, 0, n);
+    toWGS84.transform(lats2, lons2, heights, 0, n);
+    for (int i = 0; i < n; i++) {
+      assertEquals(lats[i], lats2[i], ROUND_TRIP_TOLERANCE);
+      assertEquals(lons[i], lons2[i], ROUND_TRIP_TOLERANCE);
+      assertEquals(100, heights[i], HEIGHT_TOLERANCE);
+    }
+  }
+
+  @Test
+  public void roundTripWithoutHeights() {
+    for (double lat = 49.5; lat <= 61; lat += 0.5)
+      for (double lon = -8; lon <= 2; lon += 0.5) {
+        double[] lats = { lat };
+        double[] lons = { lon };
+        toOSGB36.transform(lats, lons, null, 0, 1);
+        toWGS84.transform(lats, lons, null, 0, 1);
+        assertEquals(lat, lats[0], FLAT_ROUND_TRIP_TOLERANCE);
+        assertEquals(lon, lons[0], FLAT_ROUND_TRIP_TOLERANCE);
+      }
+  }
+
+  @Test
+  public void transformsOnlyTheGivenRange() {
+    double[] lats = { 50, 51, 52, 53 };
+    double[] lons = { -1, -1, -1, -1 };
+    toOSGB36.transform(lats, lons, null, 1, 2);
+    assertEquals(50, lats[0], 0);
+    assertEquals(53, lats[3], 0);
+    assertEquals(-1, lons[0], 0);
+    assertEquals(-1, lons[3], 0);
+  }
+}
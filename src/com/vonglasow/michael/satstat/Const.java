@@ -21,6 +21,8 @@ package com.vonglasow.michael.satstat;
 
 import java.io.File;
 
+import com.vonglasow.michael.satstat.utils.CoordinateFormatter;
+
 import android.net.ConnectivityManager;
 import android.os.Environment;
 
@@ -118,15 +120,23 @@ public class Const {
 	public static final String KEY_PREF_MAP_DOWNLOAD = "pref_map_download";
 	public static final String KEY_PREF_MAP_PURGE = "pref_map_purge";
 	public static final String KEY_PREF_COORD = "pref_coord";
-	public static final int KEY_PREF_COORD_DECIMAL = 0;
-	public static final int KEY_PREF_COORD_MIN = 1;
-	public static final int KEY_PREF_COORD_SEC = 2;
-	public static final int KEY_PREF_COORD_MGRS = 3;
-	public static final int KEY_PREF_COORD_UTM = 4;
+	public static final int KEY_PREF_COORD_DECIMAL = CoordinateFormatter.FORMAT_DECIMAL;
+	public static final int KEY_PREF_COORD_MIN = CoordinateFormatter.FORMAT_MIN;
+	public static final int KEY_PREF_COORD_SEC = CoordinateFormatter.FORMAT_SEC;
+	public static final int KEY_PREF_COORD_MGRS = CoordinateFormatter.FORMAT_MGRS;
+	public static final int KEY_PREF_COORD_UTM = CoordinateFormatter.FORMAT_UTM;
 	public static final String KEY_PREF_UTC = "pref_utc";
+	public static final String KEY_PREF_SKY_TRAILS = "pref_sky_trails";
+	public static final String KEY_PREF_BACKGROUND_SENSORS = "pref_background_sensors";
 	public static final String KEY_PREF_CID = "pref_cid";
 	public static final String KEY_PREF_CID2 = "pref_cid2";
 	public static final String KEY_PREF_WIFI_SORT = "pref_wifi_sort";
+	public static final String KEY_PREF_TRACK_RECORD = "pref_track_record";
+	public static final String KEY_PREF_TRACK_EXPORT = "pref_track_export";
+	public static final String KEY_PREF_NMEA_LOG = "pref_nmea_log";
+	public static final String KEY_PREF_SENSOR_LOG = "pref_sensor_log";
+	public static final String KEY_PREF_SURVEY_LOG = "pref_survey_log";
+	public static final String KEY_PREF_FRAME_TIMES = "pref_frame_times";
 
 
 	/**
@@ -166,6 +176,52 @@ public class Const {
 	public static final String CONTENT_TYPE_HTML = "text/html";
 
 
+	/**
+	 * Name of the folder in which recorded tracks are stored
+	 */
+	public static final String TRACK_DIR = "tracks";
+
+	/**
+	 * File name extension for recorded tracks
+	 */
+	public static final String TRACK_EXTENSION = ".sstrk";
+
+	/**
+	 * Name of the folder, below {@link #TRACK_DIR}, to which tracks are exported
+	 */
+	public static final String TRACK_EXPORT_DIR = "export";
+
+	/**
+	 * Name of the folder in which NMEA logs are stored
+	 */
+	public static final String NMEA_DIR = "nmea";
+
+	/**
+	 * File name extension for NMEA logs
+	 */
+	public static final String NMEA_EXTENSION = ".nmea";
+
+	/**
+	 * Name of the folder in which sensor logs are stored
+	 */
+	public static final String SENSOR_DIR = "sensors";
+
+	/**
+	 * File name extension for sensor logs
+	 */
+	public static final String SENSOR_EXTENSION = ".sssns";
+
+	/**
+	 * Name of the folder in which cell and WiFi survey logs are stored
+	 */
+	public static final String SURVEY_DIR = "survey";
+
+	/**
+	 * File name extension for cell and WiFi survey logs
+	 */
+	public static final String SURVEY_EXTENSION = ".sssvy";
+
+
 	public static final String MAP_PATH_DEFAULT = new File(Environment.getExternalStorageDirectory(), "org.mapsforge/maps").getAbsolutePath();
 
 
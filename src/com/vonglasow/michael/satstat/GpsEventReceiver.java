@@ -81,7 +81,10 @@ public class GpsEventReceiver extends BroadcastReceiver {
 			// an application has connected to GPS or disconnected from it, check if notification needs updating
 			boolean notifyFix = sharedPref.getBoolean(Const.KEY_PREF_NOTIFY_FIX, false);
 			boolean notifySearch = sharedPref.getBoolean(Const.KEY_PREF_NOTIFY_SEARCH, false);
-			if (notifyFix || notifySearch) {
+			boolean recordTrack = sharedPref.getBoolean(Const.KEY_PREF_TRACK_RECORD, false);
+			boolean logNmea = sharedPref.getBoolean(Const.KEY_PREF_NMEA_LOG, false);
+			boolean logSensors = sharedPref.getBoolean(Const.KEY_PREF_SENSOR_LOG, false);
+			if (notifyFix || notifySearch || recordTrack || logNmea || logSensors) {
 				boolean isRunning = false;
 				ActivityManager manager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
 				for (RunningServiceInfo service : manager.getRunningServices(Integer.MAX_VALUE)) {
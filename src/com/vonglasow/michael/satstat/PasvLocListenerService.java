@@ -19,11 +19,24 @@
 
 package com.vonglasow.michael.satstat;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import com.vonglasow.michael.satstat.data.NmeaLogger;
+import com.vonglasow.michael.satstat.data.SatelliteSnapshot;
+import com.vonglasow.michael.satstat.data.SatelliteSource;
+import com.vonglasow.michael.satstat.data.SensorLogger;
+import com.vonglasow.michael.satstat.data.TrackPoint;
+import com.vonglasow.michael.satstat.data.TrackWriter;
 import com.vonglasow.michael.satstat.ui.MainActivity;
+import com.vonglasow.michael.satstat.utils.CoordinateFormatter;
 import com.vonglasow.michael.satstat.utils.PermissionHelper;
 
-import uk.me.jstott.jcoord.LatLng;
-import uk.me.jstott.jcoord.MGRSRef;
 import android.Manifest;
 import android.app.Notification;
 import android.app.PendingIntent;
@@ -37,20 +50,26 @@ import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.content.pm.PackageManager;
-import android.location.GpsSatellite;
+import android.content.res.Configuration;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
 import android.location.GpsStatus;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.preference.PreferenceManager;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.content.ContextCompat;
 import android.util.Log;
-import com.hzi.UTM;
 
-public class PasvLocListenerService extends Service implements GpsStatus.Listener, LocationListener, OnSharedPreferenceChangeListener, OnRequestPermissionsResultCallback {
+public class PasvLocListenerService extends Service implements SatelliteSource.Listener, GpsStatus.NmeaListener, LocationListener, OnSharedPreferenceChangeListener, OnRequestPermissionsResultCallback {
 
 	// The unique ID for the notification
 	private static final int ONGOING_NOTIFICATION = 1;
@@ -61,24 +80,102 @@ public class PasvLocListenerService extends Service implements GpsStatus.Listene
 	private static final int GPS_FIX = 2;
 	
 	private int mStatus = GPS_INACTIVE;
+
+	/** Time to first fix in milliseconds as of the last GPS status update, negative if unknown */
+	private int mTimeToFirstFix = -1;
 	
 	private boolean prefUnitType = true;
 	private boolean prefKnots = false;
 	private int prefCoord = Const.KEY_PREF_COORD_DECIMAL;
 	private boolean mNotifyFix = false;
 	private boolean mNotifySearch = false;
+	private boolean mRecordTrack = false;
+	private boolean mLogNmea = false;
+	private boolean mLogSensors = false;
+
+	/*
+	 * Track recording: the writer for the current track (null if not recording) and the point
+	 * which is reused for every fix
+	 */
+	private TrackWriter mTrackWriter = null;
+	private final TrackPoint mTrackPoint = new TrackPoint();
+
+	/*
+	 * Whether the service is in the foreground, and whether its notification shows that a track is
+	 * being recorded (rather than a location or search status)
+	 */
+	private boolean mForeground = false;
+	private boolean mShowingTrack = false;
+
+	/*
+	 * NMEA logging: the logger (null if not logging)
+	 */
+	private NmeaLogger mNmeaLogger = null;
+
+	/** Sensors recorded by the sensor logger */
+	private static final int[] SENSOR_LOG_TYPES = {Sensor.TYPE_ACCELEROMETER, Sensor.TYPE_GYROSCOPE,
+		Sensor.TYPE_MAGNETIC_FIELD, Sensor.TYPE_PRESSURE};
+
+	/** Sampling period for the sensor logger, in microseconds (100 Hz) */
+	private static final int SENSOR_LOG_RATE = 10000;
+
+	/**
+	 * Maximum time for which the sensor hub may hold readings for the sensor logger in its FIFO,
+	 * in microseconds. Readings are then delivered in batches, which lets the CPU sleep in between.
+	 */
+	private static final int SENSOR_LOG_LATENCY = 10000000;
+
+	/*
+	 * Sensor logging: the logger (null if not logging) and the thread on which sensor events are
+	 * received
+	 */
+	private volatile SensorLogger mSensorLogger = null;
+	private HandlerThread mSensorLogThread = null;
+	private SensorManager mSensorManager;
+	private final SensorEventListener mSensorLogListener = new SensorEventListener() {
+		@Override
+		public void onSensorChanged(SensorEvent event) {
+			SensorLogger logger = mSensorLogger;
+			if (logger != null)
+				logger.log(event.sensor.getType(), event.timestamp, event.accuracy, event.values);
+		}
+
+		@Override
+		public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+	};
+
+	/*
+	 * Formatter for notification text and the buffers it writes to, reused for every location update
+	 */
+	private CoordinateFormatter mFormatter;
+	private final StringBuilder mTitleBuilder = new StringBuilder(48);
+	private final StringBuilder mTextBuilder = new StringBuilder(64);
+
+	/*
+	 * Localized strings used on every location update, resolved in advance
+	 */
+	private String mStrNorth;
+	private String mStrSouth;
+	private String mStrEast;
+	private String mStrWest;
+	private String mStrMeter;
+	private String mStrFeet;
+	private String mStrKnots;
+	private String mStrKmh;
+	private String mStrMph;
 
 	private LocationManager mLocationManager;
+	private SatelliteSource mSatelliteSource;
 	private NotificationCompat.Builder mBuilder;
 	private SharedPreferences mSharedPreferences;
 	private BroadcastReceiver mGpsStatusReceiver = new BroadcastReceiver() {
 		@Override
 		public void onReceive(Context c, Intent intent) {
-			if (intent == null) return;
+			if ((intent == null) || (intent.getAction() == null)) return;
 			if (intent.getAction().equals(Const.GPS_ENABLED_CHANGE) && !intent.getBooleanExtra("enabled", true)) {
 				// GPS_ENABLED_CHANGE, enabled=false: GPS disabled, dismiss notification
 				mStatus = GPS_INACTIVE;
-				stopForeground(true);
+				showStatusIdle();
 			} else if (intent.getAction().equals(Const.GPS_FIX_CHANGE) && intent.getBooleanExtra("enabled", false)) {
 				// GPS_FIX_CHANGE, enabled=true: GPS got fix, will be taken care of in onLocationChanged
 				mStatus = GPS_FIX;
@@ -101,132 +198,137 @@ public class PasvLocListenerService extends Service implements GpsStatus.Listene
 		super.onCreate(); //do we need that here?
 
 		mLocationManager = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
+		mSensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
+		mSatelliteSource = SatelliteSource.create(mLocationManager, this);
+		resolveStrings();
 		mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
 		mSharedPreferences.registerOnSharedPreferenceChangeListener(this);
 		mNotifyFix = mSharedPreferences.getBoolean(Const.KEY_PREF_NOTIFY_FIX, mNotifyFix);
 		mNotifySearch = mSharedPreferences.getBoolean(Const.KEY_PREF_NOTIFY_SEARCH, mNotifySearch);
-		if (mNotifyFix || mNotifySearch)
+		mRecordTrack = mSharedPreferences.getBoolean(Const.KEY_PREF_TRACK_RECORD, mRecordTrack);
+		mLogNmea = mSharedPreferences.getBoolean(Const.KEY_PREF_NMEA_LOG, mLogNmea);
+		mLogSensors = mSharedPreferences.getBoolean(Const.KEY_PREF_SENSOR_LOG, mLogSensors);
+		if (mNotifyFix || mNotifySearch || mRecordTrack || mLogNmea)
 			requestPermissions();
 
 		registerReceiver(mGpsStatusReceiver, new IntentFilter(Const.GPS_ENABLED_CHANGE));
 		registerReceiver(mGpsStatusReceiver, new IntentFilter(Const.GPS_FIX_CHANGE));
 	}
 
+	@Override
+	public void onConfigurationChanged(Configuration newConfig) {
+		super.onConfigurationChanged(newConfig);
+		// locale may have changed
+		resolveStrings();
+	}
+
 	@Override
 	public void onDestroy() {
+		stopTrack();
+		stopNmeaLog();
+		stopSensorLog();
 		stopForeground(true);
 		unregisterReceiver(mGpsStatusReceiver);
 		mLocationManager.removeUpdates(this);
-    	mLocationManager.removeGpsStatusListener(this);
+    	mSatelliteSource.stop();
 		mSharedPreferences.unregisterOnSharedPreferenceChangeListener(this);
 	}
 
 	@Override
-	public void onGpsStatusChanged(int event) {
-		GpsStatus status = mLocationManager.getGpsStatus(null);
-		int satsUsed = 0;
-		Iterable<GpsSatellite> sats = status.getSatellites();
-		for (GpsSatellite sat : sats) {
-			if (sat.usedInFix()) {
-				satsUsed++;
-			}
-		}
-		if (satsUsed == 0) {
+	public void onGpsStatusChanged(SatelliteSnapshot sats, int timeToFirstFix) {
+		mTimeToFirstFix = timeToFirstFix;
+		if (sats.getUsedCount() == 0) {
 			if (mStatus != GPS_INACTIVE)
 				mStatus = GPS_SEARCH;
 			showStatusNoLocation();
 		}
 	}
 
+	/**
+	 * Called when an NMEA sentence is received from the GPS. Passes it on to the NMEA logger.
+	 */
+	@Override
+	public void onNmeaReceived(long timestamp, String nmea) {
+		if (mNmeaLogger != null)
+			mNmeaLogger.log(nmea);
+	}
+
 	@Override
 	public void onLocationChanged(Location location) {
 		if (!location.getProvider().equals(LocationManager.GPS_PROVIDER)) return;
-		if (mNotifyFix && (mStatus != GPS_INACTIVE)) {
+		boolean notify = mNotifyFix && (mStatus != GPS_INACTIVE);
+		if (!notify && (mTrackWriter == null)) {
+			showStatusIdle();
+			return;
+		}
+		// satellites as of the last GPS status update
+		SatelliteSnapshot sats = mSatelliteSource.getSnapshot();
+		int satsInView = sats.count;
+		int satsUsed = sats.getUsedCount();
+		if (mTrackWriter != null)
+			recordLocation(location, satsUsed, satsInView);
+		if (notify) {
 			mStatus = GPS_FIX;
-			GpsStatus status = mLocationManager.getGpsStatus(null);
-			int satsInView = 0;
-			int satsUsed = 0;
-			Iterable<GpsSatellite> sats = status.getSatellites();
-			for (GpsSatellite sat : sats) {
-				satsInView++;
-				if (sat.usedInFix()) {
-					satsUsed++;
-				}
-			}
-			double lat = Math.abs(location.getLatitude());
-			double lon = Math.abs(location.getLongitude());
-			String ns = (location.getLatitude() > 0)?
-					getString(R.string.value_N):
-						(location.getLatitude() < 0)?
-								getString(R.string.value_S):"";
-			String ew = (location.getLongitude() > 0)?
-					getString(R.string.value_E):
-						(location.getLongitude() < 0)?
-								getString(R.string.value_W):"";
-			String title = "";
+			double lat = location.getLatitude();
+			double lon = location.getLongitude();
+			mTitleBuilder.setLength(0);
 			if (prefCoord == Const.KEY_PREF_COORD_DECIMAL) {
-				title = String.format("%.5f%s%s %.5f%s%s",
-						lat, getString(R.string.unit_degree), ns,
-						lon, getString(R.string.unit_degree), ew);
+				mFormatter.appendDecimal(mTitleBuilder, lat, mStrNorth, mStrSouth);
+				mTitleBuilder.append(' ');
+				mFormatter.appendDecimal(mTitleBuilder, lon, mStrEast, mStrWest);
 			} else if (prefCoord == Const.KEY_PREF_COORD_MIN) {
-				double decY = lat;
-				double degY = (int) decY;
-				double minY = Math.abs(60.0 * (decY - degY));
-				double decX = lon;
-				double degX = (int) decX;
-				double minX = Math.abs(60.0 * (decX - degX));
-				title = String.format("%.0f%s %.3f' %s %.0f%s %.3f' %s",
-						degY, getString(R.string.unit_degree), minY + /*rounding*/ 0.0005, ns,
-						degX, getString(R.string.unit_degree), minX + /*rounding*/ 0.0005, ew);
+				mFormatter.appendDegMin(mTitleBuilder, lat, mStrNorth, mStrSouth);
+				mTitleBuilder.append(' ');
+				mFormatter.appendDegMin(mTitleBuilder, lon, mStrEast, mStrWest);
 			} else if (prefCoord == Const.KEY_PREF_COORD_SEC) {
-				double decY = lat;
-				double degY = (int) decY;
-				double tmp = 60.0 * (decY - degY);
-				double minY = (int) Math.abs(tmp);
-				double secY = Math.abs(60.0 * (tmp - minY));
-				double decX = lon;
-				double degX = (int) decX;
-				tmp = 60.0 * (decX - degX);
-				double minX = (int) Math.abs(tmp);
-				double secX = Math.abs(60.0 * (tmp - minX));
-				title = String.format("%.0f%s %.0f' %.1f\" %s %.0f%s %.0f' %.1f\" %s",
-						degY, getString(R.string.unit_degree), minY, secY + /*rounding*/ 0.05, ns,
-						degX, getString(R.string.unit_degree), minX, secX + /*rounding*/ 0.05, ew);
+				mFormatter.appendDegMinSec(mTitleBuilder, lat, mStrNorth, mStrSouth);
+				mTitleBuilder.append(' ');
+				mFormatter.appendDegMinSec(mTitleBuilder, lon, mStrEast, mStrWest);
 			} else if (prefCoord == Const.KEY_PREF_COORD_MGRS) {
-				title = new LatLng(location.getLatitude(), location.getLongitude()).toMGRSRef().toString(MGRSRef.PRECISION_1M);
+				mFormatter.appendMgrs(mTitleBuilder, lat, lon);
 			} else if (prefCoord == Const.KEY_PREF_COORD_UTM) {
-                title = UTM.lat_lon_to_utm(location.getLatitude(), location.getLongitude(), this.getApplicationContext());
-            }
+				mFormatter.appendUtm(mTitleBuilder, lat, lon);
+			}
 
-			String text = "";
+			mTextBuilder.setLength(0);
 			if (location.hasAltitude()) {
-				text = text + String.format("%.0f%s",
-						(location.getAltitude() * (prefUnitType ? 1 : 3.28084)),
-						getString(((prefUnitType) ? R.string.unit_meter : R.string.unit_feet)));
+				mFormatter.appendRounded(mTextBuilder, location.getAltitude() * (prefUnitType ? 1 : 3.28084));
+				mTextBuilder.append(prefUnitType ? mStrMeter : mStrFeet);
 			}
 			if (location.hasSpeed()) {
-				text = text + (text.equals("")?"":", ") + String.format("%.0f%s",
-						(location.getSpeed() * (prefKnots ? 1.943844 : prefUnitType ? 3.6 : 2.23694)),
-						getString(((prefKnots) ? R.string.unit_kn : (prefUnitType) ? R.string.unit_km_h : R.string.unit_mph)));
+				if (mTextBuilder.length() > 0)
+					mTextBuilder.append(", ");
+				mFormatter.appendRounded(mTextBuilder, location.getSpeed() * (prefKnots ? 1.943844 : prefUnitType ? 3.6 : 2.23694));
+				mTextBuilder.append(prefKnots ? mStrKnots : prefUnitType ? mStrKmh : mStrMph);
 			}
 			if (location.hasAccuracy()) {
-				text = text + (text.equals("")?"":", ") + String.format("\u03b5 = %.0f%s",
-						(location.getAccuracy() * (prefUnitType ? 1 : 3.28084)),
-						getString(((prefUnitType) ? R.string.unit_meter : R.string.unit_feet)));
+				if (mTextBuilder.length() > 0)
+					mTextBuilder.append(", ");
+				mTextBuilder.append("\u03b5 = ");
+				mFormatter.appendRounded(mTextBuilder, location.getAccuracy() * (prefUnitType ? 1 : 3.28084));
+				mTextBuilder.append(prefUnitType ? mStrMeter : mStrFeet);
+			}
+			if (mTextBuilder.length() > 0)
+				mTextBuilder.append(", ");
+			mFormatter.appendNumber(mTextBuilder, satsUsed, 1);
+			mTextBuilder.append('/');
+			mFormatter.appendNumber(mTextBuilder, satsInView, 1);
+			if (mTimeToFirstFix >= 0) {
+				mTextBuilder.append(",\nTTFF ");
+				mFormatter.appendNumber(mTextBuilder, mTimeToFirstFix / 1000, 1);
+				mTextBuilder.append(" s");
 			}
-			text = text + (text.equals("")?"":", ") + String.format("%d/%d",
-					satsUsed,
-					satsInView);
-			text = text + (text.equals("")?"":",\n") + String.format("TTFF %d s",
-					status.getTimeToFirstFix() / 1000);
+
+			String title = mTitleBuilder.toString();
+			String text = mTextBuilder.toString();
 			mBuilder.setSmallIcon(R.drawable.ic_stat_notify_location);
 			mBuilder.setContentTitle(title);
 			mBuilder.setContentText(text);
 			mBuilder.setStyle(new NotificationCompat.BigTextStyle().bigText(text));
 	
-			startForeground(ONGOING_NOTIFICATION, mBuilder.build());
+			showNotification(false);
 		} else {
-			stopForeground(true);
+			showStatusIdle();
 		}
 	}
 
@@ -260,12 +362,31 @@ public class PasvLocListenerService extends Service implements GpsStatus.Listene
 	@Override
 	public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
 			String key) {
-		if (key.equals(Const.KEY_PREF_NOTIFY_FIX) || key.equals(Const.KEY_PREF_NOTIFY_SEARCH)) {
+		if (key.equals(Const.KEY_PREF_NOTIFY_FIX) || key.equals(Const.KEY_PREF_NOTIFY_SEARCH)
+				|| key.equals(Const.KEY_PREF_TRACK_RECORD) || key.equals(Const.KEY_PREF_NMEA_LOG)
+				|| key.equals(Const.KEY_PREF_SENSOR_LOG)) {
 			mNotifyFix = sharedPreferences.getBoolean(Const.KEY_PREF_NOTIFY_FIX, mNotifyFix);
 			mNotifySearch = sharedPreferences.getBoolean(Const.KEY_PREF_NOTIFY_SEARCH, mNotifySearch);
-			if (!(mNotifyFix || mNotifySearch)) {
+			mRecordTrack = sharedPreferences.getBoolean(Const.KEY_PREF_TRACK_RECORD, mRecordTrack);
+			mLogNmea = sharedPreferences.getBoolean(Const.KEY_PREF_NMEA_LOG, mLogNmea);
+			mLogSensors = sharedPreferences.getBoolean(Const.KEY_PREF_SENSOR_LOG, mLogSensors);
+			if (mRecordTrack)
+				startTrack();
+			else
+				stopTrack();
+			if (mShowingTrack ? (mTrackWriter == null) : !mForeground)
+				showStatusIdle();
+			if (mLogNmea)
+				startNmeaLog();
+			else
+				stopNmeaLog();
+			if (mLogSensors)
+				startSensorLog();
+			else
+				stopSensorLog();
+			if (!(mNotifyFix || mNotifySearch || mRecordTrack || mLogNmea || mLogSensors)) {
 				stopSelf();
-			} else
+			} else if (mNotifyFix || mNotifySearch || mRecordTrack || mLogNmea)
 				requestPermissions();
 		} else if (key.equals(Const.KEY_PREF_UNIT_TYPE)) {
 			prefUnitType = sharedPreferences.getBoolean(Const.KEY_PREF_UNIT_TYPE, prefUnitType);
@@ -283,6 +404,15 @@ public class PasvLocListenerService extends Service implements GpsStatus.Listene
 		prefCoord = Integer.valueOf(mSharedPreferences.getString(Const.KEY_PREF_COORD, Integer.toString(prefCoord)));
 		mNotifyFix = mSharedPreferences.getBoolean(Const.KEY_PREF_NOTIFY_FIX, mNotifyFix);
 		mNotifySearch = mSharedPreferences.getBoolean(Const.KEY_PREF_NOTIFY_SEARCH, mNotifySearch);
+		mRecordTrack = mSharedPreferences.getBoolean(Const.KEY_PREF_TRACK_RECORD, mRecordTrack);
+		mLogNmea = mSharedPreferences.getBoolean(Const.KEY_PREF_NMEA_LOG, mLogNmea);
+		mLogSensors = mSharedPreferences.getBoolean(Const.KEY_PREF_SENSOR_LOG, mLogSensors);
+		if (mRecordTrack)
+			startTrack();
+		if (mLogNmea)
+			startNmeaLog();
+		if (mLogSensors)
+			startSensorLog();
 
 		if (mLocationManager.getAllProviders().indexOf(LocationManager.PASSIVE_PROVIDER) >= 0) {
 			if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED)
@@ -313,6 +443,9 @@ public class PasvLocListenerService extends Service implements GpsStatus.Listene
 						);
 
 		mBuilder.setContentIntent(mainPendingIntent);
+
+		if ((mTrackWriter != null) && !mForeground)
+			showStatusIdle();
 		
 		// if we were started through a broadcast, mGpsStatusReceiver had
 		// no way of picking it up, so we need to forward it manually
@@ -333,17 +466,256 @@ public class PasvLocListenerService extends Service implements GpsStatus.Listene
 				mBuilder.setContentText(getString(R.string.notify_nolocation_body));
 				mBuilder.setStyle(null);
 
-				startForeground(ONGOING_NOTIFICATION, mBuilder.build());
+				showNotification(false);
 			} else
 				requestPermissions();
+		} else {
+			showStatusIdle();
+		}
+	}
+
+	/**
+	 * Updates the notification when there is no location or search status to show.
+	 * 
+	 * While a track is being recorded, the service stays in the foreground with a notification
+	 * saying so. Otherwise the notification is removed.
+	 */
+	private void showStatusIdle() {
+		if (mTrackWriter != null) {
+			if (mShowingTrack)
+				return;
+			mBuilder.setSmallIcon(R.drawable.ic_stat_notify_location);
+			mBuilder.setContentTitle(getString(R.string.notify_track_title));
+			mBuilder.setContentText(getString(R.string.notify_track_body));
+			mBuilder.setStyle(null);
+
+			showNotification(true);
 		} else {
 			stopForeground(true);
+			mForeground = false;
+			mShowingTrack = false;
 		}
 	}
+
+	/**
+	 * Shows the notification built in {@link #mBuilder}, putting the service in the foreground.
+	 * 
+	 * @param track Whether the notification shows that a track is being recorded
+	 */
+	private void showNotification(boolean track) {
+		startForeground(ONGOING_NOTIFICATION, mBuilder.build());
+		mForeground = true;
+		mShowingTrack = track;
+	}
 	
+	/**
+	 * Resolves the localized strings and number format used in notifications.
+	 */
+	private void resolveStrings() {
+		mFormatter = new CoordinateFormatter(getString(R.string.unit_degree),
+				getString(R.string.utm_outside_latitude_range), Locale.getDefault());
+		mStrNorth = getString(R.string.value_N);
+		mStrSouth = getString(R.string.value_S);
+		mStrEast = getString(R.string.value_E);
+		mStrWest = getString(R.string.value_W);
+		mStrMeter = getString(R.string.unit_meter);
+		mStrFeet = getString(R.string.unit_feet);
+		mStrKnots = getString(R.string.unit_kn);
+		mStrKmh = getString(R.string.unit_km_h);
+		mStrMph = getString(R.string.unit_mph);
+	}
+
+	/**
+	 * Appends a location to the track being recorded.
+	 * 
+	 * If writing fails, recording is stopped.
+	 */
+	private void recordLocation(Location location, int satsUsed, int satsInView) {
+		mTrackPoint.clear();
+		mTrackPoint.time = location.getTime();
+		mTrackPoint.latitude = location.getLatitude();
+		mTrackPoint.longitude = location.getLongitude();
+		if (location.hasAltitude())
+			mTrackPoint.altitude = location.getAltitude();
+		if (location.hasAccuracy())
+			mTrackPoint.accuracy = location.getAccuracy();
+		if (location.hasSpeed())
+			mTrackPoint.speed = location.getSpeed();
+		if (location.hasBearing())
+			mTrackPoint.bearing = location.getBearing();
+		mTrackPoint.satsUsed = satsUsed;
+		mTrackPoint.satsInView = satsInView;
+		try {
+			mTrackWriter.write(mTrackPoint);
+		} catch (IOException e) {
+			Log.e("PasvLocListenerService", "Cannot write to track file, recording stopped", e);
+			stopTrack();
+		}
+	}
+
+	/**
+	 * Returns the folder in which tracks are stored.
+	 * 
+	 * This is a folder in the app-specific external storage area if available, else in internal
+	 * storage. The folder is created if it does not exist.
+	 */
+	public static File getTrackDir(Context context) {
+		return getStorageDir(context, Const.TRACK_DIR);
+	}
+
+	/**
+	 * Returns the folder in which NMEA logs are stored.
+	 * 
+	 * This is a folder in the app-specific external storage area if available, else in internal
+	 * storage. The folder is created if it does not exist.
+	 */
+	public static File getNmeaDir(Context context) {
+		return getStorageDir(context, Const.NMEA_DIR);
+	}
+
+	/**
+	 * Returns the folder in which sensor logs are stored.
+	 * 
+	 * This is a folder in the app-specific external storage area if available, else in internal
+	 * storage. The folder is created if it does not exist.
+	 */
+	public static File getSensorDir(Context context) {
+		return getStorageDir(context, Const.SENSOR_DIR);
+	}
+
+	/**
+	 * Returns the folder in which cell and WiFi survey logs are stored.
+	 * 
+	 * This is a folder in the app-specific external storage area if available, else in internal
+	 * storage. The folder is created if it does not exist.
+	 */
+	public static File getSurveyDir(Context context) {
+		return getStorageDir(context, Const.SURVEY_DIR);
+	}
+
+	/**
+	 * Returns a folder with the given name in the app-specific external storage area if available,
+	 * else in internal storage, creating it if it does not exist.
+	 */
+	private static File getStorageDir(Context context, String name) {
+		File dir = context.getExternalFilesDir(name);
+		if (dir == null)
+			dir = new File(context.getFilesDir(), name);
+		dir.mkdirs();
+		return dir;
+	}
+
+	/**
+	 * Starts recording a new track, unless a track is already being recorded.
+	 * 
+	 * Each track is stored in a separate file, named after the UTC time at which recording started.
+	 */
+	private void startTrack() {
+		if (mTrackWriter != null)
+			return;
+		SimpleDateFormat df = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT);
+		df.setTimeZone(TimeZone.getTimeZone("UTC"));
+		File file = new File(getTrackDir(this), df.format(new Date()) + Const.TRACK_EXTENSION);
+		try {
+			mTrackWriter = new TrackWriter(new FileOutputStream(file));
+			Log.i("PasvLocListenerService", "Recording track to " + file.getAbsolutePath());
+		} catch (IOException e) {
+			Log.e("PasvLocListenerService", "Cannot create track file " + file.getAbsolutePath(), e);
+			mTrackWriter = null;
+		}
+	}
+
+	/**
+	 * Stops recording, writing out any buffered points.
+	 */
+	private void stopTrack() {
+		if (mTrackWriter == null)
+			return;
+		try {
+			mTrackWriter.close();
+		} catch (IOException e) {
+			Log.e("PasvLocListenerService", "Error closing track file", e);
+		}
+		mTrackWriter = null;
+	}
+
+	/**
+	 * Starts logging NMEA sentences, unless logging is already in progress.
+	 * 
+	 * Sentences are only delivered while some application is using GPS.
+	 */
+	private void startNmeaLog() {
+		if (mNmeaLogger != null)
+			return;
+		File dir = getNmeaDir(this);
+		mNmeaLogger = new NmeaLogger(dir);
+		mNmeaLogger.start();
+		if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED)
+			mLocationManager.addNmeaListener(this);
+		Log.i("PasvLocListenerService", "Logging NMEA data to " + dir.getAbsolutePath());
+	}
+
+	/**
+	 * Stops logging NMEA sentences. Sentences already received are written out in the background,
+	 * after which the logger reports any dropped sentences and errors.
+	 */
+	private void stopNmeaLog() {
+		if (mNmeaLogger == null)
+			return;
+		mLocationManager.removeNmeaListener(this);
+		mNmeaLogger.stop();
+		mNmeaLogger = null;
+	}
+
+	/**
+	 * Starts logging sensor readings, unless logging is already in progress.
+	 * 
+	 * Sensor events are received on a separate thread. Where the hardware supports it (API 19 and
+	 * later), the sensor hub is asked to batch readings in its FIFO, so that events are delivered in
+	 * bursts a few times per minute rather than 100 times per second.
+	 */
+	private void startSensorLog() {
+		if (mSensorLogger != null)
+			return;
+		File dir = getSensorDir(this);
+		SensorLogger logger = new SensorLogger(dir);
+		logger.start();
+		mSensorLogger = logger;
+		mSensorLogThread = new HandlerThread("SensorLogThread");
+		mSensorLogThread.start();
+		Handler handler = new Handler(mSensorLogThread.getLooper());
+		for (int type : SENSOR_LOG_TYPES) {
+			Sensor sensor = mSensorManager.getDefaultSensor(type);
+			if (sensor == null)
+				continue;
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+				mSensorManager.registerListener(mSensorLogListener, sensor, SENSOR_LOG_RATE, SENSOR_LOG_LATENCY, handler);
+			else
+				mSensorManager.registerListener(mSensorLogListener, sensor, SENSOR_LOG_RATE, handler);
+		}
+		Log.i("PasvLocListenerService", "Logging sensor data to " + dir.getAbsolutePath());
+	}
+
+	/**
+	 * Stops logging sensor readings. Readings already received are written out in the background,
+	 * after which the logger reports any dropped readings and errors.
+	 */
+	private void stopSensorLog() {
+		SensorLogger logger = mSensorLogger;
+		if (logger == null)
+			return;
+		mSensorManager.unregisterListener(mSensorLogListener);
+		mSensorLogger = null;
+		mSensorLogThread.quit();
+		mSensorLogThread = null;
+		logger.stop();
+	}
+
 	private void requestLocationUpdates() {
 		mLocationManager.requestLocationUpdates(LocationManager.PASSIVE_PROVIDER, 0, 0, this);
-		mLocationManager.addGpsStatusListener(this);
+		mSatelliteSource.start();
+		if (mNmeaLogger != null)
+			mLocationManager.addNmeaListener(this);
 	}
 	
 	private void requestPermissions() {
@@ -3,7 +3,7 @@ package com.vonglasow.michael.satstat.data;
 import android.telephony.TelephonyManager;
 import android.util.Log;
 
-public abstract class CellTower implements Comparable {
+public abstract class CellTower implements Comparable, Cloneable {
 	public static final int SOURCE_CELL_LOCATION = 1;
 	public static final int SOURCE_NEIGHBORING_CELL_INFO = 2;
 	public static final int SOURCE_CELL_INFO = 4;
@@ -75,7 +75,32 @@ public abstract class CellTower implements Comparable {
 	public int getGeneration() {
 		return generation;
 	}
+
+	/**
+	 * Returns a key which identifies the cell within its network family.
+	 * <p>
+	 * The key packs the identifiers of the cell into a {@code long}, with each identifier taking up
+	 * a fixed number of bits. Subclasses document their layout. Two cells of the same family have the
+	 * same key if, and only if, their identifiers are equal, except for a few reserved values which
+	 * are treated as unknown.
+	 */
+	public abstract long getKey();
 	
+	/**
+	 * Returns a copy of the cell.
+	 * <p>
+	 * The copy holds the same data as the original, including source flags, but is not part of any
+	 * list. Changes to either of them do not affect the other.
+	 */
+	public CellTower copy() {
+		try {
+			return (CellTower) clone();
+		} catch (CloneNotSupportedException e) {
+			// cannot happen, CellTower implements Cloneable
+			throw new AssertionError(e);
+		}
+	}
+
 	/**
 	 * Returns the network generation of a phone network type.
 	 * @param networkType The network type as returned by {@link TelephonyManager.getNetworkType}
@@ -106,6 +131,16 @@ public abstract class CellTower implements Comparable {
 		}
 	}
 
+	/**
+	 * Returns a value which changes whenever the data of the cell changes.
+	 * <p>
+	 * The value packs source flags, serving status, generation and signal strength. Subclasses which
+	 * hold further data that is not part of their key should include it.
+	 */
+	long getState() {
+		return ((long) (dbm & 0xFFFF) << 8) | ((generation & 0xF) << 4) | (serving ? 8 : 0) | (source & 7);
+	}
+
 	/**
 	 * Returns the source from which the cell was obtained.
 	 * @return
@@ -232,6 +267,22 @@ public abstract class CellTower implements Comparable {
 		this.serving = serving;
 	}
 
+	/**
+	 * Packs part of a cell ID into a bit field for {@link #getKey()}.
+	 * <p>
+	 * Values which are unknown or do not fit into the field are stored as all ones, hence the highest
+	 * value which fits into the field cannot be distinguished from an unknown value.
+	 * @param value The value
+	 * @param bits The width of the field
+	 * @return The value of the field
+	 */
+	protected static long packField(int value, int bits) {
+		long max = (1L << bits) - 1;
+		if ((value < 0) || (value > max))
+			return max;
+		return value;
+	}
+
 	/**
 	 * Compares two integer values for sorting, placing {@link #UNKNOWN} last.
 	 * @param lhs
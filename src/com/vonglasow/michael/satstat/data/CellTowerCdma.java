@@ -47,6 +47,26 @@ public class CellTowerCdma extends CellTower {
 		return bsid;
 	}
 	
+	/**
+	 * Returns a key which identifies the cell.
+	 * <p>
+	 * See {@link #getKey(int, int, int)} for the layout.
+	 */
+	@Override
+	public long getKey() {
+		return getKey(sid, nid, bsid);
+	}
+
+	/**
+	 * Packs a SID/NID/BSID tuple into a key.
+	 * <p>
+	 * From the most significant bit down, the key holds the SID (16 bits), NID (17 bits) and BSID
+	 * (17 bits). Unknown values are stored as all ones.
+	 */
+	public static long getKey(int sid, int nid, int bsid) {
+		return (packField(sid, 16) << 34) | (packField(nid, 17) << 17) | packField(bsid, 17);
+	}
+
 	public int getNid() {
 		return nid;
 	}
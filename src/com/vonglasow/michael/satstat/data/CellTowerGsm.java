@@ -4,6 +4,13 @@ public class CellTowerGsm extends CellTower {
 	public static final String ALT_ID = "pci";
 	public static final String FAMILY = "gsm";
 	public static final int MAX_2G_CID = 65535;
+
+	/**
+	 * Offset added to the PSC to obtain the CID field of the key for cells with an unknown CID.
+	 * The resulting values lie at the upper end of the range for UMTS CIDs, which is not used in
+	 * practice.
+	 */
+	public static final int KEY_PSC_BASE = 0xFFFFE00;
 	
 	private int cid;
 	private int lac;
@@ -93,6 +100,43 @@ public class CellTowerGsm extends CellTower {
 		return this.cid;
 	}
 	
+	/**
+	 * Returns a key which identifies the cell.
+	 * <p>
+	 * See {@link #getKey(int, int, int, int, int)} for the layout.
+	 */
+	@Override
+	public long getKey() {
+		return getKey(mcc, mnc, lac, cid, psc);
+	}
+
+	/**
+	 * Packs a MCC/MNC/LAC/CID/PSC tuple into a key.
+	 * <p>
+	 * From the most significant bit down, the key holds the MCC (10 bits), MNC (10 bits), LAC (16
+	 * bits) and CID (28 bits). Unknown values are stored as all ones. LAC 65535 and CID
+	 * 268435455, which do not occur in practice, cannot be told apart from unknown values. If the
+	 * CID is unknown, the PSC is used in its place: the CID field then holds the PSC plus
+	 * {@link #KEY_PSC_BASE}.
+	 * <p>
+	 * Arguments are normalized in the same way as by the constructor, therefore a cell created with
+	 * a set of arguments will return the same key as this method does for those arguments.
+	 */
+	public static long getKey(int mcc, int mnc, int lac, int cid, int psc) {
+		long kLac = packField(lac, 16);
+		long kCid = packField(cid, 28);
+		long kMcc = 0x3FF;
+		long kMnc = 0x3FF;
+		if ((kLac != 0xFFFF) || (kCid != 0xFFFFFFF)) {
+			kMcc = packField(mcc, 10);
+			if (kMcc != 0x3FF)
+				kMnc = packField(mnc, 10);
+		}
+		if (kCid == 0xFFFFFFF)
+			kCid = KEY_PSC_BASE | packField(psc, 9);
+		return (kMcc << 54) | (kMnc << 44) | (kLac << 28) | kCid;
+	}
+
 	public int getLac() {
 		return this.lac;
 	}
@@ -109,6 +153,11 @@ public class CellTowerGsm extends CellTower {
 		return this.psc;
 	}
 
+	@Override
+	long getState() {
+		return super.getState() | ((long) (psc & 0xFFFF) << 24);
+	}
+
 	/**
 	 * Returns the cell identity in text form.
 	 * <p>
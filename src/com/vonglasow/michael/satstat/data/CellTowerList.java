@@ -1,42 +1,341 @@
 package com.vonglasow.michael.satstat.data;
 
-import java.util.Iterator;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A registry of the cell towers of one network family.
+ * <p>
+ * Towers are indexed by the key returned by {@link CellTower#getKey()}, which packs the identity of
+ * the cell into a {@code long}. The towers themselves are kept in a dense array, and an
+ * open-addressing hash table with linear probing maps keys to their index in that array. Updating a
+ * tower which is already in the list thus takes a single lookup and does not create a new instance.
+ * <p>
+ * For each source there is a bitmask of the indices of all towers which have the flag for that
+ * source set, so that {@link #removeSource(int)} visits only the towers it affects.
+ * <p>
+ * Each change to the list, or to the data of one of its towers, increments a version counter
+ * returned by {@link #getVersion()}. Views can compare it to the version they last displayed and
+ * skip redrawing if nothing has changed.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public abstract class CellTowerList<T extends CellTower> {
+	/** Number of sources, i.e. of flags in {@link CellTower#getSource()} */
+	private static final int SOURCE_COUNT = 3;
+
+	/** Initial number of towers the list can hold, must be a power of two */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** Multiplier for Fibonacci hashing (2^64 divided by the golden ratio) */
+	private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+	/** Towers in the list, at indices 0 to {@link #size} - 1 */
+	private CellTower[] towers = new CellTower[INITIAL_CAPACITY];
+
+	/** Keys of the towers in {@link #towers}, at the same index */
+	private long[] keys = new long[INITIAL_CAPACITY];
+
+	/** Number of towers in the list */
+	private int size = 0;
 
-public abstract class CellTowerList<T extends CellTower> extends TreeSet<T> {
 	/**
-	 * Returns all entries in the list.
+	 * Hash table holding the index of each tower in {@link #towers} plus one, or 0 for empty slots.
+	 * The table has twice as many slots as {@link #towers}, which keeps its load factor at or below
+	 * 0.5.
+	 */
+	private int[] table = new int[2 * INITIAL_CAPACITY];
+
+	/** Number of bits to shift a hash to the right to get a slot in {@link #table} */
+	private int shift = 64 - Integer.numberOfTrailingZeros(2 * INITIAL_CAPACITY);
+
+	/**
+	 * Per-source bitmasks of tower indices. Bit {@code i} of {@code sourceMasks[s]} is set if the
+	 * tower at index {@code i} has the flag {@code 1 << s} set.
+	 */
+	private long[][] sourceMasks = new long[SOURCE_COUNT][(INITIAL_CAPACITY + 63) >>> 6];
+
+	/** Incremented on every change */
+	private int version = 0;
+
+	/** Towers sorted by their natural order, valid if {@link #sortedVersion} matches {@link #version} */
+	private final ArrayList<T> sorted = new ArrayList<T>();
+
+	/** Read-only view of {@link #sorted} */
+	private final List<T> sortedView = Collections.unmodifiableList(sorted);
+
+	/** Scratch array for sorting */
+	private CellTower[] sortBuffer = new CellTower[INITIAL_CAPACITY];
+
+	private int sortedVersion = -1;
+
+	/**
+	 * Returns the tower with the given key.
+	 *
+	 * @param key The key, as returned by {@link CellTower#getKey()} or the static {@code getKey()}
+	 * method of the respective subclass
+	 * @return The tower, or {@code null} if the list holds no tower with that key
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(long key) {
+		int index = indexOf(key);
+		return (index < 0) ? null : (T) towers[index];
+	}
+
+	/**
+	 * Returns all entries in the list, sorted by their natural order.
+	 * <p>
+	 * The list returned is read-only and is only rebuilt when the version has changed since the last
+	 * call. It reflects the state of the list at the time of the call; callers must not keep it
+	 * beyond the next modification.
+	 */
+	public List<T> getAll() {
+		if (sortedVersion != version) {
+			System.arraycopy(towers, 0, sortBuffer, 0, size);
+			Arrays.sort(sortBuffer, 0, size);
+			sorted.clear();
+			for (int i = 0; i < size; i++) {
+				@SuppressWarnings("unchecked")
+				T tower = (T) sortBuffer[i];
+				sorted.add(tower);
+				sortBuffer[i] = null;
+			}
+			sortedVersion = version;
+		}
+		return sortedView;
+	}
+
+	/**
+	 * Returns copies of all entries in the list, sorted by their natural order.
+	 * <p>
+	 * Unlike {@link #getAll()}, the list returned is not affected by later changes to this list or
+	 * its towers, and can therefore be handed to other threads. It is read-only, and callers must
+	 * not modify the towers in it.
+	 */
+	public List<T> copyAll() {
+		List<T> all = getAll();
+		ArrayList<T> res = new ArrayList<T>(all.size());
+		for (T tower : all) {
+			@SuppressWarnings("unchecked")
+			T copy = (T) tower.copy();
+			res.add(copy);
+		}
+		return Collections.unmodifiableList(res);
+	}
+
+	/**
+	 * Returns the version of the list.
+	 * <p>
+	 * The version changes whenever a tower is added or removed, or the data of a tower is changed
+	 * through one of the methods of this class. Callers which modify towers directly should call
+	 * {@link #invalidate()} afterwards.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Marks the list as changed.
 	 * <p>
-	 * This method returns all entries in the list, with duplicates eliminated.
-	 * It is preferred over {@link #values()}, which may return duplicates.
-	 * @return
+	 * Call this method after modifying a tower obtained from this list, so that views will pick up
+	 * the change.
 	 */
-	public Set<T> getAll() {
-		Set<T> result = new TreeSet<T>(this);
-		return result;
+	public void invalidate() {
+		version++;
 	}
-	
+
 	/**
 	 * Removes cells of the specified source.
 	 * <p>
 	 * This method clears the flags corresponding to {@code source} in the
-	 * internal source field of all entries, and removes entries whose source
-	 * field is null. Call this method prior to adding new data from a source,
+	 * internal source field of all entries, and removes entries which have
+	 * no source flags left. Call this method prior to adding new data from a source,
 	 * to tell the list that any cell information previously supplied by this
 	 * source is no longer current.
-	 * @param source Any combination of 
-	 * {@link com.michael.vonglasow.satstat.data.CellTower#SOURCE_CELL_LOCATION},
-	 * {@link com.michael.vonglasow.satstat.data.CellTower#SOURCE_NEIGHBORING_CELL_INFO}
-	 * or {@link com.michael.vonglasow.satstat.data.CellTower#SOURCE_CELL_INFO}.
+	 * @param source Any combination of
+	 * {@link com.vonglasow.michael.satstat.data.CellTower#SOURCE_CELL_LOCATION},
+	 * {@link com.vonglasow.michael.satstat.data.CellTower#SOURCE_NEIGHBORING_CELL_INFO}
+	 * or {@link com.vonglasow.michael.satstat.data.CellTower#SOURCE_CELL_INFO}.
 	 */
 	public void removeSource(int source) {
-		TreeSet<CellTower> toDelete = new TreeSet<CellTower>();
-		Iterator<T> iterator = this.iterator();
-		while (iterator.hasNext()) {
-			CellTower ct = iterator.next();
-			if (ct.source == source)
-				iterator.remove();
+		for (int s = 0; s < SOURCE_COUNT; s++) {
+			int flag = 1 << s;
+			if ((source & flag) == 0)
+				continue;
+			long[] mask = sourceMasks[s];
+			/*
+			 * Go from the highest index down: removing a tower moves the last one into its place,
+			 * which has then already been processed.
+			 */
+			for (int w = mask.length - 1; w >= 0; w--)
+				while (mask[w] != 0) {
+					int bit = 63 - Long.numberOfLeadingZeros(mask[w]);
+					int index = (w << 6) | bit;
+					mask[w] &= ~(1L << bit);
+					CellTower tower = towers[index];
+					tower.source &= ~flag;
+					if (tower.source == 0)
+						remove(index);
+					version++;
+				}
+		}
+	}
+
+	/**
+	 * Returns the number of towers in the list.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a tower to the list, or records an update to a tower already in it.
+	 * <p>
+	 * Subclasses call this method after obtaining a tower through {@link #get(long)} (or creating a
+	 * new one if none was found) and updating its data. The flag for {@code source} is set on the
+	 * tower and the version is incremented if the tower is new or its data has changed.
+	 *
+	 * @param tower The tower
+	 * @param source The source which supplied the update
+	 * @param state The value of {@link CellTower#getState()} before the tower was updated
+	 */
+	protected void commit(T tower, int source, long state) {
+		long key = tower.getKey();
+		int index = indexOf(key);
+		if (index < 0) {
+			index = insert(key, tower);
+			version++;
+		}
+		tower.source |= source;
+		for (int s = 0; s < SOURCE_COUNT; s++)
+			if ((source & (1 << s)) != 0)
+				sourceMasks[s][index >>> 6] |= 1L << index;
+		if (tower.getState() != state)
+			version++;
+	}
+
+	/**
+	 * Parses the country code from a network operator string.
+	 *
+	 * @param networkOperator The network operator, as returned by {@link android.telephony.TelephonyManager#getNetworkOperator()}.
+	 * @return The MCC, or {@link CellTower#UNKNOWN} if the network operator is not known
+	 */
+	protected static int getMcc(String networkOperator) {
+		if (networkOperator.length() > 3)
+			return Integer.parseInt(networkOperator.substring(0, 3));
+		return CellTower.UNKNOWN;
+	}
+
+	/**
+	 * Parses the network code from a network operator string.
+	 *
+	 * @param networkOperator The network operator, as returned by {@link android.telephony.TelephonyManager#getNetworkOperator()}.
+	 * @return The MNC, or {@link CellTower#UNKNOWN} if the network operator is not known
+	 */
+	protected static int getMnc(String networkOperator) {
+		if (networkOperator.length() > 3)
+			return Integer.parseInt(networkOperator.substring(3));
+		return CellTower.UNKNOWN;
+	}
+
+	private int slotOf(long key) {
+		return (int) ((key * HASH_MULTIPLIER) >>> shift);
+	}
+
+	/**
+	 * Returns the index of the tower with the given key in {@link #towers}, or -1 if there is none.
+	 */
+	private int indexOf(long key) {
+		int mask = table.length - 1;
+		for (int slot = slotOf(key); table[slot] != 0; slot = (slot + 1) & mask)
+			if (keys[table[slot] - 1] == key)
+				return table[slot] - 1;
+		return -1;
+	}
+
+	/**
+	 * Adds a tower which is not yet in the list, without setting any source flags.
+	 *
+	 * @return The index of the new tower
+	 */
+	private int insert(long key, CellTower tower) {
+		if (size == towers.length)
+			grow();
+		int index = size++;
+		towers[index] = tower;
+		keys[index] = key;
+		int mask = table.length - 1;
+		int slot = slotOf(key);
+		while (table[slot] != 0)
+			slot = (slot + 1) & mask;
+		table[slot] = index + 1;
+		return index;
+	}
+
+	/**
+	 * Removes the tower at the given index, moving the last tower into its place.
+	 */
+	private void remove(int index) {
+		int mask = table.length - 1;
+		int slot = slotOf(keys[index]);
+		while (table[slot] != index + 1)
+			slot = (slot + 1) & mask;
+
+		/*
+		 * Close the gap in the table: move back any subsequent entries in the same cluster which
+		 * would not be found otherwise.
+		 */
+		int hole = slot;
+		for (int i = (slot + 1) & mask; table[i] != 0; i = (i + 1) & mask) {
+			int home = slotOf(keys[table[i] - 1]);
+			if (((i - home) & mask) >= ((i - hole) & mask)) {
+				table[hole] = table[i];
+				hole = i;
+			}
+		}
+		table[hole] = 0;
+
+		int last = --size;
+		if (index != last) {
+			towers[index] = towers[last];
+			keys[index] = keys[last];
+			slot = slotOf(keys[index]);
+			while (table[slot] != last + 1)
+				slot = (slot + 1) & mask;
+			table[slot] = index + 1;
+		}
+		towers[last] = null;
+		for (int s = 0; s < SOURCE_COUNT; s++) {
+			long[] sourceMask = sourceMasks[s];
+			boolean isSet = (index != last) && ((sourceMask[last >>> 6] & (1L << last)) != 0);
+			sourceMask[last >>> 6] &= ~(1L << last);
+			if (isSet)
+				sourceMask[index >>> 6] |= 1L << index;
+			else
+				sourceMask[index >>> 6] &= ~(1L << index);
+		}
+	}
+
+	/**
+	 * Doubles the capacity of the list and rebuilds the hash table.
+	 */
+	private void grow() {
+		int capacity = towers.length * 2;
+		towers = Arrays.copyOf(towers, capacity);
+		keys = Arrays.copyOf(keys, capacity);
+		sortBuffer = new CellTower[capacity];
+		for (int s = 0; s < SOURCE_COUNT; s++)
+			sourceMasks[s] = Arrays.copyOf(sourceMasks[s], (capacity + 63) >>> 6);
+		table = new int[2 * capacity];
+		shift = 64 - Integer.numberOfTrailingZeros(table.length);
+		int mask = table.length - 1;
+		for (int i = 0; i < size; i++) {
+			int slot = slotOf(keys[i]);
+			while (table[slot] != 0)
+				slot = (slot + 1) & mask;
+			table[slot] = i + 1;
 		}
 	}
 }
@@ -13,8 +13,8 @@ public class CellTowerListCdma extends CellTowerList<CellTowerCdma> {
 	/**
 	 * Adds or updates a cell tower.
 	 * <p>
-	 * If the cell tower is already in the list, it is replaced; if not, a new
-	 * entry is created.
+	 * If the cell tower is already in the list, its data is updated; if not, a
+	 * new entry is created.
 	 * <p>
 	 * This method will set the cell's identity data. After this call,
 	 * {@link #isServing()} will return {@code true} for this cell. 
@@ -22,17 +22,16 @@ public class CellTowerListCdma extends CellTowerList<CellTowerCdma> {
 	 */
 	public CellTowerCdma update(CdmaCellLocation location) {
 		this.removeSource(CellTower.SOURCE_CELL_LOCATION);
-		CellTowerCdma result = new CellTowerCdma(location.getSystemId(), location.getNetworkId(), location.getBaseStationId());
-		result.setCellLocation(true);
-		this.add(result);
+		CellTowerCdma result = this.obtain(location.getSystemId(), location.getNetworkId(), location.getBaseStationId());
+		this.commit(result, CellTower.SOURCE_CELL_LOCATION, result.getState());
 		return result;
 	}
 	
 	/**
 	 * Adds or updates a cell tower.
 	 * <p>
-	 * If the cell tower is already in the list, it is replaced; if not, a new
-	 * entry is created.
+	 * If the cell tower is already in the list, its data is updated; if not, a
+	 * new entry is created.
 	 * <p>
 	 * This method will set the cell's identity data, its signal strength and
 	 * whether it is the currently serving cell. If the API level is 18 or 
@@ -44,11 +43,25 @@ public class CellTowerListCdma extends CellTowerList<CellTowerCdma> {
 		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1) 
 			return null;
 		CellIdentityCdma cid = cell.getCellIdentity();
-		CellTowerCdma result = new CellTowerCdma(cid.getSystemId(), cid.getNetworkId(), cid.getBasestationId());
-		result.setCellInfo(true);
+		CellTowerCdma result = this.obtain(cid.getSystemId(), cid.getNetworkId(), cid.getBasestationId());
+		long state = result.getState();
 		result.setDbm(cell.getCellSignalStrength().getDbm());
 		result.setServing(cell.isRegistered());
-		this.add(result);
+		this.commit(result, CellTower.SOURCE_CELL_INFO, state);
+		return result;
+	}
+	
+	/**
+	 * Returns the cell tower with the given identity.
+	 * <p>
+	 * If the cell tower is already in the list, the existing entry is returned. If not, a new
+	 * instance is returned, which is added to the list by the subsequent call to
+	 * {@link #commit(CellTower, int, long)}.
+	 */
+	private CellTowerCdma obtain(int sid, int nid, int bsid) {
+		CellTowerCdma result = this.get(CellTowerCdma.getKey(sid, nid, bsid));
+		if (result == null)
+			return new CellTowerCdma(sid, nid, bsid);
 		return result;
 	}
 	
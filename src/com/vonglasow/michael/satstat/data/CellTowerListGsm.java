@@ -29,15 +29,9 @@ public class CellTowerListGsm extends CellTowerList<CellTowerGsm> {
 	 */
 	public CellTowerGsm update(String networkOperator, GsmCellLocation location) {
 		this.removeSource(CellTower.SOURCE_CELL_LOCATION);
-		int mcc = CellTower.UNKNOWN;
-		int mnc = CellTower.UNKNOWN;
-		if (networkOperator.length() > 3) {
-			mcc = Integer.parseInt(networkOperator.substring(0, 3));
-			mnc = Integer.parseInt(networkOperator.substring(3));
-		}
-		CellTowerGsm result = new CellTowerGsm(mcc, mnc, location.getLac(), location.getCid(), location.getPsc());
-		result.setCellLocation(true);
-		this.add(result);
+		CellTowerGsm result = this.obtain(getMcc(networkOperator), getMnc(networkOperator),
+				location.getLac(), location.getCid(), location.getPsc());
+		this.commit(result, CellTower.SOURCE_CELL_LOCATION, result.getState());
 		if ((result.getText() == null) && (result.getAltText() == null))
 			Log.d(this.getClass().getSimpleName(), String.format("Added %d G cell with no data from GsmCellLocation", result.getGeneration()));
 		return result;
@@ -55,14 +49,9 @@ public class CellTowerListGsm extends CellTowerList<CellTowerGsm> {
 	 * @return The new or updated entry, or {@code null} if the cell was rejected
 	 */
 	public CellTowerGsm update(String networkOperator, NeighboringCellInfo cell) {
-		int mcc = CellTower.UNKNOWN;
-		int mnc = CellTower.UNKNOWN;
-		if (networkOperator.length() > 3) {
-			mcc = Integer.parseInt(networkOperator.substring(0, 3));
-			mnc = Integer.parseInt(networkOperator.substring(3));
-		}
-		CellTowerGsm result = new CellTowerGsm(mcc, mnc, cell.getLac(), cell.getCid(), cell.getPsc());
-		result.setNeighboringCellInfo(true);
+		CellTowerGsm result = this.obtain(getMcc(networkOperator), getMnc(networkOperator),
+				cell.getLac(), cell.getCid(), cell.getPsc());
+		long state = result.getState();
 		int networkType = cell.getNetworkType();
 		switch (networkType) {
 			case TelephonyManager.NETWORK_TYPE_UMTS:
@@ -80,15 +69,11 @@ public class CellTowerListGsm extends CellTowerList<CellTowerGsm> {
 				result.setAsu(cell.getRssi());
 				break;
 			default:
-				// not a GSM or UMTS cell, return
+				// not a GSM or UMTS cell, return (a new cell has not been added yet)
 				return null;
-				// result.setDbm(CellTower.DBM_UNKNOWN);
-				// not needed because this is the default value; setting it
-				// here might overwrite valid data obtained from a different
-				// source
 		}
 		result.setNetworkType(networkType);
-		this.add(result);
+		this.commit(result, CellTower.SOURCE_NEIGHBORING_CELL_INFO, state);
 		if ((result.getText() == null) && (result.getAltText() == null))
 			Log.d(this.getClass().getSimpleName(), String.format("Added %d G cell with no data from NeighboringCellInfo", result.getGeneration()));
 		return result;
@@ -110,13 +95,13 @@ public class CellTowerListGsm extends CellTowerList<CellTowerGsm> {
 		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1) 
 			return null;
 		CellIdentityGsm cid = cell.getCellIdentity();
-		CellTowerGsm result = new CellTowerGsm(cid.getMcc(), cid.getMnc(), cid.getLac(), cid.getCid(), cid.getPsc());
-		result.setCellInfo(true);
+		CellTowerGsm result = this.obtain(cid.getMcc(), cid.getMnc(), cid.getLac(), cid.getCid(), cid.getPsc());
+		long state = result.getState();
 		result.setDbm(cell.getCellSignalStrength().getDbm());
-		this.add(result);
 		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
 			result.setGeneration(2);
 		result.setServing(cell.isRegistered());
+		this.commit(result, CellTower.SOURCE_CELL_INFO, state);
 		if ((result.getText() == null) && (result.getAltText() == null))
 			Log.d(this.getClass().getSimpleName(), String.format("Added %d G cell with no data from CellInfoGsm", result.getGeneration()));
 		return result;
@@ -137,17 +122,35 @@ public class CellTowerListGsm extends CellTowerList<CellTowerGsm> {
 		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) 
 			return null;
 		CellIdentityWcdma cid = cell.getCellIdentity();
-		CellTowerGsm result = new CellTowerGsm(cid.getMcc(), cid.getMnc(), cid.getLac(), cid.getCid(), cid.getPsc());
-		result.setCellInfo(true);
+		CellTowerGsm result = this.obtain(cid.getMcc(), cid.getMnc(), cid.getLac(), cid.getCid(), cid.getPsc());
+		long state = result.getState();
 		result.setDbm(cell.getCellSignalStrength().getDbm());
 		result.setGeneration(3);
-		this.add(result);
 		result.setServing(cell.isRegistered());
+		this.commit(result, CellTower.SOURCE_CELL_INFO, state);
 		if ((result.getText() == null) && (result.getAltText() == null))
 			Log.d(this.getClass().getSimpleName(), String.format("Added %d G cell with no data from CellInfoWcdma", result.getGeneration()));
 		return result;
 	}
 	
+	/**
+	 * Returns the cell tower with the given identity.
+	 * <p>
+	 * If the cell tower is already in the list, the existing entry is returned and its PSC is
+	 * filled in if it was previously unknown. If not, a new instance is returned, which is added to
+	 * the list by the subsequent call to {@link #commit(CellTower, int, long)}.
+	 */
+	private CellTowerGsm obtain(int mcc, int mnc, int lac, int cid, int psc) {
+		CellTowerGsm result = this.get(CellTowerGsm.getKey(mcc, mnc, lac, cid, psc));
+		if (result == null)
+			return new CellTowerGsm(mcc, mnc, lac, cid, psc);
+		if ((result.getPsc() == CellTower.UNKNOWN) && (psc != CellTower.UNKNOWN) && (psc != Integer.MAX_VALUE)) {
+			result.setPsc(psc);
+			this.invalidate();
+		}
+		return result;
+	}
+	
 	/**
 	 * Adds or updates a list of cell towers.
 	 * <p>
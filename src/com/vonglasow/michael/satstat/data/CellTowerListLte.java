@@ -27,15 +27,9 @@ public class CellTowerListLte extends CellTowerList<CellTowerLte> {
 	 */
 	public CellTowerLte update(String networkOperator, GsmCellLocation location) {
 		this.removeSource(CellTower.SOURCE_CELL_LOCATION);
-		int mcc = CellTower.UNKNOWN;
-		int mnc = CellTower.UNKNOWN;
-		if (networkOperator.length() > 3) {
-			mcc = Integer.parseInt(networkOperator.substring(0, 3));
-			mnc = Integer.parseInt(networkOperator.substring(3));
-		}
-		CellTowerLte result = new CellTowerLte(mcc, mnc, location.getLac(), location.getCid(), location.getPsc());
-		result.setCellLocation(true);
-		this.add(result);
+		CellTowerLte result = this.obtain(getMcc(networkOperator), getMnc(networkOperator),
+				location.getLac(), location.getCid(), location.getPsc());
+		this.commit(result, CellTower.SOURCE_CELL_LOCATION, result.getState());
 		Log.d(this.getClass().getSimpleName(), String.format("Added GsmCellLocation for %s, %d G", result.getText(), result.getGeneration()));
 		return result;
 	}
@@ -52,25 +46,20 @@ public class CellTowerListLte extends CellTowerList<CellTowerLte> {
 	 * @return The new or updated entry, or {@code null} if the cell was rejected
 	 */
 	public CellTowerLte update(String networkOperator, NeighboringCellInfo cell) {
-		int mcc = CellTower.UNKNOWN;
-		int mnc = CellTower.UNKNOWN;
-		if (networkOperator.length() > 3) {
-			mcc = Integer.parseInt(networkOperator.substring(0, 3));
-			mnc = Integer.parseInt(networkOperator.substring(3));
-		}
-		CellTowerLte result = new CellTowerLte(mcc, mnc, cell.getLac(), cell.getCid(), cell.getPsc());
-		result.setNeighboringCellInfo(true);
+		CellTowerLte result = this.obtain(getMcc(networkOperator), getMnc(networkOperator),
+				cell.getLac(), cell.getCid(), cell.getPsc());
+		long state = result.getState();
 		int networkType = cell.getNetworkType();
 		switch (networkType) {
 		case TelephonyManager.NETWORK_TYPE_LTE:
 				result.setAsu(cell.getRssi());
 				break;
 			default:
-				// not an LTE cell, return
+				// not an LTE cell, return (a new cell has not been added yet)
 				return null;
 		}
 		result.setNetworkType(networkType);
-		this.add(result);
+		this.commit(result, CellTower.SOURCE_NEIGHBORING_CELL_INFO, state);
 		Log.d(this.getClass().getSimpleName(), String.format("Added NeighboringCellInfo for %s, %d G, %d dBm",
 				result.getText(),
 				result.getGeneration(),
@@ -93,11 +82,11 @@ public class CellTowerListLte extends CellTowerList<CellTowerLte> {
 		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1) 
 			return null;
 		CellIdentityLte cid = cell.getCellIdentity();
-		CellTowerLte result = new CellTowerLte(cid.getMcc(), cid.getMnc(), cid.getTac(), cid.getCi(), cid.getPci());
-		result.setCellInfo(true);
+		CellTowerLte result = this.obtain(cid.getMcc(), cid.getMnc(), cid.getTac(), cid.getCi(), cid.getPci());
+		long state = result.getState();
 		result.setDbm(cell.getCellSignalStrength().getDbm());
 		result.setServing(cell.isRegistered());
-		this.add(result);
+		this.commit(result, CellTower.SOURCE_CELL_INFO, state);
 		Log.d(this.getClass().getSimpleName(), String.format("Added CellInfoLte for %s, %d G, %d dBm",
 				result.getText(),
 				result.getGeneration(),
@@ -105,6 +94,24 @@ public class CellTowerListLte extends CellTowerList<CellTowerLte> {
 		return result;
 	}
 	
+	/**
+	 * Returns the cell tower with the given identity.
+	 * <p>
+	 * If the cell tower is already in the list, the existing entry is returned and its PCI is
+	 * filled in if it was previously unknown. If not, a new instance is returned, which is added to
+	 * the list by the subsequent call to {@link #commit(CellTower, int, long)}.
+	 */
+	private CellTowerLte obtain(int mcc, int mnc, int tac, int ci, int pci) {
+		CellTowerLte result = this.get(CellTowerLte.getKey(mcc, mnc, tac, ci, pci));
+		if (result == null)
+			return new CellTowerLte(mcc, mnc, tac, ci, pci);
+		if ((result.getPci() == CellTower.UNKNOWN) && (pci != CellTower.UNKNOWN) && (pci != Integer.MAX_VALUE)) {
+			result.setPci(pci);
+			this.invalidate();
+		}
+		return result;
+	}
+	
 	/**
 	 * Adds or updates a list of cell towers.
 	 * <p>
@@ -3,6 +3,13 @@ package com.vonglasow.michael.satstat.data;
 public class CellTowerLte extends CellTower {
 	public static final String ALT_ID = "pci";
 	public static final String FAMILY = "lte";
+
+	/**
+	 * Offset added to the PCI to obtain the CI field of the key for cells with an unknown CI.
+	 * The resulting values lie at the upper end of the range for CIs, which is not used in
+	 * practice.
+	 */
+	public static final int KEY_PCI_BASE = 0xFFFFE00;
 	
 	private int ci;
 	private int tac;
@@ -93,6 +100,42 @@ public class CellTowerLte extends CellTower {
 		return this.ci;
 	}
 	
+	/**
+	 * Returns a key which identifies the cell.
+	 * <p>
+	 * See {@link #getKey(int, int, int, int, int)} for the layout.
+	 */
+	@Override
+	public long getKey() {
+		return getKey(mcc, mnc, tac, ci, pci);
+	}
+
+	/**
+	 * Packs a MCC/MNC/TAC/CI/PCI tuple into a key.
+	 * <p>
+	 * From the most significant bit down, the key holds the MCC (10 bits), MNC (10 bits), TAC (16
+	 * bits) and CI (28 bits). Unknown values are stored as all ones. TAC 65535 and CI
+	 * 268435455, which do not occur in practice, cannot be told apart from unknown values. If the
+	 * CI is unknown, the PCI is used in its place: the CI field then holds the PCI plus
+	 * {@link #KEY_PCI_BASE}.
+	 * <p>
+	 * Arguments are normalized in the same way as by the constructor, therefore a cell created with
+	 * a set of arguments will return the same key as this method does for those arguments.
+	 */
+	public static long getKey(int mcc, int mnc, int tac, int ci, int pci) {
+		long kTac = packField(tac, 16);
+		long kCi = packField(ci, 28);
+		long kMcc = 0x3FF;
+		long kMnc = 0x3FF;
+		if ((kTac != 0xFFFF) || (kCi != 0xFFFFFFF)) {
+			kMcc = packField(mcc, 10);
+			kMnc = packField(mnc, 10);
+		}
+		if (kCi == 0xFFFFFFF)
+			kCi = KEY_PCI_BASE | packField(pci, 9);
+		return (kMcc << 54) | (kMnc << 44) | (kTac << 28) | kCi;
+	}
+
 	public int getTac() {
 		return this.tac;
 	}
@@ -109,6 +152,11 @@ public class CellTowerLte extends CellTower {
 		return this.pci;
 	}
 
+	@Override
+	long getState() {
+		return super.getState() | ((long) (pci & 0xFFFF) << 24);
+	}
+
 	/**
 	 * Returns the cell identity in text form.
 	 * <p>
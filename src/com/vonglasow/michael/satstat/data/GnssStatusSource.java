@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+import android.annotation.TargetApi;
+import android.location.GnssStatus;
+import android.location.LocationManager;
+import android.os.Build;
+
+/**
+ * A {@link SatelliteSource} which uses {@link GnssStatus}, available on Android 7.0 and later.
+ * <p>
+ * Constellation and C/N0 are taken directly from the platform rather than derived from the NMEA ID,
+ * and the carrier frequency is reported on Android 8.0 and later. Satellites which have no NMEA ID
+ * are kept under their extended ID, see {@link SatelliteSnapshot#getId(int, int)}. Receivers which track several
+ * signals of the same satellite report it once per signal; these entries are merged into one, which
+ * keeps the strongest signal and is considered used if any of its signals is used.
+ */
+@TargetApi(Build.VERSION_CODES.N)
+public class GnssStatusSource extends SatelliteSource {
+	private final GnssStatus.Callback callback = new GnssStatus.Callback() {
+		@Override
+		public void onStarted() {
+			buffer.setTimeToFirstFix(-1);
+		}
+
+		@Override
+		public void onFirstFix(int ttffMillis) {
+			buffer.setTimeToFirstFix(ttffMillis);
+		}
+
+		@Override
+		public void onSatelliteStatusChanged(GnssStatus status) {
+			fill(status, buffer.getBackBuffer());
+			publish();
+		}
+	};
+
+	GnssStatusSource(LocationManager locationManager, Listener listener) {
+		super(locationManager, listener);
+	}
+
+	@Override
+	public void start() {
+		locationManager.registerGnssStatusCallback(callback);
+	}
+
+	@Override
+	public void stop() {
+		locationManager.unregisterGnssStatusCallback(callback);
+	}
+
+	/**
+	 * Fills {@code sats} with the satellites in {@code status}.
+	 */
+	private static void fill(GnssStatus status, SatelliteSnapshot sats) {
+		boolean hasFrequency = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O;
+		int n = status.getSatelliteCount();
+		for (int j = 0; j < n; j++) {
+			int constellation = status.getConstellationType(j);
+			int nmeaId = SatelliteSnapshot.getId(constellation, status.getSvid(j));
+			if (nmeaId == 0)
+				// not a valid satellite number
+				continue;
+			float cn0 = status.getCn0DbHz(j);
+			boolean used = status.usedInFix(j);
+			float frequency = (hasFrequency && status.hasCarrierFrequencyHz(j)) ?
+					status.getCarrierFrequencyHz(j) : Float.NaN;
+			int i = sats.indexOf(nmeaId);
+			if (i >= 0) {
+				// another signal from a satellite we already have
+				if (cn0 > sats.snr[i]) {
+					sats.snr[i] = cn0;
+					sats.carrierFrequency[i] = frequency;
+				}
+				sats.used[i] |= used;
+				continue;
+			}
+			i = sats.add(nmeaId, constellation, status.getAzimuthDegrees(j), status.getElevationDegrees(j), cn0, used);
+			if (i < 0)
+				break;
+			sats.carrierFrequency[i] = frequency;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+import android.location.GpsSatellite;
+import android.location.GpsStatus;
+import android.location.LocationManager;
+
+/**
+ * A {@link SatelliteSource} for devices which report satellites only through {@link GpsStatus}.
+ * <p>
+ * Satellites are identified by their NMEA ID and their constellation is derived from it.
+ */
+public class GpsStatusSource extends SatelliteSource implements GpsStatus.Listener {
+	/** Reused for every call to {@link LocationManager#getGpsStatus(GpsStatus)} */
+	private GpsStatus status = null;
+
+	GpsStatusSource(LocationManager locationManager, Listener listener) {
+		super(locationManager, listener);
+	}
+
+	@Override
+	public void start() {
+		locationManager.addGpsStatusListener(this);
+	}
+
+	@Override
+	public void stop() {
+		locationManager.removeGpsStatusListener(this);
+	}
+
+	@Override
+	public void onGpsStatusChanged(int event) {
+		status = locationManager.getGpsStatus(status);
+		SatelliteSnapshot sats = buffer.getBackBuffer();
+		for (GpsSatellite sat : status.getSatellites())
+			sats.add(sat.getPrn(), sat.getAzimuth(), sat.getElevation(), sat.getSnr(), sat.usedInFix());
+		buffer.setTimeToFirstFix(status.getTimeToFirstFix());
+		publish();
+	}
+}
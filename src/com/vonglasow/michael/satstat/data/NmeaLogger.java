@@ -0,0 +1,249 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.vonglasow.michael.satstat.Const;
+
+import android.util.Log;
+
+/**
+ * Logs raw NMEA sentences to a set of rotating files.
+ * <p>
+ * Sentences passed to {@link #log(CharSequence)} are copied into a {@link NmeaRingBuffer} and
+ * returned from immediately, so the caller (typically the thread which delivers location events)
+ * never waits for file I/O. A background thread drains the buffer a few times per second and
+ * writes the sentences, one per line, to a file in the log folder. Files are named after the UTC
+ * time at which they were started. When a file reaches the maximum size, a new one is started and
+ * the oldest files are deleted so that no more than the maximum number of files is kept.
+ * <p>
+ * If the background thread falls behind, sentences are dropped rather than held up; the number of
+ * dropped sentences can be obtained with {@link #getDropped()}. If writing fails, logging stops and
+ * the error can be retrieved with {@link #getError()}. When the writer thread terminates, it logs
+ * the number of dropped sentences and the error, if any.
+ * <p>
+ * {@link #log(CharSequence)} must always be called from the same thread.
+ */
+public class NmeaLogger {
+	/** Default size of the buffer between the caller and the writer thread, in bytes */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	/** Default size at which a new log file is started, in bytes */
+	public static final long DEFAULT_MAX_FILE_SIZE = 4 * 1024 * 1024;
+
+	/** Default number of log files to keep */
+	public static final int DEFAULT_MAX_FILES = 8;
+
+	/** Time the writer thread waits when the buffer is empty */
+	private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+	/** Maximum time for which written data is held in the output buffer, in milliseconds */
+	private static final long FLUSH_INTERVAL = 5000;
+
+	private final File dir;
+	private final long maxFileSize;
+	private final int maxFiles;
+	private final NmeaRingBuffer ring;
+
+	private Thread writerThread = null;
+	private volatile boolean running = false;
+	private volatile IOException error = null;
+
+	/*
+	 * The following are accessed only by the writer thread
+	 */
+	private OutputStream out = null;
+	private long fileSize;
+
+	/**
+	 * Creates a new logger with default settings.
+	 * 
+	 * @param dir The folder to which log files will be written, which must exist
+	 */
+	public NmeaLogger(File dir) {
+		this(dir, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_FILE_SIZE, DEFAULT_MAX_FILES);
+	}
+
+	/**
+	 * @param dir The folder to which log files will be written, which must exist
+	 * @param bufferSize The size of the buffer between the caller and the writer thread, in bytes
+	 * @param maxFileSize The size at which a new log file is started, in bytes
+	 * @param maxFiles The maximum number of log files to keep in {@code dir}
+	 */
+	public NmeaLogger(File dir, int bufferSize, long maxFileSize, int maxFiles) {
+		this.dir = dir;
+		this.maxFileSize = maxFileSize;
+		this.maxFiles = maxFiles;
+		ring = new NmeaRingBuffer(bufferSize);
+	}
+
+	/**
+	 * Starts the writer thread. Sentences are only logged after this method has been called.
+	 */
+	public synchronized void start() {
+		if (writerThread != null)
+			return;
+		running = true;
+		writerThread = new Thread(new Runnable() {
+			public void run() {
+				writeLoop();
+			}
+		}, "NmeaLogger");
+		writerThread.setPriority(Thread.MIN_PRIORITY);
+		writerThread.start();
+	}
+
+	/**
+	 * Stops logging.
+	 * <p>
+	 * This method returns immediately. The writer thread writes out all sentences logged before the
+	 * call, closes the current file and then terminates.
+	 */
+	public synchronized void stop() {
+		running = false;
+		if (writerThread != null)
+			LockSupport.unpark(writerThread);
+	}
+
+	/**
+	 * Queues a sentence for logging.
+	 * 
+	 * @return True if the sentence was queued, false if it was dropped or the logger is not running
+	 */
+	public boolean log(CharSequence sentence) {
+		return running && ring.offer(sentence);
+	}
+
+	/**
+	 * Returns the number of sentences which were dropped because the writer thread did not keep up.
+	 */
+	public long getDropped() {
+		return ring.getDropped();
+	}
+
+	/**
+	 * Returns the error which caused logging to stop, or null if no error occurred.
+	 */
+	public IOException getError() {
+		return error;
+	}
+
+	/**
+	 * Body of the writer thread.
+	 */
+	private void writeLoop() {
+		try {
+			openFile();
+			long lastFlush = System.currentTimeMillis();
+			boolean pending = false;
+			while (true) {
+				// read the flag first so that sentences logged before stop() are always written
+				boolean stopping = !running;
+				int count = ring.drainTo(out);
+				if (count > 0) {
+					pending = true;
+					fileSize += count;
+					if (fileSize >= maxFileSize) {
+						closeFile();
+						openFile();
+						pending = false;
+					}
+				} else if (stopping)
+					break;
+				else {
+					long now = System.currentTimeMillis();
+					if (pending && (now - lastFlush >= FLUSH_INTERVAL)) {
+						out.flush();
+						pending = false;
+						lastFlush = now;
+					}
+					LockSupport.parkNanos(this, DRAIN_INTERVAL_NANOS);
+				}
+			}
+		} catch (IOException e) {
+			error = e;
+			running = false;
+		} finally {
+			try {
+				closeFile();
+			} catch (IOException e) {
+				if (error == null)
+					error = e;
+			}
+			if (getDropped() > 0)
+				Log.w("NmeaLogger", getDropped() + " NMEA sentences were dropped");
+			if (error != null)
+				Log.e("NmeaLogger", "Error writing NMEA log", error);
+		}
+	}
+
+	/**
+	 * Starts a new log file and deletes the oldest files if there are too many.
+	 */
+	private void openFile() throws IOException {
+		SimpleDateFormat df = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT);
+		df.setTimeZone(TimeZone.getTimeZone("UTC"));
+		String name = df.format(new Date());
+		File file = new File(dir, name + Const.NMEA_EXTENSION);
+		for (int i = 1; file.exists(); i++)
+			file = new File(dir, name + "_" + i + Const.NMEA_EXTENSION);
+		out = new BufferedOutputStream(new FileOutputStream(file));
+		fileSize = 0;
+		purgeFiles();
+	}
+
+	private void closeFile() throws IOException {
+		if (out == null)
+			return;
+		OutputStream o = out;
+		out = null;
+		o.close();
+	}
+
+	/**
+	 * Deletes the oldest log files so that at most {@code maxFiles} remain.
+	 * <p>
+	 * File names start with a timestamp, hence sorting them by name puts the oldest first.
+	 */
+	private void purgeFiles() {
+		String[] names = dir.list();
+		if (names == null)
+			return;
+		int count = 0;
+		for (String name : names)
+			if (name.endsWith(Const.NMEA_EXTENSION))
+				names[count++] = name;
+		Arrays.sort(names, 0, count);
+		for (int i = 0; i < count - maxFiles; i++)
+			new File(dir, names[i]).delete();
+	}
+}
@@ -0,0 +1,872 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+import java.util.Arrays;
+
+/**
+ * Parses NMEA 0183 sentences.
+ * <p>
+ * The following sentences are supported, from any talker: GGA, RMC, GSA, GSV, GST, GNS and VTG.
+ * Each has a record (such as {@link #gga}) which is overwritten every time a sentence of that type
+ * is parsed; {@link #parse(CharSequence)} returns the type of the sentence, which tells the caller
+ * which record has been updated. Other sentences are recognized as valid but not parsed.
+ * <p>
+ * In addition, the parser assembles the satellites in view from GSV sentences and the satellites
+ * used in the fix from GSA sentences into a {@link SatelliteSnapshot}. Satellite numbers are
+ * translated into the NMEA IDs used by Android, so that for example Galileo satellite 1 reported by
+ * the {@code GA} talker becomes satellite 301. The satellites reported by one talker are replaced
+ * when it starts a new series of GSV sentences.
+ * <p>
+ * Sentences are parsed in place, without splitting them into strings or using regular expressions,
+ * and parsing does not allocate any objects. Sentences with a missing or incorrect checksum are
+ * rejected. Missing values are reported as NaN for floating-point fields, -1 for integer fields and
+ * 0 for character fields.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class NmeaParser {
+	/** The sentence is malformed or its checksum is incorrect */
+	public static final int TYPE_INVALID = -1;
+	/** The sentence is valid but of a type which is not parsed */
+	public static final int TYPE_UNKNOWN = 0;
+	public static final int TYPE_GGA = 1;
+	public static final int TYPE_RMC = 2;
+	public static final int TYPE_GSA = 3;
+	public static final int TYPE_GSV = 4;
+	public static final int TYPE_GST = 5;
+	public static final int TYPE_GNS = 6;
+	public static final int TYPE_VTG = 7;
+
+	/*
+	 * Talker IDs, as returned in talker: the two characters of the ID packed into an int
+	 */
+	public static final int TALKER_GP = ('G' << 8) | 'P';
+	public static final int TALKER_GL = ('G' << 8) | 'L';
+	public static final int TALKER_GA = ('G' << 8) | 'A';
+	public static final int TALKER_GB = ('G' << 8) | 'B';
+	public static final int TALKER_BD = ('B' << 8) | 'D';
+	public static final int TALKER_GQ = ('G' << 8) | 'Q';
+	public static final int TALKER_QZ = ('Q' << 8) | 'Z';
+	public static final int TALKER_GI = ('G' << 8) | 'I';
+	public static final int TALKER_GN = ('G' << 8) | 'N';
+
+	/** Maximum length of a sentence which can be parsed from a {@link CharSequence} */
+	public static final int MAX_LENGTH = 256;
+
+	/** Maximum number of fields in a sentence, including the address field */
+	private static final int MAX_FIELDS = 64;
+
+	private static final float KNOTS_TO_METERS_PER_SECOND = 1852f / 3600f;
+
+	private static final float KMH_TO_METERS_PER_SECOND = 1f / 3.6f;
+
+	private static final double[] POW10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+	};
+
+	/**
+	 * Fix data (GGA).
+	 */
+	public static class Gga {
+		/** UTC time of day in milliseconds */
+		public int timeOfDay;
+		/** Latitude in degrees, negative for south */
+		public double latitude;
+		/** Longitude in degrees, negative for west */
+		public double longitude;
+		/** Fix quality (0 = no fix, 1 = GPS, 2 = DGPS, 4 = RTK fixed, 5 = RTK float, 6 = estimated) */
+		public int quality;
+		/** Number of satellites used */
+		public int satsUsed;
+		/** Horizontal dilution of precision */
+		public float hdop;
+		/** Altitude above mean sea level in meters */
+		public double altitude;
+		/** Height of the geoid above the ellipsoid in meters */
+		public double geoidSeparation;
+
+		void clear() {
+			timeOfDay = -1;
+			latitude = Double.NaN;
+			longitude = Double.NaN;
+			quality = -1;
+			satsUsed = -1;
+			hdop = Float.NaN;
+			altitude = Double.NaN;
+			geoidSeparation = Double.NaN;
+		}
+	}
+
+	/**
+	 * Recommended minimum data (RMC).
+	 */
+	public static class Rmc {
+		/** UTC time of day in milliseconds */
+		public int timeOfDay;
+		/** UTC time in milliseconds since the epoch, -1 if date or time are missing */
+		public long time;
+		/** Whether the status is {@code A} (data valid) */
+		public boolean valid;
+		/** Latitude in degrees, negative for south */
+		public double latitude;
+		/** Longitude in degrees, negative for west */
+		public double longitude;
+		/** Speed over ground in m/s */
+		public float speed;
+		/** True course over ground in degrees */
+		public float course;
+		/** Mode indicator (NMEA 2.3 and later) */
+		public char mode;
+
+		void clear() {
+			timeOfDay = -1;
+			time = -1;
+			valid = false;
+			latitude = Double.NaN;
+			longitude = Double.NaN;
+			speed = Float.NaN;
+			course = Float.NaN;
+			mode = 0;
+		}
+	}
+
+	/**
+	 * DOP and active satellites (GSA).
+	 */
+	public static class Gsa {
+		/** Selection mode, {@code M} (manual) or {@code A} (automatic) */
+		public char selectionMode;
+		/** Fix type (1 = no fix, 2 = 2D, 3 = 3D) */
+		public int fixType;
+		/** Number of valid entries in {@link #prn} */
+		public int prnCount;
+		/** NMEA IDs of the satellites used, translated as described for the parser */
+		public final int[] prn = new int[MAX_FIELDS];
+		public float pdop;
+		public float hdop;
+		public float vdop;
+		/** GNSS system ID (NMEA 4.1 and later) */
+		public int systemId;
+
+		void clear() {
+			selectionMode = 0;
+			fixType = -1;
+			prnCount = 0;
+			pdop = Float.NaN;
+			hdop = Float.NaN;
+			vdop = Float.NaN;
+			systemId = -1;
+		}
+	}
+
+	/**
+	 * Satellites in view (GSV). Each sentence describes up to four satellites.
+	 */
+	public static class Gsv {
+		/** Total number of GSV sentences in this series */
+		public int messageCount;
+		/** Number of this sentence within the series, starting at 1 */
+		public int messageNumber;
+		/** Total number of satellites in view */
+		public int satsInView;
+		/** Number of satellites described in this sentence */
+		public int count;
+		/** NMEA IDs of the satellites, translated as described for the parser */
+		public final int[] prn = new int[4];
+		/** Elevation in degrees */
+		public final float[] elevation = new float[4];
+		/** Azimuth in degrees */
+		public final float[] azimuth = new float[4];
+		/** Signal-to-noise ratio in dB-Hz, NaN if not tracking */
+		public final float[] snr = new float[4];
+		/** Signal ID (NMEA 4.1 and later) */
+		public int signalId;
+
+		void clear() {
+			messageCount = -1;
+			messageNumber = -1;
+			satsInView = -1;
+			count = 0;
+			signalId = -1;
+		}
+	}
+
+	/**
+	 * Pseudorange error statistics (GST).
+	 */
+	public static class Gst {
+		/** UTC time of day in milliseconds */
+		public int timeOfDay;
+		/** RMS of the standard deviation of the range inputs */
+		public float rms;
+		/** Standard deviation of the semi-major axis of the error ellipse in meters */
+		public float semiMajor;
+		/** Standard deviation of the semi-minor axis of the error ellipse in meters */
+		public float semiMinor;
+		/** Orientation of the semi-major axis in degrees from true north */
+		public float orientation;
+		/** Standard deviation of latitude error in meters */
+		public float latitudeError;
+		/** Standard deviation of longitude error in meters */
+		public float longitudeError;
+		/** Standard deviation of altitude error in meters */
+		public float altitudeError;
+
+		void clear() {
+			timeOfDay = -1;
+			rms = Float.NaN;
+			semiMajor = Float.NaN;
+			semiMinor = Float.NaN;
+			orientation = Float.NaN;
+			latitudeError = Float.NaN;
+			longitudeError = Float.NaN;
+			altitudeError = Float.NaN;
+		}
+	}
+
+	/**
+	 * GNSS fix data (GNS).
+	 */
+	public static class Gns {
+		/** UTC time of day in milliseconds */
+		public int timeOfDay;
+		/** Latitude in degrees, negative for south */
+		public double latitude;
+		/** Longitude in degrees, negative for west */
+		public double longitude;
+		/** Number of valid entries in {@link #modes} */
+		public int modeCount;
+		/** Mode indicator for each constellation, in the order GPS, GLONASS, Galileo, BeiDou… */
+		public final char[] modes = new char[8];
+		/** Number of satellites used */
+		public int satsUsed;
+		/** Horizontal dilution of precision */
+		public float hdop;
+		/** Altitude above mean sea level in meters */
+		public double altitude;
+		/** Height of the geoid above the ellipsoid in meters */
+		public double geoidSeparation;
+
+		void clear() {
+			timeOfDay = -1;
+			latitude = Double.NaN;
+			longitude = Double.NaN;
+			modeCount = 0;
+			satsUsed = -1;
+			hdop = Float.NaN;
+			altitude = Double.NaN;
+			geoidSeparation = Double.NaN;
+		}
+	}
+
+	/**
+	 * Course and speed over ground (VTG).
+	 */
+	public static class Vtg {
+		/** True course in degrees */
+		public float courseTrue;
+		/** Magnetic course in degrees */
+		public float courseMagnetic;
+		/** Speed over ground in m/s */
+		public float speed;
+		/** Mode indicator (NMEA 2.3 and later) */
+		public char mode;
+
+		void clear() {
+			courseTrue = Float.NaN;
+			courseMagnetic = Float.NaN;
+			speed = Float.NaN;
+			mode = 0;
+		}
+	}
+
+	public final Gga gga = new Gga();
+	public final Rmc rmc = new Rmc();
+	public final Gsa gsa = new Gsa();
+	public final Gsv gsv = new Gsv();
+	public final Gst gst = new Gst();
+	public final Gns gns = new Gns();
+	public final Vtg vtg = new Vtg();
+
+	/** Talker ID of the last valid sentence, one of the {@code TALKER_*} values or another ID */
+	public int talker;
+
+	/** Type of the last valid sentence */
+	private int type = TYPE_INVALID;
+
+	/** Satellites assembled from GSV and GSA sentences */
+	private final SatelliteSnapshot satellites = new SatelliteSnapshot();
+
+	/** The talker which reported each entry in satellites */
+	private final int[] satTalker = new int[SatelliteSnapshot.MAX_SATELLITES];
+
+	/** Whether each satellite ID was reported as used in the last series of GSA sentences */
+	private final boolean[] usedIds = new boolean[SatelliteSnapshot.MAX_ID + 1];
+
+	/*
+	 * The sentence being parsed and the start and end offset of each field
+	 */
+	private byte[] buf;
+	private final byte[] charBuf = new byte[MAX_LENGTH];
+	private final int[] fieldStart = new int[MAX_FIELDS];
+	private final int[] fieldEnd = new int[MAX_FIELDS];
+	private int fieldCount;
+
+	/**
+	 * Parses a sentence.
+	 * 
+	 * @param sentence The sentence, starting with {@code $} or {@code !}, with or without a
+	 * trailing line break
+	 * @return The type of the sentence, one of the {@code TYPE_*} values
+	 */
+	public int parse(CharSequence sentence) {
+		int length = sentence.length();
+		if (length > MAX_LENGTH)
+			return TYPE_INVALID;
+		for (int i = 0; i < length; i++) {
+			char c = sentence.charAt(i);
+			charBuf[i] = (c < 0x80) ? (byte) c : (byte) 0xFF;
+		}
+		return parse(charBuf, 0, length);
+	}
+
+	/**
+	 * Parses a sentence from a byte array. The array is not modified or retained.
+	 * 
+	 * @param data The array holding the sentence in ASCII encoding
+	 * @param offset The position of the first character of the sentence ({@code $} or {@code !})
+	 * @param length The length of the sentence, including any trailing line break
+	 * @return The type of the sentence, one of the {@code TYPE_*} values
+	 */
+	public int parse(byte[] data, int offset, int length) {
+		buf = data;
+		int res = doParse(offset, offset + length);
+		buf = null;
+		if (res != TYPE_INVALID)
+			type = res;
+		return res;
+	}
+
+	/**
+	 * Returns the satellites assembled from the GSV and GSA sentences parsed so far.
+	 * <p>
+	 * The snapshot is updated in place as sentences are parsed. It is complete when the last
+	 * sentence of a GSV series ({@code gsv.messageNumber == gsv.messageCount}) has been parsed.
+	 */
+	public SatelliteSnapshot getSatellites() {
+		return satellites;
+	}
+
+	/**
+	 * Forgets all satellites.
+	 */
+	public void clearSatellites() {
+		satellites.clear();
+		Arrays.fill(usedIds, false);
+	}
+
+	private int doParse(int start, int end) {
+		while ((end > start) && (buf[end - 1] <= ' '))
+			end--;
+		if ((end - start < 9) || ((buf[start] != '$') && (buf[start] != '!')) || (buf[end - 3] != '*'))
+			return TYPE_INVALID;
+
+		// validate checksum and split into fields
+		int checksum = 0;
+		fieldCount = 0;
+		fieldStart[0] = start + 1;
+		for (int i = start + 1; i < end - 3; i++) {
+			byte c = buf[i];
+			if ((c < ' ') || (c == '*') || (c == '$'))
+				return TYPE_INVALID;
+			checksum ^= c;
+			if (c == ',') {
+				if (fieldCount >= MAX_FIELDS - 1)
+					return TYPE_INVALID;
+				fieldEnd[fieldCount++] = i;
+				fieldStart[fieldCount] = i + 1;
+			}
+		}
+		fieldEnd[fieldCount++] = end - 3;
+		int hi = hexValue(buf[end - 2]);
+		int lo = hexValue(buf[end - 1]);
+		if ((hi < 0) || (lo < 0) || (checksum != ((hi << 4) | lo)))
+			return TYPE_INVALID;
+
+		// address field: two-character talker ID followed by three-character sentence type
+		int a = fieldStart[0];
+		if ((fieldEnd[0] - a != 5) || (buf[a] == 'P'))
+			return TYPE_UNKNOWN;
+		int newTalker = (buf[a] << 8) | buf[a + 1];
+		int t0 = buf[a + 2];
+		int t1 = buf[a + 3];
+		int t2 = buf[a + 4];
+		int res;
+		if ((t0 == 'G') && (t1 == 'G') && (t2 == 'A')) {
+			talker = newTalker;
+			parseGga();
+			res = TYPE_GGA;
+		} else if ((t0 == 'R') && (t1 == 'M') && (t2 == 'C')) {
+			talker = newTalker;
+			parseRmc();
+			res = TYPE_RMC;
+		} else if ((t0 == 'G') && (t1 == 'S') && (t2 == 'A')) {
+			parseGsa(newTalker);
+			talker = newTalker;
+			res = TYPE_GSA;
+		} else if ((t0 == 'G') && (t1 == 'S') && (t2 == 'V')) {
+			parseGsv(newTalker);
+			talker = newTalker;
+			res = TYPE_GSV;
+		} else if ((t0 == 'G') && (t1 == 'S') && (t2 == 'T')) {
+			talker = newTalker;
+			parseGst();
+			res = TYPE_GST;
+		} else if ((t0 == 'G') && (t1 == 'N') && (t2 == 'S')) {
+			talker = newTalker;
+			parseGns();
+			res = TYPE_GNS;
+		} else if ((t0 == 'V') && (t1 == 'T') && (t2 == 'G')) {
+			talker = newTalker;
+			parseVtg();
+			res = TYPE_VTG;
+		} else {
+			talker = newTalker;
+			res = TYPE_UNKNOWN;
+		}
+		return res;
+	}
+
+	private void parseGga() {
+		gga.clear();
+		gga.timeOfDay = parseTime(1);
+		gga.latitude = parseCoordinate(2, 'S');
+		gga.longitude = parseCoordinate(4, 'W');
+		gga.quality = parseInt(6);
+		gga.satsUsed = parseInt(7);
+		gga.hdop = (float) parseDouble(8);
+		gga.altitude = parseDouble(9);
+		gga.geoidSeparation = parseDouble(11);
+	}
+
+	private void parseRmc() {
+		rmc.clear();
+		rmc.timeOfDay = parseTime(1);
+		rmc.valid = (parseChar(2) == 'A');
+		rmc.latitude = parseCoordinate(3, 'S');
+		rmc.longitude = parseCoordinate(5, 'W');
+		rmc.speed = (float) parseDouble(7) * KNOTS_TO_METERS_PER_SECOND;
+		rmc.course = (float) parseDouble(8);
+		long day = parseDate(9);
+		if ((day != Long.MIN_VALUE) && (rmc.timeOfDay >= 0))
+			rmc.time = day * 86400000L + rmc.timeOfDay;
+		rmc.mode = parseChar(12);
+	}
+
+	private void parseGsa(int newTalker) {
+		gsa.clear();
+		gsa.selectionMode = parseChar(1);
+		gsa.fixType = parseInt(2);
+		// NMEA 4.1 adds the system ID after the DOP values
+		int dopField = fieldCount - 3;
+		if (fieldCount >= 19) {
+			gsa.systemId = parseInt(fieldCount - 1);
+			dopField--;
+		}
+		gsa.pdop = (float) parseDouble(dopField);
+		gsa.hdop = (float) parseDouble(dopField + 1);
+		gsa.vdop = (float) parseDouble(dopField + 2);
+		int source = (gsa.systemId > 0) ? getTalkerForSystem(gsa.systemId, newTalker) : newTalker;
+
+		// a receiver sends one GSA sentence per constellation, start over with the first one
+		if (type != TYPE_GSA)
+			Arrays.fill(usedIds, false);
+		for (int i = 3; i < dopField; i++) {
+			int id = toNmeaId(source, parseInt(i));
+			if (id <= 0)
+				continue;
+			gsa.prn[gsa.prnCount++] = id;
+			if (id < usedIds.length)
+				usedIds[id] = true;
+		}
+		for (int i = 0; i < satellites.count; i++) {
+			int id = satellites.prn[i];
+			satellites.used[i] = (id < usedIds.length) && usedIds[id];
+		}
+	}
+
+	private void parseGsv(int newTalker) {
+		gsv.clear();
+		gsv.messageCount = parseInt(1);
+		gsv.messageNumber = parseInt(2);
+		gsv.satsInView = parseInt(3);
+		int satFields = fieldCount - 4;
+		if (satFields % 4 == 1) {
+			// NMEA 4.1 signal ID
+			gsv.signalId = parseInt(fieldCount - 1);
+			satFields--;
+		}
+
+		/*
+		 * A new series from this talker replaces its satellites, unless it immediately follows
+		 * another series from the same talker (which happens when the receiver reports several
+		 * signals per satellite).
+		 */
+		if ((gsv.messageNumber == 1) && !((type == TYPE_GSV) && (talker == newTalker)))
+			removeSatellites(newTalker);
+
+		for (int f = 4; (f + 3 < 4 + satFields) && (gsv.count < 4); f += 4) {
+			int id = toNmeaId(newTalker, parseInt(f));
+			if (id <= 0)
+				continue;
+			int n = gsv.count++;
+			float elevation = (float) parseDouble(f + 1);
+			float azimuth = (float) parseDouble(f + 2);
+			float snr = (float) parseDouble(f + 3);
+			gsv.prn[n] = id;
+			gsv.elevation[n] = elevation;
+			gsv.azimuth[n] = azimuth;
+			gsv.snr[n] = snr;
+
+			if (Float.isNaN(snr))
+				snr = 0;
+			int i = satellites.indexOf(id);
+			if (i >= 0) {
+				// same satellite on another signal
+				satellites.snr[i] = Math.max(satellites.snr[i], snr);
+				if (!Float.isNaN(elevation))
+					satellites.elevation[i] = elevation;
+				if (!Float.isNaN(azimuth))
+					satellites.azimuth[i] = azimuth;
+			} else {
+				i = satellites.add(id, getConstellation(newTalker, id), azimuth, elevation, snr,
+						(id < usedIds.length) && usedIds[id]);
+				if (i >= 0)
+					satTalker[i] = newTalker;
+			}
+		}
+	}
+
+	private void parseGst() {
+		gst.clear();
+		gst.timeOfDay = parseTime(1);
+		gst.rms = (float) parseDouble(2);
+		gst.semiMajor = (float) parseDouble(3);
+		gst.semiMinor = (float) parseDouble(4);
+		gst.orientation = (float) parseDouble(5);
+		gst.latitudeError = (float) parseDouble(6);
+		gst.longitudeError = (float) parseDouble(7);
+		gst.altitudeError = (float) parseDouble(8);
+	}
+
+	private void parseGns() {
+		gns.clear();
+		gns.timeOfDay = parseTime(1);
+		gns.latitude = parseCoordinate(2, 'S');
+		gns.longitude = parseCoordinate(4, 'W');
+		if (fieldCount > 6)
+			for (int i = fieldStart[6]; (i < fieldEnd[6]) && (gns.modeCount < gns.modes.length); i++)
+				gns.modes[gns.modeCount++] = (char) buf[i];
+		gns.satsUsed = parseInt(7);
+		gns.hdop = (float) parseDouble(8);
+		gns.altitude = parseDouble(9);
+		gns.geoidSeparation = parseDouble(10);
+	}
+
+	private void parseVtg() {
+		vtg.clear();
+		if (parseChar(2) == 'T') {
+			// NMEA 2.0 and later: each value is followed by a unit field
+			vtg.courseTrue = (float) parseDouble(1);
+			vtg.courseMagnetic = (float) parseDouble(3);
+			vtg.speed = (float) parseDouble(7) * KMH_TO_METERS_PER_SECOND;
+			if (Float.isNaN(vtg.speed))
+				vtg.speed = (float) parseDouble(5) * KNOTS_TO_METERS_PER_SECOND;
+			vtg.mode = parseChar(9);
+		} else {
+			vtg.courseTrue = (float) parseDouble(1);
+			vtg.courseMagnetic = (float) parseDouble(2);
+			vtg.speed = (float) parseDouble(4) * KMH_TO_METERS_PER_SECOND;
+			if (Float.isNaN(vtg.speed))
+				vtg.speed = (float) parseDouble(3) * KNOTS_TO_METERS_PER_SECOND;
+		}
+	}
+
+	/**
+	 * Removes all satellites reported by {@code source} from the snapshot.
+	 */
+	private void removeSatellites(int source) {
+		int i = 0;
+		while (i < satellites.count) {
+			if (satTalker[i] == source) {
+				satTalker[i] = satTalker[satellites.count - 1];
+				satellites.remove(i);
+			} else
+				i++;
+		}
+	}
+
+	/**
+	 * Translates a satellite number reported by a talker into a satellite ID as used by
+	 * {@link SatelliteSnapshot}.
+	 * 
+	 * Receivers differ in whether they use the constellation's own satellite numbers or the NMEA
+	 * ID range for talkers other than {@code GP} and {@code GN}; numbers which already fall into the
+	 * range for the constellation are left unchanged. Other numbers are mapped in the same way as
+	 * those reported by {@code GnssStatus}, so that a satellite gets the same ID from either source.
+	 * 
+	 * @return The ID, or -1 if {@code prn} is not a valid number
+	 */
+	private static int toNmeaId(int talker, int prn) {
+		if (prn <= 0)
+			return -1;
+		int constellation = getTalkerConstellation(talker);
+		if ((constellation == SatelliteSnapshot.CONSTELLATION_UNKNOWN)
+				|| (SatelliteSnapshot.getConstellation(prn) == constellation))
+			return prn;
+		int id = SatelliteSnapshot.getId(constellation, prn);
+		return (id > 0) ? id : -1;
+	}
+
+	/**
+	 * Returns the constellation of a satellite, based on the talker which reported it where
+	 * possible.
+	 */
+	private static int getConstellation(int talker, int nmeaId) {
+		int constellation = getTalkerConstellation(talker);
+		if (constellation != SatelliteSnapshot.CONSTELLATION_UNKNOWN)
+			return constellation;
+		return SatelliteSnapshot.getConstellation(nmeaId);
+	}
+
+	/**
+	 * Returns the constellation reported by a talker, or
+	 * {@link SatelliteSnapshot#CONSTELLATION_UNKNOWN} for {@code GP}, {@code GN} and other talkers
+	 * which may report satellites from several constellations.
+	 */
+	private static int getTalkerConstellation(int talker) {
+		if (talker == TALKER_GL)
+			return SatelliteSnapshot.CONSTELLATION_GLONASS;
+		else if (talker == TALKER_GA)
+			return SatelliteSnapshot.CONSTELLATION_GALILEO;
+		else if ((talker == TALKER_GB) || (talker == TALKER_BD))
+			return SatelliteSnapshot.CONSTELLATION_BEIDOU;
+		else if ((talker == TALKER_GQ) || (talker == TALKER_QZ))
+			return SatelliteSnapshot.CONSTELLATION_QZSS;
+		else if (talker == TALKER_GI)
+			return SatelliteSnapshot.CONSTELLATION_IRNSS;
+		else
+			return SatelliteSnapshot.CONSTELLATION_UNKNOWN;
+	}
+
+	/**
+	 * Returns the talker ID which corresponds to an NMEA 4.1 GNSS system ID.
+	 */
+	private static int getTalkerForSystem(int systemId, int fallback) {
+		switch (systemId) {
+		case 1:
+			return TALKER_GP;
+		case 2:
+			return TALKER_GL;
+		case 3:
+			return TALKER_GA;
+		case 4:
+			return TALKER_GB;
+		case 5:
+			return TALKER_GQ;
+		case 6:
+			return TALKER_GI;
+		default:
+			return fallback;
+		}
+	}
+
+	/**
+	 * Returns the first character of a field, or 0 if the field is empty or missing.
+	 */
+	private char parseChar(int field) {
+		if ((field >= fieldCount) || (fieldStart[field] == fieldEnd[field]))
+			return 0;
+		return (char) buf[fieldStart[field]];
+	}
+
+	/**
+	 * Parses a non-negative integer field.
+	 * 
+	 * @return The value, or -1 if the field is empty, missing or not a valid number
+	 */
+	private int parseInt(int field) {
+		if (field >= fieldCount)
+			return -1;
+		int s = fieldStart[field];
+		int e = fieldEnd[field];
+		if ((s == e) || (e - s > 9))
+			return -1;
+		int res = 0;
+		for (int i = s; i < e; i++) {
+			int d = buf[i] - '0';
+			if ((d < 0) || (d > 9))
+				return -1;
+			res = res * 10 + d;
+		}
+		return res;
+	}
+
+	/**
+	 * Parses a decimal number field.
+	 * 
+	 * Digits beyond the 18th significant digit are ignored.
+	 * 
+	 * @return The value, or NaN if the field is empty, missing or not a valid number
+	 */
+	private double parseDouble(int field) {
+		if (field >= fieldCount)
+			return Double.NaN;
+		int i = fieldStart[field];
+		int e = fieldEnd[field];
+		boolean negative = false;
+		if ((i < e) && ((buf[i] == '-') || (buf[i] == '+'))) {
+			negative = (buf[i] == '-');
+			i++;
+		}
+		boolean hasDigits = false;
+		long mantissa = 0;
+		int digits = 0;
+		int decimals = -1;
+		for (; i < e; i++) {
+			int c = buf[i];
+			if (c == '.') {
+				if (decimals >= 0)
+					return Double.NaN;
+				decimals = 0;
+				continue;
+			}
+			int d = c - '0';
+			if ((d < 0) || (d > 9))
+				return Double.NaN;
+			hasDigits = true;
+			if ((digits < 18) && (decimals < 18)) {
+				if ((mantissa != 0) || (d != 0))
+					digits++;
+				mantissa = mantissa * 10 + d;
+				if (decimals >= 0)
+					decimals++;
+			} else if (decimals < 0)
+				return Double.NaN;
+		}
+		if (!hasDigits)
+			return Double.NaN;
+		double res = (decimals > 0) ? mantissa / POW10[decimals] : mantissa;
+		return negative ? -res : res;
+	}
+
+	/**
+	 * Parses a latitude or longitude in the form {@code dddmm.mmmm}, followed by a hemisphere
+	 * field.
+	 * 
+	 * @param negative The hemisphere designator for which the result is negative
+	 * @return The value in degrees, or NaN if either field is empty or invalid
+	 */
+	private double parseCoordinate(int field, char negative) {
+		double value = parseDouble(field);
+		char hemisphere = parseChar(field + 1);
+		if (Double.isNaN(value) || (hemisphere == 0))
+			return Double.NaN;
+		double degrees = Math.floor(value / 100);
+		double res = degrees + (value - degrees * 100) / 60;
+		return (hemisphere == negative) ? -res : res;
+	}
+
+	/**
+	 * Parses a time field in the form {@code hhmmss.sss}.
+	 * 
+	 * @return The time of day in milliseconds, or -1 if the field is empty or invalid
+	 */
+	private int parseTime(int field) {
+		if (field >= fieldCount)
+			return -1;
+		int s = fieldStart[field];
+		int e = fieldEnd[field];
+		if (e - s < 6)
+			return -1;
+		int hms = 0;
+		for (int i = s; i < s + 6; i++) {
+			int d = buf[i] - '0';
+			if ((d < 0) || (d > 9))
+				return -1;
+			hms = hms * 10 + d;
+		}
+		int millis = 0;
+		if (e > s + 6) {
+			if (buf[s + 6] != '.')
+				return -1;
+			int scale = 100;
+			for (int i = s + 7; i < e; i++) {
+				int d = buf[i] - '0';
+				if ((d < 0) || (d > 9))
+					return -1;
+				millis += d * scale;
+				scale /= 10;
+			}
+		}
+		return ((hms / 10000) * 3600 + ((hms / 100) % 100) * 60 + hms % 100) * 1000 + millis;
+	}
+
+	/**
+	 * Parses a date field in the form {@code ddmmyy}. Two-digit years from 80 onwards are taken to
+	 * be in the 20th century.
+	 * 
+	 * @return The number of days since 1970-01-01, or {@code Long.MIN_VALUE} if the field is empty
+	 * or invalid
+	 */
+	private long parseDate(int field) {
+		if ((field >= fieldCount) || (fieldEnd[field] - fieldStart[field] != 6))
+			return Long.MIN_VALUE;
+		int dmy = parseInt(field);
+		if (dmy < 0)
+			return Long.MIN_VALUE;
+		int d = dmy / 10000;
+		int m = (dmy / 100) % 100;
+		int y = dmy % 100;
+		y += (y < 80) ? 2000 : 1900;
+		if ((d < 1) || (d > 31) || (m < 1) || (m > 12))
+			return Long.MIN_VALUE;
+		// days from civil date, see http://howardhinnant.github.io/date_algorithms.html
+		if (m <= 2)
+			y--;
+		int era = y / 400;
+		int yoe = y - era * 400;
+		int doy = (153 * (m + ((m > 2) ? -3 : 9)) + 2) / 5 + d - 1;
+		int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097L + doe - 719468;
+	}
+
+	private static int hexValue(byte c) {
+		if ((c >= '0') && (c <= '9'))
+			return c - '0';
+		else if ((c >= 'A') && (c <= 'F'))
+			return c - 'A' + 10;
+		else if ((c >= 'a') && (c <= 'f'))
+			return c - 'a' + 10;
+		else
+			return -1;
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free buffer which passes NMEA sentences from one producer thread to one consumer thread.
+ * <p>
+ * Sentences are stored as ASCII text, each terminated with CR LF, in a circular byte array. The
+ * producer never blocks: if a sentence does not fit into the free space, it is dropped and counted
+ * (see {@link #getDropped()}). The consumer copies everything written so far to an output stream in
+ * at most two writes. Since sentences are only published once they have been written completely,
+ * the consumer always sees whole lines.
+ * <p>
+ * Exactly one thread may call {@link #offer(CharSequence)}, and exactly one (possibly different)
+ * thread may call {@link #drainTo(OutputStream)}. Neither method allocates any objects.
+ */
+public class NmeaRingBuffer {
+	private final byte[] buffer;
+	private final int mask;
+
+	/** Total number of bytes written by the producer, published after each sentence */
+	private final AtomicLong writePos = new AtomicLong();
+
+	/** Total number of bytes consumed, published after each drain */
+	private final AtomicLong readPos = new AtomicLong();
+
+	/** Number of sentences dropped because the buffer was full */
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * @param capacity The capacity in bytes, which is rounded up to the next power of two
+	 */
+	public NmeaRingBuffer(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, 256) - 1) << 1;
+		buffer = new byte[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Appends a sentence to the buffer.
+	 * <p>
+	 * Any trailing line break in {@code sentence} is replaced with CR LF. Characters outside the
+	 * ASCII range, which are not valid in NMEA sentences, are replaced with {@code ?}.
+	 * 
+	 * @return True if the sentence was added, false if it was dropped because the buffer is full
+	 */
+	public boolean offer(CharSequence sentence) {
+		int len = sentence.length();
+		while ((len > 0) && ((sentence.charAt(len - 1) == '\r') || (sentence.charAt(len - 1) == '\n')))
+			len--;
+		long w = writePos.get();
+		if (len + 2 > buffer.length - (w - readPos.get())) {
+			dropped.incrementAndGet();
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			char c = sentence.charAt(i);
+			buffer[(int) (w++ & mask)] = (c < 0x80) ? (byte) c : (byte) '?';
+		}
+		buffer[(int) (w++ & mask)] = '\r';
+		buffer[(int) (w++ & mask)] = '\n';
+		writePos.lazySet(w);
+		return true;
+	}
+
+	/**
+	 * Writes all complete sentences in the buffer to {@code out} and removes them from the buffer.
+	 * 
+	 * @return The number of bytes written
+	 */
+	public int drainTo(OutputStream out) throws IOException {
+		long r = readPos.get();
+		long w = writePos.get();
+		int count = (int) (w - r);
+		if (count == 0)
+			return 0;
+		int start = (int) (r & mask);
+		int first = Math.min(count, buffer.length - start);
+		out.write(buffer, start, first);
+		if (first < count)
+			out.write(buffer, 0, count - first);
+		readPos.lazySet(w);
+		return count;
+	}
+
+	/**
+	 * Returns the number of sentences dropped so far because the buffer was full.
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Whether the buffer holds any data which has not been drained yet.
+	 */
+	public boolean isEmpty() {
+		return writePos.get() == readPos.get();
+	}
+}
@@ -0,0 +1,618 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+import static android.telephony.PhoneStateListener.LISTEN_CELL_INFO;
+import static android.telephony.PhoneStateListener.LISTEN_CELL_LOCATION;
+import static android.telephony.PhoneStateListener.LISTEN_DATA_CONNECTION_STATE;
+import static android.telephony.PhoneStateListener.LISTEN_NONE;
+import static android.telephony.PhoneStateListener.LISTEN_SIGNAL_STRENGTHS;
+import static android.telephony.TelephonyManager.PHONE_TYPE_CDMA;
+import static android.telephony.TelephonyManager.PHONE_TYPE_GSM;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.Manifest;
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.support.v4.content.ContextCompat;
+import android.telephony.CellInfo;
+import android.telephony.CellLocation;
+import android.telephony.NeighboringCellInfo;
+import android.telephony.PhoneStateListener;
+import android.telephony.SignalStrength;
+import android.telephony.TelephonyManager;
+import android.telephony.cdma.CdmaCellLocation;
+import android.telephony.gsm.GsmCellLocation;
+import android.util.Log;
+
+/**
+ * Collects data on the cells and WiFi access points in range.
+ * <p>
+ * All collection runs on a dedicated background thread: phone state and WiFi scan events are
+ * received there, and the blocking calls into {@link TelephonyManager} and {@link WifiManager} are
+ * made from there. Whenever the data changes, the collector publishes an immutable
+ * {@link RadioSnapshot} to all registered {@link Listener}s.
+ * <p>
+ * Listeners are registered with a {@link Handler} on whose thread they are called. If a listener
+ * has not yet processed a snapshot when the next one is published, it only receives the newer one.
+ * <p>
+ * {@link #start()}, {@link #stop()}, {@link #refresh()}, {@link #startWifiScans()},
+ * {@link #stopWifiScans()} and {@link #close()} must be called on the main thread. Listeners may be added or removed from any
+ * thread.
+ */
+public class RadioCollector {
+	private static final String TAG = RadioCollector.class.getSimpleName();
+
+	/** The polling interval for the network type */
+	private static final int NETWORK_REFRESH_DELAY = 1000;
+
+	/** The time between two requests for a WiFi rescan */
+	private static final int WIFI_REFRESH_DELAY = 1000;
+
+	/**
+	 * Receives snapshots from a {@link RadioCollector}.
+	 */
+	public interface Listener {
+		/**
+		 * Called when the cells or WiFi access points in range have changed.
+		 *
+		 * @param snapshot The current data
+		 */
+		public void onRadioSnapshot(RadioSnapshot snapshot);
+	}
+
+	/**
+	 * A registered listener, which delivers snapshots on the thread of its handler.
+	 */
+	private class Registration implements Runnable {
+		final Listener listener;
+		final Handler handler;
+
+		/** The snapshot to deliver, or {@code null} if there is none or delivery is already underway */
+		final AtomicReference<RadioSnapshot> pending = new AtomicReference<RadioSnapshot>();
+
+		Registration(Listener listener, Handler handler) {
+			this.listener = listener;
+			this.handler = handler;
+		}
+
+		/**
+		 * Queues a snapshot for delivery, replacing any that has not yet been delivered.
+		 */
+		void post(RadioSnapshot snapshot) {
+			if (pending.getAndSet(snapshot) == null)
+				handler.post(this);
+		}
+
+		@Override
+		public void run() {
+			RadioSnapshot snapshot = pending.getAndSet(null);
+			if ((snapshot != null) && registrations.contains(this))
+				listener.onRadioSnapshot(snapshot);
+		}
+	}
+
+	private final Context context;
+	private final TelephonyManager telephonyManager;
+	private final ConnectivityManager connectivityManager;
+	private final WifiManager wifiManager;
+
+	private final HandlerThread thread;
+	private final Handler handler;
+
+	private final CopyOnWriteArrayList<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+
+	/** The last snapshot published */
+	private volatile RadioSnapshot snapshot = RadioSnapshot.EMPTY;
+
+	/** Whether to request a WiFi scan every {@link #WIFI_REFRESH_DELAY} milliseconds */
+	private volatile boolean wifiScanning = false;
+
+	/** Number of calls to {@link #startWifiScans()} not yet matched by {@link #stopWifiScans()} */
+	private int wifiScanRequests = 0;
+
+	/*
+	 * The following fields are only accessed on the collector thread.
+	 */
+	private boolean started = false;
+	private PhoneStateListener phoneStateListener = null;
+	private CellTower mServingCell;
+	private final CellTowerListGsm mCellsGsm = new CellTowerListGsm();
+	private final CellTowerListCdma mCellsCdma = new CellTowerListCdma();
+	private final CellTowerListLte mCellsLte = new CellTowerListLte();
+	private int mLastNetworkGen = 0;
+	private int mLastCellAsu = NeighboringCellInfo.UNKNOWN_RSSI;
+	private int mLastCellDbm = CellTower.DBM_UNKNOWN;
+	private List<ScanResult> wifiResults = Collections.emptyList();
+	private int wifiVersion = 0;
+
+	/**
+	 * Polls the network type while it is unknown.
+	 */
+	private final Runnable networkTimeRunnable = new Runnable() {
+		@Override
+		public void run() {
+			int newNetworkType = telephonyManager.getNetworkType();
+			if (CellTower.getGenerationFromNetworkType(newNetworkType) != mLastNetworkGen) {
+				onNetworkTypeChanged(newNetworkType);
+				publish();
+			} else
+				handler.postDelayed(this, NETWORK_REFRESH_DELAY);
+		}
+	};
+
+	/**
+	 * Requests a WiFi scan periodically while {@link #wifiScanning} is set.
+	 */
+	private final Runnable wifiTimeRunnable = new Runnable() {
+		@Override
+		public void run() {
+			if (!started || !wifiScanning)
+				return;
+			wifiManager.startScan();
+			handler.postDelayed(this, WIFI_REFRESH_DELAY);
+		}
+	};
+
+	/**
+	 * Receives WiFi scan results, and triggers a rescan when the WiFi setup changes.
+	 */
+	private final BroadcastReceiver wifiScanReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context c, Intent intent) {
+			if (WifiManager.SCAN_RESULTS_AVAILABLE_ACTION.equals(intent.getAction())) {
+				List<ScanResult> results = wifiManager.getScanResults();
+				wifiResults = (results == null) ? Collections.<ScanResult>emptyList()
+						: Collections.unmodifiableList(new ArrayList<ScanResult>(results));
+				wifiVersion++;
+				publish();
+			} else {
+				//something has changed about WiFi setup, rescan
+				wifiManager.startScan();
+			}
+		}
+	};
+
+	/**
+	 * Creates a new collector and starts its thread. The collector does not collect any data until
+	 * {@link #start()} is called.
+	 */
+	public RadioCollector(Context context) {
+		this.context = context.getApplicationContext();
+		telephonyManager = (TelephonyManager) this.context.getSystemService(Context.TELEPHONY_SERVICE);
+		connectivityManager = (ConnectivityManager) this.context.getSystemService(Context.CONNECTIVITY_SERVICE);
+		wifiManager = (WifiManager) this.context.getSystemService(Context.WIFI_SERVICE);
+		thread = new HandlerThread(TAG);
+		thread.start();
+		handler = new Handler(thread.getLooper());
+	}
+
+	/**
+	 * Registers a listener.
+	 * <p>
+	 * If the collector has already published data, the listener receives the last snapshot right
+	 * away, so it does not have to wait for the next change.
+	 *
+	 * @param listener The listener
+	 * @param handler The handler on whose thread the listener will be called
+	 */
+	public void addListener(Listener listener, Handler handler) {
+		Registration registration = new Registration(listener, handler);
+		registrations.add(registration);
+		RadioSnapshot current = snapshot;
+		if (current != RadioSnapshot.EMPTY)
+			registration.post(current);
+	}
+
+	/**
+	 * Unregisters a listener. Once this method returns, the listener will not be called again.
+	 * <p>
+	 * This is guaranteed only if the method is called on the thread of the handler with which the
+	 * listener was registered.
+	 */
+	public void removeListener(Listener listener) {
+		for (Registration registration : registrations)
+			if (registration.listener == listener)
+				registrations.remove(registration);
+	}
+
+	/**
+	 * Returns the last snapshot published, or {@link RadioSnapshot#EMPTY} if there is none yet.
+	 */
+	public RadioSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Starts collecting data.
+	 * <p>
+	 * Cell data requires permission to access fine location. If that permission has not been granted
+	 * yet, only WiFi data is collected; call {@link #refresh()} once permission has been granted.
+	 */
+	public void start() {
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				if (started)
+					return;
+				started = true;
+				IntentFilter filter = new IntentFilter();
+				// An access point scan has completed, and results are available.
+				filter.addAction(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION);
+				// The state of Wi-Fi connectivity has changed.
+				filter.addAction(WifiManager.NETWORK_STATE_CHANGED_ACTION);
+				// The RSSI (signal strength) has changed.
+				filter.addAction(WifiManager.RSSI_CHANGED_ACTION);
+				// A connection to the supplicant has been established or the connection to the supplicant has been lost.
+				filter.addAction(WifiManager.SUPPLICANT_CONNECTION_CHANGE_ACTION);
+				context.registerReceiver(wifiScanReceiver, filter, null, handler);
+				wifiManager.startScan();
+				handler.removeCallbacks(wifiTimeRunnable);
+				handler.postDelayed(wifiTimeRunnable, WIFI_REFRESH_DELAY);
+				startCells();
+			}
+		});
+	}
+
+	/**
+	 * Stops collecting data. The data collected so far is retained.
+	 */
+	public void stop() {
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				if (!started)
+					return;
+				started = false;
+				handler.removeCallbacks(networkTimeRunnable);
+				handler.removeCallbacks(wifiTimeRunnable);
+				if (phoneStateListener != null) {
+					telephonyManager.listen(phoneStateListener, LISTEN_NONE);
+					phoneStateListener = null;
+				}
+				context.unregisterReceiver(wifiScanReceiver);
+			}
+		});
+	}
+
+	/**
+	 * Requeries all cell data, and starts listening for cell updates if that has not happened yet.
+	 * <p>
+	 * Call this method after permission to access fine location has been granted.
+	 */
+	public void refresh() {
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				if (started)
+					startCells();
+			}
+		});
+	}
+
+	/**
+	 * Starts requesting WiFi scans periodically.
+	 * <p>
+	 * Calls nest: scans are requested until each call has been matched by a call to
+	 * {@link #stopWifiScans()}. Regardless of this, scans are requested when the collector is
+	 * started and whenever the WiFi setup changes, and results of scans requested by other apps are
+	 * always processed.
+	 */
+	public void startWifiScans() {
+		if (wifiScanRequests++ == 0)
+			setWifiScanning(true);
+	}
+
+	/**
+	 * Stops requesting WiFi scans periodically, unless other callers still need them.
+	 */
+	public void stopWifiScans() {
+		if ((wifiScanRequests > 0) && (--wifiScanRequests == 0))
+			setWifiScanning(false);
+	}
+
+	/**
+	 * Stops collecting data and terminates the collector thread. The collector cannot be used after
+	 * this method has been called.
+	 */
+	public void close() {
+		stop();
+		registrations.clear();
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				thread.quit();
+			}
+		});
+	}
+
+	private void setWifiScanning(boolean wifiScanning) {
+		this.wifiScanning = wifiScanning;
+		handler.removeCallbacks(wifiTimeRunnable);
+		if (wifiScanning)
+			handler.postDelayed(wifiTimeRunnable, WIFI_REFRESH_DELAY);
+	}
+
+	/**
+	 * Registers the phone state listener, if permission has been granted, and queries current cell
+	 * data. Called on the collector thread.
+	 */
+	private void startCells() {
+		if (ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED)
+			return;
+		if (phoneStateListener == null) {
+			// PhoneStateListener delivers events on the looper of the thread which creates it
+			phoneStateListener = new PhoneStateListener() {
+				@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+				public void onCellInfoChanged(List<CellInfo> cellInfo) {
+					if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1)
+						return;
+					updateCellData(null, null, cellInfo);
+					publish();
+				}
+
+				public void onCellLocationChanged (CellLocation location) {
+					updateCellData(location, null, null);
+					publish();
+				}
+
+				public void onDataConnectionStateChanged (int state, int networkType) {
+					onNetworkTypeChanged(networkType);
+					publish();
+				}
+
+				public void onSignalStrengthsChanged (SignalStrength signalStrength) {
+					updateCellData(null, signalStrength, null);
+					publish();
+				}
+			};
+			telephonyManager.listen(phoneStateListener, (LISTEN_CELL_INFO | LISTEN_CELL_LOCATION | LISTEN_DATA_CONNECTION_STATE | LISTEN_SIGNAL_STRENGTHS));
+		}
+		//get current phone info (first update won't fire until the cell actually changes)
+		updateCellData(null, null, null);
+		//and make sure we have the correct network type
+		onNetworkTypeChanged(telephonyManager.getNetworkType());
+		publish();
+	}
+
+	/**
+	 * Publishes a new snapshot if anything has changed since the last one. Called on the collector
+	 * thread.
+	 * <p>
+	 * Lists which have not changed are taken over from the last snapshot, so that only changed lists
+	 * are copied.
+	 */
+	private void publish() {
+		RadioSnapshot last = snapshot;
+		int gsmVersion = mCellsGsm.getVersion();
+		int cdmaVersion = mCellsCdma.getVersion();
+		int lteVersion = mCellsLte.getVersion();
+		if ((gsmVersion == last.gsmVersion)
+				&& (cdmaVersion == last.cdmaVersion)
+				&& (lteVersion == last.lteVersion)
+				&& (mLastNetworkGen == last.networkGeneration)
+				&& (wifiVersion == last.wifiVersion))
+			return;
+		RadioSnapshot next = new RadioSnapshot(SystemClock.elapsedRealtime(),
+				(gsmVersion == last.gsmVersion) ? last.cellsGsm : mCellsGsm.copyAll(), gsmVersion,
+				(cdmaVersion == last.cdmaVersion) ? last.cellsCdma : mCellsCdma.copyAll(), cdmaVersion,
+				(lteVersion == last.lteVersion) ? last.cellsLte : mCellsLte.copyAll(), lteVersion,
+				mLastNetworkGen, wifiResults, wifiVersion);
+		snapshot = next;
+		for (Registration registration : registrations)
+			registration.post(next);
+	}
+
+	/**
+	 * Updates the network type of the current cell. Called on the collector thread.
+	 *
+	 * @param networkType One of the NETWORK_TYPE_xxxx constants defined in {@link android.telephony.TelephonyManager}
+	 */
+	private void onNetworkTypeChanged(int networkType) {
+		Log.d(TAG, "Network type changed to " + Integer.toString(networkType));
+		int newNetworkGen = CellTower.getGenerationFromNetworkType(networkType);
+		int oldNetworkGen = mLastNetworkGen;
+		if (newNetworkGen != mLastNetworkGen) {
+			handler.removeCallbacks(networkTimeRunnable);
+			mLastNetworkGen = newNetworkGen;
+			/*
+			 * Network type changes occur slightly before or after cell changes. Therefore, we may have
+			 * stored cells in the wrong list when switching from or to LTE.
+			 */
+			if ((newNetworkGen == 4) || (oldNetworkGen == 4))
+				updateCellData(null, null, null);
+			else if (mServingCell != null) {
+				mServingCell.setNetworkType(networkType);
+				invalidateCells();
+				Log.d(TAG, String.format("Setting network type to %d for cell %s (%s)", mServingCell.getGeneration(), mServingCell.getText(), mServingCell.getAltText()));
+			}
+		}
+	}
+
+	/**
+	 * Updates all cell data. Called on the collector thread.
+	 * 
+	 * This method is called whenever any change in the cell environment (cells in view or signal
+	 * strengths) is signaled by the {@link android.telephony.PhoneStateListener}. The arguments of
+	 * this method should be filled with the data passed to the listener where possible, and null
+	 * passed for all others.
+	 * 
+	 * To force an update of all cell data, simply call this method with each argument set to null.
+	 * 
+	 * If any of the arguments is null, this method will try to obtain that data by querying
+	 * {@link android.telephony.TelephonyManager}. The only exception is {@code signalStrength}, which
+	 * will not be explicitly queried if missing.
+	 * 
+	 * It will first process {@code aCellInfo}, then {@code aLocation}, querying current values from
+	 * {@link android.telephony.TelephonyManager} if one of these arguments is null. Next it will process
+	 * {@code signalStrength}, if supplied, and eventually obtain neighboring cells by calling
+	 * {@link android.telephony.TelephonyManager#getNeighboringCellInfo()} and process these.
+	 * 
+	 * @param aLocation The {@link android.telephony.CellLocation} reported by a
+	 * {@link android.telephony.PhoneStateListener}. If null, the current value will be queried.
+	 * @param aSignalStrength The {@link android.telephony.SignalStrength} reported by a
+	 * {@link android.telephony.PhoneStateListener}. If null, the signal strength of the serving cell
+	 * will either be taken from {@code aCellInfo}, if available, or not be updated at all.
+	 * @param aCellInfo A list of {@link android.telephony.CellInfo} instances reported by a
+	 * {@link android.telephony.PhoneStateListener}. If null, the current value will be queried.
+	 */
+	@SuppressLint("NewApi")
+	private void updateCellData(CellLocation aLocation, SignalStrength signalStrength, List<CellInfo> aCellInfo) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+			try {
+				/*
+				 * CellInfo requires API 17+ and should in theory return all cells in view. In practice,
+				 * some devices do not implement it or return only a partial list. On some devices,
+				 * PhoneStateListener#onCellInfoChanged() will fire but always receive a null argument.
+				 */
+				List<CellInfo> cellInfo = (aCellInfo != null) ? aCellInfo : telephonyManager.getAllCellInfo();
+				mCellsGsm.updateAll(cellInfo);
+				mCellsCdma.updateAll(cellInfo);
+				mCellsLte.updateAll(cellInfo);
+			} catch (SecurityException e) {
+				// Permission not granted, can't retrieve cell data
+				Log.w(TAG, "Permission not granted, TelephonyManager#getAllCellInfo() failed");
+			}
+		}
+
+		try {
+			/*
+			 * CellLocation should return the serving cell, unless it is LTE (in which case it should
+			 * return null). In practice, however, some devices do return LTE cells. The approach of
+			 * this method does not work well for devices with multiple radios.
+			 */
+			CellLocation location = (aLocation != null) ? aLocation : telephonyManager.getCellLocation();
+			String networkOperator = telephonyManager.getNetworkOperator();
+			mCellsGsm.removeSource(CellTower.SOURCE_CELL_LOCATION);
+			mCellsCdma.removeSource(CellTower.SOURCE_CELL_LOCATION);
+			mCellsLte.removeSource(CellTower.SOURCE_CELL_LOCATION);
+			if (location instanceof GsmCellLocation) {
+				if (mLastNetworkGen < 4) {
+					mServingCell = mCellsGsm.update(networkOperator, (GsmCellLocation) location);
+					if ((mServingCell.getDbm() == CellTower.DBM_UNKNOWN) && (mServingCell instanceof CellTowerGsm)) {
+						((CellTowerGsm) mServingCell).setAsu(mLastCellAsu);
+						mCellsGsm.invalidate();
+					}
+				} else {
+					mServingCell = mCellsLte.update(networkOperator, (GsmCellLocation) location);
+					if (mServingCell.getDbm() == CellTower.DBM_UNKNOWN) {
+						((CellTowerLte) mServingCell).setAsu(mLastCellAsu);
+						mCellsLte.invalidate();
+					}
+				}
+			} else if (location instanceof CdmaCellLocation) {
+				mServingCell = mCellsCdma.update((CdmaCellLocation) location);
+				if (mServingCell.getDbm() == CellTower.DBM_UNKNOWN) {
+					((CellTowerCdma) mServingCell).setDbm(mLastCellDbm);
+					mCellsCdma.invalidate();
+				}
+			}
+			handler.removeCallbacks(networkTimeRunnable);
+		} catch (SecurityException e) {
+			// Permission not granted, can't retrieve cell data
+			Log.w(TAG, "Permission not granted, cannot retrieve cell location");
+		}
+
+		if ((mServingCell == null) || (mServingCell.getGeneration() <= 0)) {
+			if ((mLastNetworkGen != 0) && (mServingCell != null)) {
+				mServingCell.setGeneration(mLastNetworkGen);
+				invalidateCells();
+			}
+			NetworkInfo netinfo = connectivityManager.getActiveNetworkInfo();
+			if ((netinfo == null)
+					|| (netinfo.getType() < ConnectivityManager.TYPE_MOBILE_MMS)
+					|| (netinfo.getType() > ConnectivityManager.TYPE_MOBILE_HIPRI)) {
+				handler.postDelayed(networkTimeRunnable, NETWORK_REFRESH_DELAY);
+			}
+		} else if (mServingCell != null) {
+			mLastNetworkGen = mServingCell.getGeneration();
+		}
+
+		if ((signalStrength != null) && (mServingCell != null)) {
+			int pt = telephonyManager.getPhoneType();
+			if (pt == PHONE_TYPE_GSM) {
+				mLastCellAsu = signalStrength.getGsmSignalStrength();
+				if (mServingCell instanceof CellTowerGsm) {
+					((CellTowerGsm) mServingCell).setAsu(mLastCellAsu);
+					mCellsGsm.invalidate();
+				} else
+					Log.w(TAG, "Got SignalStrength for PHONE_TYPE_GSM but serving cell is not GSM");
+			} else if (pt == PHONE_TYPE_CDMA) {
+				mLastCellDbm = signalStrength.getCdmaDbm();
+				if ((mServingCell != null) && (mServingCell instanceof CellTowerCdma)) {
+					mServingCell.setDbm(mLastCellDbm);
+					mCellsCdma.invalidate();
+				} else
+					Log.w(TAG, "Got SignalStrength for PHONE_TYPE_CDMA but serving cell is not CDMA");
+			} else
+				Log.w(TAG, String.format("Got SignalStrength for unknown phone type (%d)", pt));
+		} else if (mServingCell == null) {
+			Log.w(TAG, "Got SignalStrength but serving cell is null");
+		}
+
+		updateNeighboringCellInfo();
+	}
+
+	/**
+	 * Marks all cell lists as changed. Call this method after modifying {@link #mServingCell} directly.
+	 */
+	private void invalidateCells() {
+		mCellsGsm.invalidate();
+		mCellsCdma.invalidate();
+		mCellsLte.invalidate();
+	}
+
+	/**
+	 * Requeries neighboring cells. Called on the collector thread.
+	 */
+	private void updateNeighboringCellInfo() {
+		try {
+			/*
+			 * NeighboringCellInfo is not supported on some devices and will return no data. It lists
+			 * only GSM and successors' cells, but not CDMA cells.
+			 */
+			List<NeighboringCellInfo> neighboringCells = telephonyManager.getNeighboringCellInfo();
+			String networkOperator = telephonyManager.getNetworkOperator();
+			mCellsGsm.updateAll(networkOperator, neighboringCells);
+			mCellsLte.updateAll(networkOperator, neighboringCells);
+		} catch (SecurityException e) {
+			// Permission not granted, can't retrieve cell data
+			Log.w(TAG, "Permission not granted, cannot get neighboring cell info");
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+import java.util.Collections;
+import java.util.List;
+
+import android.net.wifi.ScanResult;
+
+/**
+ * The cells and WiFi access points in range at a given time, as published by {@link RadioCollector}.
+ * <p>
+ * Snapshots are immutable and can be passed between threads freely. The lists they hold are
+ * read-only and contain copies of the collector's data; consumers must not modify the cells or
+ * scan results in them.
+ * <p>
+ * Each list comes with a version, which changes whenever the list changes. A list whose version
+ * is the same as in a previous snapshot is the very same instance, so consumers can compare
+ * versions to skip work.
+ */
+public class RadioSnapshot {
+	/** A snapshot with no data */
+	public static final RadioSnapshot EMPTY = new RadioSnapshot(0,
+			Collections.<CellTowerGsm>emptyList(), -1,
+			Collections.<CellTowerCdma>emptyList(), -1,
+			Collections.<CellTowerLte>emptyList(), -1,
+			0, Collections.<ScanResult>emptyList(), -1);
+
+	/** Time at which the snapshot was taken, as returned by {@link android.os.SystemClock#elapsedRealtime()} */
+	public final long time;
+
+	/** GSM and UMTS cells in range, sorted with the serving cell first */
+	public final List<CellTowerGsm> cellsGsm;
+
+	/** Version of {@link #cellsGsm} */
+	public final int gsmVersion;
+
+	/** CDMA cells in range, sorted with the serving cell first */
+	public final List<CellTowerCdma> cellsCdma;
+
+	/** Version of {@link #cellsCdma} */
+	public final int cdmaVersion;
+
+	/** LTE cells in range, sorted with the serving cell first */
+	public final List<CellTowerLte> cellsLte;
+
+	/** Version of {@link #cellsLte} */
+	public final int lteVersion;
+
+	/** Generation of the current network type (2, 3 or 4), or 0 if unknown */
+	public final int networkGeneration;
+
+	/** Results of the last WiFi scan, in the order reported by the system */
+	public final List<ScanResult> wifiResults;
+
+	/** Version of {@link #wifiResults} */
+	public final int wifiVersion;
+
+	RadioSnapshot(long time, List<CellTowerGsm> cellsGsm, int gsmVersion,
+			List<CellTowerCdma> cellsCdma, int cdmaVersion,
+			List<CellTowerLte> cellsLte, int lteVersion,
+			int networkGeneration, List<ScanResult> wifiResults, int wifiVersion) {
+		this.time = time;
+		this.cellsGsm = cellsGsm;
+		this.gsmVersion = gsmVersion;
+		this.cellsCdma = cellsCdma;
+		this.cdmaVersion = cdmaVersion;
+		this.cellsLte = cellsLte;
+		this.lteVersion = lteVersion;
+		this.networkGeneration = networkGeneration;
+		this.wifiResults = wifiResults;
+		this.wifiVersion = wifiVersion;
+	}
+
+	/**
+	 * Returns a key which identifies a WiFi access point.
+	 * 
+	 * @param bssid The BSSID in the usual {@code xx:xx:xx:xx:xx:xx} notation
+	 * @return The 48-bit MAC address as a {@code long}, or the hash code of {@code bssid} if it
+	 * cannot be parsed
+	 */
+	public static long getWifiKey(String bssid) {
+		if ((bssid == null) || (bssid.length() != 17))
+			return (bssid == null) ? 0 : bssid.hashCode();
+		long res = 0;
+		for (int i = 0; i < 17; i++) {
+			if (i % 3 == 2)
+				continue;
+			int digit = Character.digit(bssid.charAt(i), 16);
+			if (digit < 0)
+				return bssid.hashCode();
+			res = (res << 4) | digit;
+		}
+		return res;
+	}
+
+	/**
+	 * Returns the serving cell, or {@code null} if none of the lists has one.
+	 */
+	public CellTower getServingCell() {
+		for (CellTower cell : cellsGsm)
+			if (cell.isServing())
+				return cell;
+		for (CellTower cell : cellsCdma)
+			if (cell.isServing())
+				return cell;
+		for (CellTower cell : cellsLte)
+			if (cell.isServing())
+				return cell;
+		return null;
+	}
+}
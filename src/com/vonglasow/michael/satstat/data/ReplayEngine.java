@@ -0,0 +1,339 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Replays a recorded NMEA log or track.
+ * <p>
+ * A scheduler thread reads the log and passes each fix, and for NMEA logs the satellites in view,
+ * to a {@link Listener}. Events are delivered at the pace at which they were recorded, multiplied
+ * by a speed factor, or as fast as the listener accepts them ({@link #SPEED_MAX}). The log is read
+ * as it is replayed, so logs of any length can be replayed in constant memory.
+ * <p>
+ * In NMEA logs, sentences with the same UTC time of day form an epoch. At the end of each epoch, the
+ * listener receives the satellites (if a complete series of GSV sentences was seen) and then the
+ * fix (if the epoch contained a valid position). Position, altitude and satellite count are taken
+ * from GGA, RMC or GNS, speed and bearing from RMC, accuracy from GST if present, else it is
+ * estimated from the HDOP.
+ */
+public class ReplayEngine {
+	/** Speed factor for replaying as fast as possible */
+	public static final int SPEED_MAX = 0;
+
+	/** Log format: NMEA sentences, one per line */
+	public static final int FORMAT_NMEA = 0;
+
+	/** Log format: track recorded by {@link TrackWriter} */
+	public static final int FORMAT_TRACK = 1;
+
+	/**
+	 * Assumed error in meters for an HDOP of 1, used to estimate accuracy if the log has no GST
+	 * sentences
+	 */
+	private static final float HDOP_TO_ACCURACY = 5f;
+
+	private static final int MILLIS_PER_DAY = 86400000;
+
+	/**
+	 * Receives replayed events.
+	 * <p>
+	 * All methods are called on the scheduler thread. Implementations may block in order to slow
+	 * down the replay, which is how {@link ReplayEngine#SPEED_MAX} adapts to the consumer. The
+	 * objects passed are reused for the next event and must not be retained.
+	 */
+	public interface Listener {
+		/**
+		 * Called for each fix.
+		 */
+		public void onReplayLocation(TrackPoint point);
+
+		/**
+		 * Called whenever the satellites in view have been updated.
+		 */
+		public void onReplaySatellites(SatelliteSnapshot satellites);
+
+		/**
+		 * Called when the replay ends, either because the end of the log was reached, because
+		 * {@link ReplayEngine#stop()} was called or because of an error.
+		 * 
+		 * @param error The error which ended the replay, or null
+		 */
+		public void onReplayFinished(IOException error);
+	}
+
+	private final InputStream in;
+	private final int format;
+	private final int speed;
+	private final Listener listener;
+
+	private Thread schedulerThread = null;
+	private volatile boolean stopped = false;
+
+	/*
+	 * The following are accessed only by the scheduler thread
+	 */
+	private final TrackPoint point = new TrackPoint();
+	private NmeaParser parser;
+	private byte[] line;
+	private long firstTime = Long.MIN_VALUE;
+	private long startNanos;
+
+	/* NMEA epoch assembly */
+	private int epochTimeOfDay = -1;
+	private int lastTimeOfDay = -1;
+	private long dayStart = 0;
+	private float epochHdop = Float.NaN;
+	private boolean epochSatellites = false;
+
+	/**
+	 * @param in The log to replay, which is closed at the end of the replay
+	 * @param format The format of the log, {@link #FORMAT_NMEA} or {@link #FORMAT_TRACK}
+	 * @param speed The speed factor, or {@link #SPEED_MAX}
+	 * @param listener The listener which receives replayed events
+	 */
+	public ReplayEngine(InputStream in, int format, int speed, Listener listener) {
+		this.in = new BufferedInputStream(in);
+		this.format = format;
+		this.speed = speed;
+		this.listener = listener;
+	}
+
+	/**
+	 * Starts the replay on a new scheduler thread.
+	 */
+	public synchronized void start() {
+		if (schedulerThread != null)
+			return;
+		schedulerThread = new Thread(new Runnable() {
+			public void run() {
+				replay();
+			}
+		}, "ReplayEngine");
+		schedulerThread.start();
+	}
+
+	/**
+	 * Stops the replay. The listener is notified when the scheduler thread has finished.
+	 */
+	public synchronized void stop() {
+		stopped = true;
+		if (schedulerThread != null)
+			schedulerThread.interrupt();
+	}
+
+	/**
+	 * Runs the replay on the calling thread, returning when it has finished.
+	 */
+	public void run() {
+		replay();
+	}
+
+	private void replay() {
+		IOException error = null;
+		try {
+			if (format == FORMAT_TRACK)
+				replayTrack();
+			else
+				replayNmea();
+		} catch (IOException e) {
+			error = e;
+		} catch (InterruptedException e) {
+			// stopped
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// NOP
+			}
+		}
+		listener.onReplayFinished(error);
+	}
+
+	private void replayTrack() throws IOException, InterruptedException {
+		TrackReader reader = new TrackReader(in);
+		while (!stopped && reader.read(point)) {
+			waitUntil(point.time);
+			listener.onReplayLocation(point);
+		}
+	}
+
+	private void replayNmea() throws IOException, InterruptedException {
+		parser = new NmeaParser();
+		line = new byte[NmeaParser.MAX_LENGTH];
+		clearPoint();
+		int length;
+		while (!stopped && ((length = readLine()) >= 0)) {
+			switch (parser.parse(line, 0, length)) {
+			case NmeaParser.TYPE_GGA:
+				beginEpoch(parser.gga.timeOfDay);
+				if (parser.gga.quality > 0)
+					setPosition(parser.gga.latitude, parser.gga.longitude,
+							parser.gga.altitude, parser.gga.geoidSeparation);
+				if (parser.gga.satsUsed >= 0)
+					point.satsUsed = parser.gga.satsUsed;
+				if (!Float.isNaN(parser.gga.hdop))
+					epochHdop = parser.gga.hdop;
+				break;
+			case NmeaParser.TYPE_RMC:
+				beginEpoch(parser.rmc.timeOfDay);
+				if (parser.rmc.time >= 0)
+					dayStart = parser.rmc.time - parser.rmc.timeOfDay;
+				if (parser.rmc.valid) {
+					setPosition(parser.rmc.latitude, parser.rmc.longitude, Double.NaN, Double.NaN);
+					point.speed = parser.rmc.speed;
+					point.bearing = parser.rmc.course;
+				}
+				break;
+			case NmeaParser.TYPE_GNS:
+				beginEpoch(parser.gns.timeOfDay);
+				boolean valid = false;
+				for (int i = 0; i < parser.gns.modeCount; i++)
+					valid |= (parser.gns.modes[i] != 'N');
+				if (valid)
+					setPosition(parser.gns.latitude, parser.gns.longitude,
+							parser.gns.altitude, parser.gns.geoidSeparation);
+				if (parser.gns.satsUsed >= 0)
+					point.satsUsed = parser.gns.satsUsed;
+				if (!Float.isNaN(parser.gns.hdop))
+					epochHdop = parser.gns.hdop;
+				break;
+			case NmeaParser.TYPE_GST:
+				beginEpoch(parser.gst.timeOfDay);
+				if (!Float.isNaN(parser.gst.latitudeError) && !Float.isNaN(parser.gst.longitudeError))
+					point.accuracy = (float) Math.sqrt(parser.gst.latitudeError * parser.gst.latitudeError
+							+ parser.gst.longitudeError * parser.gst.longitudeError);
+				break;
+			case NmeaParser.TYPE_GSV:
+				if (parser.gsv.messageNumber == parser.gsv.messageCount)
+					epochSatellites = true;
+				break;
+			}
+		}
+		if (!stopped)
+			endEpoch();
+	}
+
+	/**
+	 * Ends the current epoch if {@code timeOfDay} belongs to a new one.
+	 */
+	private void beginEpoch(int timeOfDay) throws InterruptedException {
+		if ((timeOfDay < 0) || (timeOfDay == epochTimeOfDay))
+			return;
+		endEpoch();
+		epochTimeOfDay = timeOfDay;
+	}
+
+	/**
+	 * Delivers the data collected for the current epoch and starts a new one.
+	 */
+	private void endEpoch() throws InterruptedException {
+		if (epochTimeOfDay >= 0) {
+			// without a date from RMC, assume the log does not span more than half a day between fixes
+			if ((lastTimeOfDay >= 0) && (epochTimeOfDay < lastTimeOfDay - MILLIS_PER_DAY / 2))
+				dayStart += MILLIS_PER_DAY;
+			lastTimeOfDay = epochTimeOfDay;
+			long time = dayStart + epochTimeOfDay;
+			waitUntil(time);
+			if (epochSatellites) {
+				point.satsInView = parser.getSatellites().count;
+				listener.onReplaySatellites(parser.getSatellites());
+			}
+			if (!Double.isNaN(point.latitude) && !Double.isNaN(point.longitude)) {
+				point.time = time;
+				if (!point.hasAccuracy() && !Float.isNaN(epochHdop))
+					point.accuracy = epochHdop * HDOP_TO_ACCURACY;
+				listener.onReplayLocation(point);
+			}
+		}
+		int satsInView = point.satsInView;
+		clearPoint();
+		point.satsInView = satsInView;
+		epochHdop = Float.NaN;
+		epochSatellites = false;
+	}
+
+	/**
+	 * Resets {@link #point}, including its position.
+	 */
+	private void clearPoint() {
+		point.clear();
+		point.latitude = Double.NaN;
+		point.longitude = Double.NaN;
+	}
+
+	/**
+	 * Sets the position of the current epoch.
+	 * 
+	 * @param altitude The altitude above mean sea level as reported in NMEA, or NaN
+	 * @param geoidSeparation The height of the geoid above the WGS84 ellipsoid, or NaN
+	 */
+	private void setPosition(double latitude, double longitude, double altitude, double geoidSeparation) {
+		if (Double.isNaN(latitude) || Double.isNaN(longitude))
+			return;
+		point.latitude = latitude;
+		point.longitude = longitude;
+		if (!Double.isNaN(altitude))
+			point.altitude = Double.isNaN(geoidSeparation) ? altitude : altitude + geoidSeparation;
+	}
+
+	/**
+	 * Waits until the event recorded at {@code time} is due.
+	 */
+	private void waitUntil(long time) throws InterruptedException {
+		if (firstTime == Long.MIN_VALUE) {
+			firstTime = time;
+			startNanos = System.nanoTime();
+		}
+		if (speed == SPEED_MAX)
+			return;
+		long due = startNanos + (time - firstTime) * 1000000L / speed;
+		long delay = due - System.nanoTime();
+		if (delay > 0)
+			Thread.sleep(delay / 1000000L, (int) (delay % 1000000L));
+	}
+
+	/**
+	 * Reads the next line of the log into {@link #line}. Lines which are too long are skipped.
+	 * 
+	 * @return The length of the line, or -1 at the end of the log
+	 */
+	private int readLine() throws IOException {
+		int length = 0;
+		boolean overflow = false;
+		while (true) {
+			int c = in.read();
+			if (c < 0)
+				return ((length > 0) && !overflow) ? length : -1;
+			if (c == '\n') {
+				if (!overflow)
+					return length;
+				length = 0;
+				overflow = false;
+			} else if (length < line.length)
+				line[length++] = (byte) c;
+			else
+				overflow = true;
+		}
+	}
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the recent signal strength history of each satellite.
+ * <p>
+ * Samples are kept in circular arrays: one array of sample times, shared by all satellites, and an
+ * array of C/N0 values for each satellite, which holds NaN for samples in which the satellite was
+ * not in view. When the history is full, each new sample replaces the oldest one. Samples taken
+ * less than the minimum interval after the previous one replace the previous sample, so the history
+ * covers at least {@code capacity * minInterval} milliseconds. Intervals are measured from the time at
+ * which a sample was first added, not from the time of its replacement.
+ * <p>
+ * Memory use is bounded: arrays for up to {@link SatelliteSnapshot#MAX_SATELLITES} satellites are
+ * allocated as satellites first appear. Once all are in use, the array of a satellite which has no
+ * samples left in the history is reused for a new satellite; if there is none, the new satellite is
+ * not recorded.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class SatelliteHistory {
+	private final int capacity;
+	private final long minInterval;
+
+	/** Sample times */
+	private final long[] times;
+
+	/** Index of the oldest sample */
+	private int start = 0;
+
+	/** Number of samples */
+	private int size = 0;
+
+	/** Number of samples appended since the history was created */
+	private long sequence = 0;
+
+	/** Time at which the newest sample was appended, before any replacements */
+	private long sampleStart = 0;
+
+	/** Number of satellites for which arrays have been allocated */
+	private int slots = 0;
+
+	/** C/N0 values for each satellite, indexed like {@link #times} */
+	private final float[][] snr = new float[SatelliteSnapshot.MAX_SATELLITES][];
+
+	/** NMEA ID of each satellite */
+	private final int[] nmeaIds = new int[SatelliteSnapshot.MAX_SATELLITES];
+
+	/** Constellation of each satellite */
+	private final int[] constellations = new int[SatelliteSnapshot.MAX_SATELLITES];
+
+	/** Value of {@link #sequence} when each satellite was last seen */
+	private final long[] lastSeen = new long[SatelliteSnapshot.MAX_SATELLITES];
+
+	/** Index of the arrays for each satellite ID, -1 if none */
+	private final int[] slotOf = new int[SatelliteSnapshot.MAX_ID + 1];
+
+	/**
+	 * @param capacity The number of samples to keep
+	 * @param minInterval The minimum interval between samples, in milliseconds
+	 */
+	public SatelliteHistory(int capacity, long minInterval) {
+		this.capacity = capacity;
+		this.minInterval = minInterval;
+		times = new long[capacity];
+		Arrays.fill(slotOf, -1);
+	}
+
+	/**
+	 * Adds a sample.
+	 * 
+	 * @param time The time of the sample in milliseconds, which must not be less than that of the
+	 * previous sample
+	 * @param sats The satellites in view
+	 */
+	public void add(long time, SatelliteSnapshot sats) {
+		int idx;
+		if ((size > 0) && (time - sampleStart < minInterval)) {
+			idx = getIndex(size - 1);
+		} else {
+			sampleStart = time;
+			if (size < capacity) {
+				idx = getIndex(size);
+				size++;
+			} else {
+				idx = start;
+				start = (start + 1) % capacity;
+			}
+			sequence++;
+		}
+		times[idx] = time;
+		for (int slot = 0; slot < slots; slot++)
+			snr[slot][idx] = Float.NaN;
+		for (int i = 0; i < sats.count; i++) {
+			int slot = getSlot(sats.prn[i], sats.constellation[i]);
+			if (slot < 0)
+				continue;
+			snr[slot][idx] = sats.snr[i];
+			lastSeen[slot] = sequence;
+		}
+	}
+
+	/**
+	 * Removes all samples and satellites.
+	 */
+	public void clear() {
+		for (int slot = 0; slot < slots; slot++)
+			slotOf[nmeaIds[slot]] = -1;
+		start = 0;
+		size = 0;
+		slots = 0;
+	}
+
+	/**
+	 * Returns the number of samples.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the time of a sample.
+	 * 
+	 * @param i The index of the sample, 0 being the oldest
+	 */
+	public long getTime(int i) {
+		return times[getIndex(i)];
+	}
+
+	/**
+	 * Returns the time covered by a full history, in milliseconds.
+	 */
+	public long getTimeSpan() {
+		return capacity * minInterval;
+	}
+
+	/**
+	 * Returns the number of satellites in the history. Satellites are identified by an index
+	 * between 0 and this number.
+	 */
+	public int getSatelliteCount() {
+		return slots;
+	}
+
+	/**
+	 * Returns the NMEA ID of a satellite.
+	 */
+	public int getNmeaId(int sat) {
+		return nmeaIds[sat];
+	}
+
+	/**
+	 * Returns the constellation of a satellite, one of the {@code SatelliteSnapshot.CONSTELLATION_*}
+	 * values.
+	 */
+	public int getConstellation(int sat) {
+		return constellations[sat];
+	}
+
+	/**
+	 * Returns the C/N0 of a satellite in a sample.
+	 * 
+	 * @param sat The satellite
+	 * @param i The index of the sample, 0 being the oldest
+	 * @return The C/N0 in dB-Hz, NaN if the satellite was not in view
+	 */
+	public float getSnr(int sat, int i) {
+		return snr[sat][getIndex(i)];
+	}
+
+	/**
+	 * Reduces the samples of a satellite in a time interval to the minimum and maximum C/N0 in each
+	 * of a number of equal sub-intervals (e.g. one per pixel column of a chart).
+	 * 
+	 * @param sat The satellite
+	 * @param from The start of the interval
+	 * @param to The end of the interval
+	 * @param columns The number of sub-intervals
+	 * @param min Receives the minimum C/N0 for each sub-interval, NaN if the satellite was not in view
+	 * @param max Receives the maximum C/N0 for each sub-interval, NaN if the satellite was not in view
+	 * @return The number of sub-intervals in which the satellite was in view
+	 */
+	public int downsample(int sat, long from, long to, int columns, float[] min, float[] max) {
+		Arrays.fill(min, 0, columns, Float.NaN);
+		Arrays.fill(max, 0, columns, Float.NaN);
+		if ((to <= from) || (columns <= 0))
+			return 0;
+		float[] values = snr[sat];
+		long span = to - from;
+		int res = 0;
+		int idx = start;
+		for (int i = 0; i < size; i++, idx++) {
+			if (idx == capacity)
+				idx = 0;
+			long t = times[idx];
+			if (t < from)
+				continue;
+			if (t > to)
+				break;
+			float v = values[idx];
+			if (Float.isNaN(v))
+				continue;
+			int c = (int) ((t - from) * columns / span);
+			if (c >= columns)
+				c = columns - 1;
+			if (Float.isNaN(min[c])) {
+				min[c] = v;
+				max[c] = v;
+				res++;
+			} else if (v < min[c])
+				min[c] = v;
+			else if (v > max[c])
+				max[c] = v;
+		}
+		return res;
+	}
+
+	/**
+	 * Converts a sample index into an index into the circular arrays.
+	 */
+	private int getIndex(int i) {
+		int idx = start + i;
+		return (idx < capacity) ? idx : idx - capacity;
+	}
+
+	/**
+	 * Returns the index of the arrays for a satellite, allocating or reusing them if needed.
+	 * 
+	 * @return The index, or -1 if the NMEA ID is invalid or no arrays are available
+	 */
+	private int getSlot(int nmeaId, int constellation) {
+		if ((nmeaId < 0) || (nmeaId > SatelliteSnapshot.MAX_ID))
+			return -1;
+		int slot = slotOf[nmeaId];
+		if (slot >= 0)
+			return slot;
+		if (slots < snr.length) {
+			slot = slots++;
+			if (snr[slot] == null)
+				snr[slot] = new float[capacity];
+		} else {
+			// reuse the arrays of the satellite seen least recently, if it has no samples left
+			slot = 0;
+			for (int i = 1; i < slots; i++)
+				if (lastSeen[i] < lastSeen[slot])
+					slot = i;
+			if (lastSeen[slot] > sequence - size)
+				return -1;
+			slotOf[nmeaIds[slot]] = -1;
+		}
+		Arrays.fill(snr[slot], Float.NaN);
+		nmeaIds[slot] = nmeaId;
+		constellations[slot] = constellation;
+		slotOf[nmeaId] = slot;
+		return slot;
+	}
+}
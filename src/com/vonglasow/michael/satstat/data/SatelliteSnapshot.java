@@ -0,0 +1,269 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+/**
+ * The satellites in view at a given time.
+ * <p>
+ * Data is kept in parallel arrays of primitives, one entry per satellite, of which the first
+ * {@link #count} are valid. Satellites are identified by their NMEA ID, which is the number
+ * {@link android.location.GpsSatellite#getPrn()} returns and which determines where the satellite
+ * appears in the SNR chart:
+ * <ul>
+ * <li>1–32: GPS</li>
+ * <li>33–64: SBAS</li>
+ * <li>65–96: GLONASS</li>
+ * <li>193–200: QZSS</li>
+ * <li>201–263: BeiDou</li>
+ * <li>301–336: Galileo</li>
+ * </ul>
+ * Satellites which have no NMEA ID, such as IRNSS satellites or GLONASS satellites identified by
+ * their frequency channel, are identified by an extended ID derived from their constellation and
+ * number, see {@link #getId(int, int)}. Extended IDs lie above {@link #MAX_NMEA_ID}.
+ * <p>
+ * Instances are filled in place and never allocate after construction. This class has no Android
+ * dependencies. Instances are not thread-safe.
+ */
+public class SatelliteSnapshot {
+	/*
+	 * Constellation types, with the same values as those used by android.location.GnssStatus
+	 */
+	public static final int CONSTELLATION_UNKNOWN = 0;
+	public static final int CONSTELLATION_GPS = 1;
+	public static final int CONSTELLATION_SBAS = 2;
+	public static final int CONSTELLATION_GLONASS = 3;
+	public static final int CONSTELLATION_QZSS = 4;
+	public static final int CONSTELLATION_BEIDOU = 5;
+	public static final int CONSTELLATION_GALILEO = 6;
+	public static final int CONSTELLATION_IRNSS = 7;
+
+	/** Number of constellation types, i.e. the highest {@code CONSTELLATION_*} value plus one */
+	public static final int NUM_CONSTELLATIONS = 8;
+
+	/** The highest NMEA ID which can be assigned to a satellite */
+	public static final int MAX_NMEA_ID = 336;
+
+	/** The highest satellite number within a constellation for which an ID can be assigned */
+	public static final int MAX_SVID = 255;
+
+	/** The lowest extended ID */
+	public static final int EXTENDED_ID_BASE = 1024;
+
+	/** The highest ID, including extended IDs, which can be assigned to a satellite */
+	public static final int MAX_ID = EXTENDED_ID_BASE + NUM_CONSTELLATIONS * (MAX_SVID + 1) - 1;
+
+	/** Maximum number of satellites a snapshot can hold */
+	public static final int MAX_SATELLITES = 128;
+
+	/** Number of valid entries */
+	public int count = 0;
+
+	/** NMEA ID of each satellite */
+	public final int[] prn = new int[MAX_SATELLITES];
+
+	/** Constellation of each satellite, one of the {@code CONSTELLATION_*} values */
+	public final int[] constellation = new int[MAX_SATELLITES];
+
+	/** Azimuth in degrees, NaN if unknown */
+	public final float[] azimuth = new float[MAX_SATELLITES];
+
+	/** Elevation in degrees, NaN if unknown */
+	public final float[] elevation = new float[MAX_SATELLITES];
+
+	/** Signal-to-noise ratio in dB-Hz, 0 if the satellite is not tracked */
+	public final float[] snr = new float[MAX_SATELLITES];
+
+	/** Whether each satellite is used in the fix */
+	public final boolean[] used = new boolean[MAX_SATELLITES];
+
+	/** Carrier frequency in Hz of the signal reported for each satellite, NaN if unknown */
+	public final float[] carrierFrequency = new float[MAX_SATELLITES];
+
+	/**
+	 * Returns the constellation to which the satellite with the given NMEA ID or extended ID
+	 * belongs.
+	 * 
+	 * @return One of the {@code CONSTELLATION_*} values
+	 */
+	public static int getConstellation(int nmeaId) {
+		if (nmeaId < 1)
+			return CONSTELLATION_UNKNOWN;
+		else if (nmeaId <= 32)
+			return CONSTELLATION_GPS;
+		else if (nmeaId <= 64)
+			return CONSTELLATION_SBAS;
+		else if (nmeaId <= 96)
+			return CONSTELLATION_GLONASS;
+		else if ((nmeaId >= 193) && (nmeaId <= 200))
+			return CONSTELLATION_QZSS;
+		else if ((nmeaId >= 201) && (nmeaId <= 263))
+			return CONSTELLATION_BEIDOU;
+		else if ((nmeaId >= 301) && (nmeaId <= MAX_NMEA_ID))
+			return CONSTELLATION_GALILEO;
+		else if ((nmeaId >= EXTENDED_ID_BASE) && (nmeaId <= MAX_ID))
+			return (nmeaId - EXTENDED_ID_BASE) / (MAX_SVID + 1);
+		else
+			return CONSTELLATION_UNKNOWN;
+	}
+
+	/**
+	 * Returns the ID for a satellite identified by its constellation and its number within that
+	 * constellation, such as the SVID reported by {@code android.location.GnssStatus#getSvid(int)}
+	 * or the satellite number in an NMEA sentence from a constellation-specific talker.
+	 * <p>
+	 * This is the NMEA ID if the satellite has one. Otherwise it is an extended ID, which is
+	 * {@link #EXTENDED_ID_BASE} plus the constellation times 256 plus the number. QZSS satellites
+	 * may be numbered either from 193 or, as in NMEA 4.11, from 1; both map to the same ID.
+	 * 
+	 * @param constellation One of the {@code CONSTELLATION_*} values
+	 * @param svid The number of the satellite within the constellation
+	 * @return The ID, or 0 if {@code svid} is not a valid satellite number
+	 */
+	public static int getId(int constellation, int svid) {
+		if ((svid < 1) || (svid > MAX_SVID))
+			return 0;
+		int nmeaId = 0;
+		switch (constellation) {
+		case CONSTELLATION_GPS:
+			if (svid <= 32)
+				nmeaId = svid;
+			break;
+		case CONSTELLATION_SBAS:
+			// PRN 120–151 map to 33–64
+			if ((svid >= 120) && (svid <= 151))
+				nmeaId = svid - 87;
+			break;
+		case CONSTELLATION_GLONASS:
+			// slot numbers 1–32 map to 65–96, frequency channels (93–106) have no NMEA ID
+			if (svid <= 32)
+				nmeaId = svid + 64;
+			break;
+		case CONSTELLATION_QZSS:
+			if (svid <= 10)
+				svid += 192;
+			if ((svid >= 193) && (svid <= 200))
+				nmeaId = svid;
+			break;
+		case CONSTELLATION_BEIDOU:
+			if (svid <= 63)
+				nmeaId = svid + 200;
+			break;
+		case CONSTELLATION_GALILEO:
+			if (svid <= 36)
+				nmeaId = svid + 300;
+			break;
+		case CONSTELLATION_IRNSS:
+			break;
+		default:
+			constellation = CONSTELLATION_UNKNOWN;
+			break;
+		}
+		if (nmeaId > 0)
+			return nmeaId;
+		return EXTENDED_ID_BASE + constellation * (MAX_SVID + 1) + svid;
+	}
+
+	/**
+	 * Removes all satellites.
+	 */
+	public void clear() {
+		count = 0;
+	}
+
+	/**
+	 * Adds a satellite, deriving its constellation from the NMEA ID.
+	 * 
+	 * @return The index of the new entry, or -1 if the snapshot is full
+	 */
+	public int add(int nmeaId, float azimuth, float elevation, float snr, boolean used) {
+		return add(nmeaId, getConstellation(nmeaId), azimuth, elevation, snr, used);
+	}
+
+	/**
+	 * Adds a satellite.
+	 * 
+	 * @param constellation One of the {@code CONSTELLATION_*} values
+	 * @return The index of the new entry, or -1 if the snapshot is full
+	 */
+	public int add(int nmeaId, int constellation, float azimuth, float elevation, float snr, boolean used) {
+		if (count >= MAX_SATELLITES)
+			return -1;
+		int i = count++;
+		this.prn[i] = nmeaId;
+		this.constellation[i] = constellation;
+		this.azimuth[i] = azimuth;
+		this.elevation[i] = elevation;
+		this.snr[i] = snr;
+		this.used[i] = used;
+		this.carrierFrequency[i] = Float.NaN;
+		return i;
+	}
+
+	/**
+	 * Removes the entry at {@code index}, moving the last entry into its place.
+	 */
+	public void remove(int index) {
+		int last = --count;
+		if (index == last)
+			return;
+		prn[index] = prn[last];
+		constellation[index] = constellation[last];
+		azimuth[index] = azimuth[last];
+		elevation[index] = elevation[last];
+		snr[index] = snr[last];
+		used[index] = used[last];
+		carrierFrequency[index] = carrierFrequency[last];
+	}
+
+	/**
+	 * Returns the index of the satellite with the given NMEA ID, or -1 if it is not in the snapshot.
+	 */
+	public int indexOf(int nmeaId) {
+		for (int i = 0; i < count; i++)
+			if (prn[i] == nmeaId)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Returns the number of satellites used in the fix.
+	 */
+	public int getUsedCount() {
+		int res = 0;
+		for (int i = 0; i < count; i++)
+			if (used[i])
+				res++;
+		return res;
+	}
+
+	/**
+	 * Replaces the contents of this snapshot with those of {@code other}.
+	 */
+	public void copyFrom(SatelliteSnapshot other) {
+		count = other.count;
+		System.arraycopy(other.prn, 0, prn, 0, count);
+		System.arraycopy(other.constellation, 0, constellation, 0, count);
+		System.arraycopy(other.azimuth, 0, azimuth, 0, count);
+		System.arraycopy(other.elevation, 0, elevation, 0, count);
+		System.arraycopy(other.snr, 0, snr, 0, count);
+		System.arraycopy(other.used, 0, used, 0, count);
+		System.arraycopy(other.carrierFrequency, 0, carrierFrequency, 0, count);
+	}
+}
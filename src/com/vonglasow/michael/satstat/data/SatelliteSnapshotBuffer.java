@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+/**
+ * Holds the satellites in view as a double-buffered pair of {@link SatelliteSnapshot}s.
+ * <p>
+ * A {@link SatelliteSource} fills the back buffer, obtained from {@link #getBackBuffer()}, and then
+ * calls {@link #swap()} to make it the front buffer. The front buffer is never written to until the
+ * next swap, which allows views and the service to keep a reference to it and read it as often as
+ * they like, without querying the location manager or iterating over the satellites again.
+ * <p>
+ * Each satellite source has its own instance, so that a swap by one source never recycles a
+ * snapshot which the consumer of another source is still reading. Instances must only be accessed
+ * on the main thread, which is where satellite sources receive their updates.
+ */
+public class SatelliteSnapshotBuffer {
+	private SatelliteSnapshot front = new SatelliteSnapshot();
+	private SatelliteSnapshot back = new SatelliteSnapshot();
+
+	private int timeToFirstFix = -1;
+
+	/**
+	 * Returns the back buffer, cleared and ready to be filled.
+	 */
+	public SatelliteSnapshot getBackBuffer() {
+		back.clear();
+		return back;
+	}
+
+	/**
+	 * Makes the back buffer the new front buffer.
+	 * 
+	 * @return The new snapshot, which remains unchanged until the next call to this method
+	 */
+	public SatelliteSnapshot swap() {
+		SatelliteSnapshot tmp = front;
+		front = back;
+		back = tmp;
+		return front;
+	}
+
+	/**
+	 * Returns the snapshot made available by the last call to {@link #swap()}, which is empty if
+	 * no update has taken place yet.
+	 */
+	public SatelliteSnapshot getSnapshot() {
+		return front;
+	}
+
+	/**
+	 * Returns the time to first fix in milliseconds, or -1 if unknown.
+	 */
+	public int getTimeToFirstFix() {
+		return timeToFirstFix;
+	}
+
+	/**
+	 * Sets the time to first fix in milliseconds, or -1 if unknown.
+	 */
+	public void setTimeToFirstFix(int timeToFirstFix) {
+		this.timeToFirstFix = timeToFirstFix;
+	}
+}
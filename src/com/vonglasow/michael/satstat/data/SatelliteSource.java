@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+import android.location.LocationManager;
+import android.os.Build;
+
+/**
+ * Reports the satellites in view, independently of the API through which the platform reports them.
+ * <p>
+ * Subclasses register with the location manager and fill the source's own
+ * {@link SatelliteSnapshotBuffer} whenever satellite data changes, then notify the {@link Listener}. Use
+ * {@link #create(LocationManager, Listener)} to get the best source available on the device.
+ * <p>
+ * Sources must be started and stopped on the main thread.
+ */
+public abstract class SatelliteSource {
+	/**
+	 * Receives updates from a {@link SatelliteSource}. Called on the main thread.
+	 */
+	public interface Listener {
+		/**
+		 * Called when the satellites in view have changed.
+		 * 
+		 * @param sats The satellites in view, which remain unchanged until the next update
+		 * @param timeToFirstFix Time to first fix in milliseconds, or a negative value if unknown
+		 */
+		public void onGpsStatusChanged(SatelliteSnapshot sats, int timeToFirstFix);
+	}
+
+	protected final LocationManager locationManager;
+	protected final Listener listener;
+	protected final SatelliteSnapshotBuffer buffer = new SatelliteSnapshotBuffer();
+
+	protected SatelliteSource(LocationManager locationManager, Listener listener) {
+		this.locationManager = locationManager;
+		this.listener = listener;
+	}
+
+	/**
+	 * Creates a satellite source.
+	 * 
+	 * On Android 7.0 and later, this uses {@code GnssStatus}, which reports constellation and signal
+	 * data directly. On earlier versions, it uses {@code GpsStatus}.
+	 */
+	public static SatelliteSource create(LocationManager locationManager, Listener listener) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+			return new GnssStatusSource(locationManager, listener);
+		else
+			return new GpsStatusSource(locationManager, listener);
+	}
+
+	/**
+	 * Starts receiving satellite data.
+	 * 
+	 * @throws SecurityException if the app does not have permission to access fine location
+	 */
+	public abstract void start();
+
+	/**
+	 * Stops receiving satellite data.
+	 */
+	public abstract void stop();
+
+	/**
+	 * Returns the satellites reported with the last update, which remain unchanged until the next
+	 * update. The snapshot is empty if no update has taken place yet.
+	 */
+	public SatelliteSnapshot getSnapshot() {
+		return buffer.getSnapshot();
+	}
+
+	/**
+	 * Makes the back buffer, which the caller has filled, available and notifies the listener.
+	 */
+	protected void publish() {
+		listener.onGpsStatusChanged(buffer.swap(), buffer.getTimeToFirstFix());
+	}
+}
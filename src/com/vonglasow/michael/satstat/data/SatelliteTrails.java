@@ -0,0 +1,335 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the tracks of satellites across the sky.
+ * <p>
+ * Positions are stored as coordinates in a sky plot with a radius of 1, with the zenith at the
+ * origin, north at negative y and east at positive x. For each satellite, new positions are first
+ * collected in a tail. When the tail is full, it is simplified with the Douglas–Peucker algorithm and
+ * the remaining points are appended to the trail proper. Appended points do not change, which allows
+ * consumers to extend cached paths incrementally; {@link #getGeneration(int)} changes whenever that
+ * is not possible because points were removed.
+ * <p>
+ * Memory use is bounded: each trail holds a fixed number of points, and the oldest quarter is
+ * dropped when it is full. Trails for up to {@link SatelliteSnapshot#MAX_SATELLITES} satellites are
+ * kept; once all are in use, the trail of the satellite which was seen least recently is reused. A
+ * satellite which reappears after having been out of view starts a new segment, marked by a point
+ * with NaN coordinates.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class SatelliteTrails {
+	/** Number of positions collected before they are simplified */
+	public static final int TAIL_SIZE = 64;
+
+	/** Maximum number of points in each trail */
+	private final int maxPoints;
+
+	/** Maximum deviation of a simplified trail from the original positions */
+	private final float tolerance;
+
+	/** Number of calls to {@link #add(SatelliteSnapshot)} */
+	private long sequence = 0;
+
+	/** Source of generation numbers */
+	private int lastGeneration = 0;
+
+	/** Number of satellites for which trails have been allocated */
+	private int slots = 0;
+
+	/** Points of each trail */
+	private final float[][] x = new float[SatelliteSnapshot.MAX_SATELLITES][];
+	private final float[][] y = new float[SatelliteSnapshot.MAX_SATELLITES][];
+	private final int[] count = new int[SatelliteSnapshot.MAX_SATELLITES];
+
+	/** Positions not yet simplified */
+	private final float[][] tailX = new float[SatelliteSnapshot.MAX_SATELLITES][];
+	private final float[][] tailY = new float[SatelliteSnapshot.MAX_SATELLITES][];
+	private final int[] tailCount = new int[SatelliteSnapshot.MAX_SATELLITES];
+
+	/** Generation of each trail */
+	private final int[] generation = new int[SatelliteSnapshot.MAX_SATELLITES];
+
+	/** NMEA ID of each satellite */
+	private final int[] nmeaIds = new int[SatelliteSnapshot.MAX_SATELLITES];
+
+	/** Value of {@link #sequence} when each satellite was last seen */
+	private final long[] lastSeen = new long[SatelliteSnapshot.MAX_SATELLITES];
+
+	/** Index of the trail for each satellite ID, -1 if none */
+	private final int[] slotOf = new int[SatelliteSnapshot.MAX_ID + 1];
+
+	/*
+	 * Work arrays for the Douglas–Peucker algorithm, covering the last point of the trail followed
+	 * by the tail
+	 */
+	private final float[] dpX = new float[TAIL_SIZE + 1];
+	private final float[] dpY = new float[TAIL_SIZE + 1];
+	private final boolean[] dpKeep = new boolean[TAIL_SIZE + 1];
+	private final int[] dpStack = new int[2 * (TAIL_SIZE + 1)];
+
+	/**
+	 * @param maxPoints The maximum number of points in each trail, after simplification
+	 * @param tolerance The maximum distance between a simplified trail and the original positions,
+	 * relative to the radius of the sky plot
+	 */
+	public SatelliteTrails(int maxPoints, float tolerance) {
+		this.maxPoints = maxPoints;
+		this.tolerance = tolerance;
+		Arrays.fill(slotOf, -1);
+	}
+
+	/**
+	 * Adds the current positions of the satellites in view. Satellites with an unknown position are
+	 * treated as not in view.
+	 */
+	public void add(SatelliteSnapshot sats) {
+		sequence++;
+		for (int i = 0; i < sats.count; i++) {
+			if (Float.isNaN(sats.azimuth[i]) || Float.isNaN(sats.elevation[i]))
+				continue;
+			int slot = getSlot(sats.prn[i]);
+			if (slot < 0)
+				continue;
+			double r = (90 - sats.elevation[i]) / 90.0;
+			double azimuth = Math.toRadians(sats.azimuth[i]);
+			float px = (float) (r * Math.sin(azimuth));
+			float py = (float) -(r * Math.cos(azimuth));
+			if ((count[slot] > 0) && (lastSeen[slot] < sequence - 1)) {
+				// satellite has been out of view, start a new segment
+				flush(slot);
+				if (!Float.isNaN(x[slot][count[slot] - 1]))
+					append(slot, Float.NaN, Float.NaN);
+			}
+			lastSeen[slot] = sequence;
+			if ((count[slot] == 0) || Float.isNaN(x[slot][count[slot] - 1])) {
+				// first point of a segment
+				append(slot, px, py);
+				continue;
+			}
+			float lastX = (tailCount[slot] > 0) ? tailX[slot][tailCount[slot] - 1] : x[slot][count[slot] - 1];
+			float lastY = (tailCount[slot] > 0) ? tailY[slot][tailCount[slot] - 1] : y[slot][count[slot] - 1];
+			if ((lastX == px) && (lastY == py))
+				continue;
+			if (tailCount[slot] == TAIL_SIZE)
+				flush(slot);
+			tailX[slot][tailCount[slot]] = px;
+			tailY[slot][tailCount[slot]] = py;
+			tailCount[slot]++;
+		}
+	}
+
+	/**
+	 * Removes all trails.
+	 */
+	public void clear() {
+		for (int slot = 0; slot < slots; slot++)
+			slotOf[nmeaIds[slot]] = -1;
+		slots = 0;
+	}
+
+	/**
+	 * Returns the number of satellites with a trail. Satellites are identified by an index between 0
+	 * and this number.
+	 */
+	public int getSatelliteCount() {
+		return slots;
+	}
+
+	/**
+	 * Returns the NMEA ID of a satellite.
+	 */
+	public int getNmeaId(int sat) {
+		return nmeaIds[sat];
+	}
+
+	/**
+	 * Returns the generation of a trail.
+	 * <p>
+	 * As long as the generation remains the same, points are only ever appended to the trail. A new
+	 * generation means that points were removed or the trail now belongs to another satellite.
+	 * Generations are never reused.
+	 */
+	public int getGeneration(int sat) {
+		return generation[sat];
+	}
+
+	/**
+	 * Returns the number of points in the simplified part of a trail.
+	 */
+	public int getPointCount(int sat) {
+		return count[sat];
+	}
+
+	/**
+	 * Returns the x coordinate of a point in the simplified part of a trail, NaN at the start of a
+	 * new segment.
+	 */
+	public float getX(int sat, int i) {
+		return x[sat][i];
+	}
+
+	/**
+	 * Returns the y coordinate of a point in the simplified part of a trail, NaN at the start of a
+	 * new segment.
+	 */
+	public float getY(int sat, int i) {
+		return y[sat][i];
+	}
+
+	/**
+	 * Returns the number of positions not yet simplified, which continue the trail from its last
+	 * point.
+	 */
+	public int getTailCount(int sat) {
+		return tailCount[sat];
+	}
+
+	/**
+	 * Returns the x coordinate of a position not yet simplified.
+	 */
+	public float getTailX(int sat, int i) {
+		return tailX[sat][i];
+	}
+
+	/**
+	 * Returns the y coordinate of a position not yet simplified.
+	 */
+	public float getTailY(int sat, int i) {
+		return tailY[sat][i];
+	}
+
+	/**
+	 * Appends a point to the simplified part of a trail, dropping the oldest points if it is full.
+	 */
+	private void append(int slot, float px, float py) {
+		if (count[slot] == maxPoints) {
+			int drop = maxPoints / 4;
+			// do not start with a segment break
+			while ((drop < count[slot]) && Float.isNaN(x[slot][drop]))
+				drop++;
+			System.arraycopy(x[slot], drop, x[slot], 0, count[slot] - drop);
+			System.arraycopy(y[slot], drop, y[slot], 0, count[slot] - drop);
+			count[slot] -= drop;
+			generation[slot] = ++lastGeneration;
+		}
+		x[slot][count[slot]] = px;
+		y[slot][count[slot]] = py;
+		count[slot]++;
+	}
+
+	/**
+	 * Simplifies the tail of a trail and appends the result to the trail.
+	 */
+	private void flush(int slot) {
+		int n = tailCount[slot] + 1;
+		if (n == 1)
+			return;
+		dpX[0] = x[slot][count[slot] - 1];
+		dpY[0] = y[slot][count[slot] - 1];
+		System.arraycopy(tailX[slot], 0, dpX, 1, n - 1);
+		System.arraycopy(tailY[slot], 0, dpY, 1, n - 1);
+		tailCount[slot] = 0;
+
+		Arrays.fill(dpKeep, 0, n, false);
+		dpKeep[0] = true;
+		dpKeep[n - 1] = true;
+		float tolSquared = tolerance * tolerance;
+		int sp = 0;
+		dpStack[sp++] = 0;
+		dpStack[sp++] = n - 1;
+		while (sp > 0) {
+			int last = dpStack[--sp];
+			int first = dpStack[--sp];
+			float dx = dpX[last] - dpX[first];
+			float dy = dpY[last] - dpY[first];
+			float lenSquared = dx * dx + dy * dy;
+			float maxDist = 0;
+			int index = -1;
+			for (int i = first + 1; i < last; i++) {
+				float ex = dpX[i] - dpX[first];
+				float ey = dpY[i] - dpY[first];
+				float dist;
+				if (lenSquared == 0)
+					dist = ex * ex + ey * ey;
+				else {
+					float cross = ex * dy - ey * dx;
+					dist = cross * cross / lenSquared;
+				}
+				if (dist > maxDist) {
+					maxDist = dist;
+					index = i;
+				}
+			}
+			if ((index >= 0) && (maxDist > tolSquared)) {
+				dpKeep[index] = true;
+				dpStack[sp++] = first;
+				dpStack[sp++] = index;
+				dpStack[sp++] = index;
+				dpStack[sp++] = last;
+			}
+		}
+
+		// the first point is already in the trail
+		for (int i = 1; i < n; i++)
+			if (dpKeep[i])
+				append(slot, dpX[i], dpY[i]);
+	}
+
+	/**
+	 * Returns the index of the trail for a satellite, allocating or reusing one if needed.
+	 * 
+	 * @return The index, or -1 if the NMEA ID is invalid
+	 */
+	private int getSlot(int nmeaId) {
+		if ((nmeaId < 0) || (nmeaId > SatelliteSnapshot.MAX_ID))
+			return -1;
+		int slot = slotOf[nmeaId];
+		if (slot >= 0)
+			return slot;
+		if (slots < x.length) {
+			slot = slots++;
+			if (x[slot] == null) {
+				x[slot] = new float[maxPoints];
+				y[slot] = new float[maxPoints];
+				tailX[slot] = new float[TAIL_SIZE];
+				tailY[slot] = new float[TAIL_SIZE];
+			}
+		} else {
+			// reuse the trail of the satellite seen least recently
+			slot = 0;
+			for (int i = 1; i < slots; i++)
+				if (lastSeen[i] < lastSeen[slot])
+					slot = i;
+			slotOf[nmeaIds[slot]] = -1;
+		}
+		count[slot] = 0;
+		tailCount[slot] = 0;
+		generation[slot] = ++lastGeneration;
+		nmeaIds[slot] = nmeaId;
+		lastSeen[slot] = sequence;
+		slotOf[nmeaId] = slot;
+		return slot;
+	}
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.vonglasow.michael.satstat.Const;
+
+import android.util.Log;
+
+/**
+ * Records raw sensor readings to a binary file in columnar batches.
+ * <p>
+ * Readings passed to {@link #log(int, long, int, float[])} are copied into a batch for their sensor
+ * type. Batches are preallocated arrays of timestamps, values and accuracies, taken from a pool of
+ * fixed size, so memory use is bounded and logging does not allocate any objects. When a batch is
+ * full, or its oldest reading exceeds a maximum age, it is handed to a writer thread, which sleeps
+ * until then and writes each batch to the file with a single write. If the writer falls behind and
+ * no free batch is left, readings are dropped; the number of dropped readings can be obtained with
+ * {@link #getDropped()}. If writing fails, logging stops and the error can be retrieved with
+ * {@link #getError()}. When the writer thread terminates, it logs the number of dropped readings
+ * and the error, if any.
+ * <p>
+ * A file starts with the four bytes {@code SSSN}, followed by a version byte (currently
+ * {@value #VERSION}), followed by any number of blocks. All numbers are big-endian. A block holds
+ * the readings of one sensor type and consists of:
+ * <ul>
+ * <li>the sensor type (int)</li>
+ * <li>the number of readings <i>n</i> (int)</li>
+ * <li>the number of values per reading <i>v</i> (byte)</li>
+ * <li><i>n</i> timestamps in nanoseconds, as reported by the sensor (long)</li>
+ * <li><i>v</i> columns of <i>n</i> values each, one column per value index (float)</li>
+ * <li><i>n</i> accuracy values (byte)</li>
+ * </ul>
+ * Files are named after the UTC time at which recording started.
+ * {@link #log(int, long, int, float[])} may be called from any thread.
+ */
+public class SensorLogger {
+	/** File signature */
+	static final byte[] MAGIC = {'S', 'S', 'S', 'N'};
+
+	/** Current format version */
+	static final int VERSION = 1;
+
+	/** The highest sensor type which is recorded */
+	public static final int MAX_TYPE = 63;
+
+	/** The maximum number of values recorded per reading */
+	public static final int MAX_VALUES = 3;
+
+	/** Default number of readings per batch */
+	public static final int DEFAULT_BATCH_SIZE = 1024;
+
+	/** Default number of batches in the pool */
+	public static final int DEFAULT_BATCH_COUNT = 16;
+
+	/** Default maximum age of the oldest reading in a batch before the batch is written */
+	public static final long DEFAULT_MAX_BATCH_AGE = TimeUnit.SECONDS.toNanos(60);
+
+	/** Size of a block header */
+	private static final int HEADER_SIZE = 9;
+
+	private final File dir;
+	private final long maxBatchAge;
+
+	/** Batches ready to be filled */
+	private final BlockingQueue<Batch> free;
+
+	/** Batches ready to be written */
+	private final BlockingQueue<Batch> full;
+
+	/** Marks the end of the data in {@link #full} */
+	private final Batch endMarker = new Batch(0);
+
+	/** The batch being filled for each sensor type, null if none */
+	private final Batch[] current = new Batch[MAX_TYPE + 1];
+
+	/** Staging buffer for a block, written in one piece */
+	private final ByteBuffer block;
+
+	private Thread writerThread = null;
+	private boolean running = false;
+	private long dropped = 0;
+	private volatile IOException error = null;
+
+	/**
+	 * Readings of one sensor type.
+	 */
+	private static class Batch {
+		int type;
+		int count;
+		int valueCount;
+		final long[] timestamps;
+		final float[] values;
+		final byte[] accuracy;
+
+		Batch(int size) {
+			timestamps = new long[size];
+			values = new float[size * MAX_VALUES];
+			accuracy = new byte[size];
+		}
+	}
+
+	/**
+	 * Creates a new logger with default settings.
+	 * 
+	 * @param dir The folder to which the file will be written, which must exist
+	 */
+	public SensorLogger(File dir) {
+		this(dir, DEFAULT_BATCH_SIZE, DEFAULT_BATCH_COUNT, DEFAULT_MAX_BATCH_AGE);
+	}
+
+	/**
+	 * @param dir The folder to which the file will be written, which must exist
+	 * @param batchSize The number of readings per batch
+	 * @param batchCount The number of batches in the pool, which bounds memory use
+	 * @param maxBatchAge The maximum time span, in nanoseconds of sensor time, which a batch may
+	 * hold before it is written
+	 */
+	public SensorLogger(File dir, int batchSize, int batchCount, long maxBatchAge) {
+		this.dir = dir;
+		this.maxBatchAge = maxBatchAge;
+		free = new ArrayBlockingQueue<Batch>(batchCount);
+		full = new ArrayBlockingQueue<Batch>(batchCount + 1);
+		for (int i = 0; i < batchCount; i++)
+			free.add(new Batch(batchSize));
+		block = ByteBuffer.allocate(HEADER_SIZE + batchSize * (8 + 4 * MAX_VALUES + 1));
+	}
+
+	/**
+	 * Starts the writer thread. Readings are only logged after this method has been called.
+	 */
+	public synchronized void start() {
+		if (writerThread != null)
+			return;
+		running = true;
+		writerThread = new Thread(new Runnable() {
+			public void run() {
+				writeLoop();
+			}
+		}, "SensorLogger");
+		writerThread.setPriority(Thread.MIN_PRIORITY);
+		writerThread.start();
+	}
+
+	/**
+	 * Stops logging.
+	 * <p>
+	 * This method returns immediately. The writer thread writes out all readings logged before the
+	 * call, closes the file and then terminates.
+	 */
+	public synchronized void stop() {
+		if (!running)
+			return;
+		running = false;
+		for (int type = 0; type <= MAX_TYPE; type++)
+			if (current[type] != null) {
+				full.add(current[type]);
+				current[type] = null;
+			}
+		full.add(endMarker);
+	}
+
+	/**
+	 * Logs a sensor reading.
+	 * 
+	 * @param type The sensor type
+	 * @param timestamp The time of the reading in nanoseconds
+	 * @param accuracy The accuracy of the reading
+	 * @param values The values of the reading, of which at most {@link #MAX_VALUES} are recorded
+	 * @return True if the reading was logged, false if it was dropped or the logger is not running
+	 */
+	public synchronized boolean log(int type, long timestamp, int accuracy, float[] values) {
+		if (!running || (type < 0) || (type > MAX_TYPE))
+			return false;
+		Batch batch = current[type];
+		if (batch == null) {
+			batch = free.poll();
+			if (batch == null) {
+				dropped++;
+				return false;
+			}
+			batch.type = type;
+			batch.count = 0;
+			batch.valueCount = Math.min(values.length, MAX_VALUES);
+			current[type] = batch;
+		}
+		int i = batch.count++;
+		batch.timestamps[i] = timestamp;
+		System.arraycopy(values, 0, batch.values, i * MAX_VALUES, batch.valueCount);
+		batch.accuracy[i] = (byte) accuracy;
+		if ((batch.count == batch.timestamps.length) || (timestamp - batch.timestamps[0] >= maxBatchAge)) {
+			full.add(batch);
+			current[type] = null;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of readings which were dropped because the writer thread did not keep up.
+	 */
+	public synchronized long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Returns the error which caused logging to stop, or null if no error occurred.
+	 */
+	public IOException getError() {
+		return error;
+	}
+
+	/**
+	 * Body of the writer thread.
+	 */
+	private void writeLoop() {
+		OutputStream out = null;
+		try {
+			SimpleDateFormat df = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT);
+			df.setTimeZone(TimeZone.getTimeZone("UTC"));
+			String name = df.format(new Date());
+			File file = new File(dir, name + Const.SENSOR_EXTENSION);
+			for (int i = 1; file.exists(); i++)
+				file = new File(dir, name + "_" + i + Const.SENSOR_EXTENSION);
+			out = new FileOutputStream(file);
+			out.write(MAGIC);
+			out.write(VERSION);
+			while (true) {
+				Batch batch = full.take();
+				if (batch == endMarker)
+					break;
+				writeBatch(out, batch);
+				free.add(batch);
+			}
+		} catch (InterruptedException e) {
+			error = new IOException("Interrupted while logging");
+		} catch (IOException e) {
+			error = e;
+		} finally {
+			synchronized (this) {
+				running = false;
+			}
+			if (out != null)
+				try {
+					out.close();
+				} catch (IOException e) {
+					if (error == null)
+						error = e;
+				}
+			if (getDropped() > 0)
+				Log.w("SensorLogger", getDropped() + " sensor readings were dropped");
+			if (error != null)
+				Log.e("SensorLogger", "Error writing sensor log", error);
+		}
+	}
+
+	/**
+	 * Writes a batch as a block.
+	 */
+	private void writeBatch(OutputStream out, Batch batch) throws IOException {
+		block.clear();
+		block.putInt(batch.type);
+		block.putInt(batch.count);
+		block.put((byte) batch.valueCount);
+		for (int i = 0; i < batch.count; i++)
+			block.putLong(batch.timestamps[i]);
+		for (int v = 0; v < batch.valueCount; v++)
+			for (int i = 0; i < batch.count; i++)
+				block.putFloat(batch.values[i * MAX_VALUES + v]);
+		block.put(batch.accuracy, 0, batch.count);
+		out.write(block.array(), 0, block.position());
+	}
+}
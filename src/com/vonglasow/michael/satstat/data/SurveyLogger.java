@@ -0,0 +1,421 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import com.vonglasow.michael.satstat.Const;
+
+import android.net.wifi.ScanResult;
+import android.util.Log;
+
+/**
+ * Records geotagged observations of the cells and WiFi access points in range, for coverage
+ * surveys.
+ * <p>
+ * Each call to {@link #log(TrackPoint, RadioSnapshot, long)} joins a fix with the radio data
+ * current at that time. The fix is copied into an observation taken from a pool of fixed size, and
+ * the observation is handed to a writer thread; the snapshot is immutable and is passed on as is.
+ * The caller thus never waits for file I/O or compression. If the writer falls behind and no free
+ * observation is left, fixes are dropped; the number of dropped fixes can be obtained with
+ * {@link #getDropped()}. If writing fails, logging stops and the error can be retrieved with
+ * {@link #getError()}. When the writer thread terminates, it logs the number of dropped fixes and
+ * the error, if any.
+ * <p>
+ * The writer thread encodes observations into a block. When the block holds a given number of
+ * observations, or its oldest observation exceeds a maximum age, the block is compressed, appended
+ * to the file in a single write and synced to storage. Each block is compressed on its own, so a
+ * file cut short by a crash can be read up to its last complete block.
+ * <p>
+ * A file starts with the four bytes {@code SSSV}, followed by a version byte (currently
+ * {@value #VERSION}), followed by any number of blocks. All numbers are big-endian. A block
+ * consists of:
+ * <ul>
+ * <li>the number of observations (int)</li>
+ * <li>the uncompressed length of the data (int)</li>
+ * <li>the compressed length of the data (int)</li>
+ * <li>the data, compressed with zlib</li>
+ * </ul>
+ * The data holds one record per observation, which starts with:
+ * <ul>
+ * <li>time of the fix in milliseconds since the epoch (long)</li>
+ * <li>latitude and longitude in units of 1e-7 degrees (int)</li>
+ * <li>altitude in meters, NaN if unknown (float)</li>
+ * <li>accuracy in meters, NaN if unknown (float)</li>
+ * <li>age of the radio data at the time of the fix, in milliseconds (int)</li>
+ * <li>{@code FLAG_*} bits indicating the sections which follow (byte)</li>
+ * </ul>
+ * If {@link #FLAG_CELLS} is set, the record continues with the network generation (byte) and the
+ * number of cells (short), followed by the following for each cell:
+ * <ul>
+ * <li>the network family, one of the {@code FAMILY_*} values (byte)</li>
+ * <li>the key returned by {@link CellTower#getKey()}, whose layout is documented in the subclass
+ * for the family (long)</li>
+ * <li>the PSC or PCI, -1 if unknown or not applicable (short)</li>
+ * <li>the signal strength in dBm (short)</li>
+ * <li>the generation (byte)</li>
+ * <li>the source flags, plus 8 for the serving cell (byte)</li>
+ * </ul>
+ * If {@link #FLAG_WIFI} is set, the record continues with the number of access points (short),
+ * followed by the following for each access point:
+ * <ul>
+ * <li>the BSSID, as returned by {@link RadioSnapshot#getWifiKey(String)} (long)</li>
+ * <li>the frequency in MHz (short)</li>
+ * <li>the signal level in dBm (byte)</li>
+ * <li>the SSID, in the format of {@link DataOutputStream#writeUTF(String)}</li>
+ * </ul>
+ * Sections are only written if the data has changed since the previous record; a record without
+ * them has the same cells or access points as the one before. The first record of each block
+ * always has both sections.
+ * <p>
+ * Files are named after the UTC time at which recording started. {@link #log(TrackPoint,
+ * RadioSnapshot, long)} may be called from any thread.
+ */
+public class SurveyLogger {
+	/** File signature */
+	static final byte[] MAGIC = {'S', 'S', 'S', 'V'};
+
+	/** Current format version */
+	static final int VERSION = 1;
+
+	/** The record contains cell data */
+	static final int FLAG_CELLS = 0x01;
+
+	/** The record contains WiFi data */
+	static final int FLAG_WIFI = 0x02;
+
+	/*
+	 * Network families
+	 */
+	static final int FAMILY_GSM = 1;
+	static final int FAMILY_CDMA = 2;
+	static final int FAMILY_LTE = 3;
+
+	/** Scale factor for latitude and longitude */
+	static final double COORD_SCALE = 1e7;
+
+	/** Default number of observations per block */
+	public static final int DEFAULT_BLOCK_SIZE = 60;
+
+	/** Default number of observations in the pool */
+	public static final int DEFAULT_POOL_SIZE = 32;
+
+	/** Default maximum age of the oldest observation in a block before the block is written, in milliseconds */
+	public static final long DEFAULT_MAX_BLOCK_AGE = TimeUnit.SECONDS.toMillis(60);
+
+	/** Size of a block header */
+	private static final int HEADER_SIZE = 12;
+
+	private final File dir;
+	private final int blockSize;
+	private final long maxBlockAge;
+
+	/** Observations ready to be filled */
+	private final BlockingQueue<Observation> free;
+
+	/** Observations ready to be written */
+	private final BlockingQueue<Observation> full;
+
+	/** Marks the end of the data in {@link #full} */
+	private final Observation endMarker = new Observation();
+
+	private Thread writerThread = null;
+	private boolean running = false;
+	private long dropped = 0;
+	private volatile IOException error = null;
+
+	/*
+	 * The following are accessed only by the writer thread
+	 */
+	private final ByteArrayOutputStream blockData = new ByteArrayOutputStream(64 * 1024);
+	private final DataOutputStream blockOut = new DataOutputStream(blockData);
+	private final Deflater deflater = new Deflater();
+	private byte[] compressed = new byte[HEADER_SIZE + 64 * 1024];
+	private int blockCount = 0;
+	private long blockStart;
+	private RadioSnapshot previous = null;
+
+	/**
+	 * A fix and the radio data current at the time of the fix.
+	 */
+	private static class Observation {
+		final TrackPoint point = new TrackPoint();
+		RadioSnapshot snapshot;
+		long age;
+	}
+
+	/**
+	 * Creates a new logger with default settings.
+	 * 
+	 * @param dir The folder to which the file will be written, which must exist
+	 */
+	public SurveyLogger(File dir) {
+		this(dir, DEFAULT_BLOCK_SIZE, DEFAULT_POOL_SIZE, DEFAULT_MAX_BLOCK_AGE);
+	}
+
+	/**
+	 * @param dir The folder to which the file will be written, which must exist
+	 * @param blockSize The number of observations per block
+	 * @param poolSize The number of observations in the pool, which bounds memory use
+	 * @param maxBlockAge The maximum time, in milliseconds, for which an observation is held before
+	 * it is written and synced
+	 */
+	public SurveyLogger(File dir, int blockSize, int poolSize, long maxBlockAge) {
+		this.dir = dir;
+		this.blockSize = blockSize;
+		this.maxBlockAge = maxBlockAge;
+		free = new ArrayBlockingQueue<Observation>(poolSize);
+		full = new ArrayBlockingQueue<Observation>(poolSize + 1);
+		for (int i = 0; i < poolSize; i++)
+			free.add(new Observation());
+	}
+
+	/**
+	 * Starts the writer thread. Observations are only logged after this method has been called.
+	 */
+	public synchronized void start() {
+		if (writerThread != null)
+			return;
+		running = true;
+		writerThread = new Thread(new Runnable() {
+			public void run() {
+				writeLoop();
+			}
+		}, "SurveyLogger");
+		writerThread.setPriority(Thread.MIN_PRIORITY);
+		writerThread.start();
+	}
+
+	/**
+	 * Stops logging.
+	 * <p>
+	 * This method returns immediately. The writer thread writes out all observations logged before
+	 * the call, closes the file and then terminates.
+	 */
+	public synchronized void stop() {
+		if (!running)
+			return;
+		running = false;
+		full.add(endMarker);
+	}
+
+	/**
+	 * Logs an observation.
+	 * 
+	 * @param point The fix, which is copied
+	 * @param snapshot The cells and access points in range
+	 * @param age The time in milliseconds between {@code snapshot} being taken and the fix
+	 * @return True if the observation was logged, false if it was dropped or the logger is not running
+	 */
+	public synchronized boolean log(TrackPoint point, RadioSnapshot snapshot, long age) {
+		if (!running)
+			return false;
+		Observation observation = free.poll();
+		if (observation == null) {
+			dropped++;
+			return false;
+		}
+		observation.point.set(point);
+		observation.snapshot = snapshot;
+		observation.age = age;
+		full.add(observation);
+		return true;
+	}
+
+	/**
+	 * Returns the number of fixes which were dropped because the writer thread did not keep up.
+	 */
+	public synchronized long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Returns the error which caused logging to stop, or null if no error occurred.
+	 */
+	public IOException getError() {
+		return error;
+	}
+
+	/**
+	 * Body of the writer thread.
+	 */
+	private void writeLoop() {
+		FileOutputStream out = null;
+		try {
+			SimpleDateFormat df = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT);
+			df.setTimeZone(TimeZone.getTimeZone("UTC"));
+			String name = df.format(new Date());
+			File file = new File(dir, name + Const.SURVEY_EXTENSION);
+			for (int i = 1; file.exists(); i++)
+				file = new File(dir, name + "_" + i + Const.SURVEY_EXTENSION);
+			out = new FileOutputStream(file);
+			out.write(MAGIC);
+			out.write(VERSION);
+			while (true) {
+				Observation observation;
+				if (blockCount == 0)
+					observation = full.take();
+				else
+					observation = full.poll(blockStart + maxBlockAge - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+				if (observation == endMarker)
+					break;
+				if (observation != null) {
+					if (blockCount == 0)
+						blockStart = System.currentTimeMillis();
+					writeObservation(observation);
+					observation.snapshot = null;
+					free.add(observation);
+				}
+				if ((blockCount >= blockSize)
+						|| ((blockCount > 0) && (System.currentTimeMillis() - blockStart >= maxBlockAge)))
+					writeBlock(out);
+			}
+			writeBlock(out);
+		} catch (InterruptedException e) {
+			error = new IOException("Interrupted while logging");
+		} catch (IOException e) {
+			error = e;
+		} finally {
+			synchronized (this) {
+				running = false;
+			}
+			deflater.end();
+			if (out != null)
+				try {
+					out.close();
+				} catch (IOException e) {
+					if (error == null)
+						error = e;
+				}
+			if (getDropped() > 0)
+				Log.w("SurveyLogger", getDropped() + " survey observations were dropped");
+			if (error != null)
+				Log.e("SurveyLogger", "Error writing survey log", error);
+		}
+	}
+
+	/**
+	 * Encodes an observation and adds it to the current block.
+	 */
+	private void writeObservation(Observation observation) throws IOException {
+		TrackPoint point = observation.point;
+		RadioSnapshot snapshot = observation.snapshot;
+		int flags = 0;
+		if ((previous == null)
+				|| (snapshot.gsmVersion != previous.gsmVersion)
+				|| (snapshot.cdmaVersion != previous.cdmaVersion)
+				|| (snapshot.lteVersion != previous.lteVersion)
+				|| (snapshot.networkGeneration != previous.networkGeneration))
+			flags |= FLAG_CELLS;
+		if ((previous == null) || (snapshot.wifiVersion != previous.wifiVersion))
+			flags |= FLAG_WIFI;
+		previous = snapshot;
+
+		blockOut.writeLong(point.time);
+		blockOut.writeInt((int) Math.round(point.latitude * COORD_SCALE));
+		blockOut.writeInt((int) Math.round(point.longitude * COORD_SCALE));
+		blockOut.writeFloat((float) point.altitude);
+		blockOut.writeFloat(point.accuracy);
+		blockOut.writeInt((int) Math.min(observation.age, Integer.MAX_VALUE));
+		blockOut.writeByte(flags);
+
+		if ((flags & FLAG_CELLS) != 0) {
+			blockOut.writeByte(snapshot.networkGeneration);
+			blockOut.writeShort(snapshot.cellsGsm.size() + snapshot.cellsCdma.size() + snapshot.cellsLte.size());
+			for (CellTowerGsm cell : snapshot.cellsGsm)
+				writeCell(FAMILY_GSM, cell, cell.getPsc());
+			for (CellTowerCdma cell : snapshot.cellsCdma)
+				writeCell(FAMILY_CDMA, cell, CellTower.UNKNOWN);
+			for (CellTowerLte cell : snapshot.cellsLte)
+				writeCell(FAMILY_LTE, cell, cell.getPci());
+		}
+
+		if ((flags & FLAG_WIFI) != 0) {
+			List<ScanResult> results = snapshot.wifiResults;
+			blockOut.writeShort(results.size());
+			for (ScanResult result : results) {
+				blockOut.writeLong(RadioSnapshot.getWifiKey(result.BSSID));
+				blockOut.writeShort(result.frequency);
+				blockOut.writeByte(result.level);
+				blockOut.writeUTF((result.SSID == null) ? "" : result.SSID);
+			}
+		}
+		blockCount++;
+	}
+
+	/**
+	 * Encodes a cell.
+	 */
+	private void writeCell(int family, CellTower cell, int unit) throws IOException {
+		int dbm = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, cell.getDbm()));
+		blockOut.writeByte(family);
+		blockOut.writeLong(cell.getKey());
+		blockOut.writeShort(unit);
+		blockOut.writeShort(dbm);
+		blockOut.writeByte(cell.getGeneration());
+		blockOut.writeByte(cell.getSource() | (cell.isServing() ? 8 : 0));
+	}
+
+	/**
+	 * Compresses the current block, appends it to the file and syncs the file to storage.
+	 */
+	private void writeBlock(FileOutputStream out) throws IOException {
+		if (blockCount == 0)
+			return;
+		byte[] data = blockData.toByteArray();
+		deflater.reset();
+		deflater.setInput(data);
+		deflater.finish();
+		int length = HEADER_SIZE;
+		while (!deflater.finished()) {
+			if (length == compressed.length) {
+				byte[] grown = new byte[compressed.length * 2];
+				System.arraycopy(compressed, 0, grown, 0, length);
+				compressed = grown;
+			}
+			length += deflater.deflate(compressed, length, compressed.length - length);
+		}
+		ByteBuffer header = ByteBuffer.wrap(compressed, 0, HEADER_SIZE);
+		header.putInt(blockCount);
+		header.putInt(data.length);
+		header.putInt(length - HEADER_SIZE);
+		out.write(compressed, 0, length);
+		out.getFD().sync();
+
+		blockData.reset();
+		blockCount = 0;
+		// start each block with complete data, so that it can be read on its own
+		previous = null;
+	}
+}
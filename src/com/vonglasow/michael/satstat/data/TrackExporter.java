@@ -0,0 +1,333 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+import com.vonglasow.michael.satstat.utils.CoordinateFormatter;
+
+/**
+ * Converts recorded tracks to GPX 1.1, KML or CSV.
+ * <p>
+ * The track is streamed: points are read one by one from a {@link TrackReader}, formatted into a
+ * reusable buffer and passed on to a {@link Writer} in chunks, so that memory use does not depend on
+ * the length of the track.
+ * <p>
+ * Numbers and times are always written in a locale-independent form. In CSV output, the coordinate
+ * columns use the coordinate format chosen in the app's settings (one of the
+ * {@code CoordinateFormatter.FORMAT_*} values).
+ * <p>
+ * Instances are not thread-safe but can be reused for any number of tracks.
+ */
+public class TrackExporter {
+	public static final int FORMAT_GPX = 0;
+	public static final int FORMAT_KML = 1;
+	public static final int FORMAT_CSV = 2;
+
+	/**
+	 * File name extensions for each format, indexed by the {@code FORMAT_*} constant
+	 */
+	public static final String[] EXTENSIONS = {".gpx", ".kml", ".csv"};
+
+	/** Number of characters to collect before passing them to the writer */
+	private static final int CHUNK_SIZE = 8192;
+
+	private static final long MILLIS_PER_DAY = 86400000L;
+
+	private final int format;
+	private final int coordFormat;
+
+	/** Formats numbers and coordinates without any locale-specific characters */
+	private final CoordinateFormatter formatter = new CoordinateFormatter("°", "", Locale.ROOT);
+
+	private final StringBuilder sb = new StringBuilder(CHUNK_SIZE + 512);
+	private final StringBuilder field = new StringBuilder(64);
+	private final char[] chunk = new char[CHUNK_SIZE + 512];
+	private final TrackPoint point = new TrackPoint();
+
+	/**
+	 * @param format The output format, one of the {@code FORMAT_*} constants
+	 * @param coordFormat The coordinate format for CSV output, one of the
+	 * {@code CoordinateFormatter.FORMAT_*} constants. Ignored for other formats.
+	 */
+	public TrackExporter(int format, int coordFormat) {
+		if ((format < FORMAT_GPX) || (format > FORMAT_CSV))
+			throw new IllegalArgumentException("Unknown format: " + format);
+		this.format = format;
+		this.coordFormat = coordFormat;
+	}
+
+	/**
+	 * Exports a track.
+	 * 
+	 * The writer is flushed but not closed.
+	 * 
+	 * @param reader The track to export
+	 * @param out The writer for the output
+	 * @param name The name of the track, used in GPX and KML output
+	 * @return The number of points exported
+	 */
+	public int export(TrackReader reader, Writer out, String name) throws IOException {
+		int count = 0;
+		sb.setLength(0);
+		writeHeader(name);
+		while (reader.read(point)) {
+			switch (format) {
+			case FORMAT_GPX:
+				appendGpxPoint();
+				break;
+			case FORMAT_KML:
+				appendKmlPoint();
+				break;
+			case FORMAT_CSV:
+				appendCsvPoint();
+				break;
+			}
+			count++;
+			if (sb.length() >= CHUNK_SIZE)
+				writeChunk(out);
+		}
+		writeFooter();
+		writeChunk(out);
+		out.flush();
+		return count;
+	}
+
+	private void writeHeader(String name) {
+		switch (format) {
+		case FORMAT_GPX:
+			sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			sb.append("<gpx version=\"1.1\" creator=\"SatStat\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n");
+			sb.append("<trk>\n<name>");
+			appendXmlEscaped(name);
+			sb.append("</name>\n<trkseg>\n");
+			break;
+		case FORMAT_KML:
+			sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			sb.append("<kml xmlns=\"http://www.opengis.net/kml/2.2\">\n<Document>\n<Placemark>\n<name>");
+			appendXmlEscaped(name);
+			sb.append("</name>\n<LineString>\n<altitudeMode>absolute</altitudeMode>\n<coordinates>\n");
+			break;
+		case FORMAT_CSV:
+			sb.append("time,");
+			if (coordFormat == CoordinateFormatter.FORMAT_MGRS)
+				sb.append("mgrs");
+			else if (coordFormat == CoordinateFormatter.FORMAT_UTM)
+				sb.append("utm");
+			else
+				sb.append("latitude,longitude");
+			sb.append(",altitude,accuracy,speed,bearing,sats_used,sats_in_view\n");
+			break;
+		}
+	}
+
+	private void writeFooter() {
+		switch (format) {
+		case FORMAT_GPX:
+			sb.append("</trkseg>\n</trk>\n</gpx>\n");
+			break;
+		case FORMAT_KML:
+			sb.append("</coordinates>\n</LineString>\n</Placemark>\n</Document>\n</kml>\n");
+			break;
+		}
+	}
+
+	private void appendGpxPoint() {
+		sb.append("<trkpt lat=\"");
+		formatter.appendSigned(sb, point.latitude, 7);
+		sb.append("\" lon=\"");
+		formatter.appendSigned(sb, point.longitude, 7);
+		sb.append("\">");
+		if (point.hasAltitude()) {
+			sb.append("<ele>");
+			formatter.appendSigned(sb, point.altitude, 1);
+			sb.append("</ele>");
+		}
+		sb.append("<time>");
+		appendIsoTime(point.time);
+		sb.append("</time>");
+		if (point.satsUsed >= 0) {
+			sb.append("<sat>");
+			formatter.appendNumber(sb, point.satsUsed, 1);
+			sb.append("</sat>");
+		}
+		sb.append("</trkpt>\n");
+	}
+
+	private void appendKmlPoint() {
+		formatter.appendSigned(sb, point.longitude, 7);
+		sb.append(',');
+		formatter.appendSigned(sb, point.latitude, 7);
+		if (point.hasAltitude()) {
+			sb.append(',');
+			formatter.appendSigned(sb, point.altitude, 1);
+		}
+		sb.append('\n');
+	}
+
+	private void appendCsvPoint() {
+		appendIsoTime(point.time);
+		sb.append(',');
+		switch (coordFormat) {
+		case CoordinateFormatter.FORMAT_MIN:
+			field.setLength(0);
+			formatter.appendDegMin(field, point.latitude);
+			appendCsvQuoted(field);
+			sb.append(',');
+			field.setLength(0);
+			formatter.appendDegMin(field, point.longitude);
+			appendCsvQuoted(field);
+			break;
+		case CoordinateFormatter.FORMAT_SEC:
+			field.setLength(0);
+			formatter.appendDegMinSec(field, point.latitude);
+			appendCsvQuoted(field);
+			sb.append(',');
+			field.setLength(0);
+			formatter.appendDegMinSec(field, point.longitude);
+			appendCsvQuoted(field);
+			break;
+		case CoordinateFormatter.FORMAT_MGRS:
+			formatter.appendMgrs(sb, point.latitude, point.longitude);
+			break;
+		case CoordinateFormatter.FORMAT_UTM:
+			field.setLength(0);
+			formatter.appendUtm(field, point.latitude, point.longitude);
+			appendCsvQuoted(field);
+			break;
+		default:
+			formatter.appendSigned(sb, point.latitude, 7);
+			sb.append(',');
+			formatter.appendSigned(sb, point.longitude, 7);
+		}
+		sb.append(',');
+		if (point.hasAltitude())
+			formatter.appendSigned(sb, point.altitude, 1);
+		sb.append(',');
+		if (point.hasAccuracy())
+			formatter.appendSigned(sb, point.accuracy, 1);
+		sb.append(',');
+		if (point.hasSpeed())
+			formatter.appendSigned(sb, point.speed, 2);
+		sb.append(',');
+		if (point.hasBearing())
+			formatter.appendSigned(sb, point.bearing, 1);
+		sb.append(',');
+		if (point.satsUsed >= 0)
+			formatter.appendNumber(sb, point.satsUsed, 1);
+		sb.append(',');
+		if (point.satsInView >= 0)
+			formatter.appendNumber(sb, point.satsInView, 1);
+		sb.append('\n');
+	}
+
+	/**
+	 * Appends a UTC time in ISO 8601 format, e.g. {@code 2016-03-01T12:34:56Z}. Milliseconds are
+	 * included only if they are not zero.
+	 */
+	private void appendIsoTime(long millis) {
+		long days = millis / MILLIS_PER_DAY;
+		long msOfDay = millis % MILLIS_PER_DAY;
+		if (msOfDay < 0) {
+			days--;
+			msOfDay += MILLIS_PER_DAY;
+		}
+
+		// civil date from days since 1970-01-01, proleptic Gregorian calendar
+		long z = days + 719468;
+		long era = ((z >= 0) ? z : z - 146096) / 146097;
+		long doe = z - era * 146097;
+		long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		long mp = (5 * doy + 2) / 153;
+		long day = doy - (153 * mp + 2) / 5 + 1;
+		long month = (mp < 10) ? mp + 3 : mp - 9;
+		long year = yoe + era * 400 + ((month <= 2) ? 1 : 0);
+
+		formatter.appendNumber(sb, year, 4);
+		sb.append('-');
+		formatter.appendNumber(sb, month, 2);
+		sb.append('-');
+		formatter.appendNumber(sb, day, 2);
+		sb.append('T');
+		formatter.appendNumber(sb, msOfDay / 3600000, 2);
+		sb.append(':');
+		formatter.appendNumber(sb, (msOfDay / 60000) % 60, 2);
+		sb.append(':');
+		formatter.appendNumber(sb, (msOfDay / 1000) % 60, 2);
+		if (msOfDay % 1000 != 0) {
+			sb.append('.');
+			formatter.appendNumber(sb, msOfDay % 1000, 3);
+		}
+		sb.append('Z');
+	}
+
+	/**
+	 * Appends a field to CSV output, enclosed in double quotes.
+	 */
+	private void appendCsvQuoted(CharSequence value) {
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"')
+				sb.append('"');
+			sb.append(c);
+		}
+		sb.append('"');
+	}
+
+	private void appendXmlEscaped(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '&':
+				sb.append("&amp;");
+				break;
+			case '<':
+				sb.append("&lt;");
+				break;
+			case '>':
+				sb.append("&gt;");
+				break;
+			case '"':
+				sb.append("&quot;");
+				break;
+			default:
+				sb.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Passes the buffered output to the writer and clears the buffer.
+	 */
+	private void writeChunk(Writer out) throws IOException {
+		int pos = 0;
+		while (pos < sb.length()) {
+			int len = Math.min(chunk.length, sb.length() - pos);
+			sb.getChars(pos, pos + len, chunk, 0);
+			out.write(chunk, 0, len);
+			pos += len;
+		}
+		sb.setLength(0);
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+/**
+ * A single fix in a recorded track.
+ * <p>
+ * Instances are mutable so that a reader can fill the same instance for every point in a track,
+ * and a writer can take its input from an instance which is updated for every fix.
+ */
+public class TrackPoint {
+	/** Time of the fix, in milliseconds since the epoch (UTC) */
+	public long time;
+
+	/** Latitude in degrees */
+	public double latitude;
+
+	/** Longitude in degrees */
+	public double longitude;
+
+	/** Altitude above the WGS84 ellipsoid in meters, {@link Double#NaN} if not available */
+	public double altitude = Double.NaN;
+
+	/** Estimated accuracy in meters, {@link Float#NaN} if not available */
+	public float accuracy = Float.NaN;
+
+	/** Speed over ground in m/s, {@link Float#NaN} if not available */
+	public float speed = Float.NaN;
+
+	/** Bearing in degrees, {@link Float#NaN} if not available */
+	public float bearing = Float.NaN;
+
+	/** Number of satellites used in the fix, -1 if not known */
+	public int satsUsed = -1;
+
+	/** Number of satellites in view, -1 if not known */
+	public int satsInView = -1;
+
+	public boolean hasAltitude() {
+		return !Double.isNaN(altitude);
+	}
+
+	public boolean hasAccuracy() {
+		return !Float.isNaN(accuracy);
+	}
+
+	public boolean hasSpeed() {
+		return !Float.isNaN(speed);
+	}
+
+	public boolean hasBearing() {
+		return !Float.isNaN(bearing);
+	}
+
+	/**
+	 * Copies all fields of another point into this one.
+	 */
+	public void set(TrackPoint that) {
+		this.time = that.time;
+		this.latitude = that.latitude;
+		this.longitude = that.longitude;
+		this.altitude = that.altitude;
+		this.accuracy = that.accuracy;
+		this.speed = that.speed;
+		this.bearing = that.bearing;
+		this.satsUsed = that.satsUsed;
+		this.satsInView = that.satsInView;
+	}
+
+	/**
+	 * Resets all optional fields to "not available".
+	 */
+	public void clear() {
+		altitude = Double.NaN;
+		accuracy = Float.NaN;
+		speed = Float.NaN;
+		bearing = Float.NaN;
+		satsUsed = -1;
+		satsInView = -1;
+	}
+}
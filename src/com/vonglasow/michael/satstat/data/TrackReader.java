@@ -0,0 +1,182 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads a track written by {@link TrackWriter}.
+ * <p>
+ * Points are read one at a time into a {@link TrackPoint} supplied by the caller, so that a track
+ * of any length can be processed with constant memory:
+ * <pre>
+ * TrackReader reader = new TrackReader(in);
+ * TrackPoint point = new TrackPoint();
+ * while (reader.read(point)) {
+ *     // process point
+ * }
+ * reader.close();
+ * </pre>
+ * If the track ends with an incomplete record (e.g. because the writer was killed while writing),
+ * that record is silently ignored.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class TrackReader implements Closeable {
+	private static final int BUFFER_SIZE = 8192;
+
+	private final InputStream in;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int pos = 0;
+	private int limit = 0;
+
+	/* Values of the previous record, to which deltas refer */
+	private long prevTime = 0;
+	private long prevLat = 0;
+	private long prevLon = 0;
+	private long prevAlt = 0;
+
+	/**
+	 * Creates a new reader and reads the file header.
+	 * 
+	 * @throws IOException if the stream does not start with a valid header, or the format version is
+	 * not supported
+	 */
+	public TrackReader(InputStream in) throws IOException {
+		this.in = in;
+		byte[] magic = new byte[TrackWriter.MAGIC.length];
+		for (int i = 0; i < magic.length; i++) {
+			if (!fill())
+				throw new IOException("Not a track file: header too short");
+			magic[i] = buffer[pos++];
+		}
+		if (!Arrays.equals(magic, TrackWriter.MAGIC))
+			throw new IOException("Not a track file: invalid signature");
+		if (!fill())
+			throw new IOException("Not a track file: header too short");
+		int version = buffer[pos++];
+		if (version != TrackWriter.VERSION)
+			throw new IOException("Unsupported track file version: " + version);
+	}
+
+	/**
+	 * Reads the next point.
+	 * 
+	 * @param point Receives the point. Optional fields which are not present in the record are reset
+	 * to "not available".
+	 * @return true if a point was read, false if the end of the track has been reached
+	 */
+	public boolean read(TrackPoint point) throws IOException {
+		if (!fill())
+			return false;
+		try {
+			int flags = buffer[pos++];
+
+			long time = prevTime + getSigned();
+			long lat = prevLat + getSigned();
+			long lon = prevLon + getSigned();
+			long alt = prevAlt;
+			if ((flags & TrackWriter.FLAG_ALTITUDE) != 0)
+				alt += getSigned();
+
+			point.clear();
+			point.time = time;
+			point.latitude = lat / TrackWriter.COORD_SCALE;
+			point.longitude = lon / TrackWriter.COORD_SCALE;
+			if ((flags & TrackWriter.FLAG_ALTITUDE) != 0)
+				point.altitude = alt / 10.0;
+			if ((flags & TrackWriter.FLAG_ACCURACY) != 0)
+				point.accuracy = getUnsigned() / 10.0f;
+			if ((flags & TrackWriter.FLAG_SPEED) != 0)
+				point.speed = getUnsigned() / 100.0f;
+			if ((flags & TrackWriter.FLAG_BEARING) != 0)
+				point.bearing = getUnsigned() / 10.0f;
+			if ((flags & TrackWriter.FLAG_SATS) != 0) {
+				point.satsUsed = (int) getUnsigned();
+				point.satsInView = (int) getUnsigned();
+			}
+
+			prevTime = time;
+			prevLat = lat;
+			prevLon = lon;
+			prevAlt = alt;
+			return true;
+		} catch (TruncatedRecordException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Ensures at least one byte is available in the buffer.
+	 * 
+	 * @return false if the end of the stream has been reached
+	 */
+	private boolean fill() throws IOException {
+		if (pos < limit)
+			return true;
+		limit = in.read(buffer, 0, buffer.length);
+		pos = 0;
+		if (limit <= 0) {
+			limit = 0;
+			return false;
+		}
+		return true;
+	}
+
+	private long getSigned() throws IOException {
+		long value = getUnsigned();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private long getUnsigned() throws IOException {
+		long value = 0;
+		int shift = 0;
+		while (true) {
+			if (!fill())
+				throw new TruncatedRecordException();
+			byte b = buffer[pos++];
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+			shift += 7;
+			if (shift > 63)
+				throw new IOException("Malformed track file: varint too long");
+		}
+	}
+
+	/**
+	 * Thrown internally when the stream ends in the middle of a record.
+	 */
+	private static class TruncatedRecordException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		TruncatedRecordException() {
+			super("Track file ends with an incomplete record");
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a track in a compact binary format.
+ * <p>
+ * A track file starts with the four bytes {@code SSTK}, followed by a version byte (currently
+ * {@value #VERSION}), followed by one record for each point. A record starts with a byte of
+ * {@code FLAG_*} bits which indicate the optional fields present, followed by the fields in this
+ * order:
+ * <ul>
+ * <li>time in milliseconds</li>
+ * <li>latitude and longitude in units of 1e-7 degrees</li>
+ * <li>altitude in decimeters, if {@link #FLAG_ALTITUDE} is set</li>
+ * <li>accuracy in decimeters, if {@link #FLAG_ACCURACY} is set</li>
+ * <li>speed in cm/s, if {@link #FLAG_SPEED} is set</li>
+ * <li>bearing in tenths of a degree, if {@link #FLAG_BEARING} is set</li>
+ * <li>satellites used and in view, if {@link #FLAG_SATS} is set</li>
+ * </ul>
+ * Time, latitude, longitude and altitude are stored as the difference to the previous record
+ * (starting from zero), zigzag-encoded so that small negative differences stay small. All fields
+ * are written as base-128 varints. A typical record at 1 Hz takes 10–16 bytes.
+ * <p>
+ * Records are collected in a fixed-size buffer, which is written to the underlying stream only when
+ * it is full, when the oldest point in it exceeds a maximum age, or when {@link #flush()} or
+ * {@link #close()} is called. This keeps the number of writes to flash storage low. A record is
+ * never split across two writes, so a file cut short by a crash contains only complete records,
+ * plus possibly an incomplete one at the end, which {@link TrackReader} skips.
+ * <p>
+ * Writing a point does not allocate any objects. Instances are not thread-safe.
+ */
+public class TrackWriter implements Closeable {
+	/** File signature */
+	static final byte[] MAGIC = {'S', 'S', 'T', 'K'};
+
+	/** Current format version */
+	static final int VERSION = 1;
+
+	static final int FLAG_ALTITUDE = 0x01;
+	static final int FLAG_ACCURACY = 0x02;
+	static final int FLAG_SPEED = 0x04;
+	static final int FLAG_BEARING = 0x08;
+	static final int FLAG_SATS = 0x10;
+
+	/** Scale factor for latitude and longitude */
+	static final double COORD_SCALE = 1e7;
+
+	/** Upper bound for the size of a single record */
+	static final int MAX_RECORD_SIZE = 64;
+
+	/** Default buffer size */
+	public static final int DEFAULT_BUFFER_SIZE = 4096;
+
+	/** Default maximum time a point can stay in the buffer, in milliseconds */
+	public static final long DEFAULT_MAX_BUFFER_AGE = 300000;
+
+	private final OutputStream out;
+	private final byte[] buffer;
+	private final long maxBufferAge;
+	private int pos = 0;
+
+	/** Time of the oldest point in the buffer, valid only if the buffer holds points */
+	private long bufferStart;
+	private boolean bufferHasPoints = false;
+
+	/* Values of the previous record, to which deltas refer */
+	private long prevTime = 0;
+	private long prevLat = 0;
+	private long prevLon = 0;
+	private long prevAlt = 0;
+
+	/**
+	 * Creates a new writer with default buffer settings and writes the file header.
+	 */
+	public TrackWriter(OutputStream out) throws IOException {
+		this(out, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_BUFFER_AGE);
+	}
+
+	/**
+	 * Creates a new writer and writes the file header.
+	 * 
+	 * @param out The stream to write to, which must be positioned at the start of a new file
+	 * @param bufferSize The size of the write buffer, must be at least {@value #MAX_RECORD_SIZE}
+	 * @param maxBufferAge The maximum time span, in milliseconds of track time, which the buffer may
+	 * hold before it is written out
+	 */
+	public TrackWriter(OutputStream out, int bufferSize, long maxBufferAge) throws IOException {
+		if (bufferSize < MAX_RECORD_SIZE)
+			throw new IllegalArgumentException("Buffer size must be at least " + MAX_RECORD_SIZE);
+		this.out = out;
+		this.buffer = new byte[bufferSize];
+		this.maxBufferAge = maxBufferAge;
+		System.arraycopy(MAGIC, 0, buffer, 0, MAGIC.length);
+		pos = MAGIC.length;
+		buffer[pos++] = VERSION;
+	}
+
+	/**
+	 * Appends a point to the track.
+	 * <p>
+	 * The point may not be written to the underlying stream until later.
+	 */
+	public void write(TrackPoint point) throws IOException {
+		if (buffer.length - pos < MAX_RECORD_SIZE)
+			flushBuffer();
+
+		int flags = 0;
+		if (point.hasAltitude())
+			flags |= FLAG_ALTITUDE;
+		if (point.hasAccuracy())
+			flags |= FLAG_ACCURACY;
+		if (point.hasSpeed())
+			flags |= FLAG_SPEED;
+		if (point.hasBearing())
+			flags |= FLAG_BEARING;
+		if ((point.satsUsed >= 0) && (point.satsInView >= 0))
+			flags |= FLAG_SATS;
+		buffer[pos++] = (byte) flags;
+
+		putSigned(point.time - prevTime);
+		prevTime = point.time;
+
+		long lat = Math.round(point.latitude * COORD_SCALE);
+		long lon = Math.round(point.longitude * COORD_SCALE);
+		putSigned(lat - prevLat);
+		putSigned(lon - prevLon);
+		prevLat = lat;
+		prevLon = lon;
+
+		if ((flags & FLAG_ALTITUDE) != 0) {
+			long alt = Math.round(point.altitude * 10);
+			putSigned(alt - prevAlt);
+			prevAlt = alt;
+		}
+		if ((flags & FLAG_ACCURACY) != 0)
+			putUnsigned(Math.round(Math.abs(point.accuracy) * 10));
+		if ((flags & FLAG_SPEED) != 0)
+			putUnsigned(Math.round(Math.abs(point.speed) * 100));
+		if ((flags & FLAG_BEARING) != 0)
+			putUnsigned(Math.round(Math.abs(point.bearing) * 10) % 3600);
+		if ((flags & FLAG_SATS) != 0) {
+			putUnsigned(point.satsUsed);
+			putUnsigned(point.satsInView);
+		}
+
+		if (!bufferHasPoints) {
+			bufferHasPoints = true;
+			bufferStart = point.time;
+		} else if (point.time - bufferStart >= maxBufferAge)
+			flushBuffer();
+	}
+
+	/**
+	 * Writes all buffered points to the underlying stream and flushes it.
+	 */
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	/**
+	 * Writes all buffered points and closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (pos > 0)
+			out.write(buffer, 0, pos);
+		pos = 0;
+		bufferHasPoints = false;
+	}
+
+	/**
+	 * Appends a signed value, zigzag-encoded.
+	 */
+	private void putSigned(long value) {
+		putUnsigned((value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * Appends an unsigned value as a base-128 varint.
+	 */
+	private void putUnsigned(long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[pos++] = (byte) value;
+	}
+}
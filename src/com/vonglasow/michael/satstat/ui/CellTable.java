@@ -0,0 +1,202 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vonglasow.michael.satstat.R;
+import com.vonglasow.michael.satstat.data.CellTower;
+
+import android.support.v4.util.LongSparseArray;
+import android.view.LayoutInflater;
+import android.view.ViewGroup.LayoutParams;
+import android.widget.ImageView;
+import android.widget.TableLayout;
+import android.widget.TableRow;
+import android.widget.TextView;
+
+/**
+ * Keeps the rows of a table of cells in sync with a list of cells.
+ * <p>
+ * Rows are keyed by {@link CellTower#getKey()}. On each update, a cell which was already shown
+ * keeps its row, which is moved only if the position of the cell has changed. Rows are only added
+ * or removed when cells appear or disappear, and removed rows are kept in a pool for reuse, so that
+ * layouts are inflated only when the table grows beyond its previous size.
+ * <p>
+ * Each row remembers the values it displays, and {@link #bind(Row, CellTower)} only formats and sets
+ * the fields whose value has changed.
+ */
+abstract class CellTable<T extends CellTower> {
+	/**
+	 * The views of a table row, and the values they currently display.
+	 */
+	static class Row {
+		/** Value of {@link #values} entries which have not been set */
+		private static final int NO_VALUE = Integer.MIN_VALUE;
+
+		final TableRow view;
+		final ImageView type;
+		final TextView[] fields;
+		private final int[] values;
+		private int icon = 0;
+
+		private Row(TableRow view, int[] fieldIds) {
+			this.view = view;
+			type = (ImageView) view.findViewById(R.id.type);
+			fields = new TextView[fieldIds.length];
+			values = new int[fieldIds.length];
+			for (int i = 0; i < fieldIds.length; i++)
+				fields[i] = (TextView) view.findViewById(fieldIds[i]);
+			reset();
+		}
+
+		/**
+		 * Records the value for a field.
+		 * 
+		 * @param field The index of the field, as passed to the constructor of the table
+		 * @param value The value the field should display
+		 * @return True if the value differs from the one previously recorded, in which case the
+		 * caller must update the field
+		 */
+		boolean isChanged(int field, int value) {
+			if (values[field] == value)
+				return false;
+			values[field] = value;
+			return true;
+		}
+
+		/**
+		 * Sets the icon, unless it is already shown.
+		 */
+		void setIcon(int icon) {
+			if (this.icon == icon)
+				return;
+			this.icon = icon;
+			type.setImageResource(icon);
+		}
+
+		/**
+		 * Forgets all recorded values, so that all fields will be updated on the next bind.
+		 */
+		void reset() {
+			for (int i = 0; i < values.length; i++)
+				values[i] = NO_VALUE;
+			icon = 0;
+		}
+	}
+
+	private final TableLayout table;
+	private final LayoutInflater inflater;
+	private final int layout;
+	private final int[] fieldIds;
+
+	/** Rows currently shown, by cell key */
+	private LongSparseArray<Row> rows = new LongSparseArray<Row>();
+
+	/** Rows shown before the current update, by cell key; empty between updates */
+	private LongSparseArray<Row> oldRows = new LongSparseArray<Row>();
+
+	/** Rows which are not in the table */
+	private final List<Row> pool = new ArrayList<Row>();
+
+	/**
+	 * @param table The table to populate
+	 * @param inflater The inflater for new rows
+	 * @param layout The layout resource for a row, which must be a {@link TableRow} with an
+	 * {@link ImageView} whose ID is {@code type}
+	 * @param fieldIds The IDs of the {@link TextView}s in a row, in the order in which
+	 * {@link Row#fields} will hold them
+	 */
+	CellTable(TableLayout table, LayoutInflater inflater, int layout, int[] fieldIds) {
+		this.table = table;
+		this.inflater = inflater;
+		this.layout = layout;
+		this.fieldIds = fieldIds;
+		table.removeAllViews();
+	}
+
+	/**
+	 * Shows the data of a cell in a row.
+	 * <p>
+	 * The row may have shown the same cell before. Implementations should use
+	 * {@link Row#isChanged(int, int)} and {@link Row#setIcon(int)} to skip fields which have not
+	 * changed.
+	 */
+	abstract void bind(Row row, T cell);
+
+	/**
+	 * Forces all fields of all rows to be updated on the next call to {@link #update(List)}, e.g.
+	 * because a preference affecting their format has changed.
+	 */
+	void invalidate() {
+		for (int i = 0; i < rows.size(); i++)
+			rows.valueAt(i).reset();
+	}
+
+	/**
+	 * Updates the table so that it shows the given cells, in the given order.
+	 */
+	void update(List<T> cells) {
+		LongSparseArray<Row> tmp = oldRows;
+		oldRows = rows;
+		rows = tmp;
+
+		int count = cells.size();
+		for (int i = 0; i < count; i++) {
+			T cell = cells.get(i);
+			long key = cell.getKey();
+			Row row = oldRows.get(key);
+			if (row != null)
+				oldRows.remove(key);
+			else
+				row = obtainRow();
+			rows.put(key, row);
+			bind(row, cell);
+			if (table.getChildAt(i) != row.view) {
+				if (row.view.getParent() != null)
+					table.removeView(row.view);
+				table.addView(row.view, i);
+			}
+		}
+
+		// whatever is left belongs to cells which are gone
+		for (int i = 0; i < oldRows.size(); i++) {
+			Row row = oldRows.valueAt(i);
+			table.removeView(row.view);
+			pool.add(row);
+		}
+		oldRows.clear();
+	}
+
+	/**
+	 * Returns a row from the pool, or inflates a new one if the pool is empty.
+	 */
+	private Row obtainRow() {
+		if (!pool.isEmpty()) {
+			Row row = pool.remove(pool.size() - 1);
+			row.reset();
+			return row;
+		}
+		TableRow view = (TableRow) inflater.inflate(layout, null);
+		view.setLayoutParams(new TableLayout.LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
+		return new Row(view, fieldIds);
+	}
+}
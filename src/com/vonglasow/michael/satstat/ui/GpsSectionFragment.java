@@ -25,15 +25,9 @@ import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
 
-import uk.me.jstott.jcoord.LatLng;
-import uk.me.jstott.jcoord.MGRSRef;
-import com.hzi.UTM;
 import android.hardware.GeomagneticField;
 import android.hardware.Sensor;
-import android.hardware.SensorEvent;
 import android.hardware.SensorManager;
-import android.location.GpsSatellite;
-import android.location.GpsStatus;
 import android.location.Location;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
@@ -47,8 +41,12 @@ import android.widget.TextView;
 
 import com.vonglasow.michael.satstat.Const;
 import com.vonglasow.michael.satstat.R;
+import com.vonglasow.michael.satstat.data.SatelliteSnapshot;
+import com.vonglasow.michael.satstat.utils.CoordinateFormatter;
+import com.vonglasow.michael.satstat.widgets.FrameTimeLogger;
 import com.vonglasow.michael.satstat.widgets.GpsSnrView;
 import com.vonglasow.michael.satstat.widgets.GpsStatusView;
+import com.vonglasow.michael.satstat.widgets.SnrHistoryView;
 
 /**
  * The fragment which displays GPS data.
@@ -65,9 +63,17 @@ public class GpsSectionFragment extends Fragment {
 
 	private DateFormat df;
 
+	/*
+	 * Formatter for coordinates and the buffer it writes to, reused for every location update
+	 */
+	private CoordinateFormatter coordFormatter;
+	private String unitDegree;
+	private final StringBuilder coordBuilder = new StringBuilder(32);
+
 	private LinearLayout gpsRootLayout;
 	private GpsStatusView gpsStatusView;
 	private GpsSnrView gpsSnrView;
+	private SnrHistoryView snrHistoryView;
 	private LinearLayout gpsLatLayout;
 	private TextView gpsLat;
 	private LinearLayout gpsLonLayout;
@@ -88,10 +94,13 @@ public class GpsSectionFragment extends Fragment {
 	private TextView gpsTtff;
 
 	/*
-	 * Last known gravity and magnetic field vector
+	 * Last known gravity and magnetic field vector, and buffers for deriving orientation from them
 	 */
-	private float[] gravity;
-	private float[] geomagnetic;
+	private final float[] gravity = new float[SensorDispatcher.MAX_VALUES];
+	private final float[] geomagnetic = new float[SensorDispatcher.MAX_VALUES];
+	private final float[] rotationMatrix = new float[16];
+	private final float[] inclinationMatrix = new float[16];
+	private final float[] ypr = new float[3];
 
 	/* Whether the orientation sensor returns valid data */
 	private boolean hasOrientation = false;
@@ -110,11 +119,26 @@ public class GpsSectionFragment extends Fragment {
 		// Initialize controls
 		gpsRootLayout = (LinearLayout) rootView.findViewById(R.id.gpsRootLayout);
 		gpsSnrView = (GpsSnrView) rootView.findViewById(R.id.gpsSnrView);
+		snrHistoryView = (SnrHistoryView) rootView.findViewById(R.id.snrHistoryView);
+		snrHistoryView.setHistory(MainActivity.satelliteHistory);
+
+		// tapping the SNR chart switches between current SNR and SNR history
+		View.OnClickListener snrToggleListener = new View.OnClickListener() {
+			@Override
+			public void onClick(View v) {
+				boolean showHistory = (gpsSnrView.getVisibility() == View.VISIBLE);
+				gpsSnrView.setVisibility(showHistory ? View.GONE : View.VISIBLE);
+				snrHistoryView.setVisibility(showHistory ? View.VISIBLE : View.GONE);
+			}
+		};
+		gpsSnrView.setOnClickListener(snrToggleListener);
+		snrHistoryView.setOnClickListener(snrToggleListener);
 		gpsStatusView = new GpsStatusView(rootView.getContext());
 		LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT);
 		params.gravity = Gravity.CENTER_HORIZONTAL | Gravity.CENTER_VERTICAL;
 		params.weight = 1;
 		gpsRootLayout.addView(gpsStatusView, 0, params);
+		setFrameTimeLogging(mainActivity.prefFrameTimes);
 		gpsLatLayout = (LinearLayout) rootView.findViewById(R.id.gpsLatLayout);
 		gpsLat = (TextView) rootView.findViewById(R.id.gpsLat);
 		gpsLonLayout = (LinearLayout) rootView.findViewById(R.id.gpsLonLayout);
@@ -135,6 +159,9 @@ public class GpsSectionFragment extends Fragment {
 		gpsTtff = (TextView) rootView.findViewById(R.id.gpsTtff);
 
 		df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.ROOT);
+		unitDegree = getString(R.string.unit_degree);
+		coordFormatter = new CoordinateFormatter(unitDegree,
+				getString(R.string.utm_outside_latitude_range), Locale.getDefault());
 
 		mainActivity.gpsSectionFragment = this;
 
@@ -150,14 +177,33 @@ public class GpsSectionFragment extends Fragment {
 	}
 
 
+	/**
+	 * Starts or stops logging the draw times of the satellite views.
+	 */
+	public void setFrameTimeLogging(boolean enabled) {
+		gpsStatusView.setFrameTimeListener(enabled ? new FrameTimeLogger("GpsStatusView") : null);
+		gpsSnrView.setFrameTimeListener(enabled ? new FrameTimeLogger("GpsSnrView") : null);
+		snrHistoryView.setFrameTimeListener(enabled ? new FrameTimeLogger("SnrHistoryView") : null);
+	}
+
+
 	/**
 	 * Called by {@link MainActivity} when the status of the GPS changes. Updates GPS display.
+	 * 
+	 * @param sats The satellites in view. The views keep a reference to this object.
+	 * @param timeToFirstFix Time to first fix in milliseconds, or a negative value if unknown
 	 */
-	public void onGpsStatusChanged(GpsStatus status, int satsInView, int satsUsed, Iterable<GpsSatellite> sats) {
-		gpsSats.setText(String.valueOf(satsUsed) + "/" + String.valueOf(satsInView));
-		gpsTtff.setText(String.valueOf(status.getTimeToFirstFix() / 1000));
+	public void onGpsStatusChanged(SatelliteSnapshot sats, int timeToFirstFix) {
+		gpsSats.setText(String.valueOf(sats.getUsedCount()) + "/" + String.valueOf(sats.count));
+		if (timeToFirstFix < 0)
+			gpsTtff.setText(getString(R.string.value_none));
+		else
+			gpsTtff.setText(String.valueOf(timeToFirstFix / 1000));
+		gpsStatusView.showTrails(mainActivity.prefSkyTrails ? MainActivity.satelliteTrails : null);
 		gpsStatusView.showSats(sats);
 		gpsSnrView.showSats(sats);
+		if (snrHistoryView.getVisibility() == View.VISIBLE)
+			snrHistoryView.onHistoryChanged();
 	}
 
 
@@ -167,13 +213,15 @@ public class GpsSectionFragment extends Fragment {
 	 */
 	public void onLocationChanged(Location location) {
 		if (location.hasAccuracy()) {
-			Float getAcc = (float) 0.0;
+			float getAcc = 0.0f;
 			if(mainActivity.prefUnitType) {
 				getAcc = (float)(location.getAccuracy());
 			} else {
 				getAcc = (float)(location.getAccuracy() * (float) 3.28084);
 			}
-			gpsAccuracy.setText(String.format("%.0f", getAcc));
+			coordBuilder.setLength(0);
+			coordFormatter.appendRounded(coordBuilder, getAcc);
+			gpsAccuracy.setText(coordBuilder);
 			gpsAccuracyUnit.setText(getString(((mainActivity.prefUnitType) ? R.string.unit_meter : R.string.unit_feet)));
 		} else {
 			gpsAccuracy.setText(getString(R.string.value_none));
@@ -184,48 +232,46 @@ public class GpsSectionFragment extends Fragment {
 			gpsCoordLayout.setVisibility(View.GONE);
 			gpsLatLayout.setVisibility(View.VISIBLE);
 			gpsLonLayout.setVisibility(View.VISIBLE);
-			gpsLat.setText(String.format("%.5f%s", location.getLatitude(), getString(R.string.unit_degree)));
-			gpsLon.setText(String.format("%.5f%s", location.getLongitude(), getString(R.string.unit_degree)));
+			coordBuilder.setLength(0);
+			coordFormatter.appendDecimal(coordBuilder, location.getLatitude());
+			gpsLat.setText(coordBuilder);
+			coordBuilder.setLength(0);
+			coordFormatter.appendDecimal(coordBuilder, location.getLongitude());
+			gpsLon.setText(coordBuilder);
 		} else if (mainActivity.prefCoord == Const.KEY_PREF_COORD_MIN) {
 			gpsCoordLayout.setVisibility(View.GONE);
 			gpsLatLayout.setVisibility(View.VISIBLE);
 			gpsLonLayout.setVisibility(View.VISIBLE);
-			double dec = location.getLatitude();
-			double deg = (int) dec;
-			double min = Math.abs(60.0 * (dec - deg));
-			gpsLat.setText(String.format("%.0f%s %.3f'", deg, getString(R.string.unit_degree), min + /*rounding*/ 0.0005));
-			dec = location.getLongitude();
-			deg = (int) dec;
-			min = Math.abs(60.0 * (dec - deg));
-			gpsLon.setText(String.format("%.0f%s %.3f'", deg, getString(R.string.unit_degree), min + /*rounding*/ 0.0005));
+			coordBuilder.setLength(0);
+			coordFormatter.appendDegMin(coordBuilder, location.getLatitude());
+			gpsLat.setText(coordBuilder);
+			coordBuilder.setLength(0);
+			coordFormatter.appendDegMin(coordBuilder, location.getLongitude());
+			gpsLon.setText(coordBuilder);
 		} else if (mainActivity.prefCoord == Const.KEY_PREF_COORD_SEC) {
 			gpsCoordLayout.setVisibility(View.GONE);
 			gpsLatLayout.setVisibility(View.VISIBLE);
 			gpsLonLayout.setVisibility(View.VISIBLE);
-
-			double dec = location.getLatitude();
-			double deg = (int) dec;
-			double tmp = Math.abs(60.0 * (dec - deg));
-			double min = (int) tmp;
-			double sec = 60.0 * (tmp - min);
-			gpsLat.setText(String.format("%.0f%s %.0f' %.1f\"", deg, getString(R.string.unit_degree), min, sec + /*rounding*/ 0.05));
-
-			dec = location.getLongitude();
-			deg = (int) dec;
-			tmp = Math.abs(60.0 * (dec - deg));
-			min = (int) tmp;
-			sec = 60.0 * (tmp - min);
-			gpsLon.setText(String.format("%.0f%s %.0f' %.1f\"", deg, getString(R.string.unit_degree), min, sec + /*rounding*/ 0.05));
+			coordBuilder.setLength(0);
+			coordFormatter.appendDegMinSec(coordBuilder, location.getLatitude());
+			gpsLat.setText(coordBuilder);
+			coordBuilder.setLength(0);
+			coordFormatter.appendDegMinSec(coordBuilder, location.getLongitude());
+			gpsLon.setText(coordBuilder);
 		} else if (mainActivity.prefCoord == Const.KEY_PREF_COORD_MGRS) {
 			gpsLatLayout.setVisibility(View.GONE);
 			gpsLonLayout.setVisibility(View.GONE);
 			gpsCoordLayout.setVisibility(View.VISIBLE);
-			gpsCoord.setText(new LatLng(location.getLatitude(), location.getLongitude()).toMGRSRef().toString(MGRSRef.PRECISION_1M));
+			coordBuilder.setLength(0);
+			coordFormatter.appendMgrs(coordBuilder, location.getLatitude(), location.getLongitude());
+			gpsCoord.setText(coordBuilder);
 		} else if (mainActivity.prefCoord == Const.KEY_PREF_COORD_UTM) {
 			gpsLatLayout.setVisibility(View.GONE);
 			gpsLonLayout.setVisibility(View.GONE);
 			gpsCoordLayout.setVisibility(View.VISIBLE);
-			gpsCoord.setText(UTM.lat_lon_to_utm(location.getLatitude(), location.getLongitude(), this.getContext()));
+			coordBuilder.setLength(0);
+			coordFormatter.appendUtm(coordBuilder, location.getLatitude(), location.getLongitude());
+			gpsCoord.setText(coordBuilder);
 		}
 
 		if (mainActivity.prefUtc)
@@ -235,20 +281,25 @@ public class GpsSectionFragment extends Fragment {
 		gpsTime.setText(df.format(new Date(location.getTime())));
 
 		if (location.hasAltitude()) {
-			Float getAltitude = (float) 0.0;
+			float getAltitude = 0.0f;
 			if(mainActivity.prefUnitType) {
 				getAltitude = (float)(location.getAltitude());
 			} else {
 				getAltitude = (float)(location.getAltitude() * (float) 3.28084);
 			}
-			gpsAlt.setText(String.format("%.0f", getAltitude));
+			coordBuilder.setLength(0);
+			coordFormatter.appendRounded(coordBuilder, getAltitude);
+			gpsAlt.setText(coordBuilder);
 			gpsAltUnit.setText(getString(((mainActivity.prefUnitType) ? R.string.unit_meter : R.string.unit_feet)));
-			orDeclination.setText(String.format("%.0f%s", new GeomagneticField(
+			coordBuilder.setLength(0);
+			coordFormatter.appendRounded(coordBuilder, new GeomagneticField(
 					(float) location.getLatitude(),
 					(float) location.getLongitude(),
 					(float) (getAltitude),
 					location.getTime()
-					).getDeclination(), getString(R.string.unit_degree)));
+					).getDeclination());
+			coordBuilder.append(unitDegree);
+			orDeclination.setText(coordBuilder);
 		} else {
 			gpsAlt.setText(getString(R.string.value_none));
 			gpsAltUnit.setText("");
@@ -256,7 +307,10 @@ public class GpsSectionFragment extends Fragment {
 		}
 
 		if (location.hasBearing()) {
-			gpsBearing.setText(String.format("%.0f%s", location.getBearing(), getString(R.string.unit_degree)));
+			coordBuilder.setLength(0);
+			coordFormatter.appendRounded(coordBuilder, location.getBearing());
+			coordBuilder.append(unitDegree);
+			gpsBearing.setText(coordBuilder);
 			gpsOrientation.setText(MainActivity.formatOrientation(this.getContext(), location.getBearing()));
 		} else {
 			gpsBearing.setText(getString(R.string.value_none));
@@ -264,7 +318,7 @@ public class GpsSectionFragment extends Fragment {
 		}
 
 		if (location.hasSpeed()) {
-			Float getSpeed = (float) 0.0;
+			float getSpeed = 0.0f;
 			if (mainActivity.prefKnots) {
 				getSpeed = (float)(location.getSpeed() * 1.943844f);
 			} else if (mainActivity.prefUnitType) {
@@ -272,7 +326,9 @@ public class GpsSectionFragment extends Fragment {
 			} else {
 				getSpeed = (float)(location.getSpeed() * 2.23694f);
 			}
-			gpsSpeed.setText(String.format("%.0f", getSpeed));
+			coordBuilder.setLength(0);
+			coordFormatter.appendRounded(coordBuilder, getSpeed);
+			gpsSpeed.setText(coordBuilder);
 			gpsSpeedUnit.setText(getString(((mainActivity.prefKnots) ? R.string.unit_kn : (mainActivity.prefUnitType) ? R.string.unit_km_h : R.string.unit_mph)));
 		} else {
 			gpsSpeed.setText(getString(R.string.value_none));
@@ -285,36 +341,33 @@ public class GpsSectionFragment extends Fragment {
 
 
 	/**
-	 * Called by {@link MainActivity} when a sensor's reading changes.
+	 * Called by {@link MainActivity} when sensor readings change.
 	 * Rotates sky plot according to bearing.
 	 *
 	 * If {@code TYPE_ORIENTATION} data is available, preference is given to that value, which
 	 * appeared to be more accurate in tests. Otherwise orientation is obtained from the rotation
 	 * vector of the device, based on {@link TYPE_ACCELEROMETER} and {@code TYPE_MAGNETIC_FIELD}
 	 * sensor data.
+	 * 
+	 * @param sensors Holds the latest sensor readings
+	 * @param types The sensor types with new readings, see {@link SensorDispatcher#hasType(int, int)}
 	 */
-	public void onSensorChanged(SensorEvent event) {
-		switch (event.sensor.getType()) {
-		case Sensor.TYPE_ACCELEROMETER:
-			gravity = event.values.clone();
-			break;
-		case Sensor.TYPE_MAGNETIC_FIELD:
-			geomagnetic = event.values.clone();
-			break;
-		case Sensor.TYPE_ORIENTATION:
-			if (event.values[0] != 0) {
+	public void onSensorsChanged(SensorDispatcher sensors, int types) {
+		if (SensorDispatcher.hasType(types, Sensor.TYPE_ORIENTATION)) {
+			float yaw = sensors.getValue(Sensor.TYPE_ORIENTATION, 0);
+			if (yaw != 0) {
 				hasOrientation = true;
-				gpsStatusView.setYaw(event.values[0]);
+				gpsStatusView.setYaw(yaw);
 			}
-			break;
 		}
 
-		if ((gravity != null) && (geomagnetic != null) && !hasOrientation) {
-			float[] ypr = new float[3];
-			float[] r = new float[16];
-			float[] i = new float[16];
-			SensorManager.getRotationMatrix(r, i, gravity, geomagnetic);
-			ypr = SensorManager.getOrientation(r, ypr);
+		if (!hasOrientation
+				&& (SensorDispatcher.hasType(types, Sensor.TYPE_ACCELEROMETER) || SensorDispatcher.hasType(types, Sensor.TYPE_MAGNETIC_FIELD))
+				&& sensors.hasReading(Sensor.TYPE_ACCELEROMETER) && sensors.hasReading(Sensor.TYPE_MAGNETIC_FIELD)) {
+			sensors.getValues(Sensor.TYPE_ACCELEROMETER, gravity);
+			sensors.getValues(Sensor.TYPE_MAGNETIC_FIELD, geomagnetic);
+			SensorManager.getRotationMatrix(rotationMatrix, inclinationMatrix, gravity, geomagnetic);
+			SensorManager.getOrientation(rotationMatrix, ypr);
 			gpsStatusView.setYaw((float) Math.toDegrees(ypr[0]));
 		}
 	}
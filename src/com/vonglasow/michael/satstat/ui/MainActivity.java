@@ -20,6 +20,7 @@
 package com.vonglasow.michael.satstat.ui;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -35,16 +36,16 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Semaphore;
 
 import org.mapsforge.map.android.graphics.AndroidGraphicFactory;
 
 import android.Manifest;
-import android.annotation.TargetApi;
+import android.app.AlertDialog;
 import android.app.NotificationManager;
-import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.content.pm.ActivityInfo;
@@ -52,19 +53,16 @@ import android.content.pm.PackageManager;
 import android.content.res.Configuration;
 import android.graphics.drawable.Drawable;
 import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
-import android.location.GpsSatellite;
-import android.location.GpsStatus;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
-import android.net.ConnectivityManager;
 import android.net.Uri;
-import android.net.wifi.WifiManager;
-import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.support.design.widget.TabLayout;
 import android.support.v4.app.ActivityCompat;
@@ -76,16 +74,6 @@ import android.support.v4.view.ViewPager;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.view.ContextThemeWrapper;
-import android.telephony.CellInfo;
-import android.telephony.CellLocation;
-import android.telephony.PhoneStateListener;
-import static android.telephony.PhoneStateListener.LISTEN_CELL_INFO;
-import static android.telephony.PhoneStateListener.LISTEN_CELL_LOCATION;
-import static android.telephony.PhoneStateListener.LISTEN_DATA_CONNECTION_STATE;
-import static android.telephony.PhoneStateListener.LISTEN_NONE;
-import static android.telephony.PhoneStateListener.LISTEN_SIGNAL_STRENGTHS;
-import android.telephony.SignalStrength;
-import android.telephony.TelephonyManager;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -97,11 +85,21 @@ import android.widget.Toast;
 
 import com.vonglasow.michael.satstat.Const;
 import com.vonglasow.michael.satstat.GpsEventReceiver;
+import com.vonglasow.michael.satstat.PasvLocListenerService;
 import com.vonglasow.michael.satstat.R;
 import com.vonglasow.michael.satstat.data.CellTower;
 import com.vonglasow.michael.satstat.data.CellTowerList;
+import com.vonglasow.michael.satstat.data.RadioCollector;
+import com.vonglasow.michael.satstat.data.RadioSnapshot;
+import com.vonglasow.michael.satstat.data.ReplayEngine;
+import com.vonglasow.michael.satstat.data.SatelliteHistory;
+import com.vonglasow.michael.satstat.data.SatelliteSnapshot;
+import com.vonglasow.michael.satstat.data.SatelliteSource;
+import com.vonglasow.michael.satstat.data.SatelliteTrails;
+import com.vonglasow.michael.satstat.data.SurveyLogger;
+import com.vonglasow.michael.satstat.data.TrackPoint;
 
-public class MainActivity extends AppCompatActivity implements GpsStatus.Listener, LocationListener, OnSharedPreferenceChangeListener, SensorEventListener {
+public class MainActivity extends AppCompatActivity implements SatelliteSource.Listener, LocationListener, OnSharedPreferenceChangeListener, SensorDispatcher.Listener {
 	private static final String TAG = MainActivity.class.getSimpleName();
 
     /**
@@ -149,14 +147,67 @@ public class MainActivity extends AppCompatActivity implements GpsStatus.Listene
 	RadioSectionFragment radioSectionFragment = null;
 	MapSectionFragment mapSectionFragment = null;
 	
-	TelephonyManager telephonyManager;
-	ConnectivityManager connectivityManager;
-	WifiManager wifiManager;
+	RadioCollector radioCollector;
 	LocationManager locationManager;
+	SatelliteSource satelliteSource;
 	SensorManager sensorManager;
 	
 	boolean[] permsRequested = new boolean[Const.PERM_REQUEST_MAX + 1];
 
+	/**
+	 * Replay speed factors, in the order of {@code R.array.replay_speeds}.
+	 */
+	private static final int[] REPLAY_SPEEDS = {1, 10, ReplayEngine.SPEED_MAX};
+
+	/**
+	 * The replay in progress, or null if live data is shown.
+	 */
+	private ReplayEngine replayEngine = null;
+
+	/**
+	 * The survey log, or null if no survey is being recorded.
+	 */
+	private SurveyLogger surveyLogger = null;
+
+	/**
+	 * Reused to pass GPS fixes to {@link #surveyLogger}.
+	 */
+	private final TrackPoint surveyPoint = new TrackPoint();
+
+	/**
+	 * Number of samples in the satellite history. Along with {@link #HISTORY_INTERVAL}, this
+	 * determines the time span shown in the SNR history chart (10 minutes).
+	 */
+	private static final int HISTORY_SIZE = 600;
+
+	/**
+	 * Minimum interval between samples in the satellite history, in milliseconds.
+	 */
+	private static final long HISTORY_INTERVAL = 1000;
+
+	/**
+	 * Recent SNR of each satellite. Static so that it survives recreation of the activity, e.g. when
+	 * the screen is rotated. Accessed on the UI thread only.
+	 */
+	static final SatelliteHistory satelliteHistory = new SatelliteHistory(HISTORY_SIZE, HISTORY_INTERVAL);
+
+	/**
+	 * Maximum number of points in the trail of a satellite, after simplification.
+	 */
+	private static final int TRAIL_POINTS = 512;
+
+	/**
+	 * Maximum deviation of a simplified trail from the satellite positions, relative to the radius
+	 * of the sky plot (about half a degree of elevation).
+	 */
+	private static final float TRAIL_TOLERANCE = 0.005f;
+
+	/**
+	 * Satellite trails for the sky plot, recorded while {@link #prefSkyTrails} is set. Static for the
+	 * same reasons as {@link #satelliteHistory}.
+	 */
+	static final SatelliteTrails satelliteTrails = new SatelliteTrails(TRAIL_POINTS, TRAIL_TOLERANCE);
+
 	private Sensor mOrSensor;
 	private Sensor mAccSensor;
 	private Sensor mGyroSensor;
@@ -167,15 +218,22 @@ public class MainActivity extends AppCompatActivity implements GpsStatus.Listene
 	private Sensor mHumiditySensor;
 	private Sensor mTempSensor;
 	
-	private long mOrLast = 0;
-	private long mAccLast = 0;
-	private long mGyroLast = 0;
-	private long mMagLast = 0;
-	private long mLightLast = 0;
-	private long mProximityLast = 0;
-	private long mPressureLast = 0;
-	private long mHumidityLast = 0;
-	private long mTempLast = 0;
+	/**
+	 * Receives sensor events and passes the readings on to {@link #onSensorsChanged(SensorDispatcher, int)}
+	 * at most once per frame and once every {@link #iSensorRate} for each sensor.
+	 */
+	private final SensorDispatcher sensorDispatcher = new SensorDispatcher(this, iSensorRate);
+
+	/**
+	 * Thread on which sensor and location events are received if {@link #prefBackgroundSensors} is
+	 * set, null otherwise or while the activity is stopped.
+	 */
+	private HandlerThread backgroundThread = null;
+
+	/**
+	 * Receives location events on {@link #backgroundThread} and passes them on to the UI thread.
+	 */
+	private final LocationListener locationRelay = new LocationRelay();
 
 	/**
 	 * Converts screen rotation to orientation for devices with a naturally tall screen.
@@ -201,58 +259,16 @@ public class MainActivity extends AppCompatActivity implements GpsStatus.Listene
 	boolean prefKnots = false;
 	int prefCoord = Const.KEY_PREF_COORD_DECIMAL;
 	boolean prefUtc = false;
+	boolean prefSkyTrails = false;
+	boolean prefBackgroundSensors = false;
+	boolean prefSurveyLog = false;
+	boolean prefFrameTimes = false;
 	boolean prefCid = false;
 	boolean prefCid2 = false;
 	int prefWifiSort = 0;
 	boolean prefMapOffline = false;
 	String prefMapPath = Const.MAP_PATH_DEFAULT;
 
-	/** 
-	 * The {@link PhoneStateListener} for getting radio network updates 
-	 */
-	private final PhoneStateListener mPhoneStateListener = new PhoneStateListener() {
-		@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
-	 	public void onCellInfoChanged(List<CellInfo> cellInfo) {
-			if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1) 
-				return;
-			if (radioSectionFragment != null)
-				radioSectionFragment.updateCellData(null, null, cellInfo);
-	 	}
-	 	
-		public void onCellLocationChanged (CellLocation location) {
-			if (radioSectionFragment != null)
-				radioSectionFragment.updateCellData(location, null, null);
-		}
-		
-		public void onDataConnectionStateChanged (int state, int networkType) {
-			if (radioSectionFragment != null)
-				radioSectionFragment.onNetworkTypeChanged(networkType);
-		}
-		
-		public void onSignalStrengthsChanged (SignalStrength signalStrength) {
-			if (radioSectionFragment != null)
-				radioSectionFragment.updateCellData(null, signalStrength, null);
-		}
-	};
-	
-	/** 
-	 * The {@link BroadcastReceiver} for getting radio network updates 
-	 */
-	private final BroadcastReceiver mWifiScanReceiver = new BroadcastReceiver() {
-		@Override
-		public void onReceive(Context c, Intent intent) {
-			if (intent.getAction() == WifiManager.SCAN_RESULTS_AVAILABLE_ACTION) {
-				if (radioSectionFragment != null) {
-					radioSectionFragment.scanResults = wifiManager.getScanResults();
-					radioSectionFragment.refreshWifiResults();
-				}
-			} else {
-				//something has changed about WiFi setup, rescan
-				wifiManager.startScan();
-			}
-		}
-	};
-	
 	private Thread.UncaughtExceptionHandler defaultUEH;
 	
 	
@@ -304,11 +320,6 @@ public class MainActivity extends AppCompatActivity implements GpsStatus.Listene
 	}
     
 
-    /**
-     * Called when a sensor's accuracy has changed. Does nothing.
-     */
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {}
-    
 	@Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -364,6 +375,10 @@ public class MainActivity extends AppCompatActivity implements GpsStatus.Listene
 		prefKnots = mSharedPreferences.getBoolean(Const.KEY_PREF_KNOTS, prefKnots);
 		prefCoord = Integer.valueOf(mSharedPreferences.getString(Const.KEY_PREF_COORD, Integer.toString(prefCoord)));
 		prefUtc = mSharedPreferences.getBoolean(Const.KEY_PREF_UTC, prefUtc);
+		prefSkyTrails = mSharedPreferences.getBoolean(Const.KEY_PREF_SKY_TRAILS, prefSkyTrails);
+		prefBackgroundSensors = mSharedPreferences.getBoolean(Const.KEY_PREF_BACKGROUND_SENSORS, prefBackgroundSensors);
+		prefSurveyLog = mSharedPreferences.getBoolean(Const.KEY_PREF_SURVEY_LOG, prefSurveyLog);
+		prefFrameTimes = mSharedPreferences.getBoolean(Const.KEY_PREF_FRAME_TIMES, prefFrameTimes);
 		prefCid = mSharedPreferences.getBoolean(Const.KEY_PREF_CID, prefCid);
 		prefCid2 = mSharedPreferences.getBoolean(Const.KEY_PREF_CID2, prefCid2);
 		prefWifiSort = Integer.valueOf(mSharedPreferences.getString(Const.KEY_PREF_WIFI_SORT, Integer.toString(prefWifiSort)));
@@ -408,12 +423,20 @@ public class MainActivity extends AppCompatActivity implements GpsStatus.Listene
 
         mTabLayout.setOnTabSelectedListener(new TabLayout.ViewPagerOnTabSelectedListener(mViewPager));
         mViewPager.addOnPageChangeListener(new TabLayout.TabLayoutOnPageChangeListener(mTabLayout));
+        mViewPager.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
+        	@Override
+        	public void onPageSelected(int position) {
+        		// sensor readings are only passed to the current page, refresh the new one
+        		sensorDispatcher.invalidate();
+        	}
+        });
         
         // This is needed by the mapsforge library.
         AndroidGraphicFactory.createInstance(this.getApplication());
 
         // Get system services for event delivery
     	locationManager = (LocationManager) this.getSystemService(Context.LOCATION_SERVICE);
+    	satelliteSource = SatelliteSource.create(locationManager, this);
         sensorManager = (SensorManager)getSystemService(Context.SENSOR_SERVICE);
         mOrSensor = sensorManager.getDefaultSensor(Sensor.TYPE_ORIENTATION);        
         mAccSensor = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);     
@@ -424,9 +447,7 @@ public class MainActivity extends AppCompatActivity implements GpsStatus.Listene
         mPressureSensor = sensorManager.getDefaultSensor(Sensor.TYPE_PRESSURE);
         mHumiditySensor = sensorManager.getDefaultSensor(Sensor.TYPE_RELATIVE_HUMIDITY);
         mTempSensor = sensorManager.getDefaultSensor(Sensor.TYPE_AMBIENT_TEMPERATURE);
-        telephonyManager = (TelephonyManager)getSystemService(Context.TELEPHONY_SERVICE);
-        connectivityManager = (ConnectivityManager)getSystemService(Context.CONNECTIVITY_SERVICE);
-        wifiManager = (WifiManager)getSystemService(Context.WIFI_SERVICE);
+        radioCollector = new RadioCollector(this);
     }
 	
 	
@@ -439,33 +460,38 @@ public class MainActivity extends AppCompatActivity implements GpsStatus.Listene
         return true;
     }
     
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+    	MenuItem replayItem = menu.findItem(R.id.action_replay);
+    	if (replayItem != null)
+    		replayItem.setTitle((replayEngine != null) ? R.string.action_stop_replay : R.string.action_replay);
+    	return super.onPrepareOptionsMenu(menu);
+    }
+    
     @Override
     protected void onDestroy() {
 		mSharedPreferences.unregisterOnSharedPreferenceChangeListener(this);
+		radioCollector.close();
 		super.onDestroy();
     }
     
     /**
-     * Called when the status of the GPS changes. Updates GPS display.
+     * Updates GPS display with the satellites in view, which may come from the GPS or from a replay.
+     * 
+     * @param sats The satellites in view, which must not be modified while it is displayed
+     * @param timeToFirstFix Time to first fix in milliseconds, or a negative value if unknown
      */
-    public void onGpsStatusChanged (int event) {
-		GpsStatus status = locationManager.getGpsStatus(null);
-		int satsInView = 0;
-		int satsUsed = 0;
-		Iterable<GpsSatellite> sats = status.getSatellites();
-		for (GpsSatellite sat : sats) {
-			satsInView++;
-			if (sat.usedInFix()) {
-				satsUsed++;
-			}
-		}
+    public void onGpsStatusChanged(SatelliteSnapshot sats, int timeToFirstFix) {
+		satelliteHistory.add(SystemClock.elapsedRealtime(), sats);
+		if (prefSkyTrails)
+			satelliteTrails.add(sats);
 
 		if (gpsSectionFragment != null) {
-    		gpsSectionFragment.onGpsStatusChanged(status, satsInView, satsUsed, sats);
+    		gpsSectionFragment.onGpsStatusChanged(sats, timeToFirstFix);
     	}
     	
 		if (mapSectionFragment != null) {
-			mapSectionFragment.onGpsStatusChanged(status, satsInView, satsUsed, sats);
+			mapSectionFragment.onGpsStatusChanged(sats);
 		}
     }
     
@@ -483,6 +509,23 @@ public class MainActivity extends AppCompatActivity implements GpsStatus.Listene
     	if ((location.getProvider().equals(LocationManager.GPS_PROVIDER)) && (gpsSectionFragment != null)) {
     		gpsSectionFragment.onLocationChanged(location);
     	}
+
+    	// record radio environment along with live GPS fixes
+    	if ((surveyLogger != null) && (replayEngine == null) && (location.getProvider().equals(LocationManager.GPS_PROVIDER))) {
+    		RadioSnapshot radio = radioCollector.getSnapshot();
+    		// no radio data collected yet, it would have no meaningful age
+    		if (radio == RadioSnapshot.EMPTY)
+    			return;
+    		surveyPoint.clear();
+    		surveyPoint.time = location.getTime();
+    		surveyPoint.latitude = location.getLatitude();
+    		surveyPoint.longitude = location.getLongitude();
+    		if (location.hasAltitude())
+    			surveyPoint.altitude = location.getAltitude();
+    		if (location.hasAccuracy())
+    			surveyPoint.accuracy = location.getAccuracy();
+    		surveyLogger.log(surveyPoint, radio, SystemClock.elapsedRealtime() - radio.time);
+    	}
     }
     
     /**
@@ -507,6 +550,12 @@ public class MainActivity extends AppCompatActivity implements GpsStatus.Listene
 		} else if (itemId == R.id.action_about) {
 			startActivity(new Intent(this, AboutActivity.class));
 			return true;
+		} else if (itemId == R.id.action_replay) {
+			if (replayEngine != null)
+				stopReplay();
+			else
+				showReplayDialog();
+			return true;
 		} else {
 			return super.onOptionsItemSelected(item);
 		}
@@ -532,18 +581,13 @@ public class MainActivity extends AppCompatActivity implements GpsStatus.Listene
     				notificationManager.cancel(Const.PERM_REQUEST_LOCATION_NOTIFICATION);
 
     				if (permsRequested[Const.PERM_REQUEST_PHONE_STATE_LISTENER]) {
-    					registerPhoneStateListener();
+    					radioCollector.refresh();
     					permsRequested[Const.PERM_REQUEST_PHONE_STATE_LISTENER] = false;
     				}
     				if (permsRequested[Const.PERM_REQUEST_LOCATION_UPDATES]) {
     					requestLocationUpdates();
     					permsRequested[Const.PERM_REQUEST_LOCATION_UPDATES] = false;
     				}
-    				if (permsRequested[Const.PERM_REQUEST_CELL_INFO]) {
-    					if (radioSectionFragment != null)
-    						radioSectionFragment.updateCellData(null, null, null);
-    					permsRequested[Const.PERM_REQUEST_CELL_INFO] = false;
-    				}
     				if (requestCode == Const.PERM_REQUEST_REFRESH_AGPS)
     					GpsEventReceiver.refreshAgps(this, false, true);
     			} else if (requestCode == Const.PERM_REQUEST_REFRESH_AGPS) {
@@ -579,92 +623,34 @@ public class MainActivity extends AppCompatActivity implements GpsStatus.Listene
     }
 
     /**
-     * Called when a sensor's reading changes. Updates sensor display and rotates sky plot according
-     * to bearing.
+     * Called by {@link SensorDispatcher} when sensor readings have changed. Updates sensor display
+     * and rotates sky plot according to bearing.
+     * 
+     * Readings are only passed to the fragment on the current page; {@link #sensorDispatcher} is
+     * invalidated when the page changes, so that the new page receives all readings.
      */
-    public void onSensorChanged(SensorEvent event) {
-		//to enforce sensor rate
-		boolean isRateElapsed = false;
-		
-		switch (event.sensor.getType()) {
-			case Sensor.TYPE_ACCELEROMETER:
-				isRateElapsed = (event.timestamp / 1000) - mAccLast >= iSensorRate;
-				// if Z acceleration is greater than X/Y combined, lock rotation, else unlock
-				if (Math.pow(event.values[2], 2) > Math.pow(event.values[0], 2) + Math.pow(event.values[1], 2)) {
-					// workaround (SCREEN_ORIENTATION_LOCK is unsupported on API < 18)
-					if (isWideScreen)
-						setRequestedOrientation(OR_FROM_ROT_WIDE[this.getWindowManager().getDefaultDisplay().getRotation()]);
-					else
-						setRequestedOrientation(OR_FROM_ROT_TALL[this.getWindowManager().getDefaultDisplay().getRotation()]);
-				} else {
-					setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED);
-				}
-				break;
-			case Sensor.TYPE_ORIENTATION:
-				isRateElapsed = (event.timestamp / 1000) - mOrLast >= iSensorRate;
-				break;
-			case Sensor.TYPE_GYROSCOPE:
-				isRateElapsed = (event.timestamp / 1000) - mGyroLast >= iSensorRate;
-				break;
-			case Sensor.TYPE_MAGNETIC_FIELD:
-				isRateElapsed = (event.timestamp / 1000) - mMagLast >= iSensorRate;
-				break;
-			case Sensor.TYPE_LIGHT:
-				isRateElapsed = (event.timestamp / 1000) - mLightLast >= iSensorRate;
-				break;
-			case Sensor.TYPE_PROXIMITY:
-				isRateElapsed = (event.timestamp / 1000) - mProximityLast >= iSensorRate;
-				break;
-			case Sensor.TYPE_PRESSURE:
-				isRateElapsed = (event.timestamp / 1000) - mPressureLast >= iSensorRate;
-				break;
-			case Sensor.TYPE_RELATIVE_HUMIDITY:
-				isRateElapsed = (event.timestamp / 1000) - mHumidityLast >= iSensorRate;
-				break;
-			case Sensor.TYPE_AMBIENT_TEMPERATURE:
-				isRateElapsed = (event.timestamp / 1000) - mTempLast >= iSensorRate;
-				break;
-		}
-		
-		if (!isRateElapsed)
-			return;
-		
-		switch (event.sensor.getType()) {
-		case Sensor.TYPE_ACCELEROMETER:
-			mAccLast = event.timestamp / 1000;
-			break;
-		case Sensor.TYPE_ORIENTATION:
-			mOrLast = event.timestamp / 1000;
-			break;
-		case Sensor.TYPE_GYROSCOPE:
-			mGyroLast = event.timestamp / 1000;
-			break;
-		case Sensor.TYPE_MAGNETIC_FIELD:
-			mMagLast = event.timestamp / 1000;
-			break;
-		case Sensor.TYPE_LIGHT:
-			mLightLast = event.timestamp / 1000;
-			break;
-		case Sensor.TYPE_PROXIMITY:
-			mProximityLast = event.timestamp / 1000;
-			break;
-		case Sensor.TYPE_PRESSURE:
-			mPressureLast = event.timestamp / 1000;
-			break;
-		case Sensor.TYPE_RELATIVE_HUMIDITY:
-			mHumidityLast = event.timestamp / 1000;
-			break;
-		case Sensor.TYPE_AMBIENT_TEMPERATURE:
-			mTempLast = event.timestamp / 1000;
-			break;
+    public void onSensorsChanged(SensorDispatcher sensors, int types) {
+		if (SensorDispatcher.hasType(types, Sensor.TYPE_ACCELEROMETER)) {
+			float x = sensors.getValue(Sensor.TYPE_ACCELEROMETER, 0);
+			float y = sensors.getValue(Sensor.TYPE_ACCELEROMETER, 1);
+			float z = sensors.getValue(Sensor.TYPE_ACCELEROMETER, 2);
+			// if Z acceleration is greater than X/Y combined, lock rotation, else unlock
+			if (z * z > x * x + y * y) {
+				// workaround (SCREEN_ORIENTATION_LOCK is unsupported on API < 18)
+				if (isWideScreen)
+					setRequestedOrientation(OR_FROM_ROT_WIDE[this.getWindowManager().getDefaultDisplay().getRotation()]);
+				else
+					setRequestedOrientation(OR_FROM_ROT_TALL[this.getWindowManager().getDefaultDisplay().getRotation()]);
+			} else {
+				setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED);
+			}
 		}
-
 		
-		if (sensorSectionFragment != null) {
-			sensorSectionFragment.onSensorChanged(event);
+		if ((sensorSectionFragment != null) && sensorSectionFragment.getUserVisibleHint()) {
+			sensorSectionFragment.onSensorsChanged(sensors, types);
     	}
-		if (gpsSectionFragment != null) {
-			gpsSectionFragment.onSensorChanged(event);
+		if ((gpsSectionFragment != null) && gpsSectionFragment.getUserVisibleHint()) {
+			gpsSectionFragment.onSensorsChanged(sensors, types);
 		}
     }
     	
@@ -692,6 +678,31 @@ public class MainActivity extends AppCompatActivity implements GpsStatus.Listene
 			prefCoord = Integer.valueOf(mSharedPreferences.getString(Const.KEY_PREF_COORD, Integer.toString(prefCoord)));
 		} else if (key.equals(Const.KEY_PREF_UTC)) {
 			prefUtc = sharedPreferences.getBoolean(Const.KEY_PREF_UTC, prefUtc);
+		} else if (key.equals(Const.KEY_PREF_SKY_TRAILS)) {
+			prefSkyTrails = sharedPreferences.getBoolean(Const.KEY_PREF_SKY_TRAILS, prefSkyTrails);
+			if (!prefSkyTrails)
+				satelliteTrails.clear();
+		} else if (key.equals(Const.KEY_PREF_BACKGROUND_SENSORS)) {
+			prefBackgroundSensors = sharedPreferences.getBoolean(Const.KEY_PREF_BACKGROUND_SENSORS, prefBackgroundSensors);
+			if (!isStopped) {
+				// move listeners to the thread now selected
+				removeLocationUpdates();
+				unregisterSensors();
+				registerSensors();
+				registerLocationProviders();
+			}
+		} else if (key.equals(Const.KEY_PREF_SURVEY_LOG)) {
+			prefSurveyLog = sharedPreferences.getBoolean(Const.KEY_PREF_SURVEY_LOG, prefSurveyLog);
+			if (!isStopped) {
+				if (prefSurveyLog)
+					startSurveyLog();
+				else
+					stopSurveyLog();
+			}
+		} else if (key.equals(Const.KEY_PREF_FRAME_TIMES)) {
+			prefFrameTimes = sharedPreferences.getBoolean(Const.KEY_PREF_FRAME_TIMES, prefFrameTimes);
+			if (gpsSectionFragment != null)
+				gpsSectionFragment.setFrameTimeLogging(prefFrameTimes);
 		} else if (key.equals(Const.KEY_PREF_CID)) {
 			prefCid = sharedPreferences.getBoolean(Const.KEY_PREF_CID, prefCid);
 		} else if (key.equals(Const.KEY_PREF_CID2)) {
@@ -718,33 +729,15 @@ public class MainActivity extends AppCompatActivity implements GpsStatus.Listene
     protected void onStart() {
         super.onStart();
         isStopped = false;
+        // sensors first, location updates go to the thread started there
+        registerSensors();
         registerLocationProviders();
-        sensorManager.registerListener(this, mOrSensor, iSensorRate);
-        sensorManager.registerListener(this, mAccSensor, iSensorRate);
-        sensorManager.registerListener(this, mGyroSensor, iSensorRate);
-        sensorManager.registerListener(this, mMagSensor, iSensorRate);
-        sensorManager.registerListener(this, mLightSensor, iSensorRate);
-        sensorManager.registerListener(this, mProximitySensor, iSensorRate);
-        sensorManager.registerListener(this, mPressureSensor, iSensorRate);
-        sensorManager.registerListener(this, mHumiditySensor, iSensorRate);
-        sensorManager.registerListener(this, mTempSensor, iSensorRate);
-        if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED)
-        	registerPhoneStateListener();
-        else
+        // cell data needs location permission, the collector picks it up once granted
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED)
         	permsRequested[Const.PERM_REQUEST_PHONE_STATE_LISTENER] = true;
-        
-        // register for certain WiFi events indicating that new networks may be in range
-        // An access point scan has completed, and results are available.
-        registerReceiver(mWifiScanReceiver, new IntentFilter(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION));
-        
-        // The state of Wi-Fi connectivity has changed.
-        registerReceiver(mWifiScanReceiver, new IntentFilter(WifiManager.NETWORK_STATE_CHANGED_ACTION));
-        
-        // The RSSI (signal strength) has changed.
-        registerReceiver(mWifiScanReceiver, new IntentFilter(WifiManager.RSSI_CHANGED_ACTION));
-        
-        // A connection to the supplicant has been established or the connection to the supplicant has been lost.
-        registerReceiver(mWifiScanReceiver, new IntentFilter(WifiManager.SUPPLICANT_CONNECTION_CHANGE_ACTION));
+        radioCollector.start();
+        if (prefSurveyLog)
+        	startSurveyLog();
 
 		permsRequested[Const.PERM_REQUEST_OFFLINE_MAP] = prefMapOffline;
 
@@ -768,27 +761,54 @@ public class MainActivity extends AppCompatActivity implements GpsStatus.Listene
     @Override
     protected void onStop() {
     	isStopped = true;
-    	locationManager.removeUpdates(this);
-    	locationManager.removeGpsStatusListener(this);
-    	sensorManager.unregisterListener(this);
-        telephonyManager.listen(mPhoneStateListener, LISTEN_NONE);
-        try {
-        	unregisterReceiver(mWifiScanReceiver);
-        } catch (IllegalArgumentException e) {
-        	// sometimes the receiver isn't registered, make sure we don't crash
-        	Log.d(TAG, "WifiScanReceiver was never registered, caught exception");
-        }
+    	stopReplay();
+    	removeLocationUpdates();
+    	satelliteSource.stop();
+    	unregisterSensors();
+        stopSurveyLog();
+        radioCollector.stop();
         // we'll just skip that so locations will get invalidated in any case
         //providerInvalidationHandler.removeCallbacksAndMessages(null);
         super.onStop();
     }
     
+	/**
+	 * Starts recording a survey log, if one is not already being recorded. Periodic WiFi scans are
+	 * requested while the survey is running, so that each fix finds a recent scan.
+	 */
+	private void startSurveyLog() {
+		if (surveyLogger != null)
+			return;
+		File dir = PasvLocListenerService.getSurveyDir(this);
+		SurveyLogger logger = new SurveyLogger(dir);
+		logger.start();
+		surveyLogger = logger;
+		radioCollector.startWifiScans();
+		Log.i(TAG, "Logging survey to " + dir.getAbsolutePath());
+	}
+
+	/**
+	 * Stops recording the survey log. Observations already received are written out in the
+	 * background, after which the logger reports any dropped observations and errors.
+	 */
+	private void stopSurveyLog() {
+		SurveyLogger logger = surveyLogger;
+		if (logger == null)
+			return;
+		surveyLogger = null;
+		radioCollector.stopWifiScans();
+		logger.stop();
+	}
+
 	/**
 	 * Registers for updates with selected location providers.
 	 */
 	protected void registerLocationProviders() {
+		// while replaying, live data would interfere with replayed data
+		if (replayEngine != null)
+			return;
 		Set<String> providers = new HashSet<String>(mSharedPreferences.getStringSet(Const.KEY_PREF_LOC_PROV, new HashSet<String>(Arrays.asList(new String[] {LocationManager.GPS_PROVIDER, LocationManager.NETWORK_PROVIDER}))));
-		locationManager.removeUpdates(this);
+		removeLocationUpdates();
 		
 		if (mapSectionFragment != null)
 			mapSectionFragment.onLocationProvidersChanged(providers);
@@ -800,10 +820,51 @@ public class MainActivity extends AppCompatActivity implements GpsStatus.Listene
 	}
 	
 	/**
-	 * Registers the {@link PhoneStateListener} for all necessary events
+	 * Requests updates from a location provider, on {@link #backgroundThread} if it is running.
+	 */
+	private void requestLocationUpdates(String provider) {
+		if (backgroundThread != null)
+			locationManager.requestLocationUpdates(provider, 0, 0, locationRelay, backgroundThread.getLooper());
+		else
+			locationManager.requestLocationUpdates(provider, 0, 0, this);
+	}
+	
+	/**
+	 * Stops location updates from all providers, regardless of the thread they are received on.
+	 */
+	private void removeLocationUpdates() {
+		locationManager.removeUpdates(this);
+		locationManager.removeUpdates(locationRelay);
+	}
+	
+	/**
+	 * Registers {@link #sensorDispatcher} for sensor events. If {@link #prefBackgroundSensors} is
+	 * set, this starts {@link #backgroundThread} and registers for events on that thread.
+	 */
+	private void registerSensors() {
+		Handler handler = null;
+		if (prefBackgroundSensors) {
+			backgroundThread = new HandlerThread("SensorThread");
+			backgroundThread.start();
+			handler = new Handler(backgroundThread.getLooper());
+		}
+		for (Sensor sensor : new Sensor[] {mOrSensor, mAccSensor, mGyroSensor, mMagSensor, mLightSensor,
+				mProximitySensor, mPressureSensor, mHumiditySensor, mTempSensor})
+			if (sensor != null)
+				sensorManager.registerListener(sensorDispatcher, sensor, iSensorRate, handler);
+	}
+	
+	/**
+	 * Unregisters {@link #sensorDispatcher} and stops {@link #backgroundThread}. Location updates
+	 * must have been stopped before.
 	 */
-	private void registerPhoneStateListener() {
-		telephonyManager.listen(mPhoneStateListener, (LISTEN_CELL_INFO | LISTEN_CELL_LOCATION | LISTEN_DATA_CONNECTION_STATE | LISTEN_SIGNAL_STRENGTHS));
+	private void unregisterSensors() {
+		sensorManager.unregisterListener(sensorDispatcher);
+		sensorDispatcher.cancel();
+		if (backgroundThread != null) {
+			backgroundThread.quit();
+			backgroundThread = null;
+		}
 	}
 	
 	/**
@@ -821,7 +882,7 @@ public class MainActivity extends AppCompatActivity implements GpsStatus.Listene
 			for (String pr : providers) {
 				if (allProviders.indexOf(pr) >= 0) {
 					try {
-						locationManager.requestLocationUpdates(pr, 0, 0, this);
+						requestLocationUpdates(pr);
 						Log.d(TAG, "Registered with provider: " + pr);
 					} catch (SecurityException e) {
 						Log.w(TAG, "Permission not granted for " + pr + " location provider. Data display will not be available for this provider.");
@@ -835,14 +896,103 @@ public class MainActivity extends AppCompatActivity implements GpsStatus.Listene
         try {
         	// if GPS is not selected, request location updates but don't store location
         	if ((!providers.contains(LocationManager.GPS_PROVIDER)) && (!isStopped) && (allProviders.indexOf(LocationManager.GPS_PROVIDER) >= 0))
-        		locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, 0, 0, this);
+        		requestLocationUpdates(LocationManager.GPS_PROVIDER);
 
-        	locationManager.addGpsStatusListener(this);
+        	satelliteSource.start();
         } catch (SecurityException e) {
         	Log.w(TAG, "Permission not granted for " + LocationManager.GPS_PROVIDER + " location provider. Data display will not be available for this provider.");
         }
 	}
 	
+	/**
+	 * Shows a list of recorded NMEA logs and tracks, and replays the one the user selects.
+	 */
+	private void showReplayDialog() {
+		ArrayList<File> files = new ArrayList<File>();
+		for (File dir : new File[] {PasvLocListenerService.getNmeaDir(this), PasvLocListenerService.getTrackDir(this)}) {
+			File[] dirFiles = dir.listFiles();
+			if (dirFiles == null)
+				continue;
+			Arrays.sort(dirFiles);
+			for (File file : dirFiles)
+				if (file.getName().endsWith(Const.NMEA_EXTENSION) || file.getName().endsWith(Const.TRACK_EXTENSION))
+					files.add(file);
+		}
+		if (files.isEmpty()) {
+			Toast.makeText(this, getString(R.string.status_replay_none), Toast.LENGTH_SHORT).show();
+			return;
+		}
+
+		final File[] logs = files.toArray(new File[files.size()]);
+		String[] names = new String[logs.length];
+		for (int i = 0; i < logs.length; i++)
+			names[i] = logs[i].getName();
+
+		AlertDialog.Builder builder = new AlertDialog.Builder(this);
+		builder.setTitle(getString(R.string.action_replay));
+		builder.setItems(names, new DialogInterface.OnClickListener() {
+			public void onClick(DialogInterface dialog, int which) {
+				final File log = logs[which];
+				AlertDialog.Builder speedBuilder = new AlertDialog.Builder(MainActivity.this);
+				speedBuilder.setTitle(getString(R.string.title_replay_speed));
+				speedBuilder.setItems(R.array.replay_speeds, new DialogInterface.OnClickListener() {
+					public void onClick(DialogInterface dialog, int which) {
+						startReplay(log, REPLAY_SPEEDS[which]);
+					}
+				});
+				speedBuilder.show();
+			}
+		});
+		builder.show();
+	}
+
+	/**
+	 * Starts replaying a recorded NMEA log or track.
+	 * 
+	 * Live location and GPS status updates are suspended until the replay ends.
+	 * 
+	 * @param log The file to replay
+	 * @param speed The speed factor, or {@link ReplayEngine#SPEED_MAX}
+	 */
+	private void startReplay(File log, int speed) {
+		if (isStopped || (replayEngine != null))
+			return;
+		FileInputStream in;
+		try {
+			in = new FileInputStream(log);
+		} catch (FileNotFoundException e) {
+			Log.w(TAG, "Cannot open " + log.getAbsolutePath(), e);
+			Toast.makeText(this, getString(R.string.status_replay_error), Toast.LENGTH_SHORT).show();
+			return;
+		}
+		Log.i(TAG, "Replaying " + log.getAbsolutePath());
+		satelliteHistory.clear();
+		satelliteTrails.clear();
+		removeLocationUpdates();
+		satelliteSource.stop();
+		ReplayListener listener = new ReplayListener();
+		int format = log.getName().endsWith(Const.TRACK_EXTENSION) ? ReplayEngine.FORMAT_TRACK
+				: ReplayEngine.FORMAT_NMEA;
+		replayEngine = new ReplayEngine(in, format, speed, listener);
+		listener.engine = replayEngine;
+		replayEngine.start();
+		supportInvalidateOptionsMenu();
+	}
+
+	/**
+	 * Stops the replay in progress, if any, and resumes live updates unless the activity is stopped.
+	 */
+	private void stopReplay() {
+		if (replayEngine == null)
+			return;
+		replayEngine.stop();
+		replayEngine = null;
+		satelliteHistory.clear();
+		satelliteTrails.clear();
+		supportInvalidateOptionsMenu();
+		registerLocationProviders();
+	}
+
 	private void requestPermissions() {
 		ArrayList<String> perms = new ArrayList<String>();
 
@@ -862,6 +1012,147 @@ public class MainActivity extends AppCompatActivity implements GpsStatus.Listene
 			ActivityCompat.requestPermissions(this, perms.toArray(new String[]{}), Const.PERM_REQUEST_STARTUP);
 	}
 
+	/**
+	 * Passes location events received on {@link #backgroundThread} to the UI thread.
+	 * 
+	 * Each location is copied on the background thread, so the UI thread gets a private snapshot
+	 * which the location provider cannot modify. Events which arrive after updates have been
+	 * stopped are dropped.
+	 */
+	private class LocationRelay implements LocationListener {
+		private final Handler handler = new Handler(Looper.getMainLooper());
+
+		/**
+		 * Whether live location events should currently be shown. Called on the UI thread.
+		 */
+		private boolean isCurrent() {
+			return !isStopped && (replayEngine == null) && (backgroundThread != null);
+		}
+
+		@Override
+		public void onLocationChanged(Location location) {
+			final Location snapshot = new Location(location);
+			handler.post(new Runnable() {
+				public void run() {
+					if (isCurrent())
+						MainActivity.this.onLocationChanged(snapshot);
+				}
+			});
+		}
+
+		@Override
+		public void onProviderDisabled(String provider) {}
+
+		@Override
+		public void onProviderEnabled(String provider) {}
+
+		@Override
+		public void onStatusChanged(String provider, int status, Bundle extras) {}
+	}
+
+	/**
+	 * Passes replayed events to the UI thread.
+	 * 
+	 * Each event is handed to the UI thread and the scheduler thread waits until it has been
+	 * processed, which keeps the replay from running ahead of the display at maximum speed.
+	 */
+	private class ReplayListener implements ReplayEngine.Listener {
+		private final Handler handler = new Handler(Looper.getMainLooper());
+		private final Semaphore processed = new Semaphore(0);
+
+		/** The location passed to the UI, reused for every fix */
+		private final Location location = new Location(LocationManager.GPS_PROVIDER);
+
+		/** The satellites shown in the UI, only accessed on the UI thread */
+		private final SatelliteSnapshot uiSats = new SatelliteSnapshot();
+
+		/** The engine which feeds this listener */
+		ReplayEngine engine = null;
+
+		@Override
+		public void onReplayLocation(final TrackPoint point) {
+			postAndWait(new Runnable() {
+				public void run() {
+					if (isCurrent()) {
+						location.reset();
+						location.setProvider(LocationManager.GPS_PROVIDER);
+						location.setTime(point.time);
+						location.setLatitude(point.latitude);
+						location.setLongitude(point.longitude);
+						if (point.hasAltitude())
+							location.setAltitude(point.altitude);
+						if (point.hasAccuracy())
+							location.setAccuracy(point.accuracy);
+						if (point.hasSpeed())
+							location.setSpeed(point.speed);
+						if (point.hasBearing())
+							location.setBearing(point.bearing);
+						onLocationChanged(location);
+					}
+				}
+			});
+		}
+
+		@Override
+		public void onReplaySatellites(final SatelliteSnapshot satellites) {
+			postAndWait(new Runnable() {
+				public void run() {
+					if (isCurrent()) {
+						uiSats.copyFrom(satellites);
+						onGpsStatusChanged(uiSats, -1);
+					}
+				}
+			});
+		}
+
+		@Override
+		public void onReplayFinished(final IOException error) {
+			handler.post(new Runnable() {
+				public void run() {
+					if (error != null) {
+						Log.w(TAG, "Replay failed", error);
+						Toast.makeText(MainActivity.this, getString(R.string.status_replay_error), Toast.LENGTH_SHORT).show();
+					}
+					if (isCurrent()) {
+						if (error == null)
+							Toast.makeText(MainActivity.this, getString(R.string.status_replay_done), Toast.LENGTH_SHORT).show();
+						stopReplay();
+					}
+				}
+			});
+		}
+
+		/**
+		 * Whether this listener belongs to the replay in progress.
+		 * 
+		 * Must be called on the UI thread.
+		 */
+		private boolean isCurrent() {
+			return (engine == replayEngine);
+		}
+
+		/**
+		 * Runs {@code r} on the UI thread and waits until it has finished.
+		 */
+		private void postAndWait(final Runnable r) {
+			handler.post(new Runnable() {
+				public void run() {
+					try {
+						r.run();
+					} finally {
+						processed.release();
+					}
+				}
+			});
+			try {
+				processed.acquire();
+			} catch (InterruptedException e) {
+				// replay was stopped, the engine will see its stop flag
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
     /**
      * A {@link FragmentPagerAdapter} that returns a fragment corresponding to
      * one of the sections/tabs/pages.
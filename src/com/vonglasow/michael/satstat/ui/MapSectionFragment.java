@@ -57,6 +57,7 @@ import org.mapsforge.map.util.MapViewProjection;
 
 import com.vonglasow.michael.satstat.Const;
 import com.vonglasow.michael.satstat.R;
+import com.vonglasow.michael.satstat.data.SatelliteSnapshot;
 
 import android.Manifest;
 import android.content.Context;
@@ -66,8 +67,6 @@ import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.drawable.Drawable;
-import android.location.GpsSatellite;
-import android.location.GpsStatus;
 import android.location.Location;
 import android.location.LocationManager;
 import android.os.Bundle;
@@ -509,8 +508,8 @@ public class MapSectionFragment extends Fragment {
 	/**
 	 * Called by {@link MainActivity} when the status of the GPS changes. Updates GPS display.
 	 */
-	public void onGpsStatusChanged(GpsStatus status, int satsInView, int satsUsed, Iterable<GpsSatellite> sats) {
-		if (satsUsed == 0) {
+	public void onGpsStatusChanged(SatelliteSnapshot sats) {
+		if (sats.getUsedCount() == 0) {
 			Location location = providerLocations.get(LocationManager.GPS_PROVIDER);
 			if (location != null)
 				markLocationAsStale(location);
@@ -19,87 +19,69 @@
 
 package com.vonglasow.michael.satstat.ui;
 
-import static android.telephony.TelephonyManager.PHONE_TYPE_CDMA;
-import static android.telephony.TelephonyManager.PHONE_TYPE_GSM;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 
-import com.vonglasow.michael.satstat.Const;
 import com.vonglasow.michael.satstat.R;
 import com.vonglasow.michael.satstat.data.CellTower;
 import com.vonglasow.michael.satstat.data.CellTowerCdma;
 import com.vonglasow.michael.satstat.data.CellTowerGsm;
-import com.vonglasow.michael.satstat.data.CellTowerListCdma;
-import com.vonglasow.michael.satstat.data.CellTowerListGsm;
-import com.vonglasow.michael.satstat.data.CellTowerListLte;
 import com.vonglasow.michael.satstat.data.CellTowerLte;
-import com.vonglasow.michael.satstat.utils.WifiCapabilities;
+import com.vonglasow.michael.satstat.data.RadioCollector;
+import com.vonglasow.michael.satstat.data.RadioSnapshot;
 import com.vonglasow.michael.satstat.utils.WifiScanResultComparator;
 
-import android.Manifest;
 import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
 import android.content.Context;
-import android.content.pm.PackageManager;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 import android.net.wifi.ScanResult;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.support.v4.app.Fragment;
-import android.support.v4.content.ContextCompat;
-import android.telephony.CellInfo;
-import android.telephony.CellLocation;
-import android.telephony.NeighboringCellInfo;
-import android.telephony.PhoneStateListener;
-import android.telephony.SignalStrength;
-import android.telephony.cdma.CdmaCellLocation;
-import android.telephony.gsm.GsmCellLocation;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.ViewGroup.LayoutParams;
-import android.widget.ImageView;
+import android.widget.AdapterView;
+import android.widget.AdapterView.OnItemClickListener;
 import android.widget.LinearLayout;
+import android.widget.ListView;
 import android.widget.TableLayout;
-import android.widget.TableRow;
 import android.widget.TextView;
-import android.widget.ImageView.ScaleType;
 
 /**
  * The fragment which displays radio network data.
  */
-public class RadioSectionFragment extends Fragment {
+public class RadioSectionFragment extends Fragment implements RadioCollector.Listener {
 	public static final String TAG = "RadioSectionFragment";
 	/**
 	 * The fragment argument representing the section number for this
 	 * fragment.
 	 */
 	public static final String ARG_SECTION_NUMBER = "section_number";
-	private static final int NETWORK_REFRESH_DELAY = 1000; //the polling interval for the network type
-	private static final int WIFI_REFRESH_DELAY = 1000; //the time between two requests for WLAN rescan.
 
 	private MainActivity mainActivity = null;
 
-	private CellTower mServingCell;
-	private CellTowerListGsm mCellsGsm = new CellTowerListGsm();
-	private CellTowerListCdma mCellsCdma = new CellTowerListCdma();
-	private CellTowerListLte mCellsLte = new CellTowerListLte();
-	int mLastNetworkGen = 0; //the last observed (and displayed) network type
-	private int mLastCellAsu = NeighboringCellInfo.UNKNOWN_RSSI;
-	private int mLastCellDbm = CellTower.DBM_UNKNOWN;
-	private Handler networkTimehandler = null;
-	private Runnable networkTimeRunnable = null;
-
-	List <ScanResult> scanResults = null;
+	/** The cells and access points currently shown */
+	private RadioSnapshot mSnapshot = RadioSnapshot.EMPTY;
+
+	/*
+	 * Versions of the cell lists and preferences for which the cell tables were last populated,
+	 * used to skip redrawing them if nothing has changed
+	 */
+	private int mShownGsmVersion = -1;
+	private int mShownCdmaVersion = -1;
+	private int mShownLteVersion = -1;
+	private boolean mShownCid = false;
+	private boolean mShownCid2 = false;
+
+	/** WiFi scan results from {@link #mSnapshot}, sorted for display */
+	private final ArrayList<ScanResult> scanResults = new ArrayList<ScanResult>();
+	private int mShownWifiVersion = -1;
 	WifiScanResultComparator wifiComparator;
 	private String selectedBSSID = "";
-	private Handler wifiTimehandler = null;
-	private Runnable wifiTimeRunnable = null;
 
 
 	private LinearLayout rilGsmLayout;
@@ -108,7 +90,28 @@ public class RadioSectionFragment extends Fragment {
 	private TableLayout rilCdmaCells;
 	private LinearLayout rilLteLayout;
 	private TableLayout rilLteCells;
-	private LinearLayout wifiAps;
+	private ListView wifiAps;
+	private WifiListAdapter wifiAdapter;
+
+	/*
+	 * Row managers for the cell tables, and indices of the fields in their rows
+	 */
+	private CellTable<CellTowerGsm> gsmTable;
+	private CellTable<CellTowerCdma> cdmaTable;
+	private CellTable<CellTowerLte> lteTable;
+	private static final int[] CELL_FIELDS = {R.id.mcc, R.id.mnc, R.id.area, R.id.cell, R.id.cell2, R.id.unit, R.id.dbm};
+	private static final int CELL_MCC = 0;
+	private static final int CELL_MNC = 1;
+	private static final int CELL_AREA = 2;
+	private static final int CELL_CELL = 3;
+	private static final int CELL_CELL2 = 4;
+	private static final int CELL_UNIT = 5;
+	private static final int CELL_DBM = 6;
+	private static final int[] CDMA_FIELDS = {R.id.sid, R.id.nid, R.id.bsid, R.id.dbm};
+	private static final int CDMA_SID = 0;
+	private static final int CDMA_NID = 1;
+	private static final int CDMA_BSID = 2;
+	private static final int CDMA_DBM = 3;
 
 
 	@SuppressLint("UseSparseArrays")
@@ -189,78 +192,6 @@ public class RadioSectionFragment extends Fragment {
 	}
 
 
-	private final void addWifiResult(ScanResult result) {
-		// needed to pass a persistent reference to the OnClickListener
-		final ScanResult r = result;
-		android.view.View.OnClickListener clis = new android.view.View.OnClickListener () {
-
-			@Override
-			public void onClick(View v) {
-				onWifiEntryClick(r.BSSID);
-			}
-		};
-
-		LinearLayout wifiLayout = new LinearLayout(wifiAps.getContext());
-		wifiLayout.setLayoutParams(new LinearLayout.LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT));
-		wifiLayout.setOrientation(LinearLayout.HORIZONTAL);
-		wifiLayout.setWeightSum(22);
-		wifiLayout.setMeasureWithLargestChildEnabled(false);
-
-		ImageView wifiType = new ImageView(wifiAps.getContext());
-		wifiType.setLayoutParams(new TableRow.LayoutParams(0, LayoutParams.MATCH_PARENT, 3));
-		if (WifiCapabilities.isAdhoc(result)) {
-			wifiType.setImageResource(R.drawable.ic_content_wifi_adhoc);
-		} else if ((WifiCapabilities.isEnterprise(result)) || (WifiCapabilities.getScanResultSecurity(result) == WifiCapabilities.EAP)) {
-			wifiType.setImageResource(R.drawable.ic_content_wifi_eap);
-		} else if (WifiCapabilities.getScanResultSecurity(result) == WifiCapabilities.PSK) {
-			wifiType.setImageResource(R.drawable.ic_content_wifi_psk);
-		} else if (WifiCapabilities.getScanResultSecurity(result) == WifiCapabilities.WEP) {
-			wifiType.setImageResource(R.drawable.ic_content_wifi_wep);
-		} else if (WifiCapabilities.getScanResultSecurity(result) == WifiCapabilities.OPEN) {
-			wifiType.setImageResource(R.drawable.ic_content_wifi_open);
-		} else {
-			wifiType.setImageResource(R.drawable.ic_content_wifi_unknown);
-		}
-
-		wifiType.setScaleType(ScaleType.CENTER);
-		wifiLayout.addView(wifiType);
-
-		TableLayout wifiDetails = new TableLayout(wifiAps.getContext());
-		wifiDetails.setLayoutParams(new TableRow.LayoutParams(0, LayoutParams.WRAP_CONTENT, 19));
-		TableRow innerRow1 = new TableRow(wifiAps.getContext());
-		TextView newMac = new TextView(wifiAps.getContext());
-		newMac.setLayoutParams(new TableRow.LayoutParams(0, LayoutParams.WRAP_CONTENT, 14));
-		newMac.setTextAppearance(wifiAps.getContext(), android.R.style.TextAppearance_Medium);
-		newMac.setText(result.BSSID);
-		innerRow1.addView(newMac);
-		TextView newCh = new TextView(wifiAps.getContext());
-		newCh.setLayoutParams(new TableRow.LayoutParams(0, LayoutParams.WRAP_CONTENT, 2));
-		newCh.setTextAppearance(wifiAps.getContext(), android.R.style.TextAppearance_Medium);
-		newCh.setText(getChannelFromFrequency(result.frequency));
-		innerRow1.addView(newCh);
-		TextView newLevel = new TextView(wifiAps.getContext());
-		newLevel.setLayoutParams(new TableRow.LayoutParams(0, LayoutParams.WRAP_CONTENT, 3));
-		newLevel.setTextAppearance(wifiAps.getContext(), android.R.style.TextAppearance_Medium);
-		newLevel.setText(String.valueOf(result.level));
-		innerRow1.addView(newLevel);
-		innerRow1.setOnClickListener(clis);
-		wifiDetails.addView(innerRow1,new TableLayout.LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
-
-		TableRow innerRow2 = new TableRow(wifiAps.getContext());
-		TextView newSSID = new TextView(wifiAps.getContext());
-		newSSID.setLayoutParams(new TableRow.LayoutParams(0, LayoutParams.WRAP_CONTENT, 19));
-		newSSID.setTextAppearance(wifiAps.getContext(), android.R.style.TextAppearance_Small);
-		newSSID.setText(result.SSID);
-		innerRow2.addView(newSSID);
-		innerRow2.setOnClickListener(clis);
-		wifiDetails.addView(innerRow2, new TableLayout.LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
-
-		wifiLayout.addView(wifiDetails);
-		wifiLayout.setOnClickListener(clis);
-		wifiAps.addView(wifiLayout);
-	}
-
-
 	/**
 	 * Formats an item of cell information data for display.
 	 * <p>
@@ -390,55 +321,68 @@ public class RadioSectionFragment extends Fragment {
 		View rootView = inflater.inflate(R.layout.fragment_main_radio, container, false);
 
 		// Initialize controls
-		rilGsmLayout = (LinearLayout) rootView.findViewById(R.id.rilGsmLayout);
-		rilCells = (TableLayout) rootView.findViewById(R.id.rilCells);
+		wifiAps = (ListView) rootView.findViewById(R.id.wifiAps);
+
+		/*
+		 * In the single-pane layout the cell tables scroll along with the WiFi list, so they go
+		 * into its header. The two-pane layout has them in a separate pane.
+		 */
+		View cellView = rootView;
+		if (rootView.findViewById(R.id.rilGsmLayout) == null) {
+			cellView = inflater.inflate(R.layout.fragment_main_radio_header, wifiAps, false);
+			wifiAps.addHeaderView(cellView, null, false);
+		}
+
+		rilGsmLayout = (LinearLayout) cellView.findViewById(R.id.rilGsmLayout);
+		rilCells = (TableLayout) cellView.findViewById(R.id.rilCells);
 
-		rilCdmaLayout = (LinearLayout) rootView.findViewById(R.id.rilCdmaLayout);
-		rilCdmaCells = (TableLayout) rootView.findViewById(R.id.rilCdmaCells);
+		rilCdmaLayout = (LinearLayout) cellView.findViewById(R.id.rilCdmaLayout);
+		rilCdmaCells = (TableLayout) cellView.findViewById(R.id.rilCdmaCells);
 
-		rilLteLayout = (LinearLayout) rootView.findViewById(R.id.rilLteLayout);
-		rilLteCells = (TableLayout) rootView.findViewById(R.id.rilLteCells);
+		rilLteLayout = (LinearLayout) cellView.findViewById(R.id.rilLteLayout);
+		rilLteCells = (TableLayout) cellView.findViewById(R.id.rilLteCells);
 
-		wifiAps = (LinearLayout) rootView.findViewById(R.id.wifiAps);
+		wifiAdapter = new WifiListAdapter(inflater);
+		wifiAps.setAdapter(wifiAdapter);
+		wifiAps.setOnItemClickListener(new OnItemClickListener() {
+			@Override
+			public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+				onWifiEntryClick(((ScanResult) parent.getItemAtPosition(position)).BSSID);
+			}
+		});
 
 		rilGsmLayout.setVisibility(View.GONE);
 		rilCdmaLayout.setVisibility(View.GONE);
 		rilLteLayout.setVisibility(View.GONE);
 
-		networkTimehandler = new Handler();
-		networkTimeRunnable = new Runnable() {
+		gsmTable = new CellTable<CellTowerGsm>(rilCells, inflater, R.layout.ril_list_item, CELL_FIELDS) {
 			@Override
-			public void run() {
-				int newNetworkType = mainActivity.telephonyManager.getNetworkType();
-				if (CellTower.getGenerationFromNetworkType(newNetworkType) != mLastNetworkGen)
-					onNetworkTypeChanged(newNetworkType);
-				else
-					networkTimehandler.postDelayed(this, NETWORK_REFRESH_DELAY);
+			void bind(Row row, CellTowerGsm cell) {
+				bindCellGsm(row, cell);
 			}
 		};
-		
-		wifiComparator = new WifiScanResultComparator();
-		wifiComparator.setCriterion(mainActivity.prefWifiSort);
-
-		wifiTimehandler = new Handler();
-		wifiTimeRunnable = new Runnable() {
-
+		cdmaTable = new CellTable<CellTowerCdma>(rilCdmaCells, inflater, R.layout.ril_cdma_list_item, CDMA_FIELDS) {
 			@Override
-			public void run() {
-				mainActivity.wifiManager.startScan();
-				wifiTimehandler.postDelayed(this, WIFI_REFRESH_DELAY);
+			void bind(Row row, CellTowerCdma cell) {
+				bindCellCdma(row, cell);
 			}
 		};
+		lteTable = new CellTable<CellTowerLte>(rilLteCells, inflater, R.layout.ril_list_item, CELL_FIELDS) {
+			@Override
+			void bind(Row row, CellTowerLte cell) {
+				bindCellLte(row, cell);
+			}
+		};
+		mShownGsmVersion = -1;
+		mShownCdmaVersion = -1;
+		mShownLteVersion = -1;
 
-		//get current phone info (first update won't fire until the cell actually changes)
-		if (ContextCompat.checkSelfPermission(mainActivity, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED)
-			updateCellData(null, null, null);
-		else
-			mainActivity.permsRequested[Const.PERM_REQUEST_CELL_INFO] = true;
-		//and make sure we have the correct network type
-		onNetworkTypeChanged(mainActivity.telephonyManager.getNetworkType());
+		wifiComparator = new WifiScanResultComparator();
+		wifiComparator.setCriterion(mainActivity.prefWifiSort);
 
-		mainActivity.wifiManager.startScan();
+		mSnapshot = RadioSnapshot.EMPTY;
+		mShownWifiVersion = -1;
+		mainActivity.radioCollector.addListener(this, new Handler());
 
 		mainActivity.radioSectionFragment = this;
 
@@ -449,51 +393,39 @@ public class RadioSectionFragment extends Fragment {
 	@Override
 	public void onDestroyView() {
 		super.onDestroyView();
+		mainActivity.radioCollector.removeListener(this);
 		if (mainActivity.radioSectionFragment == this)
 			mainActivity.radioSectionFragment = null;
 	}
 
 
 	/**
-	 * Updates the network type indicator for the current cell. Called by
-	 * {@link networkTimeRunnable.run()} or
-	 * {@link android.telephony.PhoneStateListener#onDataConnectionStateChanged(int, int)}.
-	 * 
-	 * @param networkType One of the NETWORK_TYPE_xxxx constants defined in {@link android.telephony.TelephonyManager}
+	 * Shows new cell and WiFi data. Called by {@link RadioCollector} on the main thread.
 	 */
-	protected void onNetworkTypeChanged(int networkType) {
-		Log.d("MainActivity", "Network type changed to " + Integer.toString(networkType));
-		int newNetworkGen = CellTower.getGenerationFromNetworkType(networkType);
-		int oldNetworkGen = mLastNetworkGen;
-		if (newNetworkGen != mLastNetworkGen) {
-			networkTimehandler.removeCallbacks(networkTimeRunnable);
-			mLastNetworkGen = newNetworkGen;
-			/*
-			 * Network type changes occur slightly before or after cell changes. Therefore, we may have
-			 * stored cells in the wrong list when switching from or to LTE.
-			 */
-			if ((newNetworkGen == 4) || (oldNetworkGen == 4))
-				updateCellData(null, null, null);
-			else if (mServingCell != null) {
-				mServingCell.setNetworkType(networkType);
-				Log.d(MainActivity.class.getSimpleName(), String.format("Setting network type to %d for cell %s (%s)", mServingCell.getGeneration(), mServingCell.getText(), mServingCell.getAltText()));
-			}
-		}
+	@Override
+	public void onRadioSnapshot(RadioSnapshot snapshot) {
+		mSnapshot = snapshot;
 		showCells();
+		if (mShownWifiVersion != snapshot.wifiVersion) {
+			mShownWifiVersion = snapshot.wifiVersion;
+			scanResults.clear();
+			scanResults.addAll(snapshot.wifiResults);
+			refreshWifiResults();
+		}
 	}
 
 
 	@Override
-	public void onResume() {
-		super.onResume();
-		wifiTimehandler.postDelayed(wifiTimeRunnable, WIFI_REFRESH_DELAY);
+	public void onStart() {
+		super.onStart();
+		// paired with onStop(), as the collector counts requests
+		mainActivity.radioCollector.startWifiScans();
 	}
 
 
 	@Override
 	public void onStop() {
-		networkTimehandler.removeCallbacks(networkTimeRunnable);
-		wifiTimehandler.removeCallbacks(wifiTimeRunnable);
+		mainActivity.radioCollector.stopWifiScans();
 		// we'll just skip that so locations will get invalidated in any case
 		//providerInvalidationHandler.removeCallbacksAndMessages(null);
 		super.onStop();
@@ -507,302 +439,140 @@ public class RadioSectionFragment extends Fragment {
 
 
 	final void refreshWifiResults() {
-		if (scanResults != null) {
-			wifiAps.removeAllViews();
-			wifiComparator.setCriterion(mainActivity.prefWifiSort);
-			Collections.sort(scanResults, wifiComparator);
-			//add the selected network first
-			for (ScanResult result : scanResults) {
-				if (result.BSSID.equals(selectedBSSID)) {
-					addWifiResult(result);
-				}
-			}
-			for (ScanResult result : scanResults) {
-				if (!result.BSSID.equals(selectedBSSID)) {
-					addWifiResult(result);	
-				}
-			}
-		}
+		wifiComparator.setCriterion(mainActivity.prefWifiSort);
+		Collections.sort(scanResults, wifiComparator);
+		// the adapter puts the selected network first
+		wifiAdapter.setResults(scanResults, selectedBSSID);
 	}
 
 
 	/**
-	 * Updates the list of cells in range.
+	 * Shows the cells in {@link #mSnapshot}.
 	 * <p>
-	 * This method is automatically called by
-	 * {@link PhoneStateListener#onCellInfoChanged(List)}
-	 * and {@link PhoneStateListener.onCellLocationChanged}. It must be called
-	 * manually whenever {@link #mCellsCdma}, {@link #mCellsGsm}, 
-	 * {@link #mCellsLte} or one of their values are modified, typically after
-	 * calling {@link android.telephony.TelephonyManager#getAllCellInfo()},
-	 * {@link android.telephony.TelephonyManager#getCellLocation()} or
-	 * {@link android.telephony.TelephonyManager#getNeighboringCellInfo()}. 
+	 * Tables whose list has not changed since they were last populated are left untouched.
 	 */
 	protected void showCells() {
-		int cdmaVisibility = View.GONE;
-		int gsmVisibility = View.GONE;
-		int lteVisibility = View.GONE;
-
-		rilCells.removeAllViews();
-		for (CellTowerGsm cell : mCellsGsm.getAll()) {
-			showCellGsm(cell);
-			gsmVisibility = View.VISIBLE;
+		boolean prefsChanged = (mShownCid != mainActivity.prefCid) || (mShownCid2 != mainActivity.prefCid2);
+		mShownCid = mainActivity.prefCid;
+		mShownCid2 = mainActivity.prefCid2;
+		if (prefsChanged) {
+			gsmTable.invalidate();
+			lteTable.invalidate();
 		}
-		rilGsmLayout.setVisibility(gsmVisibility);
 
-		rilCdmaCells.removeAllViews();
-		for (CellTowerCdma cell : mCellsCdma.getAll()) {
-			showCellCdma(cell);
-			cdmaVisibility = View.VISIBLE;
+		if (prefsChanged || (mShownGsmVersion != mSnapshot.gsmVersion)) {
+			mShownGsmVersion = mSnapshot.gsmVersion;
+			gsmTable.update(mSnapshot.cellsGsm);
+			rilGsmLayout.setVisibility((mSnapshot.cellsGsm.size() > 0) ? View.VISIBLE : View.GONE);
 		}
-		rilCdmaLayout.setVisibility(cdmaVisibility);
 
-		rilLteCells.removeAllViews();
-		for (CellTowerLte cell : mCellsLte.getAll()) {
-			showCellLte(cell);
-			lteVisibility = View.VISIBLE;
+		if (mShownCdmaVersion != mSnapshot.cdmaVersion) {
+			mShownCdmaVersion = mSnapshot.cdmaVersion;
+			cdmaTable.update(mSnapshot.cellsCdma);
+			rilCdmaLayout.setVisibility((mSnapshot.cellsCdma.size() > 0) ? View.VISIBLE : View.GONE);
 		}
-		rilLteLayout.setVisibility(lteVisibility);
-	}
-
-
-	protected void showCellCdma(CellTowerCdma cellTower) {
-		TableRow row = (TableRow) mainActivity.getLayoutInflater().inflate(R.layout.ril_cdma_list_item, null);
-		ImageView type = (ImageView) row.findViewById(R.id.type);
-		TextView sid = (TextView) row.findViewById(R.id.sid);
-		TextView nid = (TextView) row.findViewById(R.id.nid);
-		TextView bsid = (TextView) row.findViewById(R.id.bsid);
-		TextView dbm = (TextView) row.findViewById(R.id.dbm);
-
-		type.setImageResource(getCellIcon(cellTower.getGeneration(), cellTower.getSource()));
-
-		sid.setText(formatCellData(rilCdmaCells.getContext(), null, cellTower.getSid()));
-
-		nid.setText(formatCellData(rilCdmaCells.getContext(), null, cellTower.getNid()));
-
-		bsid.setText(formatCellData(rilCdmaCells.getContext(), null, cellTower.getBsid()));
-
-		dbm.setText(formatCellDbm(rilCdmaCells.getContext(), null, cellTower.getDbm()));
-
-		rilCdmaCells.addView(row,new TableLayout.LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
-	}
 
-
-	protected void showCellGsm(CellTowerGsm cellTower) {
-		TableRow row = (TableRow) mainActivity.getLayoutInflater().inflate(R.layout.ril_list_item, null);
-		ImageView type = (ImageView) row.findViewById(R.id.type);
-		TextView mcc = (TextView) row.findViewById(R.id.mcc);
-		TextView mnc = (TextView) row.findViewById(R.id.mnc);
-		TextView area = (TextView) row.findViewById(R.id.area);
-		TextView cell = (TextView) row.findViewById(R.id.cell);
-		TextView cell2 = (TextView) row.findViewById(R.id.cell2);
-		TextView unit = (TextView) row.findViewById(R.id.unit);
-		TextView dbm = (TextView) row.findViewById(R.id.dbm);
-
-		type.setImageResource(getCellIcon(cellTower.getGeneration(), cellTower.getSource()));
-
-		mcc.setText(formatCellData(rilCells.getContext(), "%03d", cellTower.getMcc()));
-
-		mnc.setText(formatCellData(rilCells.getContext(), "%02d", cellTower.getMnc()));
-
-		area.setText(formatCellData(rilCells.getContext(), null, cellTower.getLac()));
-
-		int rtcid = cellTower.getCid() / 0x10000;
-		int cid = cellTower.getCid() % 0x10000;
-		if ((mainActivity.prefCid) && (cellTower.getCid() != CellTower.UNKNOWN) && (cellTower.getCid() > 0x0ffff)) {
-			cell.setText(String.format("%d-%d", rtcid, cid));
-			cell2.setText(formatCellData(rilCells.getContext(), null, cellTower.getCid()));
-		} else {
-			cell.setText(formatCellData(rilCells.getContext(), null, cellTower.getCid()));
-			cell2.setText(String.format("%d-%d", rtcid, cid));
+		if (prefsChanged || (mShownLteVersion != mSnapshot.lteVersion)) {
+			mShownLteVersion = mSnapshot.lteVersion;
+			lteTable.update(mSnapshot.cellsLte);
+			rilLteLayout.setVisibility((mSnapshot.cellsLte.size() > 0) ? View.VISIBLE : View.GONE);
 		}
-		cell2.setVisibility((mainActivity.prefCid2 && (cellTower.getCid() > 0x0ffff)) ? View.VISIBLE : View.GONE);
-
-		unit.setText(formatCellData(rilCells.getContext(), null, cellTower.getPsc()));
-
-		dbm.setText(formatCellDbm(rilCells.getContext(), null, cellTower.getDbm()));
-
-		rilCells.addView(row,new TableLayout.LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
 	}
 
 
-	protected void showCellLte(CellTowerLte cellTower) {
-		TableRow row = (TableRow) mainActivity.getLayoutInflater().inflate(R.layout.ril_list_item, null);
-		ImageView type = (ImageView) row.findViewById(R.id.type);
-		TextView mcc = (TextView) row.findViewById(R.id.mcc);
-		TextView mnc = (TextView) row.findViewById(R.id.mnc);
-		TextView area = (TextView) row.findViewById(R.id.area);
-		TextView cell = (TextView) row.findViewById(R.id.cell);
-		TextView cell2 = (TextView) row.findViewById(R.id.cell2);
-		TextView unit = (TextView) row.findViewById(R.id.unit);
-		TextView dbm = (TextView) row.findViewById(R.id.dbm);
-
-		type.setImageResource(getCellIcon(cellTower.getGeneration(), cellTower.getSource()));
-
-		mcc.setText(formatCellData(rilLteCells.getContext(), "%03d", cellTower.getMcc()));
-
-		mnc.setText(formatCellData(rilLteCells.getContext(), "%02d", cellTower.getMnc()));
-
-		area.setText(formatCellData(rilLteCells.getContext(), null, cellTower.getTac()));
+	/**
+	 * Shows the data of a CDMA cell in a table row, updating only the fields which have changed.
+	 */
+	protected void bindCellCdma(CellTable.Row row, CellTowerCdma cellTower) {
+		row.setIcon(getCellIcon(cellTower.getGeneration(), cellTower.getSource()));
 
-		int eNodeBId = cellTower.getCi() / 0x100;
-		int sectorId = cellTower.getCi() % 0x100;
-		if ((mainActivity.prefCid) && (cellTower.getCi() != CellTower.UNKNOWN)) {
-			cell.setText(String.format("%d-%d", eNodeBId, sectorId));
-			cell2.setText(formatCellData(rilLteCells.getContext(), null, cellTower.getCi()));
-		} else {
-			cell.setText(formatCellData(rilLteCells.getContext(), null, cellTower.getCi()));
-			cell2.setText(String.format("%d-%d", eNodeBId, sectorId));
-		}
-		cell2.setVisibility((mainActivity.prefCid2 && (cellTower.getCi() > 0x0ff)) ? View.VISIBLE : View.GONE);
+		if (row.isChanged(CDMA_SID, cellTower.getSid()))
+			row.fields[CDMA_SID].setText(formatCellData(rilCdmaCells.getContext(), null, cellTower.getSid()));
 
-		unit.setText(formatCellData(rilLteCells.getContext(), null, cellTower.getPci()));
+		if (row.isChanged(CDMA_NID, cellTower.getNid()))
+			row.fields[CDMA_NID].setText(formatCellData(rilCdmaCells.getContext(), null, cellTower.getNid()));
 
-		dbm.setText(formatCellDbm(rilLteCells.getContext(), null, cellTower.getDbm()));
+		if (row.isChanged(CDMA_BSID, cellTower.getBsid()))
+			row.fields[CDMA_BSID].setText(formatCellData(rilCdmaCells.getContext(), null, cellTower.getBsid()));
 
-		rilLteCells.addView(row,new TableLayout.LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
+		if (row.isChanged(CDMA_DBM, cellTower.getDbm()))
+			row.fields[CDMA_DBM].setText(formatCellDbm(rilCdmaCells.getContext(), null, cellTower.getDbm()));
 	}
 
 
 	/**
-	 * Updates all cell data.
-	 * 
-	 * This method is called whenever any change in the cell environment (cells in view or signal
-	 * strengths) is signaled, e.g. by a call to a {@link android.telephony.PhoneStateListener}. The
-	 * arguments of this method should be filled with the data passed to the
-	 * {@link android.telephony.PhoneStateListener} where possible, and null passed for all others.
-	 * 
-	 * To force an update of all cell data, simply call this method with each argument set to null.
-	 * 
-	 * If any of the arguments is null, this method will try to obtain that data by querying
-	 * {@link android.telephony.TelephonyManager}. The only exception is {@code signalStrength}, which
-	 * will not be explicitly queried if missing.
-	 * 
-	 * It will first process {@code aCellInfo}, then {@code aLocation}, querying current values from
-	 * {@link android.telephony.TelephonyManager} if one of these arguments is null. Next it will process
-	 * {@code signalStrength}, if supplied, and eventually obtain neighboring cells by calling
-	 * {@link android.telephony.TelephonyManager#getNeighboringCellInfo()} and process these. Eventually
-	 * it will refresh the list of cells.
-	 * 
-	 * @param aLocation The {@link android.telephony.CellLocation} reported by a
-	 * {@link android.telephony.PhoneStateListener}. If null, the current value will be queried.
-	 * @param aSignalStrength The {@link android.telephony.SignalStrength} reported by a
-	 * {@link android.telephony.PhoneStateListener}. If null, the signal strength of the serving cell
-	 * will either be taken from {@code aCellInfo}, if available, or not be updated at all.
-	 * @param aCellInfo A list of {@link android.telephony.CellInfo} instances reported by a
-	 * {@link android.telephony.PhoneStateListener}. If null, the current value will be queried.
+	 * Shows the data of a GSM or UMTS cell in a table row, updating only the fields which have
+	 * changed.
 	 */
-	@SuppressLint("NewApi")
-	public void updateCellData(CellLocation aLocation, SignalStrength signalStrength, List<CellInfo> aCellInfo) {
-		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-			try {
-				/*
-				 * CellInfo requires API 17+ and should in theory return all cells in view. In practice,
-				 * some devices do not implement it or return only a partial list. On some devices,
-				 * PhoneStateListener#onCellInfoChanged() will fire but always receive a null argument.
-				 */
-				List<CellInfo> cellInfo = (aCellInfo != null) ? aCellInfo : mainActivity.telephonyManager.getAllCellInfo();
-				mCellsGsm.updateAll(cellInfo);
-				mCellsCdma.updateAll(cellInfo);
-				mCellsLte.updateAll(cellInfo);
-			} catch (SecurityException e) {
-				// Permission not granted, can't retrieve cell data
-				Log.w(TAG, "Permission not granted, TelephonyManager#getAllCellInfo() failed");
+	protected void bindCellGsm(CellTable.Row row, CellTowerGsm cellTower) {
+		row.setIcon(getCellIcon(cellTower.getGeneration(), cellTower.getSource()));
+
+		if (row.isChanged(CELL_MCC, cellTower.getMcc()))
+			row.fields[CELL_MCC].setText(formatCellData(rilCells.getContext(), "%03d", cellTower.getMcc()));
+
+		if (row.isChanged(CELL_MNC, cellTower.getMnc()))
+			row.fields[CELL_MNC].setText(formatCellData(rilCells.getContext(), "%02d", cellTower.getMnc()));
+
+		if (row.isChanged(CELL_AREA, cellTower.getLac()))
+			row.fields[CELL_AREA].setText(formatCellData(rilCells.getContext(), null, cellTower.getLac()));
+
+		if (row.isChanged(CELL_CELL, cellTower.getCid())) {
+			TextView cell = row.fields[CELL_CELL];
+			TextView cell2 = row.fields[CELL_CELL2];
+			int rtcid = cellTower.getCid() / 0x10000;
+			int cid = cellTower.getCid() % 0x10000;
+			if ((mainActivity.prefCid) && (cellTower.getCid() != CellTower.UNKNOWN) && (cellTower.getCid() > 0x0ffff)) {
+				cell.setText(String.format("%d-%d", rtcid, cid));
+				cell2.setText(formatCellData(rilCells.getContext(), null, cellTower.getCid()));
+			} else {
+				cell.setText(formatCellData(rilCells.getContext(), null, cellTower.getCid()));
+				cell2.setText(String.format("%d-%d", rtcid, cid));
 			}
+			cell2.setVisibility((mainActivity.prefCid2 && (cellTower.getCid() > 0x0ffff)) ? View.VISIBLE : View.GONE);
 		}
 
-		try {
-			/*
-			 * CellLocation should return the serving cell, unless it is LTE (in which case it should
-			 * return null). In practice, however, some devices do return LTE cells. The approach of
-			 * this method does not work well for devices with multiple radios.
-			 */
-			CellLocation location = (aLocation != null) ? aLocation : mainActivity.telephonyManager.getCellLocation();
-			String networkOperator = mainActivity.telephonyManager.getNetworkOperator();
-			mCellsGsm.removeSource(CellTower.SOURCE_CELL_LOCATION);
-			mCellsCdma.removeSource(CellTower.SOURCE_CELL_LOCATION);
-			mCellsLte.removeSource(CellTower.SOURCE_CELL_LOCATION);
-			if (location instanceof GsmCellLocation) {
-				if (mLastNetworkGen < 4) {
-					mServingCell = mCellsGsm.update(networkOperator, (GsmCellLocation) location);
-					if ((mServingCell.getDbm() == CellTower.DBM_UNKNOWN) && (mServingCell instanceof CellTowerGsm))
-						((CellTowerGsm) mServingCell).setAsu(mLastCellAsu);
-				} else {
-					mServingCell = mCellsLte.update(networkOperator, (GsmCellLocation) location);
-					if (mServingCell.getDbm() == CellTower.DBM_UNKNOWN)
-						((CellTowerLte) mServingCell).setAsu(mLastCellAsu);
-				}
-			} else if (location instanceof CdmaCellLocation) {
-				mServingCell = mCellsCdma.update((CdmaCellLocation) location);
-				if (mServingCell.getDbm() == CellTower.DBM_UNKNOWN)
-					((CellTowerCdma) mServingCell).setDbm(mLastCellDbm);
-			}
-			networkTimehandler.removeCallbacks(networkTimeRunnable);
-		} catch (SecurityException e) {
-			// Permission not granted, can't retrieve cell data
-			Log.w(TAG, "Permission not granted, cannot retrieve cell location");
-		}
+		if (row.isChanged(CELL_UNIT, cellTower.getPsc()))
+			row.fields[CELL_UNIT].setText(formatCellData(rilCells.getContext(), null, cellTower.getPsc()));
 
-		if ((mServingCell == null) || (mServingCell.getGeneration() <= 0)) {
-			if ((mLastNetworkGen != 0) && (mServingCell != null))
-				mServingCell.setGeneration(mLastNetworkGen);
-			NetworkInfo netinfo = mainActivity.connectivityManager.getActiveNetworkInfo();
-			if ((netinfo == null)
-					|| (netinfo.getType() < ConnectivityManager.TYPE_MOBILE_MMS)
-					|| (netinfo.getType() > ConnectivityManager.TYPE_MOBILE_HIPRI)) {
-				networkTimehandler.postDelayed(networkTimeRunnable, NETWORK_REFRESH_DELAY);
-			}
-		} else if (mServingCell != null) {
-			mLastNetworkGen = mServingCell.getGeneration();
-		}
-
-		if ((signalStrength != null) && (mServingCell != null)) {
-			int pt = mainActivity.telephonyManager.getPhoneType();
-			if (pt == PHONE_TYPE_GSM) {
-				mLastCellAsu = signalStrength.getGsmSignalStrength();
-				updateNeighboringCellInfo();
-				if (mServingCell instanceof CellTowerGsm)
-					((CellTowerGsm) mServingCell).setAsu(mLastCellAsu);
-				else
-					Log.w(MainActivity.class.getSimpleName(),
-							"Got SignalStrength for PHONE_TYPE_GSM but serving cell is not GSM");
-			} else if (pt == PHONE_TYPE_CDMA) {
-				mLastCellDbm = signalStrength.getCdmaDbm();
-				if ((mServingCell != null) && (mServingCell instanceof CellTowerCdma))
-					mServingCell.setDbm(mLastCellDbm);
-				else
-					Log.w(MainActivity.class.getSimpleName(),
-							"Got SignalStrength for PHONE_TYPE_CDMA but serving cell is not CDMA");
-			} else
-				Log.w(MainActivity.class.getSimpleName(),
-						String.format("Got SignalStrength for unknown phone type (%d)", pt));
-		} else if (mServingCell == null) {
-			Log.w(MainActivity.class.getSimpleName(),
-					"Got SignalStrength but serving cell is null");
-		}
-
-		updateNeighboringCellInfo();
-
-		showCells();
+		if (row.isChanged(CELL_DBM, cellTower.getDbm()))
+			row.fields[CELL_DBM].setText(formatCellDbm(rilCells.getContext(), null, cellTower.getDbm()));
 	}
 
 
 	/**
-	 * Requeries neighboring cells
+	 * Shows the data of an LTE cell in a table row, updating only the fields which have changed.
 	 */
-	protected void updateNeighboringCellInfo() {
-		try {
-			/*
-			 * NeighboringCellInfo is not supported on some devices and will return no data. It lists
-			 * only GSM and successors' cells, but not CDMA cells.
-			 */
-			List<NeighboringCellInfo> neighboringCells = mainActivity.telephonyManager.getNeighboringCellInfo();
-			String networkOperator = mainActivity.telephonyManager.getNetworkOperator();
-			mCellsGsm.updateAll(networkOperator, neighboringCells);
-			mCellsLte.updateAll(networkOperator, neighboringCells);
-		} catch (SecurityException e) {
-			// Permission not granted, can't retrieve cell data
-			Log.w(TAG, "Permission not granted, cannot get neighboring cell info");
+	protected void bindCellLte(CellTable.Row row, CellTowerLte cellTower) {
+		row.setIcon(getCellIcon(cellTower.getGeneration(), cellTower.getSource()));
+
+		if (row.isChanged(CELL_MCC, cellTower.getMcc()))
+			row.fields[CELL_MCC].setText(formatCellData(rilLteCells.getContext(), "%03d", cellTower.getMcc()));
+
+		if (row.isChanged(CELL_MNC, cellTower.getMnc()))
+			row.fields[CELL_MNC].setText(formatCellData(rilLteCells.getContext(), "%02d", cellTower.getMnc()));
+
+		if (row.isChanged(CELL_AREA, cellTower.getTac()))
+			row.fields[CELL_AREA].setText(formatCellData(rilLteCells.getContext(), null, cellTower.getTac()));
+
+		if (row.isChanged(CELL_CELL, cellTower.getCi())) {
+			TextView cell = row.fields[CELL_CELL];
+			TextView cell2 = row.fields[CELL_CELL2];
+			int eNodeBId = cellTower.getCi() / 0x100;
+			int sectorId = cellTower.getCi() % 0x100;
+			if ((mainActivity.prefCid) && (cellTower.getCi() != CellTower.UNKNOWN)) {
+				cell.setText(String.format("%d-%d", eNodeBId, sectorId));
+				cell2.setText(formatCellData(rilLteCells.getContext(), null, cellTower.getCi()));
+			} else {
+				cell.setText(formatCellData(rilLteCells.getContext(), null, cellTower.getCi()));
+				cell2.setText(String.format("%d-%d", eNodeBId, sectorId));
+			}
+			cell2.setVisibility((mainActivity.prefCid2 && (cellTower.getCi() > 0x0ff)) ? View.VISIBLE : View.GONE);
 		}
+
+		if (row.isChanged(CELL_UNIT, cellTower.getPci()))
+			row.fields[CELL_UNIT].setText(formatCellData(rilLteCells.getContext(), null, cellTower.getPci()));
+
+		if (row.isChanged(CELL_DBM, cellTower.getDbm()))
+			row.fields[CELL_DBM].setText(formatCellDbm(rilLteCells.getContext(), null, cellTower.getDbm()));
 	}
 }
\ No newline at end of file
@@ -0,0 +1,320 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.ui;
+
+import android.annotation.TargetApi;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+/**
+ * Collects sensor readings and passes them on to the UI at most once per frame.
+ * <p>
+ * Sensor events only copy the reading into primitive arrays indexed by sensor type and mark the
+ * type as pending; no UI work is done at that point. On the next frame, the pending readings are
+ * copied into a second set of arrays, which only the main thread accesses, and all pending types for
+ * which the minimum interval has elapsed are reported to the listener in a single call, with the
+ * most recent reading for each. Readings of other types stay pending until their interval has
+ * elapsed.
+ * <p>
+ * Sensor events may be delivered on any thread, e.g. a background {@code HandlerThread}, in which
+ * case readings are coalesced there and the main thread only sees one copy per frame. Everything
+ * else, including construction, must happen on the main thread.
+ * <p>
+ * Frames are obtained from {@link Choreographer} on API 16 and later. On earlier versions, the
+ * dispatcher falls back to a {@link Handler} posting at the nominal frame rate.
+ */
+class SensorDispatcher implements SensorEventListener {
+	/**
+	 * Receives sensor readings.
+	 */
+	interface Listener {
+		/**
+		 * Called at most once per frame when new readings are available.
+		 * 
+		 * @param sensors The dispatcher, from which the readings can be obtained
+		 * @param types The sensor types for which new readings are available, as a bit mask (see
+		 * {@link SensorDispatcher#hasType(int, int)})
+		 */
+		public void onSensorsChanged(SensorDispatcher sensors, int types);
+	}
+
+	/** The highest sensor type for which readings are kept */
+	static final int MAX_TYPE = Sensor.TYPE_AMBIENT_TEMPERATURE;
+
+	/** The number of values kept for each reading */
+	static final int MAX_VALUES = 3;
+
+	/** Frame interval used when {@link Choreographer} is not available, in milliseconds */
+	private static final long FALLBACK_FRAME_INTERVAL = 16;
+
+	private final Listener listener;
+
+	/** Minimum interval between two readings of the same type passed to the listener, in nanoseconds */
+	private final long minInterval;
+
+	/** Guards the {@code incoming*} fields and {@link #scheduled} */
+	private final Object lock = new Object();
+
+	/** Values of readings received since the last flush, {@link #MAX_VALUES} per type */
+	private final float[] incomingValues = new float[(MAX_TYPE + 1) * MAX_VALUES];
+
+	/** Accuracy of readings received since the last flush */
+	private final int[] incomingAccuracy = new int[MAX_TYPE + 1];
+
+	/** Types with readings received since the last flush */
+	private int incomingTypes = 0;
+
+	/** Types for which readings have been received, including those not yet flushed */
+	private int incomingReceived = 0;
+
+	/** Values of the latest flushed reading of each type, {@link #MAX_VALUES} per type */
+	private final float[] values = new float[(MAX_TYPE + 1) * MAX_VALUES];
+
+	/** Accuracy of the latest flushed reading of each type */
+	private final int[] accuracy = new int[MAX_TYPE + 1];
+
+	/** Time at which a reading of each type was last passed to the listener */
+	private final long[] lastDispatch = new long[MAX_TYPE + 1];
+
+	/** Types for which readings have been flushed */
+	private int received = 0;
+
+	/** Types with readings not yet passed to the listener */
+	private int pending = 0;
+
+	/** Whether the next flush should pass on all pending readings, regardless of their interval */
+	private boolean dispatchAll = false;
+
+	/** Whether a flush has been scheduled */
+	private boolean scheduled = false;
+
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final FrameCallback frameCallback;
+	private final Runnable fallbackCallback;
+
+	/**
+	 * @param listener The listener which receives readings
+	 * @param minInterval The minimum interval between two readings of the same type passed to the
+	 * listener, in microseconds (the unit used for sensor rates)
+	 */
+	SensorDispatcher(Listener listener, int minInterval) {
+		this.listener = listener;
+		this.minInterval = minInterval * 1000L;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+			// Choreographer instances are per thread, get the one for the main thread here
+			frameCallback = new FrameCallback();
+			fallbackCallback = null;
+		} else {
+			frameCallback = null;
+			fallbackCallback = new Runnable() {
+				public void run() {
+					flush(SystemClock.uptimeMillis() * 1000000L);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Whether a bit mask of sensor types, as passed to {@link Listener#onSensorsChanged(SensorDispatcher, int)},
+	 * includes a given type.
+	 */
+	static boolean hasType(int types, int type) {
+		return (types & (1 << type)) != 0;
+	}
+
+	/**
+	 * Cancels any scheduled flush and discards pending readings. Readings received afterwards are
+	 * dispatched as usual.
+	 */
+	void cancel() {
+		synchronized (lock) {
+			if (scheduled) {
+				if (frameCallback != null)
+					frameCallback.remove();
+				else
+					handler.removeCallbacks(fallbackCallback);
+				scheduled = false;
+			}
+			incomingTypes = 0;
+		}
+		pending = 0;
+	}
+
+	/**
+	 * Returns the accuracy of the latest reading of a type, one of the
+	 * {@code SensorManager.SENSOR_STATUS_*} values.
+	 */
+	int getAccuracy(int type) {
+		return accuracy[type];
+	}
+
+	/**
+	 * Returns a value of the latest reading of a type.
+	 * 
+	 * @param i The index of the value, less than {@link #MAX_VALUES}
+	 */
+	float getValue(int type, int i) {
+		return values[type * MAX_VALUES + i];
+	}
+
+	/**
+	 * Copies the values of the latest reading of a type into {@code dest}, which must hold at least
+	 * {@link #MAX_VALUES} elements.
+	 */
+	void getValues(int type, float[] dest) {
+		System.arraycopy(values, type * MAX_VALUES, dest, 0, MAX_VALUES);
+	}
+
+	/**
+	 * Whether a reading of a type has been received.
+	 */
+	boolean hasReading(int type) {
+		return hasType(received, type);
+	}
+
+	/**
+	 * Passes all readings received so far to the listener on the next frame, regardless of when they
+	 * were last passed on. Call this when the listener starts displaying readings after having
+	 * ignored them for a while, e.g. when another page is shown.
+	 */
+	void invalidate() {
+		if (received == 0)
+			return;
+		pending |= received;
+		dispatchAll = true;
+		synchronized (lock) {
+			schedule(0);
+		}
+	}
+
+	@Override
+	public void onAccuracyChanged(Sensor sensor, int accuracy) {
+		int type = sensor.getType();
+		if ((type < 0) || (type > MAX_TYPE))
+			return;
+		synchronized (lock) {
+			// without a reading there is nothing to show the accuracy for
+			if (!hasType(incomingReceived, type))
+				return;
+			incomingAccuracy[type] = accuracy;
+			incomingTypes |= 1 << type;
+			schedule(0);
+		}
+	}
+
+	@Override
+	public void onSensorChanged(SensorEvent event) {
+		int type = event.sensor.getType();
+		if ((type < 0) || (type > MAX_TYPE))
+			return;
+		synchronized (lock) {
+			System.arraycopy(event.values, 0, incomingValues, type * MAX_VALUES,
+					Math.min(event.values.length, MAX_VALUES));
+			incomingAccuracy[type] = event.accuracy;
+			incomingTypes |= 1 << type;
+			incomingReceived |= 1 << type;
+			schedule(0);
+		}
+	}
+
+	/**
+	 * Passes pending readings to the listener and schedules another flush for those which are not
+	 * due yet.
+	 * 
+	 * @param now The frame time, in nanoseconds
+	 */
+	private void flush(long now) {
+		synchronized (lock) {
+			scheduled = false;
+			for (int type = 0; type <= MAX_TYPE; type++) {
+				if (!hasType(incomingTypes, type))
+					continue;
+				System.arraycopy(incomingValues, type * MAX_VALUES, values, type * MAX_VALUES, MAX_VALUES);
+				accuracy[type] = incomingAccuracy[type];
+			}
+			received |= incomingTypes;
+			pending |= incomingTypes;
+			incomingTypes = 0;
+		}
+		int due = 0;
+		long wait = Long.MAX_VALUE;
+		for (int type = 0; type <= MAX_TYPE; type++) {
+			if (!hasType(pending, type))
+				continue;
+			long elapsed = now - lastDispatch[type];
+			if (dispatchAll || (elapsed >= minInterval)) {
+				due |= 1 << type;
+				lastDispatch[type] = now;
+			} else
+				wait = Math.min(wait, minInterval - elapsed);
+		}
+		dispatchAll = false;
+		pending &= ~due;
+		if (due != 0)
+			listener.onSensorsChanged(this, due);
+		if (pending != 0)
+			synchronized (lock) {
+				schedule(wait / 1000000L);
+			}
+	}
+
+	/**
+	 * Schedules a flush, unless one has been scheduled already. Callers must hold {@link #lock}.
+	 * 
+	 * @param delay The minimum delay in milliseconds, the flush happens on the first frame after it
+	 */
+	private void schedule(long delay) {
+		if (scheduled)
+			return;
+		scheduled = true;
+		if (frameCallback != null)
+			frameCallback.post(delay);
+		else
+			handler.postDelayed(fallbackCallback, Math.max(delay, FALLBACK_FRAME_INTERVAL));
+	}
+
+	/**
+	 * Flushes on a frame signaled by {@link Choreographer}.
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	private class FrameCallback implements Choreographer.FrameCallback {
+		/** The main thread's Choreographer, which may be posted to from any thread */
+		private final Choreographer choreographer = Choreographer.getInstance();
+
+		@Override
+		public void doFrame(long frameTimeNanos) {
+			flush(frameTimeNanos);
+		}
+
+		void post(long delay) {
+			choreographer.postFrameCallbackDelayed(this, delay);
+		}
+
+		void remove() {
+			choreographer.removeFrameCallback(this);
+		}
+	}
+}
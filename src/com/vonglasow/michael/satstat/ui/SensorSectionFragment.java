@@ -24,9 +24,12 @@ import static android.hardware.SensorManager.SENSOR_STATUS_ACCURACY_LOW;
 import static android.hardware.SensorManager.SENSOR_STATUS_ACCURACY_MEDIUM;
 import static android.hardware.SensorManager.SENSOR_STATUS_UNRELIABLE;
 
+import java.util.Locale;
+
 import com.vonglasow.michael.satstat.R;
+import com.vonglasow.michael.satstat.utils.CoordinateFormatter;
+
 import android.hardware.Sensor;
-import android.hardware.SensorEvent;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.view.LayoutInflater;
@@ -62,6 +65,13 @@ public class SensorSectionFragment extends Fragment {
 	private byte mHumiditySensorRes = 0;
 	private byte mTempSensorRes = 1;
 
+	/*
+	 * Formatter for sensor readings and the buffer it writes to, reused for every update
+	 */
+	private CoordinateFormatter formatter;
+	private String unitDegree;
+	private final StringBuilder valueBuilder = new StringBuilder(16);
+
 	private TextView accStatus;
 	private TextView accHeader;
 	private TextView accTotal;
@@ -209,6 +219,9 @@ public class SensorSectionFragment extends Fragment {
 		proximityHeader = (TextView) rootView.findViewById(R.id.proximityHeader);
 		proximity = (TextView) rootView.findViewById(R.id.proximity);
 
+		unitDegree = getString(R.string.unit_degree);
+		formatter = new CoordinateFormatter(unitDegree, "", Locale.getDefault());
+
 		mainActivity.sensorSectionFragment = this;
 
 		return rootView;
@@ -223,58 +236,90 @@ public class SensorSectionFragment extends Fragment {
 	}
 
 	/**
-	 * Called by {@link MainActivity} when a sensor's reading changes. Updates sensor display.
+	 * Shows a sensor reading with a fixed number of decimals.
+	 */
+	private void setValue(TextView view, double value, int decimals) {
+		valueBuilder.setLength(0);
+		formatter.appendSigned(valueBuilder, value, decimals);
+		view.setText(valueBuilder);
+	}
+
+
+	/**
+	 * Shows an angle rounded to full degrees.
+	 */
+	private void setDegrees(TextView view, double value) {
+		valueBuilder.setLength(0);
+		formatter.appendRounded(valueBuilder, value);
+		valueBuilder.append(unitDegree);
+		view.setText(valueBuilder);
+	}
+
+
+	/**
+	 * Called by {@link MainActivity} when sensor readings change. Updates sensor display.
+	 * 
+	 * @param sensors Holds the latest sensor readings
+	 * @param types The sensor types with new readings, see {@link SensorDispatcher#hasType(int, int)}
 	 */
-	public void onSensorChanged(SensorEvent event) {
-		switch (event.sensor.getType()) {
-		case Sensor.TYPE_ACCELEROMETER:
-			accX.setText(String.format("%." + mAccSensorRes + "f", event.values[0]));
-			accY.setText(String.format("%." + mAccSensorRes + "f", event.values[1]));
-			accZ.setText(String.format("%." + mAccSensorRes + "f", event.values[2]));
-			accTotal.setText(String.format("%." + mAccSensorRes + "f", Math.sqrt(Math.pow(event.values[0], 2) + Math.pow(event.values[1], 2) + Math.pow(event.values[2], 2))));
-			accStatus.setTextColor(getResources().getColor(accuracyToColor(event.accuracy)));
-			break;
-		case Sensor.TYPE_ORIENTATION:
-			orAzimuth.setText(String.format("%.0f%s", event.values[0], getString(R.string.unit_degree)));
-			orAziText.setText(MainActivity.formatOrientation(this.getContext(), event.values[0]));
-			orPitch.setText(String.format("%.0f%s", event.values[1], getString(R.string.unit_degree)));
-			orRoll.setText(String.format("%.0f%s", event.values[2], getString(R.string.unit_degree)));
-			orStatus.setTextColor(getResources().getColor(accuracyToColor(event.accuracy)));
-			break;
-		case Sensor.TYPE_GYROSCOPE:
-			rotX.setText(String.format("%." + mGyroSensorRes + "f", event.values[0]));
-			rotY.setText(String.format("%." + mGyroSensorRes + "f", event.values[1]));
-			rotZ.setText(String.format("%." + mGyroSensorRes + "f", event.values[2]));
-			rotTotal.setText(String.format("%." + mGyroSensorRes + "f", Math.sqrt(Math.pow(event.values[0], 2) + Math.pow(event.values[1], 2) + Math.pow(event.values[2], 2))));
-			rotStatus.setTextColor(getResources().getColor(accuracyToColor(event.accuracy)));
-			break;
-		case Sensor.TYPE_MAGNETIC_FIELD:
-			magX.setText(String.format("%." + mMagSensorRes + "f", event.values[0]));
-			magY.setText(String.format("%." + mMagSensorRes + "f", event.values[1]));
-			magZ.setText(String.format("%." + mMagSensorRes + "f", event.values[2]));
-			magTotal.setText(String.format("%." + mMagSensorRes + "f", Math.sqrt(Math.pow(event.values[0], 2) + Math.pow(event.values[1], 2) + Math.pow(event.values[2], 2))));
-			magStatus.setTextColor(getResources().getColor(accuracyToColor(event.accuracy)));
-			break;
-		case Sensor.TYPE_LIGHT:
-			light.setText(String.format("%." + mLightSensorRes + "f", event.values[0]));
-			lightStatus.setTextColor(getResources().getColor(accuracyToColor(event.accuracy)));
-			break;
-		case Sensor.TYPE_PROXIMITY:
-			proximity.setText(String.format("%." + mProximitySensorRes + "f", event.values[0]));
-			proximityStatus.setTextColor(getResources().getColor(accuracyToColor(event.accuracy)));
-			break;
-		case Sensor.TYPE_PRESSURE:
-			metPressure.setText(String.format("%." + mPressureSensorRes + "f", event.values[0]));
-			pressureStatus.setTextColor(getResources().getColor(accuracyToColor(event.accuracy)));
-			break;
-		case Sensor.TYPE_RELATIVE_HUMIDITY:
-			metHumid.setText(String.format("%." + mHumiditySensorRes + "f", event.values[0]));
-			humidStatus.setTextColor(getResources().getColor(accuracyToColor(event.accuracy)));
-			break;
-		case Sensor.TYPE_AMBIENT_TEMPERATURE:
-			metTemp.setText(String.format("%." + mTempSensorRes + "f", event.values[0]));
-			tempStatus.setTextColor(getResources().getColor(accuracyToColor(event.accuracy)));
-			break;
+	public void onSensorsChanged(SensorDispatcher sensors, int types) {
+		if (SensorDispatcher.hasType(types, Sensor.TYPE_ACCELEROMETER)) {
+			float x = sensors.getValue(Sensor.TYPE_ACCELEROMETER, 0);
+			float y = sensors.getValue(Sensor.TYPE_ACCELEROMETER, 1);
+			float z = sensors.getValue(Sensor.TYPE_ACCELEROMETER, 2);
+			setValue(accX, x, mAccSensorRes);
+			setValue(accY, y, mAccSensorRes);
+			setValue(accZ, z, mAccSensorRes);
+			setValue(accTotal, Math.sqrt(x * x + y * y + z * z), mAccSensorRes);
+			accStatus.setTextColor(getResources().getColor(accuracyToColor(sensors.getAccuracy(Sensor.TYPE_ACCELEROMETER))));
+		}
+		if (SensorDispatcher.hasType(types, Sensor.TYPE_ORIENTATION)) {
+			float azimuth = sensors.getValue(Sensor.TYPE_ORIENTATION, 0);
+			setDegrees(orAzimuth, azimuth);
+			orAziText.setText(MainActivity.formatOrientation(this.getContext(), azimuth));
+			setDegrees(orPitch, sensors.getValue(Sensor.TYPE_ORIENTATION, 1));
+			setDegrees(orRoll, sensors.getValue(Sensor.TYPE_ORIENTATION, 2));
+			orStatus.setTextColor(getResources().getColor(accuracyToColor(sensors.getAccuracy(Sensor.TYPE_ORIENTATION))));
+		}
+		if (SensorDispatcher.hasType(types, Sensor.TYPE_GYROSCOPE)) {
+			float x = sensors.getValue(Sensor.TYPE_GYROSCOPE, 0);
+			float y = sensors.getValue(Sensor.TYPE_GYROSCOPE, 1);
+			float z = sensors.getValue(Sensor.TYPE_GYROSCOPE, 2);
+			setValue(rotX, x, mGyroSensorRes);
+			setValue(rotY, y, mGyroSensorRes);
+			setValue(rotZ, z, mGyroSensorRes);
+			setValue(rotTotal, Math.sqrt(x * x + y * y + z * z), mGyroSensorRes);
+			rotStatus.setTextColor(getResources().getColor(accuracyToColor(sensors.getAccuracy(Sensor.TYPE_GYROSCOPE))));
+		}
+		if (SensorDispatcher.hasType(types, Sensor.TYPE_MAGNETIC_FIELD)) {
+			float x = sensors.getValue(Sensor.TYPE_MAGNETIC_FIELD, 0);
+			float y = sensors.getValue(Sensor.TYPE_MAGNETIC_FIELD, 1);
+			float z = sensors.getValue(Sensor.TYPE_MAGNETIC_FIELD, 2);
+			setValue(magX, x, mMagSensorRes);
+			setValue(magY, y, mMagSensorRes);
+			setValue(magZ, z, mMagSensorRes);
+			setValue(magTotal, Math.sqrt(x * x + y * y + z * z), mMagSensorRes);
+			magStatus.setTextColor(getResources().getColor(accuracyToColor(sensors.getAccuracy(Sensor.TYPE_MAGNETIC_FIELD))));
+		}
+		if (SensorDispatcher.hasType(types, Sensor.TYPE_LIGHT)) {
+			setValue(light, sensors.getValue(Sensor.TYPE_LIGHT, 0), mLightSensorRes);
+			lightStatus.setTextColor(getResources().getColor(accuracyToColor(sensors.getAccuracy(Sensor.TYPE_LIGHT))));
+		}
+		if (SensorDispatcher.hasType(types, Sensor.TYPE_PROXIMITY)) {
+			setValue(proximity, sensors.getValue(Sensor.TYPE_PROXIMITY, 0), mProximitySensorRes);
+			proximityStatus.setTextColor(getResources().getColor(accuracyToColor(sensors.getAccuracy(Sensor.TYPE_PROXIMITY))));
+		}
+		if (SensorDispatcher.hasType(types, Sensor.TYPE_PRESSURE)) {
+			setValue(metPressure, sensors.getValue(Sensor.TYPE_PRESSURE, 0), mPressureSensorRes);
+			pressureStatus.setTextColor(getResources().getColor(accuracyToColor(sensors.getAccuracy(Sensor.TYPE_PRESSURE))));
+		}
+		if (SensorDispatcher.hasType(types, Sensor.TYPE_RELATIVE_HUMIDITY)) {
+			setValue(metHumid, sensors.getValue(Sensor.TYPE_RELATIVE_HUMIDITY, 0), mHumiditySensorRes);
+			humidStatus.setTextColor(getResources().getColor(accuracyToColor(sensors.getAccuracy(Sensor.TYPE_RELATIVE_HUMIDITY))));
+		}
+		if (SensorDispatcher.hasType(types, Sensor.TYPE_AMBIENT_TEMPERATURE)) {
+			setValue(metTemp, sensors.getValue(Sensor.TYPE_AMBIENT_TEMPERATURE, 0), mTempSensorRes);
+			tempStatus.setTextColor(getResources().getColor(accuracyToColor(sensors.getAccuracy(Sensor.TYPE_AMBIENT_TEMPERATURE))));
 		}
 	}
 }
\ No newline at end of file
@@ -19,7 +19,13 @@
 
 package com.vonglasow.michael.satstat.ui;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -30,9 +36,12 @@ import org.mapsforge.map.layer.cache.TileCache;
 import com.vonglasow.michael.satstat.Const;
 import com.vonglasow.michael.satstat.PasvLocListenerService;
 import com.vonglasow.michael.satstat.R;
+import com.vonglasow.michael.satstat.data.TrackExporter;
+import com.vonglasow.michael.satstat.data.TrackReader;
 
 import android.Manifest;
 import android.location.LocationManager;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.preference.ListPreference;
 import android.preference.Preference;
@@ -48,8 +57,10 @@ import android.view.MenuItem;
 import android.widget.Toast;
 import ua.com.vassiliev.androidfilebrowser.FileBrowserActivity;
 import android.annotation.SuppressLint;
+import android.app.AlertDialog;
 import android.app.NotificationManager;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
@@ -65,6 +76,7 @@ public class SettingsActivity extends AppCompatActivity implements OnPreferenceC
 	String prefMapPathValue = Const.MAP_PATH_DEFAULT;
 	Preference prefMapDownload;
 	Preference prefMapPurge;
+	Preference prefTrackExport;
 
 	@SuppressLint("NewApi")
 	@Override
@@ -171,6 +183,19 @@ public class SettingsActivity extends AppCompatActivity implements OnPreferenceC
 			String message = getString(R.string.status_map_purged);
 			Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
 
+			return true;
+		} else if (preference == prefTrackExport) {
+			AlertDialog.Builder builder = new AlertDialog.Builder(this);
+			builder.setTitle(getString(R.string.pref_track_export));
+			builder.setItems(R.array.track_export_formats, new DialogInterface.OnClickListener() {
+				public void onClick(DialogInterface dialog, int which) {
+					int coordFormat = Integer.valueOf(mSharedPreferences.getString(Const.KEY_PREF_COORD,
+							Integer.toString(Const.KEY_PREF_COORD_DECIMAL)));
+					Toast.makeText(SettingsActivity.this, getString(R.string.status_track_export_running), Toast.LENGTH_SHORT).show();
+					new TrackExportTask(SettingsActivity.this, which, coordFormat).execute();
+				}
+			});
+			builder.show();
 			return true;
 		} else
 			return false;
@@ -211,14 +236,26 @@ public class SettingsActivity extends AppCompatActivity implements OnPreferenceC
 	public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
 			String key) {
 		boolean needsLocationPerm = false;
-		if (key.equals(Const.KEY_PREF_NOTIFY_FIX) || key.equals(Const.KEY_PREF_NOTIFY_SEARCH)) {
+		if (key.equals(Const.KEY_PREF_NOTIFY_FIX) || key.equals(Const.KEY_PREF_NOTIFY_SEARCH)
+				|| key.equals(Const.KEY_PREF_TRACK_RECORD) || key.equals(Const.KEY_PREF_NMEA_LOG)
+				|| key.equals(Const.KEY_PREF_SENSOR_LOG)) {
 			boolean notifyFix = sharedPreferences.getBoolean(Const.KEY_PREF_NOTIFY_FIX, false);
 			boolean notifySearch = sharedPreferences.getBoolean(Const.KEY_PREF_NOTIFY_SEARCH, false);
-			if (!(notifyFix || notifySearch)) {
+			boolean recordTrack = sharedPreferences.getBoolean(Const.KEY_PREF_TRACK_RECORD, false);
+			boolean logNmea = sharedPreferences.getBoolean(Const.KEY_PREF_NMEA_LOG, false);
+			boolean logSensors = sharedPreferences.getBoolean(Const.KEY_PREF_SENSOR_LOG, false);
+			if (!(notifyFix || notifySearch || recordTrack || logNmea || logSensors)) {
 				Intent stopServiceIntent = new Intent(this, PasvLocListenerService.class);
 				this.stopService(stopServiceIntent);
+			} else if (key.equals(Const.KEY_PREF_SENSOR_LOG) && logSensors) {
+				// sensor logging does not need location permission, start right away
+				startService(new Intent(this, PasvLocListenerService.class));
 			} else if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
 				needsLocationPerm = true;
+			} else if ((key.equals(Const.KEY_PREF_TRACK_RECORD) && recordTrack)
+					|| (key.equals(Const.KEY_PREF_NMEA_LOG) && logNmea)) {
+				// start recording right away rather than waiting for the next GPS event
+				startService(new Intent(this, PasvLocListenerService.class));
 			}
 		} else if (key.equals(Const.KEY_PREF_UPDATE_FREQ)) {
 			// this piece of code is necessary because Android has no way
@@ -261,6 +298,8 @@ public class SettingsActivity extends AppCompatActivity implements OnPreferenceC
 		prefMapDownload.setOnPreferenceClickListener(this);
 		prefMapPurge = sf.findPreference(Const.KEY_PREF_MAP_PURGE);
 		prefMapPurge.setOnPreferenceClickListener(this);
+		prefTrackExport = sf.findPreference(Const.KEY_PREF_TRACK_EXPORT);
+		prefTrackExport.setOnPreferenceClickListener(this);
 	}
 
 	@Override
@@ -275,6 +314,95 @@ public class SettingsActivity extends AppCompatActivity implements OnPreferenceC
 		spEditor.commit();
 	}
 
+	/**
+	 * Exports all recorded tracks in the background.
+	 * 
+	 * Each track is exported to a file of the same name in {@link Const#TRACK_EXPORT_DIR}. Tracks
+	 * which have already been exported, and not been modified since, are skipped.
+	 */
+	private static class TrackExportTask extends AsyncTask<Void, Void, Integer> {
+		/** Result code indicating failure */
+		private static final int RESULT_ERROR = -1;
+
+		private final Context mContext;
+		private final int mFormat;
+		private final int mCoordFormat;
+		private File mExportDir;
+
+		public TrackExportTask(Context context, int format, int coordFormat) {
+			super();
+			mContext = context.getApplicationContext();
+			mFormat = format;
+			mCoordFormat = coordFormat;
+		}
+
+		/**
+		 * @return The number of tracks exported, or {@link #RESULT_ERROR}
+		 */
+		@Override
+		protected Integer doInBackground(Void... params) {
+			File trackDir = PasvLocListenerService.getTrackDir(mContext);
+			mExportDir = new File(trackDir, Const.TRACK_EXPORT_DIR);
+			mExportDir.mkdirs();
+			File[] tracks = trackDir.listFiles();
+			if (tracks == null)
+				return 0;
+			TrackExporter exporter = new TrackExporter(mFormat, mCoordFormat);
+			int count = 0;
+			for (File track : tracks) {
+				String name = track.getName();
+				if (!track.isFile() || !name.endsWith(Const.TRACK_EXTENSION))
+					continue;
+				name = name.substring(0, name.length() - Const.TRACK_EXTENSION.length());
+				File target = new File(mExportDir, name + TrackExporter.EXTENSIONS[mFormat]);
+				if (target.exists() && (target.lastModified() >= track.lastModified()))
+					continue;
+				TrackReader reader = null;
+				Writer writer = null;
+				try {
+					reader = new TrackReader(new BufferedInputStream(new FileInputStream(track)));
+					writer = new OutputStreamWriter(new FileOutputStream(target), "UTF-8");
+					exporter.export(reader, writer, name);
+					// closing flushes the writer, so an error here means the export is incomplete
+					writer.close();
+					writer = null;
+					count++;
+				} catch (IOException e) {
+					Log.e(TAG, "Error exporting track " + track.getAbsolutePath(), e);
+					target.delete();
+					return RESULT_ERROR;
+				} finally {
+					// close each stream separately so that an error on one does not leak the other
+					if (reader != null)
+						try {
+							reader.close();
+						} catch (IOException e) {
+							// NOP
+						}
+					if (writer != null)
+						try {
+							writer.close();
+						} catch (IOException e) {
+							// NOP
+						}
+				}
+			}
+			return count;
+		}
+
+		@Override
+		protected void onPostExecute(Integer result) {
+			String message;
+			if (result == RESULT_ERROR)
+				message = mContext.getString(R.string.status_track_export_error);
+			else if (result == 0)
+				message = mContext.getString(R.string.status_track_export_none);
+			else
+				message = String.format(mContext.getString(R.string.status_track_export_done), result, mExportDir.getAbsolutePath());
+			Toast.makeText(mContext, message, Toast.LENGTH_LONG).show();
+		}
+	}
+
 	public static class SettingsFragment extends PreferenceFragment {
 		@Override
 		public void onCreate(Bundle savedInstanceState) {
@@ -0,0 +1,198 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vonglasow.michael.satstat.R;
+import com.vonglasow.michael.satstat.data.RadioSnapshot;
+import com.vonglasow.michael.satstat.utils.WifiCapabilities;
+
+import android.net.wifi.ScanResult;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+/**
+ * Supplies WiFi scan results to a {@link android.widget.ListView}.
+ * <p>
+ * Item IDs are stable: each access point is identified by its BSSID, packed into a {@code long} by
+ * {@link RadioSnapshot#getWifiKey(String)}.
+ * Rows are recycled by the list view, and each row remembers what it displays, so that binding a
+ * row to an access point updates only the fields that have changed.
+ * <p>
+ * {@link #setResults(List, String)} compares the new results with the ones currently shown and
+ * only notifies the list view if anything visible has changed.
+ */
+class WifiListAdapter extends BaseAdapter {
+	/**
+	 * The views of a row, and the values they currently display.
+	 */
+	private static class Holder {
+		ImageView type;
+		TextView bssid;
+		TextView channel;
+		TextView level;
+		TextView ssid;
+		long id = -1;
+		int icon = 0;
+		int frequency = -1;
+		int levelValue = Integer.MIN_VALUE;
+		String ssidValue = null;
+	}
+
+	private final LayoutInflater inflater;
+
+	/** Access points currently shown */
+	private List<ScanResult> results = new ArrayList<ScanResult>();
+
+	/** Buffer into which new results are sorted, swapped with {@link #results} */
+	private List<ScanResult> pending = new ArrayList<ScanResult>();
+
+	/**
+	 * @param inflater The inflater for new rows
+	 */
+	WifiListAdapter(LayoutInflater inflater) {
+		this.inflater = inflater;
+	}
+
+	/**
+	 * Returns the icon resource for the security type of an access point.
+	 */
+	static int getIcon(ScanResult result) {
+		if (WifiCapabilities.isAdhoc(result)) {
+			return R.drawable.ic_content_wifi_adhoc;
+		} else if ((WifiCapabilities.isEnterprise(result)) || (WifiCapabilities.getScanResultSecurity(result) == WifiCapabilities.EAP)) {
+			return R.drawable.ic_content_wifi_eap;
+		} else if (WifiCapabilities.getScanResultSecurity(result) == WifiCapabilities.PSK) {
+			return R.drawable.ic_content_wifi_psk;
+		} else if (WifiCapabilities.getScanResultSecurity(result) == WifiCapabilities.WEP) {
+			return R.drawable.ic_content_wifi_wep;
+		} else if (WifiCapabilities.getScanResultSecurity(result) == WifiCapabilities.OPEN) {
+			return R.drawable.ic_content_wifi_open;
+		} else {
+			return R.drawable.ic_content_wifi_unknown;
+		}
+	}
+
+	@Override
+	public int getCount() {
+		return results.size();
+	}
+
+	@Override
+	public ScanResult getItem(int position) {
+		return results.get(position);
+	}
+
+	@Override
+	public long getItemId(int position) {
+		return RadioSnapshot.getWifiKey(results.get(position).BSSID);
+	}
+
+	@Override
+	public View getView(int position, View convertView, ViewGroup parent) {
+		View view = convertView;
+		Holder holder;
+		if (view == null) {
+			view = inflater.inflate(R.layout.wifi_list_item, parent, false);
+			holder = new Holder();
+			holder.type = (ImageView) view.findViewById(R.id.type);
+			holder.bssid = (TextView) view.findViewById(R.id.bssid);
+			holder.channel = (TextView) view.findViewById(R.id.channel);
+			holder.level = (TextView) view.findViewById(R.id.level);
+			holder.ssid = (TextView) view.findViewById(R.id.ssid);
+			view.setTag(holder);
+		} else
+			holder = (Holder) view.getTag();
+
+		ScanResult result = results.get(position);
+		long id = RadioSnapshot.getWifiKey(result.BSSID);
+		if (holder.id != id) {
+			holder.id = id;
+			holder.bssid.setText(result.BSSID);
+		}
+		int icon = getIcon(result);
+		if (holder.icon != icon) {
+			holder.icon = icon;
+			holder.type.setImageResource(icon);
+		}
+		if (holder.frequency != result.frequency) {
+			holder.frequency = result.frequency;
+			holder.channel.setText(RadioSectionFragment.getChannelFromFrequency(result.frequency));
+		}
+		if (holder.levelValue != result.level) {
+			holder.levelValue = result.level;
+			holder.level.setText(String.valueOf(result.level));
+		}
+		if ((holder.ssidValue == null) || !holder.ssidValue.equals(result.SSID)) {
+			holder.ssidValue = result.SSID;
+			holder.ssid.setText(result.SSID);
+		}
+		return view;
+	}
+
+	@Override
+	public boolean hasStableIds() {
+		return true;
+	}
+
+	/**
+	 * Sets the access points to show.
+	 * 
+	 * @param sortedResults The scan results, sorted in the order in which they are to be shown
+	 * @param selectedBSSID The BSSID of the access point to show first, if present
+	 */
+	void setResults(List<ScanResult> sortedResults, String selectedBSSID) {
+		pending.clear();
+		for (ScanResult result : sortedResults)
+			if (result.BSSID.equals(selectedBSSID))
+				pending.add(result);
+		for (ScanResult result : sortedResults)
+			if (!result.BSSID.equals(selectedBSSID))
+				pending.add(result);
+
+		boolean changed = (pending.size() != results.size());
+		for (int i = 0; !changed && (i < pending.size()); i++)
+			changed = !isSame(pending.get(i), results.get(i));
+
+		List<ScanResult> tmp = results;
+		results = pending;
+		pending = tmp;
+		pending.clear();
+		if (changed)
+			notifyDataSetChanged();
+	}
+
+	/**
+	 * Whether two scan results would be shown identically.
+	 */
+	private static boolean isSame(ScanResult l, ScanResult r) {
+		return l.BSSID.equals(r.BSSID)
+				&& (l.frequency == r.frequency)
+				&& (l.level == r.level)
+				&& ((l.SSID == null) ? (r.SSID == null) : l.SSID.equals(r.SSID))
+				&& ((l.capabilities == null) ? (r.capabilities == null) : l.capabilities.equals(r.capabilities));
+	}
+}
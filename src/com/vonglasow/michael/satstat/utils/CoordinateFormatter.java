@@ -0,0 +1,336 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.utils;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+import uk.me.jstott.jcoord.UTMConverter;
+
+/**
+ * Formats coordinates for display.
+ * <p>
+ * All output is appended to a {@link StringBuilder} supplied by the caller, which can be reused
+ * between calls. Unit strings and locale-specific symbols are resolved once when the formatter is
+ * created, so formatting a location does not involve resource lookups, {@code String.format()} or
+ * boxing of numbers.
+ * <p>
+ * Numbers are formatted the way {@code String.format()} would format them for the locale passed to
+ * the constructor, i.e. with the locale's decimal separator, grouping separator and digits.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class CoordinateFormatter {
+	/*
+	 * Coordinate formats, as stored in the coordinate format preference
+	 */
+	public static final int FORMAT_DECIMAL = 0;
+	public static final int FORMAT_MIN = 1;
+	public static final int FORMAT_SEC = 2;
+	public static final int FORMAT_MGRS = 3;
+	public static final int FORMAT_UTM = 4;
+
+	private static final long[] POW10 = {
+		1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+		10000000000L, 100000000000L, 1000000000000L, 10000000000000L, 100000000000000L,
+		1000000000000000L, 10000000000000000L, 100000000000000000L, 1000000000000000000L
+	};
+
+	private final String unitDegree;
+	private final String outsideUtmRange;
+	private final char zeroDigit;
+	private final char decimalSeparator;
+	private final char groupingSeparator;
+	private final char minusSign;
+
+	/** Receives the results of UTM and MGRS conversions */
+	private final UTMConverter.Result gridRef = new UTMConverter.Result();
+
+	/**
+	 * @param unitDegree The unit string to append to degree values
+	 * @param outsideUtmRange The text to output instead of a UTM or MGRS reference if the position is
+	 * outside the area covered by these systems
+	 * @param locale The locale which determines number formatting
+	 */
+	public CoordinateFormatter(String unitDegree, String outsideUtmRange, Locale locale) {
+		this.unitDegree = unitDegree;
+		this.outsideUtmRange = outsideUtmRange;
+		DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+		zeroDigit = symbols.getZeroDigit();
+		decimalSeparator = symbols.getDecimalSeparator();
+		groupingSeparator = symbols.getGroupingSeparator();
+		minusSign = symbols.getMinusSign();
+	}
+
+	/**
+	 * Appends a signed value in decimal degrees with five decimals, e.g. {@code -12.34568°}.
+	 */
+	public void appendDecimal(StringBuilder sb, double value) {
+		long units = Math.round(Math.abs(value) * 100000.0);
+		// check the sign after rounding, a value which rounds to zero gets none
+		if ((value < 0) && (units != 0))
+			sb.append(minusSign);
+		appendFixed(sb, units, 5);
+		sb.append(unitDegree);
+	}
+
+	/**
+	 * Appends a signed value in degrees and minutes, with three decimals for the minutes, e.g.
+	 * {@code -12° 20.741'}.
+	 */
+	public void appendDegMin(StringBuilder sb, double value) {
+		long units = toDegMinUnits(value);
+		if ((value < 0) && (units != 0))
+			sb.append(minusSign);
+		appendDegMinUnits(sb, units);
+	}
+
+	/**
+	 * Appends a signed value in degrees, minutes and seconds, with one decimal for the seconds, e.g.
+	 * {@code -12° 20' 44.5"}.
+	 */
+	public void appendDegMinSec(StringBuilder sb, double value) {
+		long units = toDegMinSecUnits(value);
+		if ((value < 0) && (units != 0))
+			sb.append(minusSign);
+		appendDegMinSecUnits(sb, units);
+	}
+
+	/**
+	 * Appends the absolute value of {@code value} in decimal degrees, followed by a space-less
+	 * hemisphere designator, e.g. {@code 12.34568°S}.
+	 *
+	 * @param positive The hemisphere designator for positive values
+	 * @param negative The hemisphere designator for negative values
+	 */
+	public void appendDecimal(StringBuilder sb, double value, String positive, String negative) {
+		long units = Math.round(Math.abs(value) * 100000.0);
+		appendFixed(sb, units, 5);
+		sb.append(unitDegree);
+		appendHemisphere(sb, value, units, positive, negative);
+	}
+
+	/**
+	 * Appends the absolute value of {@code value} in degrees and minutes, followed by a hemisphere
+	 * designator, e.g. {@code 12° 20.741' S}.
+	 *
+	 * @param positive The hemisphere designator for positive values
+	 * @param negative The hemisphere designator for negative values
+	 */
+	public void appendDegMin(StringBuilder sb, double value, String positive, String negative) {
+		long units = toDegMinUnits(value);
+		appendDegMinUnits(sb, units);
+		sb.append(' ');
+		appendHemisphere(sb, value, units, positive, negative);
+	}
+
+	/**
+	 * Appends the absolute value of {@code value} in degrees, minutes and seconds, followed by a
+	 * hemisphere designator, e.g. {@code 12° 20' 44.5" S}.
+	 *
+	 * @param positive The hemisphere designator for positive values
+	 * @param negative The hemisphere designator for negative values
+	 */
+	public void appendDegMinSec(StringBuilder sb, double value, String positive, String negative) {
+		long units = toDegMinSecUnits(value);
+		appendDegMinSecUnits(sb, units);
+		sb.append(' ');
+		appendHemisphere(sb, value, units, positive, negative);
+	}
+
+	/**
+	 * Appends an MGRS reference with 1 m precision, e.g. {@code 33UXP0402411123}.
+	 * <p>
+	 * If the position is outside the area covered by MGRS, the text passed to the constructor is
+	 * appended instead.
+	 */
+	public void appendMgrs(StringBuilder sb, double lat, double lon) {
+		if (!UTMConverter.toMGRS(lat, lon, gridRef)) {
+			sb.append(outsideUtmRange);
+			return;
+		}
+		appendMgrs(sb, gridRef.lngZone, gridRef.latZone, gridRef.eastingID, gridRef.northingID,
+				gridRef.mgrsEasting, gridRef.mgrsNorthing);
+	}
+
+	/**
+	 * Appends an MGRS reference with 1 m precision from its components.
+	 */
+	public void appendMgrs(StringBuilder sb, int zoneNumber, char zoneChar, char eastingID,
+			char northingID, int easting, int northing) {
+		// MGRS references are identifiers, always use ASCII digits
+		appendDigits(sb, zoneNumber, 2, '0');
+		sb.append(zoneChar).append(eastingID).append(northingID);
+		appendDigits(sb, easting, 5, '0');
+		appendDigits(sb, northing, 5, '0');
+	}
+
+	/**
+	 * Appends a UTM reference in the form {@code zone / hemisphere / easting / northing}, with
+	 * easting and northing in full metres, e.g. {@code 33 / N / 404,024 / 5,311,123}.
+	 * <p>
+	 * If the position is outside the area covered by UTM, the text passed to the constructor is
+	 * appended instead.
+	 */
+	public void appendUtm(StringBuilder sb, double lat, double lon) {
+		if (!UTMConverter.toUTM(lat, lon, gridRef)) {
+			sb.append(outsideUtmRange);
+			return;
+		}
+		appendUtm(sb, gridRef.lngZone, lat >= 0, gridRef.easting, gridRef.northing);
+	}
+
+	/**
+	 * Appends a UTM reference from its components.
+	 *
+	 * @param north Whether the reference is in the northern hemisphere
+	 */
+	public void appendUtm(StringBuilder sb, int zoneNumber, boolean north, double easting, double northing) {
+		appendNumber(sb, zoneNumber, 1);
+		sb.append(" / ").append(north ? 'N' : 'S').append(" / ");
+		appendGrouped(sb, Math.round(easting));
+		sb.append(" / ");
+		appendGrouped(sb, Math.round(northing));
+	}
+
+	/**
+	 * Appends a signed value rounded to the nearest integer, e.g. {@code -12}.
+	 */
+	public void appendRounded(StringBuilder sb, double value) {
+		long rounded = Math.round(Math.abs(value));
+		if ((value < 0) && (rounded != 0))
+			sb.append(minusSign);
+		appendNumber(sb, rounded, 1);
+	}
+
+	/**
+	 * Appends a signed value with a fixed number of decimals, e.g. {@code -1.250} with 3 decimals.
+	 */
+	public void appendSigned(StringBuilder sb, double value, int decimals) {
+		long units = Math.round(Math.abs(value) * POW10[decimals]);
+		if ((value < 0) && (units != 0))
+			sb.append(minusSign);
+		appendFixed(sb, units, decimals);
+	}
+
+	/**
+	 * Appends a non-negative number of fixed-point units, e.g. 1234567 with 5 decimals as
+	 * {@code 12.34567}.
+	 */
+	public void appendFixed(StringBuilder sb, long units, int decimals) {
+		long scale = POW10[decimals];
+		appendNumber(sb, units / scale, 1);
+		if (decimals > 0) {
+			sb.append(decimalSeparator);
+			appendNumber(sb, units % scale, decimals);
+		}
+	}
+
+	/**
+	 * Appends a non-negative integer, padded with leading zeros to at least {@code minDigits}
+	 * digits.
+	 */
+	public void appendNumber(StringBuilder sb, long value, int minDigits) {
+		appendDigits(sb, value, minDigits, zeroDigit);
+	}
+
+	/**
+	 * Appends a non-negative integer with grouping separators after every three digits.
+	 */
+	public void appendGrouped(StringBuilder sb, long value) {
+		int digits = 1;
+		while ((digits < POW10.length) && (value >= POW10[digits]))
+			digits++;
+		for (int i = digits - 1; i >= 0; i--) {
+			sb.append((char) (zeroDigit + (value / POW10[i]) % 10));
+			if ((i > 0) && (i % 3 == 0))
+				sb.append(groupingSeparator);
+		}
+	}
+
+	/**
+	 * Returns the absolute value of {@code value} in units of 0.001 minutes.
+	 * <p>
+	 * Rounding to these units before splitting them up carries over into degrees.
+	 */
+	private static long toDegMinUnits(double value) {
+		return Math.round(Math.abs(value) * 60000.0);
+	}
+
+	/**
+	 * Returns the absolute value of {@code value} in units of 0.1 seconds.
+	 * <p>
+	 * Rounding to these units before splitting them up carries over into minutes and degrees.
+	 */
+	private static long toDegMinSecUnits(double value) {
+		return Math.round(Math.abs(value) * 36000.0);
+	}
+
+	/**
+	 * Appends an angle in units of 0.001 minutes as degrees and minutes.
+	 */
+	private void appendDegMinUnits(StringBuilder sb, long units) {
+		appendNumber(sb, units / 60000, 1);
+		sb.append(unitDegree).append(' ');
+		appendFixed(sb, units % 60000, 3);
+		sb.append('\'');
+	}
+
+	/**
+	 * Appends an angle in units of 0.1 seconds as degrees, minutes and seconds.
+	 */
+	private void appendDegMinSecUnits(StringBuilder sb, long units) {
+		appendNumber(sb, units / 36000, 1);
+		sb.append(unitDegree).append(' ');
+		appendNumber(sb, (units % 36000) / 600, 1);
+		sb.append("' ");
+		appendFixed(sb, units % 600, 1);
+		sb.append('"');
+	}
+
+	/**
+	 * Appends a non-negative integer, padded with leading zeros to at least {@code minDigits}
+	 * digits, using the digits starting at {@code zero}.
+	 */
+	private static void appendDigits(StringBuilder sb, long value, int minDigits, char zero) {
+		int digits = 1;
+		while ((digits < POW10.length) && (value >= POW10[digits]))
+			digits++;
+		for (int i = digits; i < minDigits; i++)
+			sb.append(zero);
+		for (int i = digits - 1; i >= 0; i--)
+			sb.append((char) (zero + (value / POW10[i]) % 10));
+	}
+
+	/**
+	 * Appends the hemisphere designator for a value, or nothing if the value is zero after rounding.
+	 *
+	 * @param units The rounded absolute value, in whatever units it is displayed in
+	 */
+	private static void appendHemisphere(StringBuilder sb, double value, long units,
+			String positive, String negative) {
+		if (units == 0)
+			return;
+		if (value > 0)
+			sb.append(positive);
+		else if (value < 0)
+			sb.append(negative);
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.widgets;
+
+import android.view.View;
+
+/**
+ * Receives the time a view took to draw itself, for performance measurements.
+ */
+public interface FrameTimeListener {
+	/**
+	 * Called at the end of each {@code onDraw()}.
+	 * 
+	 * @param view The view which was drawn
+	 * @param nanos Time spent in {@code onDraw()}, in nanoseconds
+	 */
+	public void onFrameDrawn(View view, long nanos);
+}
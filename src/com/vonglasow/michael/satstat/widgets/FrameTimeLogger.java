@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.widgets;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import android.util.Log;
+import android.view.View;
+
+/**
+ * Collects the draw times of a view and periodically writes their distribution to the log.
+ * <p>
+ * After every {@link #WINDOW} frames, the median, 90th and 99th percentile and maximum draw time
+ * are logged and collection starts over. Recording a frame does not allocate any objects.
+ * Instances must only be called from the UI thread.
+ */
+public class FrameTimeLogger implements FrameTimeListener {
+	private static final String TAG = "FrameTimeLogger";
+
+	/** Number of frames over which percentiles are calculated */
+	public static final int WINDOW = 100;
+
+	/** Name of the view, used in log messages */
+	private final String name;
+
+	/** Draw times of the current window, in nanoseconds */
+	private final long[] samples = new long[WINDOW];
+
+	/** Number of samples recorded in the current window */
+	private int count = 0;
+
+	/**
+	 * @param name The name under which times are logged, usually the class name of the view
+	 */
+	public FrameTimeLogger(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public void onFrameDrawn(View view, long nanos) {
+		samples[count++] = nanos;
+		if (count < WINDOW)
+			return;
+		Arrays.sort(samples);
+		Log.d(TAG, String.format(Locale.ROOT,
+				"%s: %d frames, median %.2f ms, 90%% %.2f ms, 99%% %.2f ms, max %.2f ms",
+				name, WINDOW, percentile(50), percentile(90), percentile(99),
+				samples[WINDOW - 1] / 1e6));
+		count = 0;
+	}
+
+	/**
+	 * Returns a percentile of the sorted samples, in milliseconds.
+	 */
+	private double percentile(int p) {
+		return samples[(WINDOW * p + 99) / 100 - 1] / 1e6;
+	}
+}
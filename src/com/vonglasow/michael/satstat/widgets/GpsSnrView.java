@@ -20,13 +20,15 @@
 package com.vonglasow.michael.satstat.widgets;
 
 import com.vonglasow.michael.satstat.R;
+import com.vonglasow.michael.satstat.data.SatelliteSnapshot;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
-import android.location.GpsSatellite;
+import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.util.Log;
@@ -34,16 +36,15 @@ import android.view.View;
 
 /**
  * Displays the signal-to-noise ratio of the GPS satellites in a bar chart.
+ * <p>
+ * Grid lines and labels only change when the size of the view or the set of visible ranges
+ * changes. They are rendered into a bitmap, along with the horizontal extent of each bar, and
+ * reused until then, so that a regular redraw only draws the SNR bars and the bitmap.
  */
 public class GpsSnrView extends View {
 	private final String TAG = "GpsSnrView";
-	
-	/**
-	 * The highest currently supported NMEA ID.
-	 */
-	private final int MAX_NMEA_ID = 336;
 
-	private Iterable<GpsSatellite> mSats;
+	private SatelliteSnapshot mSats;
 
 	private Paint activePaint;
 	private Paint inactivePaint;
@@ -64,31 +65,23 @@ public class GpsSnrView extends View {
 	// Preferred height of the view in pixels so that labels and legible bars can be accommodated
 	private int preferredHeight;
 
-	/*
-	 * Which satellites to draw:
-	 * 1–32: GPS
-	 * 33–54: Various SBAS systems (EGNOS, WAAS, SDCM, GAGAN, MSAS) – some IDs still unused
-	 * 55–64: not used (might be assigned to further SBAS systems)
-	 * 65–88: GLONASS
-	 * 89–96: GLONASS (future extensions?)
-	 * 97–192: not used
-	 * 193–195: QZSS
-	 * 196–200: QZSS (future extensions?)
-	 * 201–235: Beidou
-	 * 236–300: not used
-	 * 301–336: Galileo
-	 */
-	private boolean draw_1_32 = false;
-	private boolean draw_33_54 = false;
-	private boolean draw_55_64 = false;
-	private boolean draw_65_88 = false;
-	private boolean draw_89_96 = false;
-	private boolean draw_97_192 = false;
-	private boolean draw_193_195 = false;
-	private boolean draw_196_200 = false;
-	private boolean draw_201_235 = false;
-	private boolean draw_236_300 = false;
-	private boolean draw_301_336 = false;
+	/** Which ranges of NMEA IDs to draw, and where to draw each satellite */
+	private final SnrGrid grid = new SnrGrid();
+
+	/** Grid lines and labels, drawn on top of the bars; null if not yet rendered */
+	private Bitmap gridCache = null;
+
+	/** The ranges visible when {@link #gridCache} was rendered */
+	private int gridCacheRanges;
+
+	/** Left and right edges of the bar at each grid position, valid while the cache is */
+	private final int[] barLeft = new int[SnrGrid.MAX_NMEA_ID + 1];
+	private final int[] barRight = new int[SnrGrid.MAX_NMEA_ID + 1];
+
+	/** Reused for every bar */
+	private final RectF barRect = new RectF();
+
+	private FrameTimeListener frameTimeListener = null;
 
 
 	/**
@@ -201,6 +194,40 @@ public class GpsSnrView extends View {
 				);
 	}
 
+	/**
+	 * Renders grid lines and labels into {@link #gridCache} and lays out the bars, for the current
+	 * size and visible ranges.
+	 */
+	private void renderGrid() {
+		int w = getWidth();
+		int h = getHeight();
+		if ((gridCache == null) || (gridCache.getWidth() != w) || (gridCache.getHeight() != h)) {
+			releaseGrid();
+			if ((w <= 0) || (h <= 0))
+				return;
+			gridCache = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+		} else
+			gridCache.eraseColor(Color.TRANSPARENT);
+		gridCacheRanges = grid.getVisibleRanges();
+		drawGrid(new Canvas(gridCache));
+
+		int numBars = grid.getNumBars();
+		for (int i = 1; i <= numBars; i++) {
+			barLeft[i] = (i - 1) * (w - gridStrokeWidth) / numBars + gridStrokeWidth / 2;
+			barRight[i] = i * (w - gridStrokeWidth) / numBars - gridStrokeWidth / 2;
+		}
+	}
+
+	/**
+	 * Discards the rendered grid, which will be rendered again when needed.
+	 */
+	private void releaseGrid() {
+		if (gridCache != null) {
+			gridCache.recycle();
+			gridCache = null;
+		}
+	}
+
 	/**
 	 * Draws the grid lines and labels.
 	 */
@@ -213,48 +240,48 @@ public class GpsSnrView extends View {
 		canvas.drawLine((float) gridStrokeWidth / 2, 0,
 				(float) gridStrokeWidth / 2, h - textHeight, gridPaintStrong);
 		
-		int numBars = getNumBars();
+		int numBars = grid.getNumBars();
 		
-		if (draw_1_32)
+		if (grid.isVisible(SnrGrid.RANGE_1_32))
 			drawLabel(canvas, getContext().getResources().getString(R.string.title_nmea_001_032), 1, 32, numBars);
-		if (draw_33_54)
+		if (grid.isVisible(SnrGrid.RANGE_33_54))
 			drawLabel(canvas, getContext().getResources().getString(R.string.title_nmea_033_054), 33, 22, numBars);
-		if (draw_55_64)
+		if (grid.isVisible(SnrGrid.RANGE_55_64))
 			drawLabel(canvas, getContext().getResources().getString(R.string.title_nmea_055_064), 55, 10, numBars);
 		
 		// 65–88 is GLONASS, 89–96 is for possible future GLONASS extensions
-		if (draw_65_88 && draw_89_96)
+		if (grid.isVisible(SnrGrid.RANGE_65_88) && grid.isVisible(SnrGrid.RANGE_89_96))
 			drawLabel(canvas, getContext().getResources().getString(R.string.title_nmea_065_088), 65, 32, numBars);
-		else if (draw_65_88)
+		else if (grid.isVisible(SnrGrid.RANGE_65_88))
 			drawLabel(canvas, getContext().getResources().getString(R.string.title_nmea_065_088), 65, 24, numBars);
-		else if (draw_89_96)
+		else if (grid.isVisible(SnrGrid.RANGE_89_96))
 			drawLabel(canvas, getContext().getResources().getString(R.string.title_nmea_065_088), 89, 8, numBars);
 		
-		if (draw_97_192)
+		if (grid.isVisible(SnrGrid.RANGE_97_192))
 			drawLabel(canvas, getContext().getResources().getString(R.string.title_nmea_097_192), 97, 96, numBars);
 		
 		// 193–195 is QZSS, 196–200 is for possible future QZSS extensions
-		if (draw_193_195 && draw_196_200)
+		if (grid.isVisible(SnrGrid.RANGE_193_195) && grid.isVisible(SnrGrid.RANGE_196_200))
 			drawLabel(canvas, getContext().getResources().getString(R.string.title_nmea_193_195), 193, 8, numBars);
-		else if (draw_193_195)
+		else if (grid.isVisible(SnrGrid.RANGE_193_195))
 			drawLabel(canvas, getContext().getResources().getString(R.string.title_nmea_193_195), 193, 3, numBars);
-		else if (draw_196_200)
+		else if (grid.isVisible(SnrGrid.RANGE_196_200))
 			drawLabel(canvas, getContext().getResources().getString(R.string.title_nmea_193_195), 196, 5, numBars);
 		
-		if (draw_201_235)
+		if (grid.isVisible(SnrGrid.RANGE_201_235))
 			drawLabel(canvas, getContext().getResources().getString(R.string.title_nmea_201_235), 201, 35, numBars);
 
 		// 236–300 (currently unused)
-		if (draw_236_300)
+		if (grid.isVisible(SnrGrid.RANGE_236_300))
 			drawLabel(canvas, getContext().getResources().getString(R.string.title_nmea_236_300), 236, 65, numBars);
 
 		// 301–336 is Galileo
-		if (draw_301_336)
+		if (grid.isVisible(SnrGrid.RANGE_301_336))
 			drawLabel(canvas, getContext().getResources().getString(R.string.title_nmea_301_336), 301, 36, numBars);
 
 		// range boundaries and auxiliary lines (after every 4th satellite)
-		for (int nmeaID = 1; nmeaID < MAX_NMEA_ID; nmeaID++) {
-			int pos = getGridPos(nmeaID);
+		for (int nmeaID = 1; nmeaID < SnrGrid.MAX_NMEA_ID; nmeaID++) {
+			int pos = grid.getGridPos(nmeaID);
 			if (pos > 0) {
 				float x = (float) gridStrokeWidth / 2
 						+ pos * (w - gridStrokeWidth) / numBars;
@@ -271,17 +298,17 @@ public class GpsSnrView extends View {
 					paint = gridPaintStrong;
 					break;
 				case 54:
-					if (!draw_55_64)
+					if (!grid.isVisible(SnrGrid.RANGE_55_64))
 						paint = gridPaintStrong;
 					break;
 				case 88:
-					if (!draw_89_96)
+					if (!grid.isVisible(SnrGrid.RANGE_89_96))
 						paint = gridPaintStrong;
 					else
 						paint = gridPaint;
 					break;
 				case 195:
-					if (!draw_196_200)
+					if (!grid.isVisible(SnrGrid.RANGE_196_200))
 						paint = gridPaintStrong;
 				default:
 					if ((nmeaID % 4) == 0)
@@ -308,10 +335,10 @@ public class GpsSnrView extends View {
 	 * @param label The text to be displayed (the description of the satellite range, such as "GPS", "GLONASS" or "Beidou")
 	 * @param startBar The NMEA ID of the first satellite in the range
 	 * @param rangeBars The number of NMEA IDs in the range (ranges must be contiguous)
-	 * @param numBars Total number of SNR bars being displayed, as returned by getNumBars()
+	 * @param numBars Total number of SNR bars being displayed, as returned by {@link SnrGrid#getNumBars()}
 	 */
 	private void drawLabel(Canvas canvas, String label, int startBar, int rangeBars, int numBars) {
-		int offsetBars = getGridPos(startBar) - 1;
+		int offsetBars = grid.getGridPos(startBar) - 1;
 		int w = getWidth();
 		int h = getHeight();
 		Path labelPath = new Path();
@@ -331,199 +358,86 @@ public class GpsSnrView extends View {
 	 * @param used Whether the satellite is used in the fix.
 	 */
 	private void drawSat(Canvas canvas, int nmeaID, float snr, boolean used) {
-		int w = getWidth();
 		int h = getHeight() - textHeight;
 
-		int i = getGridPos(nmeaID);
-
-		int x0 = (i - 1) * (w - gridStrokeWidth) / getNumBars() + gridStrokeWidth / 2;
-		int x1 = i * (w - gridStrokeWidth) / getNumBars() - gridStrokeWidth / 2;
+		int i = grid.getGridPos(nmeaID);
+		if (i < 0)
+			return;
 
 		int y0 = h - gridStrokeWidth;
 		int y1 = (int) (y0 * (1 - Math.min(snr, 60) / 60));
 
-		canvas.drawRect(x0, y1, x1, h, used?activePaint:inactivePaint);
-	}
-
-	/**
-	 * Returns the position of the SNR bar for a satellite in the grid.
-	 * <p>
-	 * This function returns the position at which the SNR bar for the
-	 * satellite with the given {@code nmeaID} will appear in the grid, taking
-	 * into account the visibility of NMEA ID ranges.
-	 * 
-	 * @param nmeaID The NMEA ID of the satellite, as returned by {@link android.location.GpsSatellite#getPrn()}.
-	 * @return The position of the SNR bar in the grid. The position of the first visible bar is 1. If {@code nmeaID} falls within a hidden range, -1 is returned. 
-	 */
-	private int getGridPos(int nmeaID) {
-		if (nmeaID < 1) return -1;
-		
-		int skip = 0;
-		if (nmeaID > 32) {
-			if (!draw_1_32) skip+=32;
-			if (nmeaID > 54) {
-				if (!draw_33_54) skip+=22;
-				if (nmeaID > 64) {
-					if (!draw_55_64) skip+=10;
-					if (nmeaID > 88) {
-						if (!draw_65_88) skip+=24;
-						if (nmeaID > 96) {
-							if (!draw_89_96) skip+=8;
-							if (nmeaID > 192) {
-								if (!draw_97_192) skip+=96;
-								if (nmeaID > 195) {
-									if (!draw_193_195) skip+=3;
-									if (nmeaID > 200) {
-										if (!draw_196_200) skip+=5;
-										if (nmeaID > 235) {
-											if (!draw_201_235) skip+=35;
-											if (nmeaID > 300) {
-												if (nmeaID > MAX_NMEA_ID) return -1;
-												else if (!draw_301_336) return -1;
-												else if (!draw_236_300) skip+=65;
-											} else {
-												// 235 < nmeaID <= 300
-												if (!draw_236_300) return -1;
-											}
-										} else {
-											// 200 < nmeaID <= 235
-											if (!draw_201_235) return -1;
-										}
-									} else {
-										// 195 < nmeaID <= 200
-										if (!draw_196_200) return -1;
-									}
-								} else {
-									// 192 < nmeaID <= 195
-									if (!draw_193_195) return -1;
-								}
-							} else {
-								// 96 < nmeaID <= 192
-								if (!draw_97_192) return -1;
-							}
-						} else {
-							// 88 < nmeaID <= 96
-							if (!draw_89_96) return -1;
-						}
-					} else {
-						// 64 < nmeaID <= 88
-						if (!draw_65_88) return -1;
-					}
-				} else {
-					// 54 < nmeaID <= 64
-					if (!draw_55_64) return -1;
-				}
-			} else {
-				// 32 < nmeaID <= 54
-				if (!draw_33_54) return -1;
-			}
-		} else {
-			// nmeaID <= 32
-			if (!draw_1_32) return -1;
-		}
-		
-		return nmeaID - skip;
-	}
-	
-	/**
-	 * Returns the number of SNR bars to draw
-	 * 
-	 * The number of bars to draw varies depending on the systems supported by the device. Common
-	 * numbers are 32 for a GPS-only receiver, 56 for a combined GPS/GLONASS receiver or 91 for a
-	 * combined GPS/GLONASS/Beidou receiver. Another 36 bars are needed for Galileo; some receivers
-	 * require additional bars for regional GNSS or assistance systems.
-	 * 
-	 * @return The number of bars to draw
-	 */
-	private int getNumBars() {
-		return (draw_1_32 ? 32 : 0) 
-				+ (draw_33_54 ? 22 : 0)
-				+ (draw_55_64 ? 10 : 0)
-				+ (draw_65_88 ? 24 : 0)
-				+ (draw_89_96 ? 8 : 0)
-				+ (draw_97_192 ? 96 : 0)
-				+ (draw_193_195 ? 3 : 0)
-				+ (draw_196_200 ? 5 : 0)
-				+ (draw_201_235 ? 35 : 0)
-				+ (draw_236_300 ? 65 : 0)
-				+ (draw_301_336 ? 36 : 0);
+		barRect.set(barLeft[i], y1, barRight[i], h);
+		canvas.drawRect(barRect, used?activePaint:inactivePaint);
 	}
 
 	/**
 	 * Initializes the SNR grid.
 	 * <p>
-	 * This method iterates through {@link #mSats} to determine which ranges of
-	 * NMEA IDs will be drawn. 
+	 * This method iterates through {@link #mSats} to determine which ranges of NMEA IDs will be
+	 * drawn. Ranges, once shown, remain visible; the grid is laid out again only when a satellite
+	 * from a range not shown so far appears.
 	 */
 	protected void initializeGrid() {
-		// iterate through list to find out how many bars to draw
 		if (mSats != null)
-			for (GpsSatellite sat : mSats) {
-				int prn = sat.getPrn();
-				if (prn < 1) {
-					Log.wtf(TAG, String.format("Got satellite with invalid NMEA ID %d", prn));
-				} else if (prn <= 32) {
-					draw_1_32 = true;
-				} else if (prn <= 54) {
-					draw_33_54 = true;
-				} else if (prn <= 64) {
-					// most likely an extended SBAS range, display the lower range, too
-					draw_33_54 = true;
-					draw_55_64 = true;
-				} else if (prn <= 88) {
-					draw_65_88 = true;
-				} else if (prn <= 96) {
-					// most likely an extended GLONASS range, display the lower range, too
-					draw_65_88 = true;
-					draw_89_96 = true;
-				} else if (prn <= 192) {
-					draw_97_192 = true; // TODO: do we really want to enable this huge 96-sat block?
-					Log.w(TAG, String.format("Got satellite with NMEA ID %d (from the huge unassigned 97-192 range)", prn));
-				} else if (prn <= 195) {
-					draw_193_195 = true;
-				} else if (prn <= 200) {
-					// most likely an extended QZSS range, display the lower range, too
-					draw_193_195 = true;
-					draw_196_200 = true;
-				} else if (prn <= 235) {
-					draw_201_235 = true;
-				} else if (prn <= 300) {
-					draw_236_300 = true; // TODO: same as above, do we really want to enable this?
-				} else if (prn <= 336) {
-					draw_301_336 = true;
-				} else {
-					Log.w(TAG, String.format("Got satellite with NMEA ID %d, possibly unsupported system", prn));
+			for (int i = 0; i < mSats.count; i++) {
+				int prn = mSats.prn[i];
+				if (prn > SatelliteSnapshot.MAX_NMEA_ID)
+					// extended ID, the chart only has bars for NMEA IDs
+					continue;
+				if (!grid.add(prn)) {
+					if (SnrGrid.getRange(prn) < 0)
+						Log.w(TAG, String.format("Got satellite with invalid or unsupported NMEA ID %d", prn));
+					continue;
 				}
+				int range = SnrGrid.getRange(prn);
+				if ((range == SnrGrid.RANGE_97_192) || (range == SnrGrid.RANGE_236_300))
+					// TODO: do we really want to enable these huge unassigned blocks?
+					Log.w(TAG, String.format("Got satellite with NMEA ID %d (from an unassigned range)", prn));
 			}
 		/*
 		 * If we didn't get any valid ranges, display at least the GPS range.
 		 * No need to check for extended ranges here - if they get drawn, so
 		 * will their corresponding base range.
 		 */
-		if (!(draw_1_32 || draw_33_54 || draw_65_88 || draw_97_192 || draw_193_195 || draw_201_235
-				|| draw_236_300 || draw_301_336))
-			draw_1_32 = true;
+		grid.ensureNotEmpty();
 	}
-	
+
 	/**
 	 * Redraws the SNR view.
 	 * <p>
 	 * This method is called whenever the view needs to be redrawn. Besides the
 	 * usual cases of view creation/recreation, this also occurs when the
-	 * {@link #showSats(Iterable)} has been called to indicate new SNR data is
+	 * {@link #showSats(SatelliteSnapshot)} has been called to indicate new SNR data is
 	 * available.
 	 */
 	@Override
 	protected void onDraw(Canvas canvas) {
+		long start = (frameTimeListener != null) ? System.nanoTime() : 0;
+
 		initializeGrid();
+		if ((gridCache == null) || (gridCacheRanges != grid.getVisibleRanges())
+				|| (gridCache.getWidth() != getWidth()) || (gridCache.getHeight() != getHeight()))
+			renderGrid();
 		
-		// draw the SNR bars
-		if (mSats != null)
-			for (GpsSatellite sat : mSats)
-				drawSat(canvas, sat.getPrn(), sat.getSnr(), sat.usedInFix());
-		
-		// draw the grid on top
-		drawGrid(canvas);
+		if (gridCache != null) {
+			// draw the SNR bars
+			if (mSats != null)
+				for (int i = 0; i < mSats.count; i++)
+					drawSat(canvas, mSats.prn[i], mSats.snr[i], mSats.used[i]);
+
+			// draw the grid on top
+			canvas.drawBitmap(gridCache, 0, 0, null);
+		}
+
+		if (frameTimeListener != null)
+			frameTimeListener.onFrameDrawn(this, System.nanoTime() - start);
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		releaseGrid();
+		super.onDetachedFromWindow();
 	}
 
 	@Override
@@ -531,15 +445,25 @@ public class GpsSnrView extends View {
 		setMeasuredDimension(MeasureSpec.getSize(widthMeasureSpec), preferredHeight);
 	}
 
+	/**
+	 * Sets a listener which is told how long each redraw took.
+	 * 
+	 * @param listener The listener, or null to stop measuring
+	 */
+	public void setFrameTimeListener(FrameTimeListener listener) {
+		frameTimeListener = listener;
+	}
+
 	/**
 	 * Refreshes the SNR view with current data.
 	 * <p>
-	 * Call this method when new SNR data is available. It will update the SNR
-	 * view's internal list of {@code GpsSatellite}s and trigger a redraw.
+	 * Call this method when new SNR data is available. The view keeps a reference to {@code sats}
+	 * and draws from it whenever it is redrawn, so {@code sats} must only be modified on the UI
+	 * thread.
 	 * 
-	 * @param sats A list of satellites currently in view.
+	 * @param sats The satellites currently in view.
 	 */
-	public void showSats(Iterable<GpsSatellite> sats) {
+	public void showSats(SatelliteSnapshot sats) {
 		mSats = sats;
 		invalidate();
 	}
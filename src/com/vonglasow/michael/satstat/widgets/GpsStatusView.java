@@ -19,24 +19,54 @@
 
 package com.vonglasow.michael.satstat.widgets;
 
+import java.util.Arrays;
+
 import com.vonglasow.michael.satstat.R;
+import com.vonglasow.michael.satstat.data.SatelliteSnapshot;
+import com.vonglasow.michael.satstat.data.SatelliteTrails;
 
 import android.app.Activity;
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
-import android.location.GpsSatellite;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 
+/**
+ * Displays the position of the satellites in the sky.
+ * <p>
+ * The grid, which does not change while the view keeps its size, is rendered once into a bitmap and
+ * only rotated on each frame. Orientation updates merely record the new yaw and request a redraw;
+ * as requests are coalesced until the next frame, the view is redrawn at most once per frame
+ * regardless of the rate at which orientation sensors deliver updates.
+ * <p>
+ * Satellite trails, if enabled, are kept as one {@link Path} per satellite in unrotated
+ * coordinates. Paths are extended with the points added to the trail since the previous frame and
+ * only rebuilt when the trail has dropped points or the view has changed size; positions not yet
+ * simplified are drawn as lines from a reused buffer.
+ */
 public class GpsStatusView extends SquareView {
 	private float mYaw = 0;
 	private float mRotation = 0;
 	private int mW = 0;
 	private int mH = 0;
-	private Iterable<GpsSatellite> mSats;
+	private SatelliteSnapshot mSats;
+	private SatelliteTrails mTrails = null;
+	
+	/** Cached path for each trail, in the coordinates used by {@link #drawSat} */
+	private final Path[] trailPaths = new Path[SatelliteSnapshot.MAX_SATELLITES];
+	
+	/** Number of trail points in each cached path */
+	private final int[] trailPathPoints = new int[SatelliteSnapshot.MAX_SATELLITES];
+	
+	/** Trail generation from which each cached path was built, 0 if it needs to be rebuilt */
+	private final int[] trailPathGenerations = new int[SatelliteSnapshot.MAX_SATELLITES];
+	
+	/** Line coordinates for the part of a trail which has not been simplified yet */
+	private final float[] trailTailLines = new float[4 * SatelliteTrails.TAIL_SIZE];
 	
 	private Paint activePaint;
 	private Paint inactivePaint;
@@ -44,20 +74,25 @@ public class GpsStatusView extends SquareView {
 	private Paint gridPaint;
 	private Paint gridBorderPaint;
 	private Paint labelPaint;
-	private Path northArrow = new Path();
-	private Path labelPathN = new Path();
-	private Path labelPathE = new Path();
-	private Path labelPathS = new Path();
-	private Path labelPathW = new Path();
+	private Paint cachePaint;
+	private Paint trailPaint;
+
+	/** The grid, north arrow included, rendered at the current size; null if not yet rendered */
+	private Bitmap gridCache = null;
+
+	private FrameTimeListener frameTimeListener = null;
 
+	private String labelN;
+	private String labelE;
+	private String labelS;
+	private String labelW;
 	
 	private int gridStrokeWidth;
 	private float snrScale;
 	private float density;
 	
 	// Compensation for display rotation. Use Surface.ROTATION_* as index (0, 90, 180, 270 deg).
-	@SuppressWarnings("boxing")
-	private final static Integer zeroYaw[] = {0, 90, 180, 270};
+	private final static int zeroYaw[] = {0, 90, 180, 270};
 	
 	public GpsStatusView(Context context) {
 		super(context);
@@ -105,6 +140,19 @@ public class GpsStatusView extends SquareView {
 		labelPaint.setColor(Color.parseColor("#FFFF9800")); // Orange 500
 		labelPaint.setStyle(Paint.Style.FILL);
 		labelPaint.setTextAlign(Paint.Align.CENTER);
+		
+		trailPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+		trailPaint.setColor(Color.parseColor("#8080CBC4")); // Teal 200 @ 50%
+		trailPaint.setStyle(Paint.Style.STROKE);
+		trailPaint.setStrokeWidth(gridStrokeWidth);
+		
+		// the grid is rotated when drawn, filter it to keep lines smooth
+		cachePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+		
+		labelN = context.getString(R.string.value_N);
+		labelE = context.getString(R.string.value_E);
+		labelS = context.getString(R.string.value_S);
+		labelW = context.getString(R.string.value_W);
 	}
 	
 	/*
@@ -119,96 +167,220 @@ public class GpsStatusView extends SquareView {
 		canvas.drawCircle(x, y, snr * snrScale, used?activePaint:inactivePaint);
 	}
 	
+	/*
+	 * Draws the trails of all satellites, extending the cached paths as needed.
+	 */
+	private void drawTrails(Canvas canvas) {
+		float scale = mW * 0.405f;
+		for (int sat = 0; sat < mTrails.getSatelliteCount(); sat++) {
+			int count = mTrails.getPointCount(sat);
+			if (count == 0)
+				continue;
+			
+			Path path = trailPaths[sat];
+			if (path == null) {
+				path = new Path();
+				trailPaths[sat] = path;
+			}
+			int start = trailPathPoints[sat];
+			if (trailPathGenerations[sat] != mTrails.getGeneration(sat)) {
+				path.rewind();
+				start = 0;
+				trailPathGenerations[sat] = mTrails.getGeneration(sat);
+			}
+			boolean newSegment = (start == 0) || Float.isNaN(mTrails.getX(sat, start - 1));
+			for (int i = start; i < count; i++) {
+				float x = mTrails.getX(sat, i);
+				if (Float.isNaN(x)) {
+					newSegment = true;
+					continue;
+				}
+				float y = mTrails.getY(sat, i);
+				if (newSegment)
+					path.moveTo(x * scale, y * scale);
+				else
+					path.lineTo(x * scale, y * scale);
+				newSegment = false;
+			}
+			trailPathPoints[sat] = count;
+			canvas.drawPath(path, trailPaint);
+			
+			int tailCount = mTrails.getTailCount(sat);
+			if (tailCount > 0) {
+				// the tail continues from the last point, which is never a segment break
+				float x = mTrails.getX(sat, count - 1) * scale;
+				float y = mTrails.getY(sat, count - 1) * scale;
+				int n = 0;
+				for (int i = 0; i < tailCount; i++) {
+					trailTailLines[n++] = x;
+					trailTailLines[n++] = y;
+					x = mTrails.getTailX(sat, i) * scale;
+					y = mTrails.getTailY(sat, i) * scale;
+					trailTailLines[n++] = x;
+					trailTailLines[n++] = y;
+				}
+				canvas.drawLines(trailTailLines, 0, n, trailPaint);
+			}
+		}
+	}
+	
+	/*
+	 * Draws a label for a cardinal direction, keeping it upright.
+	 * 
+	 * The label is anchored at ({@code x}, {@code y}) in the coordinates of the grid, i.e. relative to
+	 * the center of the view before rotation. The canvas must be translated but not rotated.
+	 */
+	private void drawLabel(Canvas canvas, String label, float x, float y) {
+		double rad = Math.toRadians(mRotation);
+		float cos = (float) Math.cos(rad);
+		float sin = (float) Math.sin(rad);
+		canvas.drawText(label, x * cos + y * sin,
+				-x * sin + y * cos + mW * 0.0275f - labelPaint.descent(), labelPaint);
+	}
+	
 	@Override
 	protected void onDraw(Canvas canvas) {
+		long start = (frameTimeListener != null) ? System.nanoTime() : 0;
 		int cx = mW / 2;
 		int cy = mH / 2;
 
 		//Log.d("GpsStatusView", String.format("Drawing on a %dx%d canvas", w, h));
 
+		if (gridCache == null)
+			renderGrid();
+		mRotation = mYaw + zeroYaw[((Activity) getContext()).getWindowManager().getDefaultDisplay().getRotation()];
+
 		canvas.translate(cx, cy);
-		canvas.rotate(-mRotation);
 		
-		canvas.drawCircle(0, 0, mW * 0.37125f, gridBorderPaint);
+		if (gridCache != null) {
+			canvas.save();
+			canvas.rotate(-mRotation);
+			canvas.drawBitmap(gridCache, -cx, -cy, cachePaint);
+			canvas.restore();
+		}
 		
-		canvas.drawLine(-mW * 0.405f, 0, mW * 0.405f, 0, gridPaint);
-		canvas.drawLine(0, -mH * 0.405f, 0, mH * 0.405f, gridPaint);
+		drawLabel(canvas, labelN, 0, -mH * 0.4275f);
+		drawLabel(canvas, labelS, 0, mH * 0.4275f);
+		drawLabel(canvas, labelE, mW * 0.4275f, 0);
+		drawLabel(canvas, labelW, -mW * 0.4275f, 0);
 		
-		canvas.drawCircle(0,  0,  mW * 0.405f, gridPaint);
-		canvas.drawCircle(0,  0,  mW * 0.27f, gridPaint);
-		canvas.drawCircle(0,  0,  mW * 0.135f, gridPaint);
+		canvas.rotate(-mRotation);
 		
-		canvas.drawPath(northArrow, northPaint);
-		
-		canvas.drawTextOnPath(((Activity) getContext()).getString(R.string.value_N),
-				labelPathN, 0, -labelPaint.descent(), labelPaint);
-
-		canvas.drawTextOnPath(((Activity) getContext()).getString(R.string.value_S),
-				labelPathS, 0, -labelPaint.descent(), labelPaint);
-
-		canvas.drawTextOnPath(((Activity) getContext()).getString(R.string.value_E),
-				labelPathE, 0, -labelPaint.descent(), labelPaint);
-
-		canvas.drawTextOnPath(((Activity) getContext()).getString(R.string.value_W),
-				labelPathW, 0, -labelPaint.descent(), labelPaint);
+		if (mTrails != null)
+			drawTrails(canvas);
 		
 		if (mSats != null) {
-			for (GpsSatellite sat : mSats) {
-				drawSat(canvas, sat.getPrn(), sat.getAzimuth(), sat.getElevation(), sat.getSnr(), sat.usedInFix());
+			for (int i = 0; i < mSats.count; i++) {
+				// satellites with unknown position cannot be placed in the sky plot
+				if (Float.isNaN(mSats.azimuth[i]) || Float.isNaN(mSats.elevation[i]))
+					continue;
+				drawSat(canvas, mSats.prn[i], mSats.azimuth[i], mSats.elevation[i], mSats.snr[i], mSats.used[i]);
 			}
 		}
+
+		if (frameTimeListener != null)
+			frameTimeListener.onFrameDrawn(this, System.nanoTime() - start);
 	}
 	
 	@Override
 	protected void onSizeChanged (int w, int h, int oldw, int oldh) {
 		mW = w;
 		mH = h;
-		refreshGeometries();
+		labelPaint.setTextSize(mH * 0.045f);
+		releaseGrid();
+		// cached trails are scaled to the old size
+		Arrays.fill(trailPathGenerations, 0);
+	}
+	
+	@Override
+	protected void onDetachedFromWindow() {
+		releaseGrid();
+		super.onDetachedFromWindow();
 	}
 	
-	public void refreshGeometries() {
+	/**
+	 * Renders the grid and north arrow into {@link #gridCache}, unrotated.
+	 */
+	private void renderGrid() {
+		if ((mW <= 0) || (mH <= 0))
+			return;
+		gridCache = Bitmap.createBitmap(mW, mH, Bitmap.Config.ARGB_8888);
+		Canvas canvas = new Canvas(gridCache);
+		canvas.translate(mW / 2, mH / 2);
+		
 		gridBorderPaint.setStrokeWidth(mW * 0.0625f);
+		canvas.drawCircle(0, 0, mW * 0.37125f, gridBorderPaint);
+		
+		canvas.drawLine(-mW * 0.405f, 0, mW * 0.405f, 0, gridPaint);
+		canvas.drawLine(0, -mH * 0.405f, 0, mH * 0.405f, gridPaint);
+		
+		canvas.drawCircle(0,  0,  mW * 0.405f, gridPaint);
+		canvas.drawCircle(0,  0,  mW * 0.27f, gridPaint);
+		canvas.drawCircle(0,  0,  mW * 0.135f, gridPaint);
 		
 		float arrowWidth = 4 * density;
 		
-		northArrow.reset();
+		Path northArrow = new Path();
 		northArrow.moveTo(-arrowWidth, - mH * 0.27f);
 		northArrow.lineTo(arrowWidth, - mH * 0.27f);
 		northArrow.lineTo(0, - mH * 0.405f - gridStrokeWidth * 2);
 		northArrow.close();
-
-		labelPaint.setTextSize(mH * 0.045f);
-		
-		float offsetX = mW * 0.0275f * (float) Math.cos(Math.toRadians(mRotation + 90));
-		float offsetY = mW * 0.0275f * (float) Math.sin(Math.toRadians(mRotation + 90));
-		float relX = mW * (float) Math.cos(Math.toRadians(mRotation));
-		float relY = mH * (float) Math.sin(Math.toRadians(mRotation));
-		
-		labelPathN.reset();
-		labelPathN.moveTo(offsetX - relX, - mH * 0.4275f + offsetY - relY);
-		labelPathN.rLineTo(2 * relX, 2 * relY);
-		
-		labelPathE.reset();
-		labelPathE.moveTo(mW * 0.4275f + offsetX - relX, offsetY - relY);
-		labelPathE.rLineTo(2 * relX, 2 * relY);
-		
-		labelPathS.reset();
-		labelPathS.moveTo(offsetX - relX, mH * 0.4275f + offsetY - relY);
-		labelPathS.rLineTo(2 * relX, 2 * relY);
-		
-		labelPathW.reset();
-		labelPathW.moveTo(- mW * 0.4275f + offsetX - relX, offsetY - relY);
-		labelPathW.rLineTo(2 * relX, 2 * relY);
+		canvas.drawPath(northArrow, northPaint);
 	}
 	
+	/**
+	 * Discards the rendered grid, which will be rendered again when needed.
+	 */
+	private void releaseGrid() {
+		if (gridCache != null) {
+			gridCache.recycle();
+			gridCache = null;
+		}
+	}
+	
+	/**
+	 * Sets a listener which is told how long each redraw took.
+	 * 
+	 * @param listener The listener, or null to stop measuring
+	 */
+	public void setFrameTimeListener(FrameTimeListener listener) {
+		frameTimeListener = listener;
+	}
+	
+	/**
+	 * Sets the orientation of the device.
+	 * 
+	 * This only records the new value and requests a redraw. Requests made before the next frame
+	 * result in a single redraw, which uses the most recent value.
+	 * 
+	 * @param yaw The yaw (azimuth) of the device, in degrees
+	 */
 	public void setYaw(float yaw) {
+		if (yaw == mYaw)
+			return;
 		mYaw = yaw;
-		mRotation = mYaw + zeroYaw[((Activity) getContext()).getWindowManager().getDefaultDisplay().getRotation()];
-		refreshGeometries();
 		invalidate();
 	}
 	
-	public void showSats(Iterable<GpsSatellite> sats) {
+	/**
+	 * Shows satellite trails. The view keeps a reference to {@code trails}, which must only be
+	 * modified on the UI thread.
+	 * 
+	 * @param trails The trails to show, or null to show no trails
+	 */
+	public void showTrails(SatelliteTrails trails) {
+		if (trails == mTrails)
+			return;
+		mTrails = trails;
+		Arrays.fill(trailPathGenerations, 0);
+		invalidate();
+	}
+	
+	/**
+	 * Shows the satellites in a {@link SatelliteSnapshot}. The view keeps a reference to
+	 * {@code sats}, which must only be modified on the UI thread.
+	 */
+	public void showSats(SatelliteSnapshot sats) {
 		mSats = sats;
 		invalidate();
 	}
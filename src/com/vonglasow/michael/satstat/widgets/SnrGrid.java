@@ -0,0 +1,223 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.widgets;
+
+/**
+ * Lays out the bars of the SNR chart.
+ * <p>
+ * NMEA IDs are grouped into ranges, each of which is either shown or hidden in its entirety. A
+ * range is shown as soon as a satellite from it has been seen and remains visible afterwards.
+ * Bar positions are kept in a lookup table indexed by NMEA ID, which is rebuilt only when a range
+ * is added, so that mapping a satellite to its bar takes constant time.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class SnrGrid {
+	/** The highest currently supported NMEA ID */
+	public static final int MAX_NMEA_ID = 336;
+
+	/*
+	 * Ranges of NMEA IDs:
+	 * 1–32: GPS
+	 * 33–54: Various SBAS systems (EGNOS, WAAS, SDCM, GAGAN, MSAS) – some IDs still unused
+	 * 55–64: not used (might be assigned to further SBAS systems)
+	 * 65–88: GLONASS
+	 * 89–96: GLONASS (future extensions?)
+	 * 97–192: not used
+	 * 193–195: QZSS
+	 * 196–200: QZSS (future extensions?)
+	 * 201–235: Beidou
+	 * 236–300: not used by NMEA 4.10 (Beidou satellites 36–63 map to 236–263)
+	 * 301–336: Galileo
+	 */
+	public static final int RANGE_1_32 = 0;
+	public static final int RANGE_33_54 = 1;
+	public static final int RANGE_55_64 = 2;
+	public static final int RANGE_65_88 = 3;
+	public static final int RANGE_89_96 = 4;
+	public static final int RANGE_97_192 = 5;
+	public static final int RANGE_193_195 = 6;
+	public static final int RANGE_196_200 = 7;
+	public static final int RANGE_201_235 = 8;
+	public static final int RANGE_236_300 = 9;
+	public static final int RANGE_301_336 = 10;
+	public static final int NUM_RANGES = 11;
+
+	/** First NMEA ID in each range */
+	private static final int[] RANGE_START = {1, 33, 55, 65, 89, 97, 193, 196, 201, 236, 301};
+
+	/** Number of NMEA IDs in each range */
+	private static final int[] RANGE_SIZE = {32, 22, 10, 24, 8, 96, 3, 5, 35, 65, 36};
+
+	/**
+	 * Ranges which are shown along with each range. Extended ranges are shown together with their
+	 * base range.
+	 */
+	private static final int[] RANGE_SHOWS = {
+		1 << RANGE_1_32,
+		1 << RANGE_33_54,
+		(1 << RANGE_33_54) | (1 << RANGE_55_64),
+		1 << RANGE_65_88,
+		(1 << RANGE_65_88) | (1 << RANGE_89_96),
+		1 << RANGE_97_192,
+		1 << RANGE_193_195,
+		(1 << RANGE_193_195) | (1 << RANGE_196_200),
+		1 << RANGE_201_235,
+		1 << RANGE_236_300,
+		1 << RANGE_301_336,
+	};
+
+	/** The range to which each NMEA ID belongs, indexed by NMEA ID, -1 for invalid IDs */
+	private static final byte[] RANGE_OF = new byte[MAX_NMEA_ID + 1];
+
+	static {
+		RANGE_OF[0] = -1;
+		for (int range = 0; range < NUM_RANGES; range++)
+			for (int i = 0; i < RANGE_SIZE[range]; i++)
+				RANGE_OF[RANGE_START[range] + i] = (byte) range;
+	}
+
+	/** Bit mask of visible ranges */
+	private int visible = 0;
+
+	/** Number of visible bars */
+	private int numBars = 0;
+
+	/** Position of the bar for each NMEA ID, -1 if hidden */
+	private final int[] gridPos = new int[MAX_NMEA_ID + 1];
+
+	public SnrGrid() {
+		layout();
+	}
+
+	/**
+	 * Returns the range to which an NMEA ID belongs.
+	 * 
+	 * @return One of the {@code RANGE_*} constants, or -1 if {@code nmeaID} is not a valid NMEA ID
+	 */
+	public static int getRange(int nmeaID) {
+		if ((nmeaID < 0) || (nmeaID > MAX_NMEA_ID))
+			return -1;
+		return RANGE_OF[nmeaID];
+	}
+
+	/**
+	 * Returns the first NMEA ID in a range.
+	 */
+	public static int getRangeStart(int range) {
+		return RANGE_START[range];
+	}
+
+	/**
+	 * Returns the number of NMEA IDs in a range.
+	 */
+	public static int getRangeSize(int range) {
+		return RANGE_SIZE[range];
+	}
+
+	/**
+	 * Ensures the range which includes {@code nmeaID} is visible.
+	 * 
+	 * @return True if the layout has changed as a result
+	 */
+	public boolean add(int nmeaID) {
+		int range = getRange(nmeaID);
+		if (range < 0)
+			return false;
+		int shows = RANGE_SHOWS[range];
+		if ((visible & shows) == shows)
+			return false;
+		visible |= shows;
+		layout();
+		return true;
+	}
+
+	/**
+	 * Ensures at least one range is visible, showing the GPS range if none is.
+	 * 
+	 * @return True if the layout has changed as a result
+	 */
+	public boolean ensureNotEmpty() {
+		if (visible != 0)
+			return false;
+		return add(RANGE_START[RANGE_1_32]);
+	}
+
+	/**
+	 * Whether a range is visible.
+	 * 
+	 * @param range One of the {@code RANGE_*} constants
+	 */
+	public boolean isVisible(int range) {
+		return (visible & (1 << range)) != 0;
+	}
+
+	/**
+	 * Returns the set of visible ranges as a bit mask, in which bit {@code n} is set if range
+	 * {@code n} is visible. The mask changes whenever the layout changes.
+	 */
+	public int getVisibleRanges() {
+		return visible;
+	}
+
+	/**
+	 * Returns the position of the SNR bar for a satellite in the grid.
+	 * 
+	 * @param nmeaID The NMEA ID of the satellite
+	 * @return The position of the SNR bar in the grid. The position of the first visible bar is 1.
+	 * If {@code nmeaID} falls within a hidden range or is invalid, -1 is returned.
+	 */
+	public int getGridPos(int nmeaID) {
+		if ((nmeaID < 0) || (nmeaID > MAX_NMEA_ID))
+			return -1;
+		return gridPos[nmeaID];
+	}
+
+	/**
+	 * Returns the number of SNR bars to draw
+	 * 
+	 * The number of bars to draw varies depending on the systems supported by the device. Common
+	 * numbers are 32 for a GPS-only receiver, 56 for a combined GPS/GLONASS receiver or 91 for a
+	 * combined GPS/GLONASS/Beidou receiver. Another 36 bars are needed for Galileo; some receivers
+	 * require additional bars for regional GNSS or assistance systems.
+	 */
+	public int getNumBars() {
+		return numBars;
+	}
+
+	/**
+	 * Rebuilds the lookup table after the set of visible ranges has changed.
+	 */
+	private void layout() {
+		gridPos[0] = -1;
+		int pos = 0;
+		for (int range = 0; range < NUM_RANGES; range++) {
+			int start = RANGE_START[range];
+			int end = start + RANGE_SIZE[range];
+			if (isVisible(range))
+				for (int nmeaID = start; nmeaID < end; nmeaID++)
+					gridPos[nmeaID] = ++pos;
+			else
+				for (int nmeaID = start; nmeaID < end; nmeaID++)
+					gridPos[nmeaID] = -1;
+		}
+		numBars = pos;
+	}
+}
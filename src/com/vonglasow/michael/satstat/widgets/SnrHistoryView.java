@@ -0,0 +1,284 @@
+/*
+ * Copyright © 2013–2016 Michael von Glasow.
+ *
+ * This file is part of LSRN Tools.
+ *
+ * LSRN Tools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LSRN Tools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LSRN Tools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.vonglasow.michael.satstat.widgets;
+
+import com.vonglasow.michael.satstat.R;
+import com.vonglasow.michael.satstat.data.SatelliteHistory;
+import com.vonglasow.michael.satstat.data.SatelliteSnapshot;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.util.DisplayMetrics;
+import android.view.View;
+
+/**
+ * Displays the signal-to-noise ratio of each satellite over time, as recorded in a
+ * {@link SatelliteHistory}.
+ * <p>
+ * The newest sample is at the right edge, and the full width of the view covers the time span of
+ * the history. Samples are reduced to the minimum and maximum SNR in each pixel column, which are
+ * joined by a vertical line, so the cost of a redraw depends on the width of the view rather than on
+ * the number of samples. Consecutive columns are joined as long as they are less than two sampling
+ * intervals apart. Each satellite is drawn with a single call to {@link Canvas#drawLines(float[],
+ * int, int, Paint)}, using buffers allocated when the size of the view changes.
+ */
+public class SnrHistoryView extends View {
+	/** Maximum SNR shown, matches {@link GpsSnrView} */
+	private static final float MAX_SNR = 60;
+
+	/** SNR between grid lines */
+	private static final float GRID_STEP = 10;
+
+	private SatelliteHistory mHistory;
+
+	/** Line colors, indexed by constellation */
+	private Paint[] satPaints;
+	private Paint gridPaint;
+	private Paint gridPaintStrong;
+
+	// Size of lines in the grid
+	private int gridStrokeWidth;
+
+	// Preferred height, same as GpsSnrView
+	private int preferredHeight;
+
+	/** Minimum and maximum SNR of the current satellite in each pixel column */
+	private float[] colMin = new float[0];
+	private float[] colMax = new float[0];
+
+	/** Line coordinates for the current satellite, up to two lines per column */
+	private float[] lines = new float[0];
+
+	private FrameTimeListener frameTimeListener = null;
+
+
+	/**
+	 * @param context
+	 */
+	public SnrHistoryView(Context context) {
+		super(context);
+		doInit(context);
+	}
+
+	/**
+	 * @param context
+	 * @param attrs
+	 */
+	public SnrHistoryView(Context context, AttributeSet attrs) {
+		super(context, attrs);
+		doInit(context);
+	}
+
+	/**
+	 * @param context
+	 * @param attrs
+	 * @param defStyle
+	 */
+	public SnrHistoryView(Context context, AttributeSet attrs, int defStyle) {
+		super(context, attrs, defStyle);
+		doInit(context);
+	}
+
+	private void doInit(Context context) {
+		DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+		gridStrokeWidth = Math.max(1, (int) (metrics.density));
+
+		String[] colors = {
+				"#FF9E9E9E", // CONSTELLATION_UNKNOWN: Gray 500
+				"#FF80CBC4", // CONSTELLATION_GPS: Teal 200
+				"#FFFFEB3B", // CONSTELLATION_SBAS: Yellow 500
+				"#FFF44336", // CONSTELLATION_GLONASS: Red 500
+				"#FFCE93D8", // CONSTELLATION_QZSS: Purple 200
+				"#FFFF9800", // CONSTELLATION_BEIDOU: Orange 500
+				"#FF64B5F6", // CONSTELLATION_GALILEO: Blue 300
+				"#FFA1887F", // CONSTELLATION_IRNSS: Brown 300
+		};
+		satPaints = new Paint[colors.length];
+		for (int i = 0; i < colors.length; i++) {
+			satPaints[i] = new Paint(Paint.ANTI_ALIAS_FLAG);
+			satPaints[i].setColor(Color.parseColor(colors[i]));
+			satPaints[i].setStyle(Paint.Style.STROKE);
+			satPaints[i].setStrokeWidth(1);
+		}
+
+		gridPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+		gridPaint.setColor(Color.parseColor("#FF424242")); // Gray 800
+		gridPaint.setStyle(Paint.Style.STROKE);
+		gridPaint.setStrokeWidth(gridStrokeWidth);
+
+		gridPaintStrong = new Paint(gridPaint);
+		gridPaintStrong.setColor(Color.parseColor("#FFFFFFFF"));
+
+		/*
+		 * Same height as GpsSnrView (two rows of small text plus a row of medium text), so that the
+		 * two can be swapped without the layout changing.
+		 */
+		Paint textPaint = new Paint();
+		float smallSize = context.getResources().getDimensionPixelSize(R.dimen.abc_text_size_small_material);
+		textPaint.setTextSize(smallSize);
+		int textHeight = (int) Math.ceil(textPaint.descent() - textPaint.ascent());
+		preferredHeight = (int) (
+				(2 * smallSize + context.getResources().getDimensionPixelSize(R.dimen.abc_text_size_medium_material))
+				* textHeight / smallSize
+				);
+	}
+
+	/**
+	 * Draws the grid lines: one for every {@link #GRID_STEP} dB, plus a frame.
+	 */
+	private void drawGrid(Canvas canvas, int w, int h) {
+		float y0 = h - (float) gridStrokeWidth / 2;
+		for (float snr = GRID_STEP; snr < MAX_SNR; snr += GRID_STEP) {
+			float y = y0 * (1 - snr / MAX_SNR);
+			canvas.drawLine(0, y, w, y, gridPaint);
+		}
+		canvas.drawLine((float) gridStrokeWidth / 2, 0, (float) gridStrokeWidth / 2, h, gridPaintStrong);
+		canvas.drawLine(w - (float) gridStrokeWidth / 2, 0, w - (float) gridStrokeWidth / 2, h, gridPaintStrong);
+		canvas.drawLine(0, y0, w, y0, gridPaintStrong);
+	}
+
+	/**
+	 * Draws the history of one satellite.
+	 * 
+	 * @param sat The satellite, as an index into the history
+	 * @param from The time at the left edge
+	 * @param to The time at the right edge
+	 * @param columns The number of pixel columns
+	 * @param maxGap The maximum number of columns between two columns that are joined
+	 */
+	private void drawSat(Canvas canvas, int sat, long from, long to, int columns, int maxGap, int h) {
+		if (mHistory.downsample(sat, from, to, columns, colMin, colMax) == 0)
+			return;
+
+		float y0 = h - gridStrokeWidth;
+		int n = 0;
+		int prev = -maxGap - 1;
+		float prevY = 0;
+		for (int c = 0; c < columns; c++) {
+			if (Float.isNaN(colMin[c]))
+				continue;
+			float x = c + 0.5f;
+			float yMin = y0 * (1 - Math.min(colMin[c], MAX_SNR) / MAX_SNR);
+			float yMax = y0 * (1 - Math.min(colMax[c], MAX_SNR) / MAX_SNR);
+			float yMid = (yMin + yMax) / 2;
+			if (c - prev <= maxGap) {
+				lines[n++] = prev + 0.5f;
+				lines[n++] = prevY;
+				lines[n++] = x;
+				lines[n++] = yMid;
+			}
+			lines[n++] = x;
+			lines[n++] = yMax;
+			lines[n++] = x;
+			// make sure a single sample is still visible
+			lines[n++] = Math.max(yMin, yMax + 1);
+			prev = c;
+			prevY = yMid;
+		}
+		int constellation = mHistory.getConstellation(sat);
+		if ((constellation < 0) || (constellation >= satPaints.length))
+			constellation = SatelliteSnapshot.CONSTELLATION_UNKNOWN;
+		canvas.drawLines(lines, 0, n, satPaints[constellation]);
+	}
+
+	/**
+	 * Redraws the history chart.
+	 * <p>
+	 * This method is called whenever the view needs to be redrawn, including when
+	 * {@link #onHistoryChanged()} has been called to indicate new data is available.
+	 */
+	@Override
+	protected void onDraw(Canvas canvas) {
+		long start = (frameTimeListener != null) ? System.nanoTime() : 0;
+
+		//don't use Canvas.getWidth() and Canvas.getHeight() here, they may return incorrect values
+		int w = getWidth();
+		int h = getHeight();
+
+		if ((mHistory != null) && (mHistory.size() > 0) && (w > 0)) {
+			long to = mHistory.getTime(mHistory.size() - 1);
+			long span = mHistory.getTimeSpan();
+			long from = to - span;
+			int columns = Math.min(w, colMin.length);
+			// two sampling intervals, based on the average interval between samples
+			int maxGap = 1;
+			if (mHistory.size() > 1)
+				maxGap = (int) Math.max(1, 2 * columns * (to - mHistory.getTime(0))
+						/ ((mHistory.size() - 1) * span));
+			for (int sat = 0; sat < mHistory.getSatelliteCount(); sat++)
+				drawSat(canvas, sat, from, to, columns, maxGap, h);
+		}
+
+		drawGrid(canvas, w, h);
+
+		if (frameTimeListener != null)
+			frameTimeListener.onFrameDrawn(this, System.nanoTime() - start);
+	}
+
+	@Override
+	protected void onMeasure (int widthMeasureSpec, int heightMeasureSpec) {
+		setMeasuredDimension(MeasureSpec.getSize(widthMeasureSpec), preferredHeight);
+	}
+
+	@Override
+	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+		if (w != colMin.length) {
+			colMin = new float[w];
+			colMax = new float[w];
+			lines = new float[w * 8];
+		}
+	}
+
+	/**
+	 * Redraws the view after new samples have been added to the history.
+	 * <p>
+	 * Call this method on the UI thread.
+	 */
+	public void onHistoryChanged() {
+		if (mHistory != null)
+			invalidate();
+	}
+
+	/**
+	 * Sets a listener which is told how long each redraw took.
+	 * 
+	 * @param listener The listener, or null to stop measuring
+	 */
+	public void setFrameTimeListener(FrameTimeListener listener) {
+		frameTimeListener = listener;
+	}
+
+	/**
+	 * Sets the history to display.
+	 * <p>
+	 * The view keeps a reference to {@code history} and draws from it whenever it is redrawn, so
+	 * {@code history} must only be modified on the UI thread.
+	 * 
+	 * @param history The history, or null to clear the view
+	 */
+	public void setHistory(SatelliteHistory history) {
+		mHistory = history;
+		invalidate();
+	}
+}
@@ -433,79 +433,9 @@ public class LatLng {
       this.longitude = -180.0;
     }
 
-    double UTM_F0 = 0.9996;
-    double a = uk.me.jstott.jcoord.ellipsoid.WGS84Ellipsoid.getInstance().getSemiMajorAxis();
-    double eSquared = uk.me.jstott.jcoord.ellipsoid.WGS84Ellipsoid.getInstance().getEccentricitySquared();
-    double longitude = this.longitude;
-    double latitude = this.latitude;
-
-    double latitudeRad = latitude * (Math.PI / 180.0);
-    double longitudeRad = longitude * (Math.PI / 180.0);
-    int longitudeZone = (int) Math.floor((longitude + 180.0) / 6.0) + 1;
-
-    // Special zone for Norway
-    if (latitude >= 56.0 && latitude < 64.0 && longitude >= 3.0
-        && longitude < 12.0) {
-      longitudeZone = 32;
-    }
-
-    // Special zones for Svalbard
-    if (latitude >= 72.0 && latitude < 84.0) {
-      if (longitude >= 0.0 && longitude < 9.0) {
-        longitudeZone = 31;
-      } else if (longitude >= 9.0 && longitude < 21.0) {
-        longitudeZone = 33;
-      } else if (longitude >= 21.0 && longitude < 33.0) {
-        longitudeZone = 35;
-      } else if (longitude >= 33.0 && longitude < 42.0) {
-        longitudeZone = 37;
-      }
-    }
-
-    double longitudeOrigin = (longitudeZone - 1) * 6 - 180 + 3;
-    double longitudeOriginRad = longitudeOrigin * (Math.PI / 180.0);
-
-    char UTMZone = UTMRef.getUTMLatitudeZoneLetter(latitude);
-
-    double ePrimeSquared = (eSquared) / (1 - eSquared);
-
-    double n = a
-        / Math.sqrt(1 - eSquared * Math.sin(latitudeRad)
-            * Math.sin(latitudeRad));
-    double t = Math.tan(latitudeRad) * Math.tan(latitudeRad);
-    double c = ePrimeSquared * Math.cos(latitudeRad) * Math.cos(latitudeRad);
-    double A = Math.cos(latitudeRad) * (longitudeRad - longitudeOriginRad);
-
-    double M = a
-        * ((1 - eSquared / 4 - 3 * eSquared * eSquared / 64 - 5 * eSquared
-            * eSquared * eSquared / 256)
-            * latitudeRad
-            - (3 * eSquared / 8 + 3 * eSquared * eSquared / 32 + 45 * eSquared
-                * eSquared * eSquared / 1024)
-            * Math.sin(2 * latitudeRad)
-            + (15 * eSquared * eSquared / 256 + 45 * eSquared * eSquared
-                * eSquared / 1024) * Math.sin(4 * latitudeRad) - (35 * eSquared
-            * eSquared * eSquared / 3072)
-            * Math.sin(6 * latitudeRad));
-
-    double UTMEasting = (UTM_F0
-        * n
-        * (A + (1 - t + c) * Math.pow(A, 3.0) / 6 + (5 - 18 * t + t * t + 72
-            * c - 58 * ePrimeSquared)
-            * Math.pow(A, 5.0) / 120) + 500000.0);
-
-    double UTMNorthing = (UTM_F0 * (M + n
-        * Math.tan(latitudeRad)
-        * (A * A / 2 + (5 - t + (9 * c) + (4 * c * c)) * Math.pow(A, 4.0) / 24 + (61
-            - (58 * t) + (t * t) + (600 * c) - (330 * ePrimeSquared))
-            * Math.pow(A, 6.0) / 720)));
-
-    // Adjust for the southern hemisphere
-    if (latitude < 0) {
-      UTMNorthing += 10000000.0;
-    }
-
-    return new UTMRef(longitudeZone, UTMZone, UTMEasting, UTMNorthing);
+    UTMConverter.Result res = new UTMConverter.Result();
+    UTMConverter.toUTM(latitude, longitude, res);
+    return new UTMRef(res.lngZone, res.latZone, res.easting, res.northing);
   }
 
 
@@ -516,8 +446,18 @@ public class LatLng {
    * @since 1.1
    */
   public MGRSRef toMGRSRef() {
-    UTMRef utm = toUTMRef();
-    return new MGRSRef(utm);
+    if (this.longitude == 180.0) {
+      this.longitude = -180.0;
+    }
+
+    UTMConverter.Result res = new UTMConverter.Result();
+    if (!UTMConverter.toMGRS(latitude, longitude, res)) {
+      throw new NotDefinedOnUTMGridException("Latitude (" + getLatitude()
+          + ") falls outside the UTM grid.");
+    }
+    return new MGRSRef(res.lngZone, res.latZone, res.eastingID,
+        res.northingID, res.mgrsEasting, res.mgrsNorthing,
+        MGRSRef.PRECISION_1M);
   }
 
 
@@ -195,13 +195,6 @@ public class MGRSRef extends CoordinateSystem {
    */
   public static final int PRECISION_1M = 1;
 
-  /**
-   * Northing characters
-   */
-  private static final char[] northingIDs =
-      new char[] { 'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'J', 'K', 'L', 'M',
-          'N', 'P', 'Q', 'R', 'S', 'T', 'U', 'V' };
-
 
   /**
    * Create a new MGRS reference object from the given UTM reference. It is
@@ -235,32 +228,8 @@ public class MGRSRef extends CoordinateSystem {
     super(WGS84Datum.getInstance());
 
     int lngZone = utm.getLngZone();
-    int set = ((lngZone - 1) % 6) + 1;
-    int eID =
-        (int) Math.floor(utm.getEasting() / 100000.0) + (8 * ((set - 1) % 3));
-    int nID = (int) Math.floor((utm.getNorthing() % 2000000) / 100000.0);
-
-    if (eID > 8)
-      eID++; // Offset for no I character
-    if (eID > 14)
-      eID++; // Offset for no O character
-
-    char eIDc = (char) (eID + 64);
-
-    // Northing ID offset for sets 2, 4 and 6
-    if (set % 2 == 0) {
-      nID += 5;
-    }
-
-    if (isBessel) {
-      nID += 10;
-    }
-    
-    if (nID > 19) {
-      nID -= 20;
-    }
-
-    char nIDc = northingIDs[nID];
+    char eIDc = UTMConverter.getEastingID(lngZone, utm.getEasting());
+    char nIDc = UTMConverter.getNorthingID(lngZone, utm.getNorthing(), isBessel);
 
     this.utmZoneNumber = lngZone;
     this.utmZoneChar = utm.getLatZone();
@@ -0,0 +1,460 @@
+package uk.me.jstott.jcoord;
+
+import uk.me.jstott.jcoord.ellipsoid.WGS84Ellipsoid;
+
+/**
+ * <p>
+ * This class is part of the Jcoord package. Visit the <a
+ * href="http://www.jstott.me.uk/jcoord/">Jcoord</a> website for more
+ * information.
+ * </p>
+ *
+ * <p>
+ * Converts WGS84 latitude/longitude pairs to UTM and MGRS references without
+ * creating intermediate objects.
+ * </p>
+ *
+ * <p>
+ * <code>{@link LatLng#toMGRSRef() LatLng.toMGRSRef()}</code> creates a
+ * <code>LatLng</code>, a <code>UTMRef</code> and an <code>MGRSRef</code> for
+ * each conversion. The methods of this class take the latitude and longitude as
+ * primitives and write the result into a
+ * <code>{@link UTMConverter.Result Result}</code> supplied by the caller, which
+ * can be reused for any number of conversions. The ellipsoid constants and the
+ * meridional arc coefficients are computed once when the class is loaded, as
+ * is the central meridian of each zone, and the trigonometric functions of the
+ * latitude are evaluated only once per point.
+ * </p>
+ *
+ * <p>
+ * This is the only UTM projection in the application:
+ * <code>{@link LatLng#toUTMRef() LatLng.toUTMRef()}</code> and
+ * <code>{@link LatLng#toMGRSRef() LatLng.toMGRSRef()}</code> are wrappers
+ * around it. Whole tracks can be converted with
+ * <code>{@link #toUTM(double[], double[], int, int, int[], char[], double[], double[])}</code>.
+ * </p>
+ *
+ * <p>
+ * This class is stateless and can be used from multiple threads, as long as
+ * each thread uses its own <code>Result</code>.
+ * </p>
+ *
+ * @author Michael von Glasow
+ * @since 1.2
+ */
+public final class UTMConverter {
+
+  /**
+   * Northernmost latitude covered by the UTM grid.
+   */
+  public static final double MAX_LATITUDE = 84.0;
+
+  /**
+   * Southernmost latitude covered by the UTM grid.
+   */
+  public static final double MIN_LATITUDE = -80.0;
+
+  /**
+   * Scale factor on the central meridian.
+   */
+  private static final double UTM_F0 = 0.9996;
+
+  /**
+   * False easting in metres.
+   */
+  private static final double FALSE_EASTING = 500000.0;
+
+  /**
+   * False northing in metres for the southern hemisphere.
+   */
+  private static final double FALSE_NORTHING_SOUTH = 10000000.0;
+
+  private static final double DEG_TO_RAD = Math.PI / 180.0;
+
+  /**
+   * Latitude zone letters, starting at 80&deg;S. Each zone is 8&deg; high,
+   * except for X which extends to 84&deg;N.
+   */
+  private static final char[] LAT_ZONE_LETTERS = "CDEFGHJKLMNPQRSTUVWX"
+      .toCharArray();
+
+  /**
+   * Northing characters for the 100km square identification.
+   */
+  private static final char[] NORTHING_IDS = "ABCDEFGHJKLMNPQRSTUV"
+      .toCharArray();
+
+  /**
+   * Semi-major axis of the WGS84 ellipsoid.
+   */
+  private static final double A;
+
+  /**
+   * Eccentricity squared of the WGS84 ellipsoid.
+   */
+  private static final double E_SQUARED;
+
+  /**
+   * Second eccentricity squared of the WGS84 ellipsoid.
+   */
+  private static final double E_PRIME_SQUARED;
+
+  /**
+   * Coefficients of the meridional arc series, premultiplied by the
+   * semi-major axis.
+   */
+  private static final double M0, M2, M4, M6;
+
+  /**
+   * Central meridian of each longitude zone in radians, indexed by zone number
+   * (index 0 is unused).
+   */
+  private static final double[] CENTRAL_MERIDIAN_RAD = new double[61];
+
+  static {
+    for (int zone = 1; zone <= 60; zone++)
+      CENTRAL_MERIDIAN_RAD[zone] = ((zone - 1) * 6 - 180 + 3) * DEG_TO_RAD;
+
+    WGS84Ellipsoid wgs84 = WGS84Ellipsoid.getInstance();
+    A = wgs84.getSemiMajorAxis();
+    E_SQUARED = wgs84.getEccentricitySquared();
+    E_PRIME_SQUARED = E_SQUARED / (1 - E_SQUARED);
+    double e4 = E_SQUARED * E_SQUARED;
+    double e6 = e4 * E_SQUARED;
+    M0 = A * (1 - E_SQUARED / 4 - 3 * e4 / 64 - 5 * e6 / 256);
+    M2 = A * (3 * E_SQUARED / 8 + 3 * e4 / 32 + 45 * e6 / 1024);
+    M4 = A * (15 * e4 / 256 + 45 * e6 / 1024);
+    M6 = A * (35 * e6 / 3072);
+  }
+
+
+  /**
+   * Mutable holder for the result of a conversion. Fields are public so that
+   * callers on a hot path can read them without method calls; they are only
+   * meaningful after a conversion method has returned <code>true</code>.
+   *
+   * @since 1.2
+   */
+  public static final class Result {
+
+    /**
+     * UTM longitude zone number (1-60).
+     */
+    public int lngZone;
+
+    /**
+     * UTM latitude zone letter (C-X).
+     */
+    public char latZone;
+
+    /**
+     * UTM easting in metres.
+     */
+    public double easting;
+
+    /**
+     * UTM northing in metres, including the false northing in the southern
+     * hemisphere.
+     */
+    public double northing;
+
+    /**
+     * MGRS 100km square column letter. Only set by
+     * <code>{@link UTMConverter#toMGRS(double, double, Result) toMGRS()}</code>.
+     */
+    public char eastingID;
+
+    /**
+     * MGRS 100km square row letter. Only set by
+     * <code>{@link UTMConverter#toMGRS(double, double, Result) toMGRS()}</code>.
+     */
+    public char northingID;
+
+    /**
+     * MGRS easting within the 100km square, in full metres. Only set by
+     * <code>{@link UTMConverter#toMGRS(double, double, Result) toMGRS()}</code>.
+     */
+    public int mgrsEasting;
+
+    /**
+     * MGRS northing within the 100km square, in full metres. Only set by
+     * <code>{@link UTMConverter#toMGRS(double, double, Result) toMGRS()}</code>.
+     */
+    public int mgrsNorthing;
+  }
+
+
+  private UTMConverter() {
+  }
+
+
+  /**
+   * Determine whether a latitude is covered by the UTM grid.
+   *
+   * @param latitude
+   *          the latitude in degrees.
+   * @return true if the latitude is between 80&deg;S and 84&deg;N inclusive.
+   * @since 1.2
+   */
+  public static boolean isOnGrid(double latitude) {
+    return (latitude >= MIN_LATITUDE) && (latitude <= MAX_LATITUDE);
+  }
+
+
+  /**
+   * Work out the UTM latitude zone letter for a latitude.
+   *
+   * @param latitude
+   *          the latitude in degrees.
+   * @return the latitude zone letter, or 'Z' if the latitude is outside the
+   *         UTM grid.
+   * @since 1.2
+   */
+  public static char getLatZoneLetter(double latitude) {
+    if (!isOnGrid(latitude))
+      return 'Z';
+    int i = (int) ((latitude - MIN_LATITUDE) / 8.0);
+    return LAT_ZONE_LETTERS[(i < LAT_ZONE_LETTERS.length) ? i
+        : LAT_ZONE_LETTERS.length - 1];
+  }
+
+
+  /**
+   * Work out the UTM longitude zone number for a position, including the
+   * special zones around Norway and Svalbard.
+   *
+   * @param latitude
+   *          the latitude in degrees.
+   * @param longitude
+   *          the longitude in degrees, between -180.0 and 180.0 inclusive.
+   * @return the longitude zone number.
+   * @since 1.2
+   */
+  public static int getLngZone(double latitude, double longitude) {
+    if (longitude == 180.0)
+      longitude = -180.0;
+
+    int lngZone = (int) Math.floor((longitude + 180.0) / 6.0) + 1;
+
+    // Special zone for Norway
+    if (latitude >= 56.0 && latitude < 64.0 && longitude >= 3.0
+        && longitude < 12.0) {
+      lngZone = 32;
+    }
+
+    // Special zones for Svalbard
+    if (latitude >= 72.0 && latitude < 84.0) {
+      if (longitude >= 0.0 && longitude < 9.0) {
+        lngZone = 31;
+      } else if (longitude >= 9.0 && longitude < 21.0) {
+        lngZone = 33;
+      } else if (longitude >= 21.0 && longitude < 33.0) {
+        lngZone = 35;
+      } else if (longitude >= 33.0 && longitude < 42.0) {
+        lngZone = 37;
+      }
+    }
+
+    return lngZone;
+  }
+
+
+  /**
+   * Convert a WGS84 latitude/longitude pair to a UTM reference. Sets the UTM
+   * fields of <code>result</code>; the MGRS fields are left untouched.
+   *
+   * @param latitude
+   *          the latitude in degrees.
+   * @param longitude
+   *          the longitude in degrees, between -180.0 and 180.0 inclusive.
+   * @param result
+   *          receives the result of the conversion.
+   * @return true if the conversion succeeded, false if the latitude is outside
+   *         the UTM grid (in which case <code>result</code> is not modified).
+   * @since 1.2
+   */
+  public static boolean toUTM(double latitude, double longitude, Result result) {
+    if (!isOnGrid(latitude))
+      return false;
+
+    if (longitude == 180.0)
+      longitude = -180.0;
+
+    int lngZone = getLngZone(latitude, longitude);
+    double latitudeRad = latitude * DEG_TO_RAD;
+    double longitudeRad = longitude * DEG_TO_RAD;
+
+    // sin(2, 4, 6 * latitude) follow from sin and cos of the latitude
+    double sinLat = Math.sin(latitudeRad);
+    double cosLat = Math.cos(latitudeRad);
+    double tanLat = sinLat / cosLat;
+    double sin2Lat = 2 * sinLat * cosLat;
+    double cos2Lat = 1 - 2 * sinLat * sinLat;
+    double sin4Lat = 2 * sin2Lat * cos2Lat;
+    double cos4Lat = 1 - 2 * sin2Lat * sin2Lat;
+    double sin6Lat = sin4Lat * cos2Lat + cos4Lat * sin2Lat;
+
+    double n = A / Math.sqrt(1 - E_SQUARED * sinLat * sinLat);
+    double t = tanLat * tanLat;
+    double c = E_PRIME_SQUARED * cosLat * cosLat;
+    double a1 = cosLat * (longitudeRad - CENTRAL_MERIDIAN_RAD[lngZone]);
+    double a2 = a1 * a1;
+    double a3 = a2 * a1;
+    double a4 = a2 * a2;
+    double a5 = a4 * a1;
+    double a6 = a4 * a2;
+
+    double m = M0 * latitudeRad - M2 * sin2Lat + M4 * sin4Lat - M6 * sin6Lat;
+
+    double easting = UTM_F0
+        * n
+        * (a1 + (1 - t + c) * a3 / 6 + (5 - 18 * t + t * t + 72 * c - 58 * E_PRIME_SQUARED)
+            * a5 / 120) + FALSE_EASTING;
+
+    double northing = UTM_F0
+        * (m + n
+            * tanLat
+            * (a2 / 2 + (5 - t + (9 * c) + (4 * c * c)) * a4 / 24 + (61
+                - (58 * t) + (t * t) + (600 * c) - (330 * E_PRIME_SQUARED))
+                * a6 / 720));
+
+    // Adjust for the southern hemisphere
+    if (latitude < 0)
+      northing += FALSE_NORTHING_SOUTH;
+
+    result.lngZone = lngZone;
+    result.latZone = getLatZoneLetter(latitude);
+    result.easting = easting;
+    result.northing = northing;
+    return true;
+  }
+
+
+  /**
+   * Convert a series of WGS84 latitude/longitude pairs to UTM references, e.g.
+   * the points of a track. Positions outside the UTM grid get a zone number of
+   * 0 and <code>NaN</code> for easting and northing.
+   *
+   * @param latitudes
+   *          latitudes in degrees.
+   * @param longitudes
+   *          longitudes in degrees, between -180.0 and 180.0 inclusive.
+   * @param offset
+   *          index of the first position to convert, in the input as well as
+   *          the output arrays.
+   * @param count
+   *          number of positions to convert.
+   * @param lngZones
+   *          receives the longitude zone numbers.
+   * @param latZones
+   *          receives the latitude zone letters, may be null.
+   * @param eastings
+   *          receives the eastings in metres.
+   * @param northings
+   *          receives the northings in metres.
+   * @return the number of positions which are on the UTM grid.
+   * @since 1.2
+   */
+  public static int toUTM(double[] latitudes, double[] longitudes, int offset,
+      int count, int[] lngZones, char[] latZones, double[] eastings,
+      double[] northings) {
+    Result res = new Result();
+    int converted = 0;
+    for (int i = offset; i < offset + count; i++) {
+      if (toUTM(latitudes[i], longitudes[i], res)) {
+        lngZones[i] = res.lngZone;
+        if (latZones != null)
+          latZones[i] = res.latZone;
+        eastings[i] = res.easting;
+        northings[i] = res.northing;
+        converted++;
+      } else {
+        lngZones[i] = 0;
+        if (latZones != null)
+          latZones[i] = 'Z';
+        eastings[i] = Double.NaN;
+        northings[i] = Double.NaN;
+      }
+    }
+    return converted;
+  }
+
+
+  /**
+   * Convert a WGS84 latitude/longitude pair to an MGRS reference with 1m
+   * precision. Sets all fields of <code>result</code>.
+   *
+   * @param latitude
+   *          the latitude in degrees.
+   * @param longitude
+   *          the longitude in degrees, between -180.0 and 180.0 inclusive.
+   * @param result
+   *          receives the result of the conversion.
+   * @return true if the conversion succeeded, false if the latitude is outside
+   *         the UTM grid (in which case <code>result</code> is not modified).
+   * @since 1.2
+   */
+  public static boolean toMGRS(double latitude, double longitude, Result result) {
+    if (!toUTM(latitude, longitude, result))
+      return false;
+    result.eastingID = getEastingID(result.lngZone, result.easting);
+    result.northingID = getNorthingID(result.lngZone, result.northing, false);
+    result.mgrsEasting = (int) Math.round(result.easting) % 100000;
+    result.mgrsNorthing = (int) Math.round(result.northing) % 100000;
+    return true;
+  }
+
+
+  /**
+   * Work out the MGRS 100km square column letter for a UTM easting.
+   *
+   * @param lngZone
+   *          the UTM longitude zone number.
+   * @param easting
+   *          the UTM easting in metres.
+   * @return the column letter.
+   * @since 1.2
+   */
+  public static char getEastingID(int lngZone, double easting) {
+    int set = ((lngZone - 1) % 6) + 1;
+    int eID = (int) Math.floor(easting / 100000.0) + (8 * ((set - 1) % 3));
+
+    if (eID > 8)
+      eID++; // Offset for no I character
+    if (eID > 14)
+      eID++; // Offset for no O character
+
+    return (char) (eID + 64);
+  }
+
+
+  /**
+   * Work out the MGRS 100km square row letter for a UTM northing.
+   *
+   * @param lngZone
+   *          the UTM longitude zone number.
+   * @param northing
+   *          the UTM northing in metres.
+   * @param isBessel
+   *          true if the reference uses the Bessel 1841 ellipsoid.
+   * @return the row letter.
+   * @since 1.2
+   */
+  public static char getNorthingID(int lngZone, double northing,
+      boolean isBessel) {
+    int set = ((lngZone - 1) % 6) + 1;
+    int nID = (int) Math.floor((northing % 2000000) / 100000.0);
+
+    // Northing ID offset for sets 2, 4 and 6
+    if (set % 2 == 0)
+      nID += 5;
+
+    if (isBessel)
+      nID += 10;
+
+    if (nID > 19)
+      nID -= 20;
+
+    return NORTHING_IDS[nID];
+  }
+}
@@ -0,0 +1,310 @@
+package uk.me.jstott.jcoord.datum;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+import uk.me.jstott.jcoord.ellipsoid.Ellipsoid;
+
+/**
+ * <p>
+ * This class is part of the Jcoord package. Visit the <a
+ * href="http://www.jstott.me.uk/jcoord/">Jcoord</a> website for more
+ * information.
+ * </p>
+ *
+ * <p>
+ * Transforms latitude/longitude pairs from one datum to another.
+ * </p>
+ *
+ * <p>
+ * The transformation goes through earth-centred, earth-fixed (ECEF) cartesian
+ * coordinates: the source datum's parameters take a point to WGS84, the inverse
+ * of the target datum's parameters take it from WGS84 to the target. Both
+ * Helmert transformations are combined into a single 3x3 matrix and
+ * translation vector when the transformer is created, so each point needs only
+ * one matrix multiplication. Transformers are cached per pair of datums and
+ * can be obtained with <code>{@link #getInstance(Datum, Datum)}</code>.
+ * </p>
+ *
+ * <p>
+ * The methods which operate on arrays transform coordinates in place and do
+ * not create any objects, which makes it practical to reproject an entire
+ * track. Instances are immutable and can be used from multiple threads.
+ * </p>
+ *
+ * <p>
+ * Unlike <code>{@link uk.me.jstott.jcoord.LatLng#toDatum(Datum)}</code>, this
+ * class uses the standard (position vector) Helmert rotation matrix, applies
+ * the parameters of both datums when neither of them is WGS84, and determines
+ * the longitude in all four quadrants.
+ * </p>
+ *
+ * @author Michael von Glasow
+ * @since 1.2
+ */
+public final class DatumTransformer {
+
+  /**
+   * Number of points below which
+   * <code>{@link #transform(double[], double[], double[], int, int, Executor)}</code>
+   * does not split the work.
+   */
+  private static final int MIN_CHUNK_SIZE = 4096;
+
+  /**
+   * Convergence threshold for the latitude in radians (about 0.1mm).
+   */
+  private static final double EPSILON = 1e-11;
+
+  /**
+   * Maximum number of iterations when converting back from ECEF coordinates.
+   */
+  private static final int MAX_ITERATIONS = 10;
+
+  private static final double ARC_SECONDS_TO_RAD = Math.PI / (180.0 * 3600.0);
+
+  /**
+   * Cached transformers, keyed by source and target datum class.
+   */
+  private static final Map<Class<?>, Map<Class<?>, DatumTransformer>> cache =
+      new HashMap<Class<?>, Map<Class<?>, DatumTransformer>>();
+
+  /**
+   * True if source and target are the same datum.
+   */
+  private final boolean identity;
+
+  private final double srcA, srcESquared;
+
+  private final double dstA, dstESquared;
+
+  /**
+   * Combined transformation matrix.
+   */
+  private final double m00, m01, m02, m10, m11, m12, m20, m21, m22;
+
+  /**
+   * Combined translation in metres.
+   */
+  private final double tx, ty, tz;
+
+
+  /**
+   * Create a new transformer. Use <code>{@link #getInstance(Datum, Datum)}</code>
+   * to get a cached instance.
+   *
+   * @param source
+   *          the datum to transform from.
+   * @param target
+   *          the datum to transform to.
+   * @since 1.2
+   */
+  private DatumTransformer(Datum source, Datum target) {
+    Ellipsoid srcEll = source.getReferenceEllipsoid();
+    Ellipsoid dstEll = target.getReferenceEllipsoid();
+    srcA = srcEll.getSemiMajorAxis();
+    srcESquared = srcEll.getEccentricitySquared();
+    dstA = dstEll.getSemiMajorAxis();
+    dstESquared = dstEll.getEccentricitySquared();
+    identity = (source.getClass() == target.getClass());
+
+    // source to WGS84
+    double[] s = toWGS84Matrix(source);
+
+    // WGS84 to target: inverse of target to WGS84
+    double[] t = toWGS84Matrix(target);
+    double[] ti = new double[12];
+    double det = t[0] * (t[4] * t[8] - t[5] * t[7]) - t[1]
+        * (t[3] * t[8] - t[5] * t[6]) + t[2] * (t[3] * t[7] - t[4] * t[6]);
+    ti[0] = (t[4] * t[8] - t[5] * t[7]) / det;
+    ti[1] = (t[2] * t[7] - t[1] * t[8]) / det;
+    ti[2] = (t[1] * t[5] - t[2] * t[4]) / det;
+    ti[3] = (t[5] * t[6] - t[3] * t[8]) / det;
+    ti[4] = (t[0] * t[8] - t[2] * t[6]) / det;
+    ti[5] = (t[2] * t[3] - t[0] * t[5]) / det;
+    ti[6] = (t[3] * t[7] - t[4] * t[6]) / det;
+    ti[7] = (t[1] * t[6] - t[0] * t[7]) / det;
+    ti[8] = (t[0] * t[4] - t[1] * t[3]) / det;
+    ti[9] = -(ti[0] * t[9] + ti[1] * t[10] + ti[2] * t[11]);
+    ti[10] = -(ti[3] * t[9] + ti[4] * t[10] + ti[5] * t[11]);
+    ti[11] = -(ti[6] * t[9] + ti[7] * t[10] + ti[8] * t[11]);
+
+    // combined: ti * s
+    m00 = ti[0] * s[0] + ti[1] * s[3] + ti[2] * s[6];
+    m01 = ti[0] * s[1] + ti[1] * s[4] + ti[2] * s[7];
+    m02 = ti[0] * s[2] + ti[1] * s[5] + ti[2] * s[8];
+    m10 = ti[3] * s[0] + ti[4] * s[3] + ti[5] * s[6];
+    m11 = ti[3] * s[1] + ti[4] * s[4] + ti[5] * s[7];
+    m12 = ti[3] * s[2] + ti[4] * s[5] + ti[5] * s[8];
+    m20 = ti[6] * s[0] + ti[7] * s[3] + ti[8] * s[6];
+    m21 = ti[6] * s[1] + ti[7] * s[4] + ti[8] * s[7];
+    m22 = ti[6] * s[2] + ti[7] * s[5] + ti[8] * s[8];
+    tx = ti[0] * s[9] + ti[1] * s[10] + ti[2] * s[11] + ti[9];
+    ty = ti[3] * s[9] + ti[4] * s[10] + ti[5] * s[11] + ti[10];
+    tz = ti[6] * s[9] + ti[7] * s[10] + ti[8] * s[11] + ti[11];
+  }
+
+
+  /**
+   * Get a transformer between two datums. Transformers are created on first
+   * use and cached.
+   *
+   * @param source
+   *          the datum to transform from.
+   * @param target
+   *          the datum to transform to.
+   * @return a transformer from <code>source</code> to <code>target</code>.
+   * @since 1.2
+   */
+  public static synchronized DatumTransformer getInstance(Datum source,
+      Datum target) {
+    Map<Class<?>, DatumTransformer> targets = cache.get(source.getClass());
+    if (targets == null) {
+      targets = new HashMap<Class<?>, DatumTransformer>();
+      cache.put(source.getClass(), targets);
+    }
+    DatumTransformer res = targets.get(target.getClass());
+    if (res == null) {
+      res = new DatumTransformer(source, target);
+      targets.put(target.getClass(), res);
+    }
+    return res;
+  }
+
+
+  /**
+   * Transform a series of points in place.
+   *
+   * @param latitudes
+   *          latitudes in degrees, replaced with the transformed latitudes.
+   * @param longitudes
+   *          longitudes in degrees, replaced with the transformed longitudes.
+   * @param heights
+   *          ellipsoidal heights in metres, replaced with the transformed
+   *          heights. May be null, in which case a height of 0 is assumed.
+   * @param offset
+   *          index of the first point to transform.
+   * @param count
+   *          number of points to transform.
+   * @since 1.2
+   */
+  public void transform(double[] latitudes, double[] longitudes,
+      double[] heights, int offset, int count) {
+    if (identity)
+      return;
+
+    for (int i = offset; i < offset + count; i++) {
+      double phi = Math.toRadians(latitudes[i]);
+      double lambda = Math.toRadians(longitudes[i]);
+      double h = (heights == null) ? 0 : heights[i];
+
+      // to ECEF on the source ellipsoid
+      double sinPhi = Math.sin(phi);
+      double cosPhi = Math.cos(phi);
+      double v = srcA / Math.sqrt(1 - srcESquared * sinPhi * sinPhi);
+      double x = (v + h) * cosPhi * Math.cos(lambda);
+      double y = (v + h) * cosPhi * Math.sin(lambda);
+      double z = ((1 - srcESquared) * v + h) * sinPhi;
+
+      double xB = tx + m00 * x + m01 * y + m02 * z;
+      double yB = ty + m10 * x + m11 * y + m12 * z;
+      double zB = tz + m20 * x + m21 * y + m22 * z;
+
+      // back from ECEF on the target ellipsoid
+      double p = Math.sqrt((xB * xB) + (yB * yB));
+      double phiN = Math.atan2(zB, p * (1 - dstESquared));
+      for (int j = 0; j < MAX_ITERATIONS; j++) {
+        sinPhi = Math.sin(phiN);
+        v = dstA / Math.sqrt(1 - dstESquared * sinPhi * sinPhi);
+        double phiN1 = Math.atan2(zB + (dstESquared * v * sinPhi), p);
+        boolean converged = Math.abs(phiN1 - phiN) < EPSILON;
+        phiN = phiN1;
+        if (converged)
+          break;
+      }
+
+      latitudes[i] = Math.toDegrees(phiN);
+      longitudes[i] = Math.toDegrees(Math.atan2(yB, xB));
+      if (heights != null) {
+        sinPhi = Math.sin(phiN);
+        v = dstA / Math.sqrt(1 - dstESquared * sinPhi * sinPhi);
+        heights[i] = p / Math.cos(phiN) - v;
+      }
+    }
+  }
+
+
+  /**
+   * Transform a series of points in place, splitting the work into chunks
+   * which run on <code>executor</code>. Returns when all points have been
+   * transformed.
+   *
+   * @param latitudes
+   *          latitudes in degrees, replaced with the transformed latitudes.
+   * @param longitudes
+   *          longitudes in degrees, replaced with the transformed longitudes.
+   * @param heights
+   *          ellipsoidal heights in metres, replaced with the transformed
+   *          heights. May be null, in which case a height of 0 is assumed.
+   * @param offset
+   *          index of the first point to transform.
+   * @param count
+   *          number of points to transform.
+   * @param executor
+   *          the executor on which to run the chunks.
+   * @throws InterruptedException
+   *           if the calling thread is interrupted while waiting for the
+   *           chunks to finish.
+   * @since 1.2
+   */
+  public void transform(final double[] latitudes, final double[] longitudes,
+      final double[] heights, int offset, int count, Executor executor)
+      throws InterruptedException {
+    int chunks = Math.min(Runtime.getRuntime().availableProcessors(),
+        count / MIN_CHUNK_SIZE);
+    if (identity || (chunks <= 1)) {
+      transform(latitudes, longitudes, heights, offset, count);
+      return;
+    }
+
+    final CountDownLatch done = new CountDownLatch(chunks);
+    int chunkSize = (count + chunks - 1) / chunks;
+    for (int start = offset; start < offset + count; start += chunkSize) {
+      final int chunkOffset = start;
+      final int chunkCount = Math.min(chunkSize, offset + count - start);
+      executor.execute(new Runnable() {
+        public void run() {
+          try {
+            transform(latitudes, longitudes, heights, chunkOffset, chunkCount);
+          } finally {
+            done.countDown();
+          }
+        }
+      });
+    }
+    done.await();
+  }
+
+
+  /**
+   * Work out the Helmert transformation from a datum to WGS84 as a 3x3 matrix
+   * (elements 0-8, row by row) followed by the translation (elements 9-11).
+   *
+   * @param d
+   *          the datum.
+   * @return the transformation.
+   */
+  private static double[] toWGS84Matrix(Datum d) {
+    if (d instanceof WGS84Datum) {
+      return new double[] { 1, 0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0 };
+    }
+    double sc = 1 + d.getDs() / 1000000.0;
+    double rx = d.getRx() * ARC_SECONDS_TO_RAD;
+    double ry = d.getRy() * ARC_SECONDS_TO_RAD;
+    double rz = d.getRz() * ARC_SECONDS_TO_RAD;
+    return new double[] { sc, -rz * sc, ry * sc, rz * sc, sc, -rx * sc,
+        -ry * sc, rx * sc, sc, d.getDx(), d.getDy(), d.getDz() };
+  }
+}